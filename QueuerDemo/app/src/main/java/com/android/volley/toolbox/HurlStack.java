@@ -31,24 +31,38 @@ import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.message.BasicStatusLine;
 
 import java.io.DataOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSocketFactory;
 
 /**
  * An {@link HttpStack} based on {@link HttpURLConnection}.
+ *
+ * <p>Asks for gzip unless the request sets its own Accept-Encoding, and hands a gzipped body
+ * back decoded, so {@link BasicNetwork} reads it straight into its pooled buffers.
+ * Connections are kept alive and reused by {@link HttpURLConnection}'s own pool once a body has
+ * been read to the end; its limits are set with {@link #setConnectionPoolLimits(int, long)}.
  */
 public class HurlStack implements HttpStack {
 
     private static final String HEADER_CONTENT_TYPE = "Content-Type";
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String HEADER_CONNECTION = "Connection";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    private static final String ENCODING_GZIP = "gzip";
 
     /**
      * An interface for transforming URLs before use.
@@ -64,6 +78,12 @@ public class HurlStack implements HttpStack {
     private final UrlRewriter mUrlRewriter;
     private final SSLSocketFactory mSslSocketFactory;
 
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mKeepAliveCount = new AtomicLong();
+    private final AtomicLong mCompressedResponseCount = new AtomicLong();
+    private final AtomicLong mCompressedBytes = new AtomicLong();
+    private final AtomicLong mDecompressedBytes = new AtomicLong();
+
     public HurlStack() {
         this(null);
     }
@@ -84,6 +104,20 @@ public class HurlStack implements HttpStack {
         mSslSocketFactory = sslSocketFactory;
     }
 
+    /**
+     * Sets the limits of the process-wide pool {@link HttpURLConnection} keeps idle
+     * connections in. Only takes effect if called before the first connection is made.
+     *
+     * @param maxIdleConnections most idle connections kept, or 0 to close every
+     *        connection after its response
+     * @param keepAliveDurationMs how long an idle connection is kept
+     */
+    public static void setConnectionPoolLimits(int maxIdleConnections, long keepAliveDurationMs) {
+        System.setProperty("http.keepAlive", String.valueOf(maxIdleConnections > 0));
+        System.setProperty("http.maxConnections", String.valueOf(Math.max(maxIdleConnections, 1)));
+        System.setProperty("http.keepAliveDuration", String.valueOf(keepAliveDurationMs));
+    }
+
     @Override
     public HttpResponse performRequest(Request<?> request, Map<String, String> additionalHeaders)
             throws IOException, AuthFailureError {
@@ -91,6 +125,11 @@ public class HurlStack implements HttpStack {
         HashMap<String, String> map = new HashMap<String, String>();
         map.putAll(request.getHeaders());
         map.putAll(additionalHeaders);
+        // A caller that asks for an encoding itself gets the body as it was sent.
+        boolean decodeGzip = !containsHeader(map, HEADER_ACCEPT_ENCODING);
+        if (decodeGzip) {
+            map.put(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+        }
         if (mUrlRewriter != null) {
             String rewritten = mUrlRewriter.rewriteUrl(url);
             if (rewritten == null) {
@@ -115,8 +154,19 @@ public class HurlStack implements HttpStack {
         StatusLine responseStatus = new BasicStatusLine(protocolVersion,
                 connection.getResponseCode(), connection.getResponseMessage());
         BasicHttpResponse response = new BasicHttpResponse(responseStatus);
-        response.setEntity(entityFromConnection(connection));
+        mRequestCount.incrementAndGet();
+        if (!"close".equalsIgnoreCase(connection.getHeaderField(HEADER_CONNECTION))) {
+            mKeepAliveCount.incrementAndGet();
+        }
+        boolean gzipped = decodeGzip
+                && ENCODING_GZIP.equalsIgnoreCase(connection.getContentEncoding());
+        response.setEntity(entityFromConnection(connection, gzipped));
         for (Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            // Once decoded, the body no longer has the encoding or length it was sent with.
+            if (gzipped && (HEADER_CONTENT_ENCODING.equalsIgnoreCase(header.getKey())
+                    || HEADER_CONTENT_LENGTH.equalsIgnoreCase(header.getKey()))) {
+                continue;
+            }
             if (header.getKey() != null) {
                 Header h = new BasicHeader(header.getKey(), header.getValue().get(0));
                 response.addHeader(h);
@@ -128,9 +178,11 @@ public class HurlStack implements HttpStack {
     /**
      * Initializes an {@link HttpEntity} from the given {@link HttpURLConnection}.
      * @param connection
+     * @param gzipped whether the body is gzipped and is to be decoded
      * @return an HttpEntity populated with data from <code>connection</code>.
      */
-    private static HttpEntity entityFromConnection(HttpURLConnection connection) {
+    private HttpEntity entityFromConnection(HttpURLConnection connection, boolean gzipped)
+            throws IOException {
         BasicHttpEntity entity = new BasicHttpEntity();
         InputStream inputStream;
         try {
@@ -138,13 +190,81 @@ public class HurlStack implements HttpStack {
         } catch (IOException ioe) {
             inputStream = connection.getErrorStream();
         }
-        entity.setContent(inputStream);
-        entity.setContentLength(connection.getContentLength());
-        entity.setContentEncoding(connection.getContentEncoding());
+        if (gzipped && inputStream != null) {
+            mCompressedResponseCount.incrementAndGet();
+            entity.setContent(gunzip(inputStream));
+            // The decoded length is not known up front.
+            entity.setContentLength(-1);
+        } else {
+            entity.setContent(inputStream);
+            entity.setContentLength(connection.getContentLength());
+            entity.setContentEncoding(connection.getContentEncoding());
+        }
         entity.setContentType(connection.getContentType());
         return entity;
     }
 
+    /**
+     * Wraps a gzipped body in a stream that decodes it as it is read, counting the bytes on
+     * both sides. An empty body, as in a 204 or a HEAD response, stays empty.
+     */
+    private InputStream gunzip(InputStream compressed) throws IOException {
+        PushbackInputStream in =
+                new PushbackInputStream(new CountingInputStream(compressed, mCompressedBytes));
+        int first = in.read();
+        if (first == -1) {
+            return in;
+        }
+        in.unread(first);
+        return new CountingInputStream(new GZIPInputStream(in), mDecompressedBytes);
+    }
+
+    private static boolean containsHeader(Map<String, String> headers, String name) {
+        for (String header : headers.keySet()) {
+            if (header.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns how many responses this stack has received. */
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Returns how many responses left their connection open for a later request. A connection
+     * goes back to the pool once its body has been read to the end.
+     */
+    public long getKeepAliveCount() {
+        return mKeepAliveCount.get();
+    }
+
+    /** Returns how many responses arrived gzipped. */
+    public long getCompressedResponseCount() {
+        return mCompressedResponseCount.get();
+    }
+
+    /** Returns how many gzipped bytes have been read off the network. */
+    public long getCompressedBytes() {
+        return mCompressedBytes.get();
+    }
+
+    /** Returns how many bytes the gzipped bodies read so far decoded to. */
+    public long getDecompressedBytes() {
+        return mDecompressedBytes.get();
+    }
+
+    /**
+     * Returns how many times larger the gzipped bodies read so far are decoded, or 1 if none
+     * has been read.
+     */
+    public double getCompressionRatio() {
+        long compressed = mCompressedBytes.get();
+        return compressed == 0 ? 1 : (double) mDecompressedBytes.get() / compressed;
+    }
+
     /**
      * Create an {@link HttpURLConnection} for the specified {@code url}.
      */
@@ -242,4 +362,39 @@ public class HurlStack implements HttpStack {
             out.close();
         }
     }
+
+    /** Adds the number of bytes read through it to a counter. */
+    private static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong mCount;
+
+        CountingInputStream(InputStream in, AtomicLong count) {
+            super(in);
+            mCount = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mCount.addAndGet(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = super.skip(count);
+            mCount.addAndGet(skipped);
+            return skipped;
+        }
+    }
 }
@@ -3,16 +3,34 @@ package com.demo.queuer;
 import android.app.Application;
 
 import com.android.volley.RequestQueue;
+import com.android.volley.toolbox.HurlStack;
 import com.android.volley.toolbox.Volley;
 
 /**
  * Created by eschrock on 1/16/14.
  */
 public class QueuerApplication extends Application {
+    // Sync talks to one host, so a few idle connections are enough to skip reconnecting
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_DURATION_MS = 5 * 60 * 1000;
+
+    private HurlStack stack;
     private RequestQueue queue;
 
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        HurlStack.setConnectionPoolLimits(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MS);
+    }
+
     public RequestQueue getRequestQueue(){
-        if (queue == null) queue = Volley.newRequestQueue(this);
+        if (queue == null) queue = Volley.newRequestQueue(this, getHttpStack());
         return queue;
     }
+
+    // Also reports connection reuse and gzip savings
+    public HurlStack getHttpStack(){
+        if (stack == null) stack = new HurlStack();
+        return stack;
+    }
 }
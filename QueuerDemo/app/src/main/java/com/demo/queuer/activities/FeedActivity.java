@@ -16,6 +16,7 @@ import com.demo.queuer.models.Project;
 import com.demo.queuer.views.EnhancedListView;
 
 import java.util.ArrayList;
+import java.util.Date;
 
 /**
  * Created by eschrock on 1/15/14.
@@ -29,12 +30,19 @@ public class FeedActivity extends ActionBarActivity {
         setContentView(R.layout.activity_feed);
 
         ArrayList<Project> projects = new ArrayList<Project>(20);
+        Date now = new Date();
         for (int i = 0; i < 20; i++){
-            new Project(this, i, "Project " + i);
+            Project project = new Project();
+            project.setId(i);
+            project.setName("Project " + i);
+            project.setCreated_at(now);
+            project.setUpdated_at(now);
+            projects.add(project);
         }
 
         ProjectDataSource projectDataSource = new ProjectDataSource(this);
         projectDataSource.open();
+        projectDataSource.createProjects(projects);
         projects = projectDataSource.getAllProjects();
         projectDataSource.close();
 
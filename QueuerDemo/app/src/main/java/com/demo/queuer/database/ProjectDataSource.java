@@ -5,11 +5,14 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import com.demo.queuer.models.Project;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 
 /**
  * Created by eschrock on 1/21/14.
@@ -26,6 +29,23 @@ public class ProjectDataSource {
             ProjectOpenHelper.COLUMN_HIDDEN,
             ProjectOpenHelper.COLUMN_TITLE};
 
+    private static final String INSERT_PROJECT_SQL = "INSERT INTO " + ProjectOpenHelper.TABLE_PROJECTS + " ("
+            + ProjectOpenHelper.COLUMN_SERVER_ID + ", "
+            + ProjectOpenHelper.COLUMN_COLOR + ", "
+            + ProjectOpenHelper.COLUMN_TITLE + ", "
+            + ProjectOpenHelper.COLUMN_UPDATED + ", "
+            + ProjectOpenHelper.COLUMN_CREATED + ", "
+            + ProjectOpenHelper.COLUMN_HIDDEN + ") VALUES (?, ?, ?, ?, ?, 0)";
+
+    // Same parameters as INSERT_PROJECT_SQL, then the local ID
+    private static final String UPDATE_PROJECT_SQL = "UPDATE " + ProjectOpenHelper.TABLE_PROJECTS + " SET "
+            + ProjectOpenHelper.COLUMN_SERVER_ID + " = ?, "
+            + ProjectOpenHelper.COLUMN_COLOR + " = ?, "
+            + ProjectOpenHelper.COLUMN_TITLE + " = ?, "
+            + ProjectOpenHelper.COLUMN_UPDATED + " = ?, "
+            + ProjectOpenHelper.COLUMN_CREATED + " = ? "
+            + "WHERE " + ProjectOpenHelper.COLUMN_ID + " = ?";
+
     public ProjectDataSource(Context context) {
         dbHelper = new ProjectOpenHelper(context);
     }
@@ -58,6 +78,100 @@ public class ProjectDataSource {
         return newProject;
     }
 
+    // Inserts every project in one transaction through one compiled statement and
+    // fills in their local IDs from the row IDs, without reading the rows back.
+    public void createProjects(Collection<Project> projects) {
+        SQLiteStatement statement = database.compileStatement(INSERT_PROJECT_SQL);
+        database.beginTransaction();
+        try {
+            for (Project project : projects) {
+                bindProject(statement, project);
+                long insertId = statement.executeInsert();
+                if (insertId == -1) throw new SQLException("Could not insert project " + project.getName());
+                project.setLocalId((int) insertId);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            statement.close();
+        }
+    }
+
+    // Merges projects downloaded from the server in one transaction. A project whose server ID
+    // is already stored is settled with Project.syncProject, so the newer updated_at wins and
+    // the local ID is carried over; any other project is inserted. Returns how many rows changed.
+    public int mergeProjects(Collection<Project> serverProjects) {
+        HashMap<Integer, Project> localProjects = getProjectsByServerId(serverProjects);
+        SQLiteStatement insert = database.compileStatement(INSERT_PROJECT_SQL);
+        SQLiteStatement update = database.compileStatement(UPDATE_PROJECT_SQL);
+        int written = 0;
+        database.beginTransaction();
+        try {
+            for (Project serverProject : serverProjects) {
+                Project localProject = localProjects.get(serverProject.getId());
+                if (localProject == null) {
+                    bindProject(insert, serverProject);
+                    long insertId = insert.executeInsert();
+                    if (insertId == -1) throw new SQLException("Could not insert project " + serverProject.getName());
+                    serverProject.setLocalId((int) insertId);
+                    localProjects.put(serverProject.getId(), serverProject);
+                    written++;
+                } else if (Project.syncProject(serverProject, localProject) == serverProject) {
+                    bindProject(update, serverProject);
+                    update.bindLong(6, serverProject.getLocalId());
+                    update.execute();
+                    localProjects.put(serverProject.getId(), serverProject);
+                    written++;
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            insert.close();
+            update.close();
+        }
+        return written;
+    }
+
+    // The local ID and updated_at of the stored copies of the given server projects, by server ID.
+    // Only the given IDs are read, so merging in batches does not read the whole table per batch.
+    // A row without updated_at loses to any server copy.
+    private HashMap<Integer, Project> getProjectsByServerId(Collection<Project> serverProjects) {
+        HashMap<Integer, Project> projects = new HashMap<Integer, Project>();
+        StringBuilder ids = new StringBuilder();
+        for (Project serverProject : serverProjects) {
+            if (ids.length() > 0) ids.append(',');
+            ids.append(serverProject.getId());
+        }
+        if (ids.length() == 0) return projects;
+        Cursor cursor = database.query(ProjectOpenHelper.TABLE_PROJECTS,
+                new String[]{ProjectOpenHelper.COLUMN_ID, ProjectOpenHelper.COLUMN_SERVER_ID, ProjectOpenHelper.COLUMN_UPDATED},
+                ProjectOpenHelper.COLUMN_SERVER_ID + " != 0 AND " + ProjectOpenHelper.COLUMN_SERVER_ID + " IN (" + ids + ")",
+                null, null, null, null);
+        while (cursor.moveToNext()) {
+            Project project = new Project();
+            project.setLocalId(cursor.getInt(0));
+            project.setId(cursor.getInt(1));
+            project.setUpdated_at(new Date(cursor.isNull(2) ? 0 : cursor.getLong(2)));
+            projects.put(project.getId(), project);
+        }
+        cursor.close();
+        return projects;
+    }
+
+    private static void bindProject(SQLiteStatement statement, Project project) {
+        statement.bindLong(1, project.getId());
+        statement.bindLong(2, project.getColor());
+        statement.bindString(3, project.getName());
+        bindDate(statement, 4, project.getUpdated_at());
+        bindDate(statement, 5, project.getCreated_at());
+    }
+
+    private static void bindDate(SQLiteStatement statement, int index, Date date) {
+        if (date == null) statement.bindNull(index);
+        else statement.bindLong(index, date.getTime());
+    }
+
     public void updateProject(Project project){
         ContentValues values = new ContentValues();
         values.put(ProjectOpenHelper.COLUMN_SERVER_ID, project.getId());
@@ -101,6 +215,12 @@ public class ProjectDataSource {
         project.setId(cursor.getInt(cursor.getColumnIndex(ProjectOpenHelper.COLUMN_SERVER_ID)));
         project.setColor(cursor.getInt(cursor.getColumnIndex(ProjectOpenHelper.COLUMN_COLOR)));
         project.setName(cursor.getString(cursor.getColumnIndex(ProjectOpenHelper.COLUMN_TITLE)));
+        project.setCreated_at(readDate(cursor, cursor.getColumnIndex(ProjectOpenHelper.COLUMN_CREATED)));
+        project.setUpdated_at(readDate(cursor, cursor.getColumnIndex(ProjectOpenHelper.COLUMN_UPDATED)));
         return project;
     }
+
+    private static Date readDate(Cursor cursor, int column) {
+        return cursor.isNull(column) ? null : new Date(cursor.getLong(column));
+    }
 }
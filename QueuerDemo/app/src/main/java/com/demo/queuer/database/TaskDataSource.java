@@ -5,10 +5,14 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import com.demo.queuer.models.Task;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 
 /**
  * Created by eschrock on 1/21/14.
@@ -26,6 +30,26 @@ public class TaskDataSource {
             TaskOpenHelper.COLUMN_CREATED,
             TaskOpenHelper.COLUMN_UPDATED};
 
+    private static final String INSERT_TASK_SQL = "INSERT INTO " + TaskOpenHelper.TABLE_TASKS + " ("
+            + TaskOpenHelper.COLUMN_SERVER_ID + ", "
+            + TaskOpenHelper.COLUMN_PROJECT_SERVER_ID + ", "
+            + TaskOpenHelper.COLUMN_POSITION + ", "
+            + TaskOpenHelper.COLUMN_COMPLETED + ", "
+            + TaskOpenHelper.COLUMN_TEXT + ", "
+            + TaskOpenHelper.COLUMN_CREATED + ", "
+            + TaskOpenHelper.COLUMN_UPDATED + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    // Same parameters as INSERT_TASK_SQL, then the local ID
+    private static final String UPDATE_TASK_SQL = "UPDATE " + TaskOpenHelper.TABLE_TASKS + " SET "
+            + TaskOpenHelper.COLUMN_SERVER_ID + " = ?, "
+            + TaskOpenHelper.COLUMN_PROJECT_SERVER_ID + " = ?, "
+            + TaskOpenHelper.COLUMN_POSITION + " = ?, "
+            + TaskOpenHelper.COLUMN_COMPLETED + " = ?, "
+            + TaskOpenHelper.COLUMN_TEXT + " = ?, "
+            + TaskOpenHelper.COLUMN_CREATED + " = ?, "
+            + TaskOpenHelper.COLUMN_UPDATED + " = ? "
+            + "WHERE " + TaskOpenHelper.COLUMN_ID + " = ?";
+
     public TaskDataSource(Context context) {
         dbHelper = new TaskOpenHelper(context);
     }
@@ -57,6 +81,102 @@ public class TaskDataSource {
         return newTask;
     }
 
+    // Inserts every task in one transaction through one compiled statement and
+    // fills in their local IDs from the row IDs, without reading the rows back.
+    public void createTasks(Collection<Task> tasks) {
+        SQLiteStatement statement = database.compileStatement(INSERT_TASK_SQL);
+        database.beginTransaction();
+        try {
+            for (Task task : tasks) {
+                bindTask(statement, task);
+                long insertId = statement.executeInsert();
+                if (insertId == -1) throw new SQLException("Could not insert task " + task.getName());
+                task.setLocalId((int) insertId);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            statement.close();
+        }
+    }
+
+    // Merges tasks downloaded from the server in one transaction. A task whose server ID
+    // is already stored is settled with Task.syncTask, so the newer updated_at wins and
+    // the local ID is carried over; any other task is inserted. Returns how many rows changed.
+    public int mergeTasks(Collection<Task> serverTasks) {
+        HashMap<Integer, Task> localTasks = getTasksByServerId(serverTasks);
+        SQLiteStatement insert = database.compileStatement(INSERT_TASK_SQL);
+        SQLiteStatement update = database.compileStatement(UPDATE_TASK_SQL);
+        int written = 0;
+        database.beginTransaction();
+        try {
+            for (Task serverTask : serverTasks) {
+                Task localTask = localTasks.get(serverTask.getId());
+                if (localTask == null) {
+                    bindTask(insert, serverTask);
+                    long insertId = insert.executeInsert();
+                    if (insertId == -1) throw new SQLException("Could not insert task " + serverTask.getName());
+                    serverTask.setLocalId((int) insertId);
+                    localTasks.put(serverTask.getId(), serverTask);
+                    written++;
+                } else if (Task.syncTask(serverTask, localTask) == serverTask) {
+                    bindTask(update, serverTask);
+                    update.bindLong(8, serverTask.getLocalId());
+                    update.execute();
+                    localTasks.put(serverTask.getId(), serverTask);
+                    written++;
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            insert.close();
+            update.close();
+        }
+        return written;
+    }
+
+    // The local ID and updated_at of the stored copies of the given server tasks, by server ID.
+    // Only the given IDs are read, so merging in batches does not read the whole table per batch.
+    // A row without updated_at loses to any server copy.
+    private HashMap<Integer, Task> getTasksByServerId(Collection<Task> serverTasks) {
+        HashMap<Integer, Task> tasks = new HashMap<Integer, Task>();
+        StringBuilder ids = new StringBuilder();
+        for (Task serverTask : serverTasks) {
+            if (ids.length() > 0) ids.append(',');
+            ids.append(serverTask.getId());
+        }
+        if (ids.length() == 0) return tasks;
+        Cursor cursor = database.query(TaskOpenHelper.TABLE_TASKS,
+                new String[]{TaskOpenHelper.COLUMN_ID, TaskOpenHelper.COLUMN_SERVER_ID, TaskOpenHelper.COLUMN_UPDATED},
+                TaskOpenHelper.COLUMN_SERVER_ID + " != 0 AND " + TaskOpenHelper.COLUMN_SERVER_ID + " IN (" + ids + ")",
+                null, null, null, null);
+        while (cursor.moveToNext()) {
+            Task task = new Task();
+            task.setLocalId(cursor.getInt(0));
+            task.setId(cursor.getInt(1));
+            task.setUpdated_at(new Date(cursor.isNull(2) ? 0 : cursor.getLong(2)));
+            tasks.put(task.getId(), task);
+        }
+        cursor.close();
+        return tasks;
+    }
+
+    private static void bindTask(SQLiteStatement statement, Task task) {
+        statement.bindLong(1, task.getId());
+        statement.bindLong(2, task.getProject_id());
+        statement.bindLong(3, task.getOrder());
+        statement.bindLong(4, task.isFinished() ? 1 : 0);
+        statement.bindString(5, task.getName());
+        bindDate(statement, 6, task.getCreated_at());
+        bindDate(statement, 7, task.getUpdated_at());
+    }
+
+    private static void bindDate(SQLiteStatement statement, int index, Date date) {
+        if (date == null) statement.bindNull(index);
+        else statement.bindLong(index, date.getTime());
+    }
+
     public void updateTask(Task task){
         ContentValues values = new ContentValues();
         values.put(TaskOpenHelper.COLUMN_SERVER_ID, task.getLocalId());
@@ -104,6 +224,12 @@ public class TaskDataSource {
         task.setName(cursor.getString(cursor.getColumnIndex(TaskOpenHelper.COLUMN_TEXT)));
         task.setOrder(cursor.getInt(cursor.getColumnIndex(TaskOpenHelper.COLUMN_POSITION)));
         task.setFinished(1 == cursor.getInt(cursor.getColumnIndex(TaskOpenHelper.COLUMN_COMPLETED)));
+        task.setCreated_at(readDate(cursor, cursor.getColumnIndex(TaskOpenHelper.COLUMN_CREATED)));
+        task.setUpdated_at(readDate(cursor, cursor.getColumnIndex(TaskOpenHelper.COLUMN_UPDATED)));
         return task;
     }
+
+    private static Date readDate(Cursor cursor, int column) {
+        return cursor.isNull(column) ? null : new Date(cursor.getLong(column));
+    }
 }
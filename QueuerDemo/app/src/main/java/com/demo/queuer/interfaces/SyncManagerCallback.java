@@ -0,0 +1,9 @@
+package com.demo.queuer.interfaces;
+
+/**
+ * Receives the progress of a {@link com.demo.queuer.managers.SyncManager} sync on the main thread.
+ */
+public interface SyncManagerCallback {
+    public void startedSync();
+    public void finishedSync(boolean successful);
+}
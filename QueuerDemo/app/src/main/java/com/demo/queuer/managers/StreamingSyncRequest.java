@@ -0,0 +1,198 @@
+package com.demo.queuer.managers;
+
+import android.content.Context;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.demo.queuer.database.ProjectDataSource;
+import com.demo.queuer.database.TaskDataSource;
+import com.demo.queuer.models.Project;
+import com.demo.queuer.models.Task;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * Downloads an array of projects (each with an optional nested "tasks" array) or of tasks,
+ * and merges them into the local databases while the body is parsed.
+ *
+ * The body is read token by token with Gson's JsonReader on the network thread, and rows are
+ * merged every BATCH_SIZE entities, so memory holds the response bytes and one batch instead
+ * of a String, a JSONArray and a list of every model besides.
+ */
+public class StreamingSyncRequest extends Request<StreamingSyncRequest.Result> {
+    public static final int PROJECTS = 0;
+    public static final int TASKS = 1;
+
+    private static final int BATCH_SIZE = 200;
+
+    private final Context context;
+    private final int kind;
+    private final Response.Listener<Result> listener;
+
+    public StreamingSyncRequest(Context context, String url, int kind, Response.Listener<Result> listener,
+                                Response.ErrorListener errorListener) {
+        super(Method.GET, url, errorListener);
+        this.context = context.getApplicationContext();
+        this.kind = kind;
+        this.listener = listener;
+        setShouldCache(false);
+    }
+
+    @Override
+    protected Response<Result> parseNetworkResponse(NetworkResponse response) {
+        try {
+            Reader reader = new InputStreamReader(new ByteArrayInputStream(response.data),
+                    HttpHeaderParser.parseCharset(response.headers));
+            return Response.success(read(context, reader, kind), null);
+        } catch (IOException e) {
+            return Response.error(new ParseError(e));
+        } catch (JsonParseException e) {
+            return Response.error(new ParseError(e));
+        } catch (IllegalStateException e) {
+            return Response.error(new ParseError(e));
+        }
+    }
+
+    @Override
+    protected void deliverResponse(Result result) {
+        listener.onResponse(result);
+    }
+
+    // Parses a body and merges it batch by batch; closes the reader
+    public static Result read(Context context, Reader in, int kind) throws IOException {
+        Merger merger = new Merger(context);
+        JsonReader reader = new JsonReader(in);
+        try {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (kind == PROJECTS) readProject(reader, merger);
+                else merger.add(merger.taskAdapter.read(reader));
+            }
+            reader.endArray();
+            merger.flush();
+        } finally {
+            reader.close();
+            merger.close();
+        }
+        return merger.result;
+    }
+
+    // Reads one project; its nested tasks are merged as they come, without the project holding them
+    private static void readProject(JsonReader reader, Merger merger) throws IOException {
+        Project project = new Project();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+            } else if (name.equals("id")) {
+                project.setId(reader.nextInt());
+            } else if (name.equals("name")) {
+                project.setName(reader.nextString());
+            } else if (name.equals("color")) {
+                project.setColor(reader.nextInt());
+            } else if (name.equals("created_at")) {
+                project.setCreated_at(merger.dateAdapter.read(reader));
+            } else if (name.equals("updated_at")) {
+                project.setUpdated_at(merger.dateAdapter.read(reader));
+            } else if (name.equals("tasks")) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Task task = merger.taskAdapter.read(reader);
+                    if (task.getProject_id() == 0) task.setProject_id(project.getId());
+                    merger.add(task);
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        merger.add(project);
+    }
+
+    // Collects parsed rows and merges them a batch at a time
+    private static class Merger {
+        private final Gson gson = new Gson();
+        private final TypeAdapter<Task> taskAdapter = gson.getAdapter(Task.class);
+        private final TypeAdapter<Date> dateAdapter = gson.getAdapter(Date.class);
+        private final ProjectDataSource projectDataSource;
+        private final TaskDataSource taskDataSource;
+        private final ArrayList<Project> projects = new ArrayList<Project>(BATCH_SIZE);
+        private final ArrayList<Task> tasks = new ArrayList<Task>(BATCH_SIZE);
+        private final Result result = new Result();
+
+        Merger(Context context) {
+            projectDataSource = new ProjectDataSource(context);
+            taskDataSource = new TaskDataSource(context);
+            projectDataSource.open();
+            taskDataSource.open();
+        }
+
+        void add(Project project) {
+            result.saw(project.getUpdated_at());
+            projects.add(project);
+            if (projects.size() == BATCH_SIZE) flushProjects();
+        }
+
+        void add(Task task) {
+            result.saw(task.getUpdated_at());
+            tasks.add(task);
+            if (tasks.size() == BATCH_SIZE) flushTasks();
+        }
+
+        void flush() {
+            flushProjects();
+            flushTasks();
+        }
+
+        private void flushProjects() {
+            if (projects.isEmpty()) return;
+            result.written += projectDataSource.mergeProjects(projects);
+            projects.clear();
+        }
+
+        private void flushTasks() {
+            if (tasks.isEmpty()) return;
+            result.written += taskDataSource.mergeTasks(tasks);
+            tasks.clear();
+        }
+
+        void close() {
+            projectDataSource.close();
+            taskDataSource.close();
+        }
+    }
+
+    public static class Result {
+        private int written;
+        private long newestUpdate;
+
+        private void saw(Date updated) {
+            if (updated != null && updated.getTime() > newestUpdate) newestUpdate = updated.getTime();
+        }
+
+        // How many local rows the merge inserted or changed
+        public int getWritten() {
+            return written;
+        }
+
+        // The newest updated_at in the body, or 0 if there was none
+        public long getNewestUpdate() {
+            return newestUpdate;
+        }
+    }
+}
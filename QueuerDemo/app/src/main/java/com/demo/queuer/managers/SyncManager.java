@@ -0,0 +1,122 @@
+package com.demo.queuer.managers;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.android.volley.RequestQueue;
+import com.android.volley.toolbox.RequestFuture;
+import com.demo.queuer.Constants;
+import com.demo.queuer.QueuerApplication;
+import com.demo.queuer.interfaces.SyncManagerCallback;
+
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads the projects and tasks that changed on the server since the last sync
+ * and merges them into the local databases.
+ *
+ * The newest updated_at seen so far is stored per account as a high-water mark, and
+ * only rows changed since then are asked for. Rows the device already has are settled
+ * last-writer-wins with Project.syncProject and Task.syncTask, which keep their local IDs.
+ */
+public class SyncManager {
+    private static final String PREFERENCES = "sync";
+    private static final String WATERMARK_KEY = "watermark_";
+    private static final long TIMEOUT_SECONDS = 60;
+
+    private final Context context;
+    private final RequestQueue queue;
+    private final String apiUrl;
+    private final String account;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    public SyncManager(Context context, String account) {
+        this(context, ((QueuerApplication) context.getApplicationContext()).getRequestQueue(),
+                Constants.QUEUER_API_URL, account);
+    }
+
+    public SyncManager(Context context, RequestQueue queue, String apiUrl, String account) {
+        this.context = context.getApplicationContext();
+        this.queue = queue;
+        this.apiUrl = apiUrl;
+        this.account = account;
+    }
+
+    // Syncs on a background thread and reports back on the main thread
+    public void sync(final SyncManagerCallback callback) {
+        callback.startedSync();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                boolean successful;
+                try {
+                    syncNow();
+                    successful = true;
+                } catch (Exception e) {
+                    Log.e(SyncManager.class.getName(), "Sync failed", e);
+                    successful = false;
+                }
+                final boolean result = successful;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.finishedSync(result);
+                    }
+                });
+            }
+        }, "sync").start();
+    }
+
+    // Blocks until the changes are downloaded and merged; never call this on the main thread,
+    // which the responses are delivered to. Returns how many local rows changed.
+    public int syncNow() throws Exception {
+        long since = getWatermark();
+        // one after the other, so only one request at a time writes to tasks.db; each merges
+        // its rows batch by batch while it parses them, and the watermark only moves once both
+        // are done, since merging a row twice is a no-op
+        StreamingSyncRequest.Result projects = fetch("projects", StreamingSyncRequest.PROJECTS, since);
+        StreamingSyncRequest.Result tasks = fetch("tasks", StreamingSyncRequest.TASKS, since);
+
+        long watermark = Math.max(since, Math.max(projects.getNewestUpdate(), tasks.getNewestUpdate()));
+        if (watermark > since) setWatermark(watermark);
+        return projects.getWritten() + tasks.getWritten();
+    }
+
+    // The updated_at of the newest row synced for this account, or 0 before the first sync
+    public long getWatermark() {
+        return context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE)
+                .getLong(WATERMARK_KEY + account, 0);
+    }
+
+    private void setWatermark(long watermark) {
+        SharedPreferences.Editor editor = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE).edit();
+        editor.putLong(WATERMARK_KEY + account, watermark);
+        editor.commit();
+    }
+
+    private StreamingSyncRequest.Result fetch(String endpoint, int kind, long since) throws Exception {
+        String url = apiUrl + endpoint;
+        // the server compares inclusively and to the second, so rows at the watermark come
+        // back once more and are skipped by the merge as not newer
+        if (since > 0) url += "?updated_since=" + URLEncoder.encode(formatDate(since), "UTF-8");
+        RequestFuture<StreamingSyncRequest.Result> future = RequestFuture.newFuture();
+        StreamingSyncRequest request = new StreamingSyncRequest(context, url, kind, future, future);
+        future.setRequest(request);
+        queue.add(request);
+        return future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static String formatDate(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(millis));
+    }
+}
@@ -36,6 +36,17 @@ public class Task {
         dataSource.close();
     }
 
+    public static Task syncTask(Task serverTask, Task localTask){
+
+        //Same rule as Project.syncProject: the newer updated_at wins
+        if (serverTask.getUpdated_at().after(localTask.getUpdated_at())){
+            serverTask.setLocalId(localTask.localId);
+            return serverTask;
+        }
+
+        return localTask;
+    }
+
     public int getId() {
         return id;
     }
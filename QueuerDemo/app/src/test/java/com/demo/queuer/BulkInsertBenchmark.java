@@ -0,0 +1,66 @@
+package com.demo.queuer;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import com.demo.queuer.database.TaskDataSource;
+import com.demo.queuer.models.Task;
+
+import java.util.ArrayList;
+
+/**
+ * Compares writing tasks one insert-and-query at a time with the bulk insert.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BulkInsertBenchmark {
+    private static final int ROWS = 10000;
+
+    private TaskDataSource dataSource;
+
+    @Before
+    public void open() {
+        dataSource = new TaskDataSource(Robolectric.application);
+        dataSource.open();
+    }
+
+    @After
+    public void close() {
+        dataSource.close();
+    }
+
+    @Test
+    public void testBulkInsert(){
+        long start = System.nanoTime();
+        for (int i = 0; i < ROWS; i++){
+            dataSource.createTask("Task " + i, 1, 0, i, false);
+        }
+        long singleMillis = (System.nanoTime() - start) / 1000000;
+
+        ArrayList<Task> tasks = new ArrayList<Task>(ROWS);
+        for (int i = 0; i < ROWS; i++){
+            Task task = new Task();
+            task.setName("Task " + i);
+            task.setProject_id(2);
+            task.setOrder(i);
+            tasks.add(task);
+        }
+        start = System.nanoTime();
+        dataSource.createTasks(tasks);
+        long bulkMillis = (System.nanoTime() - start) / 1000000;
+
+        System.out.println("Inserted " + ROWS + " tasks: one at a time " + singleMillis
+                + " ms, bulk " + bulkMillis + " ms");
+
+        assertEquals(2 * ROWS, dataSource.getAllTasks().size());
+        for (int i = 1; i < ROWS; i++){
+            assertTrue("Local IDs not filled in!", tasks.get(i).getLocalId() > tasks.get(i - 1).getLocalId());
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.demo.queuer;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.RobolectricTestRunner;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.HurlStack;
+import com.android.volley.toolbox.StringRequest;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Runs HurlStack against a loopback server that gzips when asked to and
+ * records which client connection each request came in on.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class HurlStackTests {
+    private static final int REQUESTS = 20;
+
+    private HttpServer server;
+    private StubEndpoint endpoint;
+    private HurlStack stack;
+    private BasicNetwork network;
+    private String url;
+    private byte[] body;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        endpoint = new StubEndpoint();
+        server.createContext("/api/v1/tasks", endpoint);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v1/tasks";
+
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 1; i <= 2000; i++){
+            if (i > 1) json.append(',');
+            json.append("{\"id\":").append(i).append(",\"name\":\"Task ").append(i)
+                    .append("\",\"finished\":false,\"order\":").append(i).append(",\"project_id\":1}");
+        }
+        body = json.append(']').toString().getBytes("UTF-8");
+        endpoint.body = body;
+
+        stack = new HurlStack();
+        network = new BasicNetwork(stack);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testGzipIsNegotiatedAndDecoded() throws Exception {
+        NetworkResponse response = network.performRequest(newRequest());
+
+        assertEquals("gzip", endpoint.lastAcceptEncoding);
+        assertTrue("Body not decoded!", Arrays.equals(body, response.data));
+        assertNull("Decoded body still marked as gzipped!", response.headers.get("Content-Encoding"));
+        assertEquals(1, stack.getCompressedResponseCount());
+        assertEquals(body.length, stack.getDecompressedBytes());
+        assertTrue("Body not compressed on the wire!", stack.getCompressedBytes() < body.length);
+        System.out.println("Read " + stack.getCompressedBytes() + " gzipped bytes for " + body.length
+                + ", ratio " + stack.getCompressionRatio());
+    }
+
+    @Test
+    public void testPlainResponseIsLeftAlone() throws Exception {
+        endpoint.gzip = false;
+
+        NetworkResponse response = network.performRequest(newRequest());
+
+        assertTrue(Arrays.equals(body, response.data));
+        assertEquals(0, stack.getCompressedResponseCount());
+        assertEquals(1.0, stack.getCompressionRatio(), 0);
+    }
+
+    @Test
+    public void testEmptyGzippedResponse() throws Exception {
+        endpoint.body = new byte[0];
+        endpoint.status = 204;
+
+        NetworkResponse response = network.performRequest(newRequest());
+
+        assertEquals(204, response.statusCode);
+        assertEquals(0, response.data.length);
+    }
+
+    @Test
+    public void testConnectionsAreReused() throws Exception {
+        for (int i = 0; i < REQUESTS; i++){
+            NetworkResponse response = network.performRequest(newRequest());
+            assertTrue(Arrays.equals(body, response.data));
+        }
+
+        System.out.println(REQUESTS + " requests over " + endpoint.clients.size() + " connections, "
+                + stack.getKeepAliveCount() + " kept alive");
+        assertEquals(REQUESTS, stack.getRequestCount());
+        assertEquals(REQUESTS, stack.getKeepAliveCount());
+        assertEquals("Connection not reused!", 1, endpoint.clients.size());
+    }
+
+    @Test
+    public void testClosedConnectionsAreNotCountedAsKeptAlive() throws Exception {
+        endpoint.close = true;
+        for (int i = 0; i < 3; i++){
+            network.performRequest(newRequest());
+        }
+
+        assertEquals(3, stack.getRequestCount());
+        assertEquals(0, stack.getKeepAliveCount());
+        assertEquals(3, endpoint.clients.size());
+    }
+
+    private Request<String> newRequest() {
+        return new StringRequest(url, null, null);
+    }
+
+    private static class StubEndpoint implements HttpHandler {
+        private volatile byte[] body = new byte[0];
+        private volatile boolean gzip = true;
+        private volatile boolean close;
+        private volatile int status = 200;
+        private volatile String lastAcceptEncoding;
+        private final Set<InetSocketAddress> clients = Collections.synchronizedSet(new HashSet<InetSocketAddress>());
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            clients.add(exchange.getRemoteAddress());
+            lastAcceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            byte[] bytes = body;
+            if (gzip && lastAcceptEncoding != null && lastAcceptEncoding.contains("gzip")){
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                GZIPOutputStream out = new GZIPOutputStream(compressed);
+                out.write(bytes);
+                out.close();
+                if (bytes.length > 0) bytes = compressed.toByteArray();
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            if (close) exchange.getResponseHeaders().set("Connection", "close");
+            exchange.sendResponseHeaders(status, status == 204 ? -1 : bytes.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(bytes);
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.demo.queuer;
+
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import com.demo.queuer.database.ProjectDataSource;
+import com.demo.queuer.database.TaskDataSource;
+import com.demo.queuer.managers.StreamingSyncRequest;
+import com.demo.queuer.models.Project;
+import com.demo.queuer.models.Task;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.json.JSONArray;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * Compares parsing a multi-megabyte sync body into lists before merging it, as a
+ * JsonArrayRequest and Gson.fromJson do, with merging it while StreamingSyncRequest parses it.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class StreamingSyncBenchmark {
+    private static final int PROJECTS = 5000;
+    private static final int TASKS_PER_PROJECT = 10;
+
+    private static File fixture;
+
+    @BeforeClass
+    public static void writeFixture() throws Exception {
+        fixture = File.createTempFile("sync", ".json");
+        Writer out = new OutputStreamWriter(new FileOutputStream(fixture), "UTF-8");
+        out.write('[');
+        for (int p = 1; p <= PROJECTS; p++){
+            if (p > 1) out.write(',');
+            out.write("{\"id\":" + p + ",\"name\":\"Project " + p + "\",\"color\":-16661061"
+                    + ",\"created_at\":\"2014-01-22T17:30:00Z\",\"updated_at\":\"2014-01-22T17:30:00Z\",\"tasks\":[");
+            for (int t = 0; t < TASKS_PER_PROJECT; t++){
+                if (t > 0) out.write(',');
+                int id = (p - 1) * TASKS_PER_PROJECT + t + 1;
+                out.write("{\"id\":" + id + ",\"name\":\"Task " + id + " of a project with a longer name\""
+                        + ",\"project_id\":" + p + ",\"order\":" + t + ",\"finished\":false"
+                        + ",\"created_at\":\"2014-01-22T17:30:00Z\",\"updated_at\":\"2014-01-23T09:15:00Z\"}");
+            }
+            out.write("]}");
+        }
+        out.write(']');
+        out.close();
+    }
+
+    @AfterClass
+    public static void deleteFixture() {
+        fixture.delete();
+    }
+
+    @Test
+    public void testBufferedParse() throws Exception {
+        HeapSampler sampler = new HeapSampler();
+        long start = System.nanoTime();
+
+        // what JsonArrayRequest and SyncManager used to hold at once: the String, the JSONArray,
+        // its toString() and every model
+        String body = readFixture();
+        String json = new JSONArray(body).toString();
+        ArrayList<Project> projects = new Gson().fromJson(json, new TypeToken<ArrayList<Project>>() {}.getType());
+        ArrayList<Task> tasks = new ArrayList<Task>();
+        for (Project project : projects) tasks.addAll(project.getTasks());
+
+        ProjectDataSource projectDataSource = new ProjectDataSource(Robolectric.application);
+        TaskDataSource taskDataSource = new TaskDataSource(Robolectric.application);
+        projectDataSource.open();
+        taskDataSource.open();
+        int written = projectDataSource.mergeProjects(projects) + taskDataSource.mergeTasks(tasks);
+        projectDataSource.close();
+        taskDataSource.close();
+
+        report("Buffered", start, sampler.finish());
+        assertEquals(PROJECTS * (1 + TASKS_PER_PROJECT), written);
+    }
+
+    @Test
+    public void testStreamingParse() throws Exception {
+        HeapSampler sampler = new HeapSampler();
+        long start = System.nanoTime();
+
+        Reader in = new InputStreamReader(new FileInputStream(fixture), "UTF-8");
+        StreamingSyncRequest.Result result = StreamingSyncRequest.read(Robolectric.application, in,
+                StreamingSyncRequest.PROJECTS);
+
+        report("Streaming", start, sampler.finish());
+        assertEquals(PROJECTS * (1 + TASKS_PER_PROJECT), result.getWritten());
+
+        TaskDataSource taskDataSource = new TaskDataSource(Robolectric.application);
+        taskDataSource.open();
+        ArrayList<Task> tasks = taskDataSource.getAllTasks();
+        taskDataSource.close();
+        assertEquals(PROJECTS * TASKS_PER_PROJECT, tasks.size());
+        for (Task task : tasks){
+            assertEquals("Nested task lost its project!", (task.getId() - 1) / TASKS_PER_PROJECT + 1, task.getProject_id());
+        }
+    }
+
+    private static String readFixture() throws Exception {
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(fixture), "UTF-8"));
+        StringBuilder body = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) body.append(buffer, 0, read);
+        in.close();
+        return body.toString();
+    }
+
+    private static void report(String name, long start, long peakBytes) {
+        System.out.println(name + " sync of " + (fixture.length() / 1024) + " KB: "
+                + (System.nanoTime() - start) / 1000000 + " ms, peak heap growth "
+                + peakBytes / 1024 / 1024 + " MB");
+    }
+
+    // Polls the used heap and keeps the highest value above where it started, until finished
+    private static class HeapSampler extends Thread {
+        private final Runtime runtime = Runtime.getRuntime();
+        private final long baseline;
+        private volatile boolean running = true;
+        private long peak;
+
+        HeapSampler() {
+            System.gc();
+            baseline = runtime.totalMemory() - runtime.freeMemory();
+            setDaemon(true);
+            start();
+        }
+
+        @Override
+        public void run() {
+            while (running){
+                peak = Math.max(peak, runtime.totalMemory() - runtime.freeMemory());
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        long finish() throws InterruptedException {
+            running = false;
+            join();
+            return Math.max(0, peak - baseline);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.demo.queuer;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import com.android.volley.ExecutorDelivery;
+import com.android.volley.RequestQueue;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.HurlStack;
+import com.android.volley.toolbox.NoCache;
+import com.demo.queuer.database.ProjectDataSource;
+import com.demo.queuer.database.TaskDataSource;
+import com.demo.queuer.managers.SyncManager;
+import com.demo.queuer.models.Project;
+import com.demo.queuer.models.Task;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs SyncManager against a stub api/v1 server on localhost.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SyncManagerTests {
+    private static final int PROJECTS = 2000;
+    private static final int TASKS_PER_PROJECT = 4;
+    private static final long FIRST_UPDATE = 1390411000000L;
+
+    private HttpServer server;
+    private RequestQueue queue;
+    private StubEndpoint projectsEndpoint;
+    private StubEndpoint tasksEndpoint;
+    private SyncManager syncManager;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        projectsEndpoint = new StubEndpoint();
+        tasksEndpoint = new StubEndpoint();
+        server.createContext("/api/v1/projects", projectsEndpoint);
+        server.createContext("/api/v1/tasks", tasksEndpoint);
+        server.start();
+
+        // responses are delivered off the main thread, since syncNow() blocks the test thread
+        queue = new RequestQueue(new NoCache(), new BasicNetwork(new HurlStack()), 2,
+                new ExecutorDelivery(Executors.newSingleThreadExecutor()));
+        queue.start();
+
+        String apiUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v1/";
+        syncManager = new SyncManager(Robolectric.application, queue, apiUrl, "tester");
+    }
+
+    @After
+    public void stopServer() {
+        queue.stop();
+        server.stop(0);
+    }
+
+    @Test
+    public void testFirstSyncDownloadsEverything() throws Exception {
+        projectsEndpoint.body = projectsJson(0, PROJECTS, FIRST_UPDATE, "Project ");
+        tasksEndpoint.body = tasksJson(0, PROJECTS * TASKS_PER_PROJECT, FIRST_UPDATE);
+
+        assertEquals(PROJECTS * (1 + TASKS_PER_PROJECT), syncManager.syncNow());
+
+        assertNull("First sync should ask for everything!", projectsEndpoint.lastQuery);
+        assertEquals(PROJECTS, getAllProjects().size());
+        assertEquals(PROJECTS * TASKS_PER_PROJECT, getAllTasks().size());
+        assertEquals(FIRST_UPDATE + (PROJECTS * TASKS_PER_PROJECT - 1) * 1000, syncManager.getWatermark());
+    }
+
+    @Test
+    public void testSecondSyncOnlyMergesNewerChanges() throws Exception {
+        projectsEndpoint.body = projectsJson(0, PROJECTS, FIRST_UPDATE, "Project ");
+        tasksEndpoint.body = tasksJson(0, PROJECTS * TASKS_PER_PROJECT, FIRST_UPDATE);
+        syncManager.syncNow();
+        long watermark = syncManager.getWatermark();
+        ArrayList<Project> before = getAllProjects();
+
+        // ten projects renamed after the watermark, and one stale copy that must not win
+        String changed = projectsJson(0, 10, watermark + 1000, "Renamed ");
+        String stale = projectsJson(10, 1, FIRST_UPDATE - 1000, "Stale ");
+        projectsEndpoint.body = changed.substring(0, changed.length() - 1) + "," + stale.substring(1);
+        tasksEndpoint.body = "[]";
+
+        assertEquals(10, syncManager.syncNow());
+
+        assertTrue("Second sync should ask for changes only!",
+                projectsEndpoint.lastQuery.startsWith("updated_since=" + formatDate(watermark).substring(0, 10)));
+        ArrayList<Project> after = getAllProjects();
+        assertEquals("Local ids not carried over!", before.size(), after.size());
+        for (Project project : after) {
+            Project old = find(before, project.getId());
+            assertEquals("Local id changed!", old.getLocalId(), project.getLocalId());
+            if (project.getId() <= 10) assertEquals("Renamed " + project.getId(), project.getName());
+            else assertEquals("Project " + project.getId(), project.getName());
+        }
+        assertEquals(watermark + 1000, syncManager.getWatermark());
+    }
+
+    @Test
+    public void testWatermarkIsPerAccount() throws Exception {
+        projectsEndpoint.body = projectsJson(0, 1, FIRST_UPDATE, "Project ");
+        tasksEndpoint.body = "[]";
+        syncManager.syncNow();
+
+        SyncManager other = new SyncManager(Robolectric.application, queue, "unused", "someone else");
+        assertEquals(FIRST_UPDATE, syncManager.getWatermark());
+        assertEquals(0, other.getWatermark());
+    }
+
+    private static String projectsJson(int from, int count, long updated, String namePrefix) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = from; i < from + count; i++) {
+            if (i > from) json.append(',');
+            int id = i + 1;
+            json.append("{\"color\":-16661061,\"created_at\":\"").append(formatDate(FIRST_UPDATE))
+                    .append("\",\"id\":").append(id)
+                    .append(",\"name\":\"").append(namePrefix).append(id)
+                    .append("\",\"updated_at\":\"").append(formatDate(updated)).append("\"}");
+        }
+        return json.append(']').toString();
+    }
+
+    // Each task is one second newer than the one before it
+    private static String tasksJson(int from, int count, long updated) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = from; i < from + count; i++) {
+            if (i > from) json.append(',');
+            json.append("{\"created_at\":\"").append(formatDate(FIRST_UPDATE))
+                    .append("\",\"finished\":false,\"id\":").append(i + 1)
+                    .append(",\"name\":\"Task ").append(i + 1)
+                    .append("\",\"order\":").append(i % TASKS_PER_PROJECT)
+                    .append(",\"project_id\":").append(i / TASKS_PER_PROJECT + 1)
+                    .append(",\"updated_at\":\"").append(formatDate(updated + i * 1000L)).append("\"}");
+        }
+        return json.append(']').toString();
+    }
+
+    private static String formatDate(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(millis));
+    }
+
+    private static Project find(ArrayList<Project> projects, int id) {
+        for (Project project : projects) {
+            if (project.getId() == id) return project;
+        }
+        fail("Project " + id + " missing!");
+        return null;
+    }
+
+    private ArrayList<Project> getAllProjects() {
+        ProjectDataSource dataSource = new ProjectDataSource(Robolectric.application);
+        dataSource.open();
+        ArrayList<Project> projects = dataSource.getAllProjects();
+        dataSource.close();
+        return projects;
+    }
+
+    private ArrayList<Task> getAllTasks() {
+        TaskDataSource dataSource = new TaskDataSource(Robolectric.application);
+        dataSource.open();
+        ArrayList<Task> tasks = dataSource.getAllTasks();
+        dataSource.close();
+        return tasks;
+    }
+
+    private static class StubEndpoint implements HttpHandler {
+        private volatile String body = "[]";
+        private volatile String lastQuery;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            lastQuery = exchange.getRequestURI().getRawQuery();
+            byte[] bytes = body.getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(bytes);
+            out.close();
+        }
+    }
+}
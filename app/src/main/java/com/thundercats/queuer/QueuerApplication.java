@@ -1,25 +1,93 @@
 package com.thundercats.queuer;
 
 import android.app.Application;
+import android.content.pm.ApplicationInfo;
 
-import com.android.volley.RequestQueue;
-import com.android.volley.toolbox.Volley;
+import com.thundercats.queuer.database.DatabaseManager;
+import com.thundercats.queuer.managers.DataManager;
+import com.thundercats.queuer.managers.NetworkManager;
+import com.thundercats.queuer.managers.OutboxManager;
+import com.thundercats.queuer.views.EnhancedListView;
 
 /**
  * Created by kmchen1 on 1/16/14.
  */
 public class QueuerApplication extends Application {
 
-    private RequestQueue requestQueue;
+    private NetworkManager networkManager;
 
-    public void setRequestQueue(RequestQueue requestQueue) {
-        this.requestQueue = requestQueue;
+    private DatabaseManager databaseManager;
+
+    private DataManager dataManager;
+
+    private OutboxManager outboxManager;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // debug builds crash on any database access from the main thread
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0)
+            getDatabaseManager().setMainThreadForbidden(true);
+    }
+
+    /**
+     * Returns the process-wide owner of the request queue.
+     *
+     * @return The process-wide owner of the request queue.
+     */
+    public synchronized NetworkManager getNetworkManager() {
+        if (networkManager == null) networkManager = new NetworkManager(this);
+        return networkManager;
+    }
+
+    /**
+     * Returns the process-wide holder of the database connections.
+     *
+     * @return The process-wide holder of the database connections.
+     */
+    public synchronized DatabaseManager getDatabaseManager() {
+        if (databaseManager == null) databaseManager = new DatabaseManager(this);
+        return databaseManager;
     }
 
-    public RequestQueue getRequestQueue() {
-        if (requestQueue == null) requestQueue = Volley.newRequestQueue(this);
-        return requestQueue;
+    /**
+     * Returns the process-wide runner of background database operations.
+     *
+     * @return The process-wide runner of background database operations.
+     */
+    public synchronized DataManager getDataManager() {
+        if (dataManager == null) dataManager = new DataManager(this);
+        return dataManager;
     }
 
+    /**
+     * Returns the process-wide sender of queued {@code Task} changes.
+     *
+     * @return The process-wide sender of queued {@code Task} changes.
+     */
+    public synchronized OutboxManager getOutboxManager() {
+        if (outboxManager == null) outboxManager = new OutboxManager(this);
+        return outboxManager;
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        EnhancedListView.getHoverBitmapPool().trim();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_RUNNING_LOW) EnhancedListView.getHoverBitmapPool().trim();
+    }
+
+    @Override
+    public void onTerminate() {
+        if (networkManager != null) networkManager.shutdown();
+        if (dataManager != null) dataManager.shutdown();
+        if (databaseManager != null) databaseManager.close();
+        super.onTerminate();
+    }
 
 }
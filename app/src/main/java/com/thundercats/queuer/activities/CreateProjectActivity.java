@@ -12,6 +12,8 @@ import android.widget.Toast;
 
 import com.thundercats.queuer.R;
 import com.thundercats.queuer.adapters.FeedAdapter;
+import com.thundercats.queuer.interfaces.DataCallback;
+import com.thundercats.queuer.managers.DataManager;
 import com.thundercats.queuer.models.Project;
 import com.thundercats.queuer.models.Task;
 
@@ -23,6 +25,12 @@ public class CreateProjectActivity extends ActionBarActivity {
     private final String ACTIVITY_TITLE = "Create a Project";
     private final String WARN_DIALOG_TITLE = "Warning";
 
+    @Override
+    protected void onDestroy() {
+        DataManager.getInstance(this).cancelAll(this);
+        super.onDestroy();
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -59,8 +67,8 @@ public class CreateProjectActivity extends ActionBarActivity {
     /**
      * The user has pressed the Okay button.
      * First checks to see EditText widgets are not blank.
-     * Then creates a new project and takes the user back to FeedActivity.
-     * @param view The view that was pressed. For now, unused in this method.
+     * Then writes a new project and, once it is saved, takes the user back to FeedActivity.
+     * @param view The view that was pressed. Disabled while the project is written.
      */
     public void okayButtonPressed(View view) {
         // Get strings from EditText widgets
@@ -84,12 +92,19 @@ public class CreateProjectActivity extends ActionBarActivity {
             return;
         }
 
-        // Set intent with data
-        Intent result = new Intent();
+        // Set intent with data once the project has its local ID
         Toast.makeText(this, "Project " + projectName + ", " + color, Toast.LENGTH_LONG).show();
-        result.putExtra(Project.INTENT_KEY, new Project(this, projectName, color));
-        setResult(RESULT_OK, result);
-        finish();
+        // guard against a second project from a double tap
+        view.setEnabled(false);
+        DataManager.getInstance(this).createProject(this, projectName, color, new DataCallback<Project>() {
+            @Override
+            public void onResult(Project project) {
+                Intent result = new Intent();
+                result.putExtra(Project.LOCAL_ID_KEY, project.getLocalId());
+                setResult(RESULT_OK, result);
+                finish();
+            }
+        });
     }
 
     /**
@@ -14,15 +14,15 @@ import android.widget.Toast;
 
 import com.thundercats.queuer.R;
 import com.thundercats.queuer.adapters.FeedAdapter;
-import com.thundercats.queuer.database.ProjectDataSource;
-import com.thundercats.queuer.database.TaskDataSource;
+import com.thundercats.queuer.interfaces.DataCallback;
+import com.thundercats.queuer.managers.DataManager;
+import com.thundercats.queuer.managers.DismissCommitQueue;
+import com.thundercats.queuer.managers.OutboxManager;
 import com.thundercats.queuer.models.Project;
 import com.thundercats.queuer.models.Task;
 import com.thundercats.queuer.views.EnhancedListView;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 
 /**
  * Created by kmchen1 on 1/15/14.
@@ -35,6 +35,12 @@ public class FeedActivity extends ActionBarActivity {
 
     private FeedAdapter adapter;
 
+    /** Runs the database reads and writes of this activity in the background. */
+    private DataManager dataManager;
+
+    /** Writes dismissed {@code Task}s once they can no longer be undone. */
+    private DismissCommitQueue dismissCommits;
+
     /**
      * @param requestCode  The request code that is attached to the Intent that launches the
      *                     {@link com.thundercats.queuer.activities.CreateProjectActivity}.
@@ -46,10 +52,7 @@ public class FeedActivity extends ActionBarActivity {
     protected void onActivityResult(int requestCode, int resultCode, Intent intentResult) {
         if (requestCode == CREATE_PROJECT_REQUEST) {
             if (resultCode == RESULT_OK) {
-                Bundle data = intentResult.getExtras();
-                Project project = data.getParcelable(Project.INTENT_KEY);
-                //don't need following since project already written to DB in CreateProjectActivity
-                //adapter.add(project);
+                //don't need the project since it is already written to DB in CreateProjectActivity
                 syncFeedAdapterWithDatabase();
             }
         }
@@ -72,41 +75,69 @@ public class FeedActivity extends ActionBarActivity {
                 startActivityForResult(intent, CREATE_PROJECT_REQUEST);
                 return true;
             case R.id.action_wipe_database:
-                deleteAllProjects();
-                deleteAllTasks();
+                deleteEverything();
             default:
                 return super.onOptionsItemSelected(item);
         }
     }
 
-    /** Deletes all tasks. */
-    private void deleteAllTasks() {
-        TaskDataSource dataSource = new TaskDataSource(this);
-        dataSource.open();
-        dataSource.deleteAllTasks();
-        dataSource.close();
+    /** Deletes all projects and tasks, empties the adapter, and refreshes screen. */
+    private void deleteEverything() {
+        dataManager.deleteEverything(this, null);
+        showProjects(new ArrayList<Project>());
     }
 
-    /** Deletes all projects, resets the adapter, and refreshes screen. */
-    private void deleteAllProjects() {
-        ProjectDataSource dataSource = new ProjectDataSource(this);
-        dataSource.open();
-        dataSource.deleteAllProjects();
-        dataSource.close();
+    /** Updates the adapter with the {@code Project}s in the database, once they are loaded. */
+    private void syncFeedAdapterWithDatabase() {
+        dataManager.loadFeedProjects(this, new DataCallback<ArrayList<Project>>() {
+            @Override
+            public void onResult(ArrayList<Project> projects) {
+                showProjects(projects);
+            }
+        });
+    }
 
-        adapter = new FeedAdapter(this, new ArrayList<Project>());
+    /** Applies the differences between the shown {@code Project}s and {@code projects}. */
+    private void showProjects(ArrayList<Project> projects) {
+        for (Project project : projects) {
+            // the aggregates still count the dismissals that are not written yet
+            int unwritten = dismissCommits.countUnwritten(project.getLocalId());
+            if (unwritten == 0) continue;
+            project.setUnfinishedCount(project.getUnfinishedCount() - unwritten);
+            Task head = project.getHeadTask();
+            if (head != null && dismissCommits.isUnwritten(head)) {
+                project.setHeadTask(null);
+                loadHeadTask(project);
+            }
+        }
+        adapter.setProjects(projects);
         refreshNoProjectsWarning();
     }
 
-    /** Re-initializes adapter with {@code Project}s in the database. */
-    private void syncFeedAdapterWithDatabase() {
-        ProjectDataSource projectDataSource = new ProjectDataSource(this);
-        projectDataSource.open();
-        ArrayList<Project> projects = projectDataSource.getAllProjects();
-        projectDataSource.close();
-        adapter = new FeedAdapter(this, projects);
-        ((EnhancedListView) findViewById(R.id.lv_projects)).setAdapter(adapter);
-        refreshNoProjectsWarning();
+    /**
+     * Loads the first unfinished {@code Task} of a {@code Project} that is not a dismissal
+     * waiting to be written, and makes it the head unless an earlier {@code Task} became
+     * the head meanwhile (e.g., through an undo).
+     *
+     * @param project The {@code Project} whose head {@code Task} was dismissed.
+     */
+    private void loadHeadTask(final Project project) {
+        // every unwritten dismissal of this project may still come back unfinished
+        int limit = dismissCommits.countUnwritten(project.getLocalId()) + 1;
+        dataManager.loadUnfinishedTasks(this, project.getLocalId(), limit, new DataCallback<ArrayList<Task>>() {
+            @Override
+            public void onResult(ArrayList<Task> tasks) {
+                for (Task task : tasks) {
+                    if (dismissCommits.isUnwritten(task)) continue;
+                    Task head = project.getHeadTask();
+                    if (head == null || task.getPosition() < head.getPosition()) {
+                        project.setHeadTask(task);
+                        adapter.notifyDataSetChanged();
+                    }
+                    return;
+                }
+            }
+        });
     }
 
     /**
@@ -156,34 +187,52 @@ public class FeedActivity extends ActionBarActivity {
         ActionBar actionBar = getSupportActionBar();
         actionBar.setTitle(ACTIVITY_TITLE);
 
+        dataManager = DataManager.getInstance(this);
+        // once a batch is written, the aggregates are right again; take them over
+        dismissCommits = new DismissCommitQueue(dataManager, this, new DataCallback<Void>() {
+            @Override
+            public void onResult(Void result) {
+                syncFeedAdapterWithDatabase();
+            }
+        });
         EnhancedListView listView = (EnhancedListView) findViewById(R.id.lv_projects);
+        adapter = new FeedAdapter(this, new ArrayList<Project>());
+        listView.setAdapter(adapter);
+        refreshNoProjectsWarning();
         syncFeedAdapterWithDatabase();
 
         listView.setDismissCallback(new EnhancedListView.OnDismissCallback() {
             @Override
             public EnhancedListView.Undoable onDismiss(EnhancedListView listView, final int position) {
                 final Project project = adapter.getItem(position);
-                final int projectServerID = project.getId();
-                TaskDataSource dataSource = new TaskDataSource(getApplicationContext());
-                dataSource.open();
-                ArrayList<Task> unfinishedTasks = dataSource.getUnfinishedTasks(projectServerID);
-                Collections.sort(unfinishedTasks, new Comparator<Task>() {
-                    // TODO the ordering may be wrong here, but we want Task at position 0
-                    @Override
-                    public int compare(Task task, Task task2) {
-                        return task.compareTo(task2);
-                    }
-                });
-                dataSource.close();
-                final Task task = unfinishedTasks.get(0);
-                task.setFinished(true, getApplicationContext());
-                syncFeedAdapterWithDatabase();
+                // loaded together with the project by getFeedProjects()
+                final Task task = project.getHeadTask();
+                if (task == null) {
+                    // nothing left to finish; put the project back
+                    syncFeedAdapterWithDatabase();
+                    return null;
+                }
+                // nothing is written until the undo window closes
+                dismissCommits.hold(task);
+                project.setHeadTask(null);
+                project.setUnfinishedCount(project.getUnfinishedCount() - 1);
+                loadHeadTask(project);
+                adapter.notifyDataSetChanged();
 
                 return new EnhancedListView.Undoable() {
                     @Override
                     public void undo() {
-                        task.setFinished(false, getApplicationContext());
-                        syncFeedAdapterWithDatabase();
+                        dismissCommits.release(task);
+                        Task head = project.getHeadTask();
+                        if (head == null || task.getPosition() < head.getPosition())
+                            project.setHeadTask(task);
+                        project.setUnfinishedCount(project.getUnfinishedCount() + 1);
+                        adapter.notifyDataSetChanged();
+                    }
+
+                    @Override
+                    public void discard() {
+                        dismissCommits.commitLater(task);
                     }
                 };
             }
@@ -203,7 +252,8 @@ public class FeedActivity extends ActionBarActivity {
     /** Calls new activity. Passes project via Intent. */
     private void projectClicked(Project project) {
         Intent intent = new Intent(FeedActivity.this, ProjectActivity.class);
-        intent.putExtra(Project.INTENT_KEY, project);
+        // the project is already in memory; ProjectActivity looks it up by local ID
+        intent.putExtra(Project.LOCAL_ID_KEY, project.getLocalId());
         printDiagnostics(project);
         startActivity(intent);
     }
@@ -219,10 +269,29 @@ public class FeedActivity extends ActionBarActivity {
         print(d);
     }
 
+    /**
+     * Closes the undo window and writes the pending dismissals before leaving.
+     */
+    @Override
+    protected void onPause() {
+        ((EnhancedListView) findViewById(R.id.lv_projects)).discardUndo();
+        dismissCommits.flush();
+        // queued after the dismissals, so they are sent too
+        OutboxManager.getInstance(this).flush();
+        super.onPause();
+    }
+
+    @Override
+    protected void onDestroy() {
+        dataManager.cancelAll(this);
+        super.onDestroy();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
         adapter.notifyDataSetChanged();
+        OutboxManager.getInstance(this).flush();
     }
 
     private void print(String s) {
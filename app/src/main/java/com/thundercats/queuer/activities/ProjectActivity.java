@@ -2,6 +2,7 @@ package com.thundercats.queuer.activities;
 
 import android.app.AlertDialog;
 import android.content.DialogInterface;
+import android.database.DataSetObserver;
 import android.os.Bundle;
 import android.support.v4.app.NavUtils;
 import android.support.v7.app.ActionBar;
@@ -19,13 +20,14 @@ import android.widget.Toast;
 import com.thundercats.queuer.R;
 import com.thundercats.queuer.adapters.FeedAdapter;
 import com.thundercats.queuer.adapters.ProjectAdapter;
-import com.thundercats.queuer.database.ProjectDataSource;
-import com.thundercats.queuer.database.TaskDataSource;
+import com.thundercats.queuer.interfaces.DataCallback;
+import com.thundercats.queuer.managers.DataManager;
+import com.thundercats.queuer.managers.DismissCommitQueue;
+import com.thundercats.queuer.managers.OutboxManager;
 import com.thundercats.queuer.models.Project;
 import com.thundercats.queuer.models.Task;
 import com.thundercats.queuer.views.EnhancedListView;
 
-import java.util.ArrayList;
 import java.util.Date;
 
 /**
@@ -40,15 +42,24 @@ public class ProjectActivity extends ActionBarActivity {
     private final String EDIT_TASK_DIALOG_TITLE = "Edit Task";
     private final String WARN_DIALOG_TITLE = "Warning";
 
-    /** The {@code Project} that dictates this Activity. */
+    /** The {@code Project} that dictates this Activity. Null until it is resolved. */
     private Project project;
 
+    /** The local ID of the {@code Project}, as handed over by the launching activity. */
+    private int projectLocalId;
+
     /** The server ID of the {@code Project} that dictates this Activity. */
     private int project_id;
 
     /** The adapter that controls the list of {@code Task}s under the {@code Project}. */
     private ProjectAdapter adapter;
 
+    /** Runs the database reads and writes of this activity in the background. */
+    private DataManager dataManager;
+
+    /** Writes dismissed {@code Task}s once they can no longer be undone. */
+    private DismissCommitQueue dismissCommits;
+
     // provides list of items for ActionBar drop-down
     private SpinnerAdapter mSpinnerAdapter;
 
@@ -63,13 +74,13 @@ public class ProjectActivity extends ActionBarActivity {
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
             case R.id.action_add_task:
-                showAddTaskDialog();
+                if (project != null) showAddTaskDialog();
                 return true;
             case R.id.action_change_color:
                 showChangeColorDialog();
                 return true;
             case R.id.action_hide_project:
-                project.setHidden(true);
+                if (project != null) dataManager.setProjectHidden(this, project, true, null);
                 NavUtils.navigateUpFromSameTask(this);
                 return true;
             case android.R.id.home:
@@ -85,16 +96,43 @@ public class ProjectActivity extends ActionBarActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_project);
 
-        // Get project from Intent
-        project = getIntent().getParcelableExtra(Project.INTENT_KEY);
-        project_id = project.getId();
+        // only the local ID is handed over; the project itself is usually still in memory
+        projectLocalId = getIntent().getIntExtra(Project.LOCAL_ID_KEY, -1);
+        dataManager = DataManager.getInstance(this);
+        // a batch that failed to write is put back, so show its Tasks again
+        dismissCommits = new DismissCommitQueue(dataManager, this, new DataCallback<Void>() {
+            @Override
+            public void onResult(Void result) {
+                adapter.reload();
+            }
+        });
 
         // action bar. displays project number. up navigation enabled.
         ActionBar actionBar = getSupportActionBar();
-        actionBar.setTitle(project.getTitle());
         actionBar.setDisplayHomeAsUpEnabled(true);
+        Project cachedProject = dataManager.peekProject(projectLocalId);
+        if (cachedProject != null) {
+            showProject(cachedProject);
+        } else {
+            dataManager.loadProject(this, projectLocalId, new DataCallback<Project>() {
+                @Override
+                public void onResult(Project loadedProject) {
+                    if (loadedProject == null) finish();
+                    else showProject(loadedProject);
+                }
+            });
+        }
 
-        syncProjectAdapterWithDatabase();
+        adapter = new ProjectAdapter(this, projectLocalId, dismissCommits);
+        adapter.registerDataSetObserver(new DataSetObserver() {
+            @Override
+            public void onChanged() {
+                refreshNoTasksWarning();
+            }
+        });
+        ((EnhancedListView) findViewById(R.id.lv_tasks)).setAdapter(adapter);
+        refreshNoTasksWarning();
+        adapter.reload();
 
         /*
         // TODO attempting to create ActionBar drop-down
@@ -112,21 +150,24 @@ public class ProjectActivity extends ActionBarActivity {
         */
 
         EnhancedListView listView = (EnhancedListView) findViewById(R.id.lv_tasks);
-        listView.setAdapter(adapter);
 
         listView.setDismissCallback(new EnhancedListView.OnDismissCallback() {
             @Override
             public EnhancedListView.Undoable onDismiss(EnhancedListView listView, final int position) {
-                final Task task = adapter.getItem(position);
-                task.setFinished(true, getApplicationContext());
-                syncProjectAdapterWithDatabase();
-                //adapter.notifyDataSetChanged();
+                // nothing is written until the undo window closes
+                final Task task = adapter.remove(position);
+                if (task == null) return null;
+                dismissCommits.hold(task);
                 return new EnhancedListView.Undoable() {
                     @Override
                     public void undo() {
-                        task.setFinished(false, getApplicationContext());
-                        syncProjectAdapterWithDatabase();
-                        //adapter.notifyDataSetChanged();
+                        dismissCommits.release(task);
+                        adapter.insert(task);
+                    }
+
+                    @Override
+                    public void discard() {
+                        dismissCommits.commitLater(task);
                     }
                 };
             }
@@ -135,7 +176,7 @@ public class ProjectActivity extends ActionBarActivity {
         listView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
             public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
-                showEditTaskDialog(adapter.getItem(position));
+                if (adapter.isLoaded(position)) showEditTaskDialog(adapter.getItem(position));
             }
         });
 
@@ -144,17 +185,32 @@ public class ProjectActivity extends ActionBarActivity {
     }
 
     /**
-     * Re-initializes the adapter with {@code Task}s in the database.
+     * Closes the undo window and writes the pending dismissals before leaving.
      */
-    private void syncProjectAdapterWithDatabase() {
-        TaskDataSource taskDataSource = new TaskDataSource(this);
-        taskDataSource.open();
-        ArrayList<Task> unfinishedTasks = taskDataSource.getUnfinishedTasks(project_id);
-        ArrayList<Task> tasks = taskDataSource.getTasks(project_id);
-        taskDataSource.close();
-        adapter = new ProjectAdapter(this, unfinishedTasks, tasks);
-        ((EnhancedListView) findViewById(R.id.lv_tasks)).setAdapter(adapter);
-        refreshNoTasksWarning();
+    @Override
+    protected void onPause() {
+        ((EnhancedListView) findViewById(R.id.lv_tasks)).discardUndo();
+        dismissCommits.flush();
+        // queued after the dismissals, so they are sent too
+        OutboxManager.getInstance(this).flush();
+        super.onPause();
+    }
+
+    @Override
+    protected void onDestroy() {
+        dataManager.cancelAll(this);
+        super.onDestroy();
+    }
+
+    /**
+     * Takes on the resolved {@code Project} and shows its title.
+     *
+     * @param project The {@code Project} with the handed over local ID.
+     */
+    private void showProject(Project project) {
+        this.project = project;
+        project_id = project.getId();
+        getSupportActionBar().setTitle(project.getTitle());
     }
 
     /**
@@ -220,7 +276,8 @@ public class ProjectActivity extends ActionBarActivity {
                                     showWarningDialog("Task must have a name.");
                                     return;
                                 }
-                                clickedTask.setName(name, getApplicationContext());
+                                dataManager.renameTask(ProjectActivity.this, clickedTask, name, null);
+                                adapter.notifyDataSetChanged();
                             }
                         })
                 .setNegativeButton("Cancel", new DialogInterface.OnClickListener() {
@@ -251,10 +308,13 @@ public class ProjectActivity extends ActionBarActivity {
                                     showWarningDialog("Task must have a name.");
                                     return;
                                 }
-                                Task task = new Task(getApplicationContext(), name, project_id, 0);
-                                adapter.insert(task, 0);
-                                syncProjectAdapterWithDatabase();
-                                refreshNoTasksWarning();
+                                dataManager.createTask(ProjectActivity.this, name, project,
+                                        new DataCallback<Task>() {
+                                            @Override
+                                            public void onResult(Task task) {
+                                                adapter.insert(task);
+                                            }
+                                        });
                             }
                         })
                 .setNegativeButton("Cancel", new DialogInterface.OnClickListener() {
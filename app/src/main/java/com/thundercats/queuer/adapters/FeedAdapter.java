@@ -1,8 +1,7 @@
 package com.thundercats.queuer.adapters;
 
 import android.content.Context;
-import android.os.Parcel;
-import android.os.Parcelable;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -12,6 +11,7 @@ import android.widget.TextView;
 import com.thundercats.queuer.R;
 import com.thundercats.queuer.interfaces.RearrangementListener;
 import com.thundercats.queuer.models.Project;
+import com.thundercats.queuer.models.Task;
 
 import java.util.ArrayList;
 
@@ -22,45 +22,39 @@ import java.util.ArrayList;
  * to the user. When a user chooses to hide a project,
  * {@link android.widget.BaseAdapter#notifyDataSetChanged()} filters out
  * the hidden projects from the visible ones.
- * <p/>
- * {@code FeedAdapter} implements {@code Parcelable} since it must be able to
- * get passed between activities. For instance, when the user is in
- * {@link com.thundercats.queuer.activities.FeedActivity} and wants to create a new
- * {@code Project}, {@link com.thundercats.queuer.activities.CreateProjectActivity}
- * is launched with an {@code Intent}, which has as an extra a {@code FeedAdapter}.
- * This is because projects must be given unique project IDs upon instantiation, and
- * only the {@code FeedAdapter} can dole out unique IDs since it controls the list of projects.
  * Created by kmchen1 on 1/17/14.
  */
-public class FeedAdapter extends BaseAdapter implements RearrangementListener, Parcelable {
+public class FeedAdapter extends BaseAdapter implements RearrangementListener {
 
-    public static final Parcelable.Creator<FeedAdapter> CREATOR =
-            new Parcelable.Creator<FeedAdapter>() {
-                @Override
-                public FeedAdapter createFromParcel(Parcel parcel) {
-                    return new FeedAdapter(parcel);
-                }
-
-                @Override
-                public FeedAdapter[] newArray(int size) {
-                    return new FeedAdapter[size];
-                }
-            };
+    /**
+     * The list of visible projects.
+     */
+    private ProjectList visibleProjects = new ProjectList();
 
     /**
-     * The key for storing a {@code FeedAdapter} as an {@code Intent} extra.
+     * The list of total projects.
      */
-    public static final String INTENT_KEY = "feed_adapter";
+    private ProjectList projects = new ProjectList();
 
     /**
-     * The list of visible projects.
+     * {@code Project}s indexed by local ID.
      */
-    private ArrayList<Project> visibleProjects = new ArrayList<Project>();
+    private static final class ProjectList extends IdIndexedList<Project> {
+        @Override
+        protected int idOf(Project project) {
+            return project.getLocalId();
+        }
+    }
 
     /**
-     * The list of total projects.
+     * Keeps the {@code Project}s that are not hidden.
      */
-    private ArrayList<Project> projects = new ArrayList<Project>();
+    private static final IdIndexedList.Filter<Project> NOT_HIDDEN = new IdIndexedList.Filter<Project>() {
+        @Override
+        public boolean keep(Project project) {
+            return !project.isHidden();
+        }
+    };
 
     /**
      * The Context under which this adapter is constructed.
@@ -68,39 +62,53 @@ public class FeedAdapter extends BaseAdapter implements RearrangementListener, P
     private Context context;
 
     /**
-     * The re-creation/unmarshalling constructor.
-     *
-     * @param in The parcel which is used to recreate this FeedAdapter.
-     *           Objects are read from the parcel in the same order in which they were written.
+     * Whether a drag is in progress. Nothing is hidden during a drag, so the
+     * visible list is not re-filtered on every swap.
      */
-    public FeedAdapter(Parcel in) {
-        in.readTypedList(visibleProjects, Project.CREATOR);
-        in.readTypedList(projects, Project.CREATOR);
-    }
+    private boolean rearranging;
 
     /**
-     * Describe the kinds of special objects contained
-     * in this Parcelable's marshalled representation.
-     *
-     * @return a bitmask indicating the set of special
-     * object types marshalled by the Parcelable.
+     * The child views of a row, looked up once when the row is inflated, and what they show.
      */
-    @Override
-    public int describeContents() {
-        return 0;
+    private static final class ViewHolder {
+        final TextView title;
+        final View background;
+
+        /**
+         * The title and color last bound, to skip rebinding a row that already shows them.
+         */
+        String boundTitle;
+        int boundColor;
+
+        ViewHolder(View row) {
+            title = (TextView) row.findViewById(R.id.tv_title);
+            background = row.findViewById(R.id.ll_project);
+        }
     }
 
     /**
-     * Flatten this object in to a Parcel.
-     *
-     * @param parcel The Parcel in which the object should be written.
-     * @param i      Additional flags about how the object should be written.
+     * Matches reloaded {@code Project}s to the shown ones by local ID.
+     * Compares everything the feed shows or acts on, including the head {@code Task}.
      */
-    @Override
-    public void writeToParcel(Parcel parcel, int i) {
-        parcel.writeTypedList(visibleProjects);
-        parcel.writeTypedList(projects);
-    }
+    private static final ListDiff<Project> PROJECT_DIFF = new ListDiff<Project>() {
+        @Override
+        protected int keyOf(Project project) {
+            return project.getLocalId();
+        }
+
+        @Override
+        protected boolean sameContents(Project oldProject, Project newProject) {
+            Task oldHead = oldProject.getHeadTask();
+            Task newHead = newProject.getHeadTask();
+            return oldProject.getColor() == newProject.getColor()
+                    && oldProject.isHidden() == newProject.isHidden()
+                    && oldProject.getUnfinishedCount() == newProject.getUnfinishedCount()
+                    && TextUtils.equals(oldProject.getTitle(), newProject.getTitle())
+                    && (oldHead == null ? newHead == null
+                    : newHead != null && oldHead.getLocalId() == newHead.getLocalId()
+                    && TextUtils.equals(oldHead.getName(), newHead.getName()));
+        }
+    };
 
     /**
      * Constructs a new ProjectAdapter.
@@ -110,20 +118,39 @@ public class FeedAdapter extends BaseAdapter implements RearrangementListener, P
      */
     public FeedAdapter(Context context, ArrayList<Project> projects) {
         this.context = context;
-        this.projects = projects;
-        // All projects are visible to begin with
-        this.visibleProjects = projects;
+        this.projects.setAll(projects);
+        // All projects that are not hidden are visible to begin with
+        this.visibleProjects.setAll(projects);
+        refreshVisibleProjects();
     }
 
     /**
-     * Removes all hidden projects from the list of visible projects.
+     * Replaces the {@code Project}s with a freshly loaded list, keeping recycled views
+     * and the scroll position. {@code Project}s that did not change keep their instance,
+     * and nothing is redrawn if no visible {@code Project} changed.
+     *
+     * @param newProjects Every {@code Project}, as just loaded from the database.
+     * @return What changed in the list of visible projects.
      */
-    private void refreshVisibleProjects() {
-        for (Project project : projects) {
-            if (project.isHidden()) {
-                visibleProjects.remove(project);
-            }
+    public ListDiff.ChangeSet<Project> setProjects(ArrayList<Project> newProjects) {
+        ArrayList<Project> newVisibleProjects = new ArrayList<Project>(newProjects.size());
+        for (Project project : newProjects) {
+            if (!project.isHidden()) newVisibleProjects.add(project);
         }
+        ListDiff.ChangeSet<Project> changes = PROJECT_DIFF.diff(visibleProjects.asList(), newVisibleProjects);
+        projects.setAll(newProjects);
+        if (!changes.isEmpty()) {
+            visibleProjects.setAll(changes.getItems());
+            super.notifyDataSetChanged();
+        }
+        return changes;
+    }
+
+    /**
+     * Removes all hidden projects from the list of visible projects, in one pass.
+     */
+    private void refreshVisibleProjects() {
+        visibleProjects.retain(NOT_HIDDEN);
     }
 
     /**
@@ -131,7 +158,7 @@ public class FeedAdapter extends BaseAdapter implements RearrangementListener, P
      */
     @Override
     public void notifyDataSetChanged() {
-        refreshVisibleProjects();
+        if (!rearranging) refreshVisibleProjects();
         super.notifyDataSetChanged();
     }
 
@@ -212,9 +239,12 @@ public class FeedAdapter extends BaseAdapter implements RearrangementListener, P
         return visibleProjects.get(i);
     }
 
+    /**
+     * Returns the local ID, since unsynced projects all share server ID 0.
+     */
     @Override
     public long getItemId(int i) {
-        return getItem(i).getId();
+        return getItem(i).getLocalId();
     }
 
     /**
@@ -229,21 +259,36 @@ public class FeedAdapter extends BaseAdapter implements RearrangementListener, P
 
     /**
      * Returns the TextView widget containing text and a background color.
+     * A recycled row is only rebound where its title or color differ, since setting a
+     * background color allocates a new drawable.
      *
      * @param position    The position of the project whose view we want to create.
      * @param convertView The view that will hold the list of projects.
-     * @param viewGroup   Never used.
+     * @param viewGroup   The list, used for the layout parameters of a new row.
      * @return The TextView widget containing text and a background color.
      */
     @Override
     public View getView(int position, View convertView, ViewGroup viewGroup) {
+        ViewHolder holder;
         if (convertView == null) {
-            convertView = LayoutInflater.from(context).inflate(R.layout.list_project, null);
+            convertView = LayoutInflater.from(viewGroup.getContext())
+                    .inflate(R.layout.list_project, viewGroup, false);
+            holder = new ViewHolder(convertView);
+            convertView.setTag(holder);
+        } else {
+            holder = (ViewHolder) convertView.getTag();
         }
+        Project project = getItem(position);
         // set the text of the TextView widget
-        ((TextView) convertView.findViewById(R.id.tv_title)).setText(getItem(position).getTitle());
+        if (project.getTitle() != holder.boundTitle) {
+            holder.title.setText(project.getTitle());
+            holder.boundTitle = project.getTitle();
+        }
         // set the background color of the LinearLayout
-        convertView.findViewById(R.id.ll_project).setBackgroundColor(getItem(position).getColor());
+        if (holder.background.getBackground() == null || project.getColor() != holder.boundColor) {
+            holder.background.setBackgroundColor(project.getColor());
+            holder.boundColor = project.getColor();
+        }
         return convertView;
     }
 
@@ -278,7 +323,7 @@ public class FeedAdapter extends BaseAdapter implements RearrangementListener, P
      */
     @Override
     public void onStartedRearranging() {
-
+        rearranging = true;
     }
 
     /**
@@ -291,13 +336,9 @@ public class FeedAdapter extends BaseAdapter implements RearrangementListener, P
      * @see com.thundercats.queuer.interfaces.RearrangementListener#swapElements(int, int)
      */
     @Override
-    public void swapElements(int indexOne, int indexTwo) {
-        Project temp1 = getItem(indexOne);
-        Project temp2 = getItem(indexTwo);
-        visibleProjects.remove(indexOne);
-        visibleProjects.add(indexOne, temp2);
-        visibleProjects.remove(indexTwo);
-        visibleProjects.add(indexTwo, temp1);
+    public boolean swapElements(int indexOne, int indexTwo) {
+        visibleProjects.swap(indexOne, indexTwo);
+        return true;
     }
 
     /**
@@ -305,7 +346,7 @@ public class FeedAdapter extends BaseAdapter implements RearrangementListener, P
      */
     @Override
     public void onFinishedRearranging() {
-
+        rearranging = false;
     }
 
 }
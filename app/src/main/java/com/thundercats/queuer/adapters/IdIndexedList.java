@@ -0,0 +1,196 @@
+package com.thundercats.queuer.adapters;
+
+import android.util.SparseIntArray;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An ordered list of items with an index from each item's local ID to its position.
+ * <p/>
+ * Membership and lookups by ID are O(log n) searches of a primitive
+ * {@code SparseIntArray} instead of {@code ArrayList.contains}'s O(n) {@code equals} scan.
+ * Appends and swaps keep the index up to date. Edits in the middle of the list only mark it
+ * stale, and it is rebuilt in one O(n) pass the next time it is needed, so a batch of
+ * edits costs a single rebuild.
+ *
+ * @param <T> The type of item in the list.
+ */
+public abstract class IdIndexedList<T> {
+
+    private final ArrayList<T> items = new ArrayList<T>();
+
+    /**
+     * Local ID to position in {@link #items}. Only valid while {@link #indexStale} is false.
+     */
+    private final SparseIntArray positionsById = new SparseIntArray();
+
+    private boolean indexStale;
+
+    /**
+     * Returns the local ID of an item. IDs must be unique within the list.
+     *
+     * @param item The item.
+     * @return Its local ID.
+     */
+    protected abstract int idOf(T item);
+
+    public int size() {
+        return items.size();
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    public T get(int position) {
+        return items.get(position);
+    }
+
+    /**
+     * Returns the items in order. The list must not be modified.
+     *
+     * @return The items in order.
+     */
+    public List<T> asList() {
+        return items;
+    }
+
+    /**
+     * Returns whether an item with the same local ID is in the list.
+     *
+     * @param item The item to look for.
+     * @return True if an item with the same local ID is in the list.
+     */
+    public boolean contains(T item) {
+        return indexOfId(idOf(item)) >= 0;
+    }
+
+    /**
+     * Returns the position of the item with a given local ID.
+     *
+     * @param id The local ID.
+     * @return The position of the item, or -1 if there is none.
+     */
+    public int indexOfId(int id) {
+        ensureIndex();
+        return positionsById.get(id, -1);
+    }
+
+    /**
+     * Appends an item.
+     *
+     * @param item The item to append.
+     */
+    public void add(T item) {
+        if (!indexStale) positionsById.put(idOf(item), items.size());
+        items.add(item);
+    }
+
+    /**
+     * Inserts an item, shifting the items after it.
+     *
+     * @param position Where to insert the item.
+     * @param item     The item to insert.
+     */
+    public void add(int position, T item) {
+        if (position == items.size()) {
+            add(item);
+            return;
+        }
+        items.add(position, item);
+        indexStale = true;
+    }
+
+    /**
+     * Removes the item at a position, shifting the items after it.
+     *
+     * @param position The position of the item to remove.
+     * @return The removed item.
+     */
+    public T remove(int position) {
+        T removed = items.remove(position);
+        if (position == items.size() && !indexStale) positionsById.delete(idOf(removed));
+        else indexStale = true;
+        return removed;
+    }
+
+    /**
+     * Removes the item with the same local ID as {@code item}, if there is one.
+     *
+     * @param item The item to remove.
+     * @return True if an item was removed.
+     */
+    public boolean remove(T item) {
+        int position = indexOfId(idOf(item));
+        if (position < 0) return false;
+        remove(position);
+        return true;
+    }
+
+    /**
+     * Exchanges the items at two positions.
+     *
+     * @param positionOne The position of the first item.
+     * @param positionTwo The position of the second item.
+     */
+    public void swap(int positionOne, int positionTwo) {
+        T one = items.get(positionOne);
+        T two = items.get(positionTwo);
+        items.set(positionOne, two);
+        items.set(positionTwo, one);
+        if (!indexStale) {
+            positionsById.put(idOf(two), positionOne);
+            positionsById.put(idOf(one), positionTwo);
+        }
+    }
+
+    /**
+     * Replaces every item.
+     *
+     * @param newItems The new items, in order.
+     */
+    public void setAll(Collection<T> newItems) {
+        items.clear();
+        items.addAll(newItems);
+        indexStale = true;
+    }
+
+    /**
+     * Removes every item the filter does not keep, in one pass.
+     *
+     * @param filter Decides which items stay.
+     * @return True if any item was removed.
+     */
+    public boolean retain(Filter<T> filter) {
+        int kept = 0;
+        for (int i = 0; i < items.size(); i++) {
+            T item = items.get(i);
+            if (filter.keep(item)) items.set(kept++, item);
+        }
+        if (kept == items.size()) return false;
+        items.subList(kept, items.size()).clear();
+        indexStale = true;
+        return true;
+    }
+
+    private void ensureIndex() {
+        if (!indexStale) return;
+        positionsById.clear();
+        for (int i = 0; i < items.size(); i++) {
+            // ids are mostly loaded in ascending order, which append() handles without a search
+            positionsById.append(idOf(items.get(i)), i);
+        }
+        indexStale = false;
+    }
+
+    /**
+     * Decides which items {@link #retain(Filter)} keeps.
+     *
+     * @param <T> The type of item in the list.
+     */
+    public interface Filter<T> {
+        public boolean keep(T item);
+    }
+}
@@ -0,0 +1,184 @@
+package com.thundercats.queuer.adapters;
+
+import android.util.SparseIntArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes the edit script that turns an adapter's current list into a freshly loaded one,
+ * matching items by local ID.
+ * <p/>
+ * Removals, insertions and content changes are found with one O(log n) lookup per item
+ * in a primitive {@code SparseIntArray}, which is built in O(n) when IDs arrive in ascending order.
+ * Moves are the matched items that fall outside the longest run of items that kept their
+ * relative order, found in O(n log n) (O(n) when nothing moved). Matched items whose
+ * contents did not change keep their old instance in {@link ChangeSet#getItems()}, so an
+ * unchanged list produces an empty change set and the adapter need not notify at all.
+ *
+ * @param <T> The type of item in the list.
+ */
+public abstract class ListDiff<T> {
+
+    /**
+     * Returns the key that identifies an item across reloads.
+     *
+     * @param item The item.
+     * @return The item's local ID.
+     */
+    protected abstract int keyOf(T item);
+
+    /**
+     * Returns whether two versions of the same item would be displayed the same way.
+     *
+     * @param oldItem The item as it is in the adapter.
+     * @param newItem The item as it was just loaded.
+     * @return True if the row does not need to be rebound.
+     */
+    protected abstract boolean sameContents(T oldItem, T newItem);
+
+    /**
+     * Computes the edit script from {@code oldItems} to {@code newItems}.
+     *
+     * @param oldItems The list the adapter currently shows.
+     * @param newItems The list that was just loaded. Keys must be unique.
+     * @return The changes, and the list to show from now on.
+     */
+    public ChangeSet<T> diff(List<T> oldItems, List<T> newItems) {
+        ChangeSet<T> changes = new ChangeSet<T>(newItems.size());
+        SparseIntArray oldIndexes = new SparseIntArray(oldItems.size());
+        for (int i = 0; i < oldItems.size(); i++) {
+            oldIndexes.append(keyOf(oldItems.get(i)), i);
+        }
+
+        // old index of every matched new item, in new order
+        int[] matchedOldIndexes = new int[newItems.size()];
+        int matched = 0;
+        boolean[] kept = new boolean[oldItems.size()];
+        for (int i = 0; i < newItems.size(); i++) {
+            T newItem = newItems.get(i);
+            int oldIndex = oldIndexes.get(keyOf(newItem), -1);
+            if (oldIndex < 0) {
+                changes.inserted++;
+                changes.items.add(newItem);
+                continue;
+            }
+            kept[oldIndex] = true;
+            T oldItem = oldItems.get(oldIndex);
+            if (sameContents(oldItem, newItem)) {
+                changes.items.add(oldItem);
+            } else {
+                changes.changed++;
+                changes.items.add(newItem);
+            }
+            matchedOldIndexes[matched] = oldIndex;
+            matched++;
+        }
+        for (boolean k : kept) {
+            if (!k) changes.removed++;
+        }
+        changes.moved = matched - longestIncreasingRun(matchedOldIndexes, matched);
+        return changes;
+    }
+
+    /**
+     * Returns the length of the longest strictly increasing subsequence of the first
+     * {@code length} values, i.e. how many matched items can stay where they are.
+     */
+    private static int longestIncreasingRun(int[] values, int length) {
+        // fast path: nothing moved
+        boolean sorted = true;
+        for (int i = 1; i < length && sorted; i++) {
+            sorted = values[i - 1] < values[i];
+        }
+        if (sorted) return length;
+
+        // patience sorting: tails[k] is the smallest tail of an increasing run of length k + 1
+        int[] tails = new int[length];
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            int slot = Arrays.binarySearch(tails, 0, size, values[i]);
+            if (slot < 0) slot = -slot - 1;
+            tails[slot] = values[i];
+            if (slot == size) size++;
+        }
+        return size;
+    }
+
+    /**
+     * The result of {@link ListDiff#diff(java.util.List, java.util.List)}.
+     *
+     * @param <T> The type of item in the list.
+     */
+    public static final class ChangeSet<T> {
+        private final ArrayList<T> items;
+        private int inserted;
+        private int removed;
+        private int moved;
+        private int changed;
+
+        private ChangeSet(int capacity) {
+            items = new ArrayList<T>(capacity);
+        }
+
+        /**
+         * Returns the list to show from now on. Unchanged items are the old instances.
+         *
+         * @return The list to show from now on.
+         */
+        public ArrayList<T> getItems() {
+            return items;
+        }
+
+        /**
+         * Returns how many items are new.
+         *
+         * @return How many items are new.
+         */
+        public int getInserted() {
+            return inserted;
+        }
+
+        /**
+         * Returns how many items are gone.
+         *
+         * @return How many items are gone.
+         */
+        public int getRemoved() {
+            return removed;
+        }
+
+        /**
+         * Returns how many items have to move for the rest to stay in order.
+         *
+         * @return How many items moved.
+         */
+        public int getMoved() {
+            return moved;
+        }
+
+        /**
+         * Returns how many items are still there but display differently.
+         *
+         * @return How many items changed.
+         */
+        public int getChanged() {
+            return changed;
+        }
+
+        /**
+         * Returns whether the old list can be kept as it is.
+         *
+         * @return True if nothing was inserted, removed, moved or changed.
+         */
+        public boolean isEmpty() {
+            return inserted == 0 && removed == 0 && moved == 0 && changed == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "+" + inserted + " -" + removed + " ~" + moved + " *" + changed;
+        }
+    }
+}
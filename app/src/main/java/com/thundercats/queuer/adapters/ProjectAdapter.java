@@ -1,6 +1,8 @@
 package com.thundercats.queuer.adapters;
 
 import android.content.Context;
+import android.text.TextUtils;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -8,123 +10,450 @@ import android.widget.BaseAdapter;
 import android.widget.TextView;
 
 import com.thundercats.queuer.R;
-import com.thundercats.queuer.database.TaskDataSource;
+import com.thundercats.queuer.database.TaskPage;
+import com.thundercats.queuer.database.TaskPositions;
+import com.thundercats.queuer.interfaces.DataCallback;
 import com.thundercats.queuer.interfaces.RearrangementListener;
+import com.thundercats.queuer.managers.DataManager;
+import com.thundercats.queuer.managers.DismissCommitQueue;
 import com.thundercats.queuer.models.Task;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A {@link com.thundercats.queuer.interfaces.RearrangementListener} that controls the list of
- * {@link com.thundercats.queuer.models.Task}s in the current
+ * unfinished {@link com.thundercats.queuer.models.Task}s in the current
  * {@link com.thundercats.queuer.models.Project}.
+ * <p/>
+ * Only a window of the {@code Task}s around the rows on screen is kept in memory.
+ * {@link #getCount()} is the number of unfinished {@code Task}s in the database, and rows
+ * outside the window show as blank until their page is loaded. Binding a row near the edge
+ * of the window the list is scrolling toward loads the next {@link #PAGE_SIZE} {@code Task}s
+ * past that edge with a keyset query on (position, local ID), and once the window grows past
+ * {@link #MAX_WINDOW} the {@code Task}s at the far end are evicted. Binding a row far outside
+ * the window (e.g., after a fast scroll) reloads the window around it by index, with most of
+ * the page ahead of it.
  * Created by kmchen1 on 1/15/14.
  */
 public class ProjectAdapter extends BaseAdapter implements RearrangementListener {
 
     /**
-     * The list of {@code Task}s.
+     * How many {@code Task}s are loaded at a time.
      */
-    private ArrayList<Task> tasks = new ArrayList<Task>();
+    static final int PAGE_SIZE = 50;
 
     /**
-     * The list of visible (unfinished) {@code Task}s.
+     * How close to an edge of the window a bound row must be for the next page to be loaded.
      */
-    private ArrayList<Task> unfinishedTasks = new ArrayList<Task>();
+    static final int PREFETCH_DISTANCE = 20;
 
     /**
-     * The Context under which this adapter is constructed.
+     * How close to the edge of the window behind the scroll a bound row must be for the page
+     * past that edge to be loaded. Rows behind the scroll were just shown, so this is rare.
+     */
+    static final int TRAILING_PREFETCH_DISTANCE = PREFETCH_DISTANCE / 4;
+
+    /**
+     * The most {@code Task}s kept in memory, outside of a drag.
+     */
+    static final int MAX_WINDOW = 4 * PAGE_SIZE;
+
+    /**
+     * The loaded window of unfinished {@code Task}s, ordered by position.
+     */
+    private TaskList window = new TaskList();
+
+    /**
+     * The index of the first {@code Task} of {@link #window} among all unfinished {@code Task}s.
+     */
+    private int windowStart;
+
+    /**
+     * How many unfinished {@code Task}s there are, loaded or not.
+     */
+    private int total;
+
+    /**
+     * {@code Task}s indexed by local ID.
+     */
+    private static final class TaskList extends IdIndexedList<Task> {
+        @Override
+        protected int idOf(Task task) {
+            return task.getLocalId();
+        }
+    }
+
+    /**
+     * The Context under which this adapter is constructed. Also the tag of its loads.
      */
     private Context context;
 
+    private final DataManager dataManager;
+
+    /**
+     * The local ID of the {@code Project} whose {@code Task}s are shown.
+     */
+    private final int projectLocalId;
+
+    /**
+     * Knows the dismissed {@code Task}s that a load may still return as unfinished.
+     */
+    private final DismissCommitQueue dismissCommits;
+
+    /**
+     * Whether a page is being loaded. One page is loaded at a time.
+     */
+    private boolean loading;
+
+    /**
+     * Bumped by every change to the window, so a page loaded by index for an older
+     * window is dropped instead of applied.
+     */
+    private int windowVersion;
+
+    /**
+     * Whether a drag is in progress. Nothing is evicted and no page is loaded by index during
+     * a drag, so the dragged {@code Task} and its neighbours stay in memory.
+     */
+    private boolean rearranging;
+
     /**
-     * Constructs a new ProjectAdapter.
+     * The index the dragged {@code Task} started at, or -1 if it has not moved yet.
+     */
+    private int dragFrom = -1;
+
+    /**
+     * The index the dragged {@code Task} is at now.
+     */
+    private int dragTo = -1;
+
+    /**
+     * The index of the row bound last, to tell which way the list is scrolling.
+     */
+    private int lastBound;
+
+    /**
+     * Whether the rows being bound move toward the end of the list. Rebinding the rows on
+     * screen after a change also counts as scrolling down, which only prefetches one page
+     * the other way.
+     */
+    private boolean scrollingDown = true;
+
+    /**
+     * The text shown for each loaded {@code Task}, by local ID. Cleared whenever the data
+     * set changes, so a fling over unchanged rows builds no strings.
+     */
+    private final SparseArray<String> labels = new SparseArray<String>();
+
+    /**
+     * The child views of a row, looked up once when the row is inflated.
+     */
+    private static final class ViewHolder {
+        final TextView title;
+
+        /**
+         * The text last set on {@link #title}, to skip setting the same text again.
+         */
+        String boundLabel;
+
+        ViewHolder(View row) {
+            title = (TextView) row.findViewById(R.id.tv_title);
+        }
+    }
+
+    /**
+     * Matches reloaded {@code Task}s to the shown ones by local ID.
+     */
+    private static final ListDiff<Task> TASK_DIFF = new ListDiff<Task>() {
+        @Override
+        protected int keyOf(Task task) {
+            return task.getLocalId();
+        }
+
+        @Override
+        protected boolean sameContents(Task oldTask, Task newTask) {
+            return oldTask.isFinished() == newTask.isFinished()
+                    && oldTask.getPosition() == newTask.getPosition()
+                    && TextUtils.equals(oldTask.getName(), newTask.getName());
+        }
+    };
+
+    /**
+     * Constructs a new ProjectAdapter. Nothing is shown until {@link #reload()} is called.
      *
-     * @param context The new context.
-     * @param tasks   The list of tasks.
+     * @param context        The new context.
+     * @param projectLocalId The local ID of the {@code Project} whose {@code Task}s are shown.
+     * @param dismissCommits The dismissed {@code Task}s that must not be shown again.
      */
-    public ProjectAdapter(Context context, ArrayList<Task> unfinishedTasks, ArrayList<Task> tasks) {
+    public ProjectAdapter(Context context, int projectLocalId, DismissCommitQueue dismissCommits) {
         this.context = context;
-        this.unfinishedTasks = unfinishedTasks;
-        this.tasks = tasks;
+        this.projectLocalId = projectLocalId;
+        this.dismissCommits = dismissCommits;
+        dataManager = DataManager.getInstance(context);
     }
 
     /**
-     * Removes all finished {@code Task}s from the list of unfinished {@code Task}s.
-     * Updates {@code Task} positions.
-     * Called every time the data set changes.
+     * Reloads the window where it is, with the unfinished count. {@code Task}s that did not
+     * change keep their instance, and nothing is redrawn if nothing changed.
      */
-    private void refreshUnfinishedTasks() {
-        for (Task task : tasks) {
-            if (task.isFinished()) {
-                unfinishedTasks.remove(task);
+    public void reload() {
+        loadPage(windowStart, Math.max(window.size(), PAGE_SIZE));
+    }
+
+    /**
+     * Replaces the window with a page loaded by index, keeping the instances of
+     * {@code Task}s that did not change.
+     *
+     * @param index The index of the first {@code Task} to load.
+     * @param limit How many {@code Task}s to load.
+     */
+    private void loadPage(int index, int limit) {
+        loading = true;
+        final int requestedVersion = windowVersion;
+        dataManager.loadTaskPage(context, projectLocalId, offsetOf(index), limit, new DataCallback<TaskPage>() {
+            @Override
+            public void onResult(TaskPage page) {
+                loading = false;
+                if (requestedVersion != windowVersion) {
+                    // rebinding the rows asks for the page again
+                    ProjectAdapter.super.notifyDataSetChanged();
+                    return;
+                }
+                ArrayList<Task> tasks = withoutUnwritten(page.getTasks());
+                int newTotal = page.getTotal() - dismissCommits.countUnwritten(projectLocalId);
+                // the database counted the unwritten dismissals above the page; the adapter does not
+                int pageStart = Math.max(0, page.getOffset() - (page.getTasks().isEmpty()
+                        ? dismissCommits.countUnwritten(projectLocalId)
+                        : dismissCommits.countUnwrittenBefore(page.getTasks().get(0))));
+                ListDiff.ChangeSet<Task> changes = TASK_DIFF.diff(
+                        pageStart == windowStart ? window.asList() : new ArrayList<Task>(), tasks);
+                if (changes.isEmpty() && newTotal == total && pageStart == windowStart) return;
+                windowStart = pageStart;
+                total = newTotal;
+                window.setAll(changes.getItems());
+                windowVersion++;
+                notifyDataSetChanged();
             }
+        });
+    }
+
+    /**
+     * Returns the database offset of the row at an index. The database still counts the
+     * unwritten dismissals above that row, which are only known relative to a loaded row,
+     * so the nearest loaded row is used; {@link #loadPage} corrects the index from the
+     * page it gets back.
+     */
+    private int offsetOf(int index) {
+        if (window.isEmpty()) return index;
+        int nearest = Math.max(0, Math.min(window.size() - 1, index - windowStart));
+        return index + dismissCommits.countUnwrittenBefore(window.get(nearest));
+    }
+
+    /**
+     * Loads the page after the window and appends it, evicting from the front if needed.
+     */
+    private void loadAfter() {
+        loading = true;
+        final Task anchor = window.get(window.size() - 1);
+        dataManager.loadTasksAfter(context, anchor, PAGE_SIZE, new DataCallback<ArrayList<Task>>() {
+            @Override
+            public void onResult(ArrayList<Task> page) {
+                loading = false;
+                if (window.isEmpty() || window.get(window.size() - 1) != anchor) {
+                    ProjectAdapter.super.notifyDataSetChanged();
+                    return;
+                }
+                ArrayList<Task> tasks = new ArrayList<Task>(window.asList());
+                tasks.addAll(withoutUnwritten(page));
+                // a short page is the end of the list, whatever the count said
+                if (page.size() < PAGE_SIZE) total = windowStart + tasks.size();
+                int evicted = rearranging ? 0 : Math.max(0, tasks.size() - MAX_WINDOW);
+                window.setAll(tasks.subList(evicted, tasks.size()));
+                windowStart += evicted;
+                windowVersion++;
+                notifyDataSetChanged();
+            }
+        });
+    }
+
+    /**
+     * Loads the page before the window and prepends it, evicting from the back if needed.
+     */
+    private void loadBefore() {
+        loading = true;
+        final Task anchor = window.get(0);
+        dataManager.loadTasksBefore(context, anchor, PAGE_SIZE, new DataCallback<ArrayList<Task>>() {
+            @Override
+            public void onResult(ArrayList<Task> page) {
+                loading = false;
+                if (window.isEmpty() || window.get(0) != anchor) {
+                    ProjectAdapter.super.notifyDataSetChanged();
+                    return;
+                }
+                ArrayList<Task> tasks = withoutUnwritten(page);
+                int newStart = windowStart - tasks.size();
+                if (page.size() < PAGE_SIZE || newStart < 0) {
+                    // a short page is the start of the list; move everything to match
+                    total -= newStart;
+                    newStart = 0;
+                }
+                tasks.addAll(window.asList());
+                int kept = rearranging ? tasks.size() : Math.min(tasks.size(), MAX_WINDOW);
+                window.setAll(tasks.subList(0, kept));
+                windowStart = newStart;
+                windowVersion++;
+                notifyDataSetChanged();
+            }
+        });
+    }
+
+    /**
+     * Starts loading whatever page the row at index {@code i} needs, if any.
+     *
+     * @param i The index of a row that is being bound.
+     */
+    private void loadAround(int i) {
+        if (i != lastBound) {
+            scrollingDown = i > lastBound;
+            lastBound = i;
+        }
+        if (loading) return;
+        int windowEnd = windowStart + window.size();
+        if (window.isEmpty()) {
+            if (total > 0) loadPage(pageStartFor(i), PAGE_SIZE);
+        } else if (i >= windowStart && i < windowEnd) {
+            boolean nearEnd = windowEnd < total
+                    && windowEnd - i <= (scrollingDown ? PREFETCH_DISTANCE : TRAILING_PREFETCH_DISTANCE);
+            boolean nearStart = windowStart > 0
+                    && i - windowStart < (scrollingDown ? TRAILING_PREFETCH_DISTANCE : PREFETCH_DISTANCE);
+            if (nearEnd && (scrollingDown || !nearStart)) loadAfter();
+            else if (nearStart) loadBefore();
+        } else if (i >= windowEnd && i < windowEnd + PAGE_SIZE) {
+            loadAfter();
+        } else if (i < windowStart && i >= windowStart - PAGE_SIZE) {
+            loadBefore();
+        } else if (!rearranging) {
+            loadPage(pageStartFor(i), PAGE_SIZE);
         }
     }
 
+    /**
+     * Returns the index to load a page from so that it holds the row at index {@code i} and
+     * three quarters of it lie ahead of the scroll.
+     */
+    private int pageStartFor(int i) {
+        return Math.max(0, i - (scrollingDown ? PAGE_SIZE / 4 : PAGE_SIZE * 3 / 4));
+    }
+
+    /**
+     * Returns the loaded {@code Task}s that are not dismissals waiting to be written.
+     */
+    private ArrayList<Task> withoutUnwritten(List<Task> tasks) {
+        ArrayList<Task> kept = new ArrayList<Task>(tasks.size());
+        for (Task task : tasks) {
+            if (!dismissCommits.isUnwritten(task)) kept.add(task);
+        }
+        return kept;
+    }
+
     /**
      * Causes views to refresh themselves (i.e., getView is called).
      */
     @Override
     public void notifyDataSetChanged() {
-        refreshUnfinishedTasks();
+        labels.clear();
         super.notifyDataSetChanged();
     }
 
     /**
-     * Removes a {@code Task}.
+     * Removes a {@code Task} from the list in memory only. Writing the dismissal is up to the
+     * caller, usually through a {@link com.thundercats.queuer.managers.DismissCommitQueue}.
      *
      * @param position The index of the {@code Task} to be removed.
+     * @return The removed {@code Task}, or null if its row was not loaded.
      */
-    public void remove(int position) {
-        final Task removedTask = unfinishedTasks.remove(position);
-
-        // Remove first task
-        TaskDataSource dataSource = new TaskDataSource(context);
-        dataSource.open();
-        removedTask.setFinished(true);
-        dataSource.updateTaskFinished(removedTask, true);
-
-        // decrement positions of subsequent tasks
-        for (int i = position; i < unfinishedTasks.size(); i++) {
-            final Task task = unfinishedTasks.get(i);
-            final int newPosition = task.getPosition() - 1;
-            task.setPosition(newPosition);
-            dataSource.updateTaskPosition(task, newPosition);
-        }
+    public Task remove(int position) {
+        if (!isLoaded(position)) return null;
+        final Task removedTask = window.remove(position - windowStart);
+        total--;
+        windowVersion++;
         notifyDataSetChanged();
+        return removedTask;
     }
 
     /**
-     * Inserts a {@code Task}.
+     * Puts an unfinished {@code Task} where its position places it, in memory only.
+     * A {@code Task} that belongs outside the window is only counted.
+     * Since positions are sparse keys, no other {@code Task} moves.
      *
-     * @param task     The {@code Task} to insert.
-     * @param position The index where the {@code Task} will be inserted.
-     */
-    public void insert(Task task, int position) {
-        if (!unfinishedTasks.contains(task)) {
-
-            // put task in list
-            unfinishedTasks.add(position, task);
-
-            // write task's new position to DB
-            TaskDataSource dataSource = new TaskDataSource(context);
-            dataSource.open();
-            dataSource.updateTaskPosition(task, position);
-            task.setPosition(position);
-
-            // increment all positions of subsequent tasks
-            for (int i = position + 1; i < unfinishedTasks.size(); i++) {
-                final Task currTask = unfinishedTasks.get(i);
-                currTask.setPosition(i);
-                dataSource.updateTaskPosition(currTask, i);
-            }
-            dataSource.close();
+     * @param task The {@code Task} to put back or add.
+     */
+    public void insert(Task task) {
+        if (window.contains(task)) return;
+        int low = 0;
+        int high = window.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (precedes(window.get(middle), task)) low = middle + 1;
+            else high = middle;
+        }
+        total++;
+        if (low == 0 && windowStart > 0) {
+            // above the window
+            windowStart++;
+        } else if (low < window.size() || windowStart + window.size() == total - 1) {
+            window.add(low, task);
         }
-        if (!tasks.contains(task)) tasks.add(position, task);
+        windowVersion++;
         notifyDataSetChanged();
     }
 
+    /**
+     * Returns whether {@code one} sorts before {@code two} on (position, local ID).
+     */
+    private static boolean precedes(Task one, Task two) {
+        if (one.getPosition() != two.getPosition()) return one.getPosition() < two.getPosition();
+        return one.getLocalId() < two.getLocalId();
+    }
+
+    /**
+     * Gives the {@code Task} at window index {@code index} a position between those of its
+     * neighbours and writes only that {@code Task}'s row. If a neighbour is not loaded, or the
+     * neighbours have no position left between them, the database places it instead, and the
+     * window is reloaded if it had to renumber every {@code Task}.
+     *
+     * @param index The window index of the {@code Task} that was just moved.
+     */
+    private void placeAt(int index) {
+        Task moved = window.get(index);
+        Task before = index > 0 ? window.get(index - 1) : null;
+        Task after = index < window.size() - 1 ? window.get(index + 1) : null;
+        boolean beforeKnown = before != null || windowStart == 0;
+        boolean afterKnown = after != null || windowStart + window.size() == total;
+        long newPosition = beforeKnown && afterKnown ? TaskPositions.between(before, after) : TaskPositions.NO_ROOM;
+        if (newPosition != TaskPositions.NO_ROOM) {
+            dataManager.setTaskPosition(moved, newPosition);
+            return;
+        }
+        dataManager.moveTask(context, moved, before, after, new DataCallback<Long>() {
+            @Override
+            public void onResult(Long position) {
+                if (position == TaskPositions.NO_ROOM) reload();
+            }
+        });
+    }
+
+    /**
+     * Returns whether the {@code Task} at an index is in memory.
+     *
+     * @param i The index of the {@code Task}.
+     * @return Whether the {@code Task} at index {@code i} is loaded.
+     */
+    public boolean isLoaded(int i) {
+        return i >= windowStart && i < windowStart + window.size();
+    }
+
     /**
      * Returns true since all items are enabled (i.e., there are no dividers).
      *
@@ -148,35 +477,71 @@ public class ProjectAdapter extends BaseAdapter implements RearrangementListener
 
     @Override
     public int getCount() {
-        return unfinishedTasks.size();
+        return total;
     }
 
+    /**
+     * Returns the {@code Task} at an index, or null if it is not loaded yet.
+     */
     @Override
     public Task getItem(int i) {
-        return unfinishedTasks.get(i);
+        return isLoaded(i) ? window.get(i - windowStart) : null;
     }
 
+    /**
+     * Returns the local ID, since unsynced tasks all share server ID 0.
+     * Rows that are not loaded yet get a negative ID of their own, which changes once the
+     * row is loaded; see {@link #hasStableIds()}.
+     */
     @Override
     public long getItemId(int i) {
-        return getItem(i).getId();
+        Task task = getItem(i);
+        return task != null ? task.getLocalId() : -1 - i;
     }
 
     @Override
     public boolean hasStableIds() {
-        // has stable ids, since we can move projects/views around
-        return true;
+        // rows that are not loaded have no Task to take an ID from, and a list only asks this
+        // once; EnhancedListView follows a drag by looking the IDs up again itself
+        return false;
     }
 
     @Override
     public View getView(int i, View convertView, ViewGroup viewGroup) {
+        ViewHolder holder;
         if (convertView == null) {
-            convertView = LayoutInflater.from(context).inflate(R.layout.list_task, null);
+            convertView = LayoutInflater.from(context).inflate(R.layout.list_task, viewGroup, false);
+            holder = new ViewHolder(convertView);
+            convertView.setTag(holder);
+        } else {
+            holder = (ViewHolder) convertView.getTag();
+        }
+        Task task = getItem(i);
+        String label = task != null ? labelFor(i, task) : "";
+        if (label != holder.boundLabel) {
+            holder.title.setText(label);
+            holder.boundLabel = label;
         }
-        final Task task = getItem(i);
-        ((TextView) convertView.findViewById(R.id.tv_title)).setText(task.getPosition() + ": " + task.getName());
+        loadAround(i);
         return convertView;
     }
 
+    /**
+     * Returns the text shown for an unfinished {@code Task}, building it only once per data set.
+     *
+     * @param i    The index of the {@code Task}.
+     * @param task The {@code Task}.
+     * @return The text shown for the {@code Task}.
+     */
+    private String labelFor(int i, Task task) {
+        String label = labels.get(task.getLocalId());
+        if (label == null) {
+            label = i + ": " + task.getName();
+            labels.put(task.getLocalId(), label);
+        }
+        return label;
+    }
+
     @Override
     public int getItemViewType(int i) {
         return 0;
@@ -190,27 +555,55 @@ public class ProjectAdapter extends BaseAdapter implements RearrangementListener
 
     @Override
     public boolean isEmpty() {
-        return unfinishedTasks.isEmpty();
+        return total == 0;
     }
 
 
+    /**
+     * Starts tracking a drag as a single move.
+     */
     @Override
     public void onStartedRearranging() {
-
+        rearranging = true;
+        dragFrom = -1;
+        dragTo = -1;
     }
 
+    /**
+     * Moves the dragged {@code Task} one cell in memory. Nothing is written until
+     * the drag ends; see {@link #onFinishedRearranging()}.
+     * <p/>
+     * Nothing is evicted during a drag, so a neighbour that is not loaded is just past an
+     * edge of the window. Its page is loaded and the drag waits on it: the swap is refused
+     * until the neighbour is shown.
+     *
+     * @param indexOne The index of the dragged {@code Task}.
+     * @param indexTwo The index of the neighbour it crossed.
+     * @return Whether the {@code Task}s were swapped.
+     */
     @Override
-    public void swapElements(int indexOne, int indexTwo) {
-        Task temp1 = getItem(indexOne);
-        Task temp2 = getItem(indexTwo);
-        unfinishedTasks.remove(indexOne);
-        unfinishedTasks.add(indexOne, temp2);
-        unfinishedTasks.remove(indexTwo);
-        unfinishedTasks.add(indexTwo, temp1);
+    public boolean swapElements(int indexOne, int indexTwo) {
+        if (!isLoaded(indexOne)) return false;
+        if (!isLoaded(indexTwo)) {
+            loadAround(indexTwo);
+            return false;
+        }
+        window.swap(indexOne - windowStart, indexTwo - windowStart);
+        windowVersion++;
+        if (dragFrom == -1) dragFrom = indexOne;
+        dragTo = indexTwo;
+        return true;
     }
 
+    /**
+     * Persists the whole drag as one move: the dragged {@code Task} gets a position between
+     * its final neighbours and only its row is written, however many cells it crossed.
+     */
     @Override
     public void onFinishedRearranging() {
-
+        rearranging = false;
+        if (dragFrom != -1 && dragTo != dragFrom && isLoaded(dragTo)) placeAt(dragTo - windowStart);
+        dragFrom = -1;
+        dragTo = -1;
     }
 }
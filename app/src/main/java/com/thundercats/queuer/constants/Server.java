@@ -8,4 +8,6 @@ public class Server {
     public final static String QUEUER_API_URL = QUEUER_BASE_URL + "api/v1/";
     public final static String QUEUER_SESSION_URL = QUEUER_API_URL + "session";
     public final static String QUEUER_CREATE_ACCOUNT_URL = QUEUER_API_URL + "users";
+    public final static String QUEUER_PROJECTS_URL = QUEUER_API_URL + "projects/";
+    public final static String QUEUER_TASKS_URL = QUEUER_API_URL + "tasks/";
 }
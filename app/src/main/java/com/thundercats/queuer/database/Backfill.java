@@ -0,0 +1,91 @@
+package com.thundercats.queuer.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Rewrites the rows of a large table in small batches, ordered by local ID.
+ * <p/>
+ * A {@link com.thundercats.queuer.database.Migration} only schedules a backfill;
+ * the {@link com.thundercats.queuer.database.MigrationRegistry} runs it after the
+ * upgrade, one batch per transaction, and records the last local ID it reached.
+ * If the process dies halfway, the backfill resumes from that ID the next time the
+ * database is opened.
+ */
+public abstract class Backfill {
+
+    /**
+     * The local ID column every table shares.
+     */
+    private static final String COLUMN_ID = "_id";
+
+    /**
+     * The name under which this backfill's progress is stored.
+     */
+    private final String name;
+
+    /**
+     * The table whose rows are rewritten.
+     */
+    private final String table;
+
+    /**
+     * The number of rows rewritten per transaction.
+     */
+    private final int batchSize;
+
+    /**
+     * Constructs a backfill.
+     *
+     * @param name      A unique name under which progress is stored.
+     * @param table     The table whose rows are rewritten.
+     * @param batchSize The number of rows rewritten per transaction.
+     */
+    protected Backfill(String name, String table, int batchSize) {
+        this.name = name;
+        this.table = table;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the name under which this backfill's progress is stored.
+     *
+     * @return The name under which this backfill's progress is stored.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Rewrites the next batch of rows. Called inside a transaction.
+     *
+     * @param database The database to rewrite.
+     * @param afterId  Only rows whose local IDs are greater than this are rewritten.
+     * @return The local ID of the last row rewritten, or -1 if there were no rows left.
+     */
+    long runBatch(SQLiteDatabase database, long afterId) {
+        Cursor cursor = database.rawQuery("SELECT MIN(" + COLUMN_ID + "), MAX(" + COLUMN_ID + ")"
+                        + " FROM (SELECT " + COLUMN_ID + " FROM " + table
+                        + " WHERE " + COLUMN_ID + " > ? ORDER BY " + COLUMN_ID + " LIMIT " + batchSize + ")",
+                new String[]{String.valueOf(afterId)});
+        try {
+            if (!cursor.moveToFirst() || cursor.isNull(0)) return -1;
+            long firstId = cursor.getLong(0);
+            long lastId = cursor.getLong(1);
+            apply(database, firstId, lastId);
+            return lastId;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Rewrites every row whose local ID is between {@code firstId} and {@code lastId}, inclusive.
+     * Must only touch those rows, so that a resumed backfill never rewrites a row twice.
+     *
+     * @param database The database to rewrite.
+     * @param firstId  The lowest local ID in this batch.
+     * @param lastId   The highest local ID in this batch.
+     */
+    protected abstract void apply(SQLiteDatabase database, long firstId, long lastId);
+}
@@ -0,0 +1,101 @@
+package com.thundercats.queuer.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Looper;
+
+import com.thundercats.queuer.QueuerApplication;
+
+/**
+ * Holds the process-wide connection to the local database.
+ * <p/>
+ * Opening a {@code SQLiteDatabase} is expensive, so instead of every
+ * {@link com.thundercats.queuer.database.TaskDataSource} and
+ * {@link com.thundercats.queuer.database.ProjectDataSource} opening and closing
+ * its own connection, the database is opened once and the same handle is
+ * given to every data source. The single instance is owned by
+ * {@link com.thundercats.queuer.QueuerApplication}.
+ */
+public class DatabaseManager {
+
+    /**
+     * The helper that creates and opens the database.
+     */
+    private final QueuerOpenHelper openHelper;
+
+    /**
+     * The newest {@code Task}s and {@code Project}s the main thread has seen.
+     */
+    private final ModelCache modelCache = new ModelCache();
+
+    /**
+     * The shared connection to the database. Null until first requested.
+     */
+    private SQLiteDatabase database;
+
+    /**
+     * Whether opening a data source on the main thread throws instead of blocking it.
+     */
+    private volatile boolean mainThreadForbidden;
+
+    /**
+     * Constructs the open helper. The database is not opened until it is first requested.
+     *
+     * @param context Any context; only its application context is kept.
+     */
+    public DatabaseManager(Context context) {
+        openHelper = new QueuerOpenHelper(context.getApplicationContext());
+    }
+
+    /**
+     * Returns the {@code DatabaseManager} owned by the application.
+     *
+     * @param context Any context of this application.
+     * @return The {@code DatabaseManager} owned by the application.
+     */
+    public static DatabaseManager getInstance(Context context) {
+        return ((QueuerApplication) context.getApplicationContext()).getDatabaseManager();
+    }
+
+    /**
+     * Returns the shared connection to the database, opening it if necessary.
+     *
+     * @return The shared, writable connection to the database.
+     */
+    public synchronized SQLiteDatabase getDatabase() {
+        if (mainThreadForbidden && Looper.myLooper() == Looper.getMainLooper())
+            throw new IllegalStateException("Database opened on the main thread; "
+                    + "go through com.thundercats.queuer.managers.DataManager instead");
+        if (database == null || !database.isOpen())
+            database = openHelper.getWritableDatabase();
+        return database;
+    }
+
+    /**
+     * Returns the newest {@code Task}s and {@code Project}s the main thread has seen.
+     *
+     * @return The process-wide {@code ModelCache}.
+     */
+    public ModelCache getModelCache() {
+        return modelCache;
+    }
+
+    /**
+     * Makes every later {@link #getDatabase()} call on the main thread throw an
+     * {@code IllegalStateException}. Turned on for debuggable builds, so any data source
+     * call that bypasses {@link com.thundercats.queuer.managers.DataManager} fails loudly.
+     *
+     * @param forbidden Whether the main thread may no longer open the database.
+     */
+    public void setMainThreadForbidden(boolean forbidden) {
+        mainThreadForbidden = forbidden;
+    }
+
+    /**
+     * Closes the connection. It is reopened the next time it is requested.
+     */
+    public synchronized void close() {
+        openHelper.close();
+        database = null;
+    }
+}
@@ -0,0 +1,44 @@
+package com.thundercats.queuer.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * One step of a schema upgrade. A {@code Migration} turns a database of version
+ * {@code getVersion() - 1} into one of version {@link #getVersion()} without
+ * destroying its rows, e.g. by adding a column or building an index.
+ *
+ * @see com.thundercats.queuer.database.MigrationRegistry
+ */
+public abstract class Migration {
+
+    /**
+     * The database version this step upgrades to.
+     */
+    private final int version;
+
+    /**
+     * Constructs a step that upgrades to {@code version}.
+     *
+     * @param version The database version this step upgrades to.
+     */
+    protected Migration(int version) {
+        this.version = version;
+    }
+
+    /**
+     * Returns the database version this step upgrades to.
+     *
+     * @return The database version this step upgrades to.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Upgrades the schema in place. Called inside the upgrade transaction,
+     * so this must not begin or end transactions itself.
+     *
+     * @param database The database being upgraded.
+     */
+    public abstract void migrate(SQLiteDatabase database);
+}
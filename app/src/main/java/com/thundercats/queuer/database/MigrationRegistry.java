@@ -0,0 +1,152 @@
+package com.thundercats.queuer.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.HashMap;
+
+/**
+ * The ordered list of upgrade steps for one database.
+ * <p/>
+ * {@link #upgrade(SQLiteDatabase, int, int)} runs every registered
+ * {@link com.thundercats.queuer.database.Migration} between the old and new version,
+ * in order. It is called from {@code SQLiteOpenHelper#onUpgrade}, which already wraps
+ * it in a single transaction, so either every step is applied or none is.
+ * <p/>
+ * Steps that have to rewrite many rows schedule a
+ * {@link com.thundercats.queuer.database.Backfill} instead, which
+ * {@link #runPendingBackfills(SQLiteDatabase)} runs in resumable batches.
+ */
+public class MigrationRegistry {
+
+    /**
+     * The table that stores how far each scheduled backfill has got.
+     */
+    private static final String TABLE_BACKFILLS = "backfills";
+    private static final String COLUMN_NAME = "name";
+    private static final String COLUMN_LAST_ID = "last_id";
+    private static final String COLUMN_DONE = "done";
+
+    // Backfill progress table creation sql statement
+    private static final String BACKFILLS_CREATE = "create table if not exists "
+            + TABLE_BACKFILLS + "("
+            + COLUMN_NAME + " text primary key, "
+            + COLUMN_LAST_ID + " integer not null, "
+            + COLUMN_DONE + " integer not null"
+            + ");";
+
+    /**
+     * The upgrade steps, keyed by the version they upgrade to.
+     */
+    private final SparseArray<Migration> migrations = new SparseArray<Migration>();
+
+    /**
+     * The backfills steps may schedule, keyed by name.
+     */
+    private final HashMap<String, Backfill> backfills = new HashMap<String, Backfill>();
+
+    /**
+     * Registers an upgrade step.
+     *
+     * @param migration The step; only one step may upgrade to a given version.
+     * @return This registry, for chaining.
+     */
+    public MigrationRegistry add(Migration migration) {
+        if (migrations.get(migration.getVersion()) != null)
+            throw new IllegalArgumentException("Two migrations to version " + migration.getVersion());
+        migrations.put(migration.getVersion(), migration);
+        return this;
+    }
+
+    /**
+     * Registers a backfill that upgrade steps may schedule.
+     *
+     * @param backfill The backfill.
+     * @return This registry, for chaining.
+     */
+    public MigrationRegistry add(Backfill backfill) {
+        backfills.put(backfill.getName(), backfill);
+        return this;
+    }
+
+    /**
+     * Runs every step that upgrades past {@code oldVersion}, up to and including
+     * {@code newVersion}, in order.
+     *
+     * @param database   The database being upgraded.
+     * @param oldVersion The version the database is at.
+     * @param newVersion The version the database is upgraded to.
+     * @throws IllegalStateException If there is no step to one of the versions in between.
+     */
+    public void upgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            Migration migration = migrations.get(version);
+            if (migration == null)
+                throw new IllegalStateException("No migration to version " + version);
+            Log.i(MigrationRegistry.class.getName(), "Migrating database to version " + version);
+            migration.migrate(database);
+        }
+    }
+
+    /**
+     * Schedules a backfill to run the next time the database is opened.
+     * Called by upgrade steps, inside the upgrade transaction.
+     *
+     * @param database The database being upgraded.
+     * @param name     The name of a backfill registered with {@link #add(Backfill)}.
+     */
+    public static void scheduleBackfill(SQLiteDatabase database, String name) {
+        database.execSQL(BACKFILLS_CREATE);
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_NAME, name);
+        values.put(COLUMN_LAST_ID, 0);
+        values.put(COLUMN_DONE, 0);
+        database.insertWithOnConflict(TABLE_BACKFILLS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Runs every scheduled backfill that has not finished, one batch per transaction.
+     * Should be called from {@code SQLiteOpenHelper#onOpen}.
+     *
+     * @param database The opened, writable database.
+     */
+    public void runPendingBackfills(SQLiteDatabase database) {
+        database.execSQL(BACKFILLS_CREATE);
+        Cursor cursor = database.query(TABLE_BACKFILLS,
+                new String[]{COLUMN_NAME, COLUMN_LAST_ID},
+                COLUMN_DONE + " = 0", null, null, null, null);
+        HashMap<String, Long> pending = new HashMap<String, Long>();
+        while (cursor.moveToNext()) {
+            pending.put(cursor.getString(0), cursor.getLong(1));
+        }
+        cursor.close();
+
+        for (String name : pending.keySet()) {
+            Backfill backfill = backfills.get(name);
+            if (backfill == null) {
+                Log.w(MigrationRegistry.class.getName(), "Skipping unknown backfill " + name);
+                continue;
+            }
+            long lastId = pending.get(name);
+            long startTime = System.currentTimeMillis();
+            while (lastId >= 0) {
+                database.beginTransaction();
+                try {
+                    lastId = backfill.runBatch(database, lastId);
+                    ContentValues values = new ContentValues();
+                    if (lastId >= 0) values.put(COLUMN_LAST_ID, lastId);
+                    else values.put(COLUMN_DONE, 1);
+                    database.update(TABLE_BACKFILLS, values, COLUMN_NAME + " = ?", new String[]{name});
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+            }
+            Log.i(MigrationRegistry.class.getName(), "Backfill " + name + " finished in "
+                    + (System.currentTimeMillis() - startTime) + " ms");
+        }
+    }
+}
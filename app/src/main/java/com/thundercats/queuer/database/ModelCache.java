@@ -0,0 +1,181 @@
+package com.thundercats.queuer.database;
+
+import android.support.v4.util.LruCache;
+
+import com.thundercats.queuer.models.Project;
+import com.thundercats.queuer.models.Task;
+
+/**
+ * The newest {@link com.thundercats.queuer.models.Task}s and
+ * {@link com.thundercats.queuer.models.Project}s the main thread has seen, by local ID, so a
+ * screen can show a row at once while it is loaded again.
+ * <p/>
+ * Objects only get in here on the main thread: the
+ * {@link com.thundercats.queuer.managers.DataManager} puts each result in when it delivers it,
+ * and puts each {@code Task} or {@code Project} it changes in memory. The data sources read
+ * every row into a new object and never change a cached one; they only drop the entries of
+ * rows they delete. A cached object may be shown by a screen, so it must only be changed on
+ * the main thread.
+ * <p/>
+ * Both maps are LRUs, sized above what the screens hold at once. The single instance is
+ * owned by {@link DatabaseManager}. Thread-safe.
+ */
+public class ModelCache {
+
+    /**
+     * The most {@code Task}s kept. A project screen holds a few hundred at a time.
+     */
+    private static final int MAX_TASKS = 2000;
+
+    /**
+     * The most {@code Project}s kept.
+     */
+    private static final int MAX_PROJECTS = 500;
+
+    private final LruCache<Integer, Task> tasks = new LruCache<Integer, Task>(MAX_TASKS);
+
+    private final LruCache<Integer, Project> projects = new LruCache<Integer, Project>(MAX_PROJECTS);
+
+    /**
+     * Returns the cached {@code Task} with a local ID.
+     *
+     * @param localId The local ID of the {@code Task}.
+     * @return The cached {@code Task}, or null on a miss.
+     */
+    public Task getTask(int localId) {
+        return tasks.get(localId);
+    }
+
+    /**
+     * Makes a {@code Task} the newest one for its local ID. Call on the main thread.
+     *
+     * @param task The {@code Task}, as just delivered or changed.
+     */
+    public void putTask(Task task) {
+        tasks.put(task.getLocalId(), task);
+    }
+
+    /**
+     * Forgets the {@code Task} with a local ID, e.g. after its row was deleted.
+     *
+     * @param localId The local ID of the {@code Task}.
+     */
+    public void removeTask(int localId) {
+        tasks.remove(localId);
+    }
+
+    /**
+     * Forgets every {@code Task} of a {@code Project}, e.g. after it was deleted.
+     *
+     * @param projectLocalId The local ID of the {@code Project}.
+     */
+    public void removeTasksOf(int projectLocalId) {
+        for (Task task : tasks.snapshot().values()) {
+            if (task.getProjectLocalId() == projectLocalId) tasks.remove(task.getLocalId());
+        }
+    }
+
+    /**
+     * Returns the cached {@code Project} with a local ID.
+     *
+     * @param localId The local ID of the {@code Project}.
+     * @return The cached {@code Project}, or null on a miss.
+     */
+    public Project getProject(int localId) {
+        return projects.get(localId);
+    }
+
+    /**
+     * Makes a {@code Project} the newest one for its local ID. Call on the main thread.
+     *
+     * @param project The {@code Project}, as just delivered or changed.
+     */
+    public void putProject(Project project) {
+        projects.put(project.getLocalId(), project);
+    }
+
+    /**
+     * Forgets a {@code Project} and its {@code Task}s, e.g. after it was deleted.
+     *
+     * @param localId The local ID of the {@code Project}.
+     */
+    public void removeProject(int localId) {
+        projects.remove(localId);
+        removeTasksOf(localId);
+    }
+
+    /**
+     * Forgets everything, e.g. after every row was deleted.
+     */
+    public void clear() {
+        tasks.evictAll();
+        projects.evictAll();
+    }
+
+    /**
+     * Returns how many {@code Task} lookups were served from memory.
+     *
+     * @return How many {@code Task} lookups were served from memory.
+     */
+    public int getTaskHits() {
+        return tasks.hitCount();
+    }
+
+    /**
+     * Returns how many {@code Task} lookups found nothing in memory.
+     *
+     * @return How many {@code Task} lookups found nothing in memory.
+     */
+    public int getTaskMisses() {
+        return tasks.missCount();
+    }
+
+    /**
+     * Returns how many {@code Task}s were dropped to stay within {@link #MAX_TASKS}.
+     *
+     * @return How many {@code Task}s were dropped to stay within {@link #MAX_TASKS}.
+     */
+    public int getTaskEvictions() {
+        return tasks.evictionCount();
+    }
+
+    /**
+     * Returns how many {@code Project} lookups were served from memory.
+     *
+     * @return How many {@code Project} lookups were served from memory.
+     */
+    public int getProjectHits() {
+        return projects.hitCount();
+    }
+
+    /**
+     * Returns how many {@code Project} lookups found nothing in memory.
+     *
+     * @return How many {@code Project} lookups found nothing in memory.
+     */
+    public int getProjectMisses() {
+        return projects.missCount();
+    }
+
+    /**
+     * Returns how many {@code Project}s were dropped to stay within {@link #MAX_PROJECTS}.
+     *
+     * @return How many {@code Project}s were dropped to stay within {@link #MAX_PROJECTS}.
+     */
+    public int getProjectEvictions() {
+        return projects.evictionCount();
+    }
+
+    /**
+     * Returns the size, hits, misses and evictions of both maps, for logging.
+     */
+    @Override
+    public String toString() {
+        return "ModelCache[tasks " + tasks.size() + "/" + tasks.maxSize()
+                + " hits=" + tasks.hitCount() + " misses=" + tasks.missCount()
+                + " evictions=" + tasks.evictionCount()
+                + ", projects " + projects.size() + "/" + projects.maxSize()
+                + " hits=" + projects.hitCount() + " misses=" + projects.missCount()
+                + " evictions=" + projects.evictionCount() + "]";
+    }
+}
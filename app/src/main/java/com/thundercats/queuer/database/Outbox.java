@@ -0,0 +1,243 @@
+package com.thundercats.queuer.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+
+/**
+ * The durable queue of {@code Task} changes the server has not acknowledged yet.
+ * <p/>
+ * There is at most one entry per {@code Task}, so repeated edits coalesce: ten renames are
+ * one update, and the request is built from the row as it is when the entry is sent. An
+ * entry's version counts the edits recorded into it; an acknowledgement only removes the
+ * entry if nothing was recorded while its request was in flight.
+ * <p/>
+ * An {@code Outbox} works on the connection of the
+ * {@link com.thundercats.queuer.database.TaskDataSource} that owns it, so an edit and its
+ * entry are written by the same writer, in the same transaction where there is one.
+ */
+public class Outbox {
+
+    public static final String TABLE_OUTBOX = "outbox";
+    public static final String COLUMN_ID = "_id";
+    public static final String COLUMN_TASK_LOCAL_ID = "task_local_id";
+    public static final String COLUMN_OPERATION = "operation";
+    public static final String COLUMN_SERVER_ID = "server_id";
+    public static final String COLUMN_VERSION = "version";
+    public static final String COLUMN_ATTEMPTS = "attempts";
+    public static final String COLUMN_NEXT_ATTEMPT = "next_attempt";
+
+    /**
+     * The {@code Task} is not on the server yet.
+     */
+    public static final String OPERATION_CREATE = "create";
+
+    /**
+     * The {@code Task} is on the server, but changed since.
+     */
+    public static final String OPERATION_UPDATE = "update";
+
+    /**
+     * The {@code Task} was deleted locally; the entry keeps its server ID.
+     */
+    public static final String OPERATION_DELETE = "delete";
+
+    // Outbox table creation sql statement. There is no foreign key on the task, since a
+    // delete entry has to outlive its row.
+    static final String OUTBOX_CREATE = "create table " + TABLE_OUTBOX + "("
+            + COLUMN_ID + " integer primary key autoincrement, "
+            + COLUMN_TASK_LOCAL_ID + " integer not null unique, "
+            + COLUMN_OPERATION + " text not null, "
+            + COLUMN_SERVER_ID + " integer not null default 0, "
+            + COLUMN_VERSION + " integer not null default 0, "
+            + COLUMN_ATTEMPTS + " integer not null default 0, "
+            + COLUMN_NEXT_ATTEMPT + " integer not null default 0"
+            + ");";
+
+    // Adds an entry unless the task already has one, which keeps its operation
+    private static final String ADD_ENTRY_SQL = "INSERT OR IGNORE INTO " + TABLE_OUTBOX + " ("
+            + COLUMN_TASK_LOCAL_ID + ", " + COLUMN_OPERATION + ") VALUES (?, ?)";
+
+    private static final String BUMP_VERSION_SQL = "UPDATE " + TABLE_OUTBOX + " SET "
+            + COLUMN_VERSION + " = " + COLUMN_VERSION + " + 1 WHERE " + COLUMN_TASK_LOCAL_ID + " = ?";
+
+    // Each due entry with the row of its task, if the task still exists
+    private static final String DUE_ENTRIES_SQL = "SELECT o." + COLUMN_ID + ", o." + COLUMN_TASK_LOCAL_ID
+            + ", o." + COLUMN_OPERATION + ", o." + COLUMN_SERVER_ID + ", o." + COLUMN_VERSION
+            + ", o." + COLUMN_ATTEMPTS + ", t." + TaskOpenHelper.COLUMN_ID
+            + ", t." + TaskOpenHelper.COLUMN_SERVER_ID + ", t." + TaskOpenHelper.COLUMN_TEXT
+            + ", t." + TaskOpenHelper.COLUMN_COMPLETED + ", t." + TaskOpenHelper.COLUMN_POSITION
+            + ", p." + ProjectOpenHelper.COLUMN_SERVER_ID
+            + " FROM " + TABLE_OUTBOX + " o"
+            + " LEFT JOIN " + TaskOpenHelper.TABLE_TASKS + " t ON t." + TaskOpenHelper.COLUMN_ID
+            + " = o." + COLUMN_TASK_LOCAL_ID
+            + " LEFT JOIN " + ProjectOpenHelper.TABLE_PROJECTS + " p ON p." + ProjectOpenHelper.COLUMN_LOCAL_ID
+            + " = t." + TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID
+            + " WHERE o." + COLUMN_NEXT_ATTEMPT + " <= ?"
+            + " ORDER BY o." + COLUMN_ID + " LIMIT ?";
+
+    private final SQLiteDatabase database;
+
+    // Compiled on first use and kept until close(), since a renumbering records every task
+    private SQLiteStatement addEntry;
+    private SQLiteStatement bumpVersion;
+
+    Outbox(SQLiteDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Releases the compiled statements.
+     */
+    void close() {
+        if (addEntry != null) addEntry.close();
+        if (bumpVersion != null) bumpVersion.close();
+        addEntry = null;
+        bumpVersion = null;
+    }
+
+    /**
+     * Records that a {@code Task} was just inserted.
+     *
+     * @param taskLocalId The local ID of the new {@code Task}.
+     */
+    void recordCreate(int taskLocalId) {
+        record(taskLocalId, OPERATION_CREATE);
+    }
+
+    /**
+     * Records that a {@code Task} changed. Coalesces with any entry the {@code Task} already has.
+     *
+     * @param taskLocalId The local ID of the changed {@code Task}.
+     */
+    void recordUpdate(int taskLocalId) {
+        record(taskLocalId, OPERATION_UPDATE);
+    }
+
+    /**
+     * Records that a {@code Task} was deleted, replacing any entry it had. A {@code Task}
+     * that never reached the server leaves nothing behind.
+     *
+     * @param taskLocalId The local ID of the deleted {@code Task}.
+     * @param serverId    The server ID the {@code Task} had, or 0 if it had none.
+     */
+    void recordDelete(int taskLocalId, long serverId) {
+        database.delete(TABLE_OUTBOX, COLUMN_TASK_LOCAL_ID + " = ?", new String[]{String.valueOf(taskLocalId)});
+        if (serverId == 0) return;
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_TASK_LOCAL_ID, taskLocalId);
+        values.put(COLUMN_OPERATION, OPERATION_DELETE);
+        values.put(COLUMN_SERVER_ID, serverId);
+        database.insert(TABLE_OUTBOX, null, values);
+    }
+
+    private void record(int taskLocalId, String operation) {
+        if (addEntry == null) {
+            addEntry = database.compileStatement(ADD_ENTRY_SQL);
+            bumpVersion = database.compileStatement(BUMP_VERSION_SQL);
+        }
+        addEntry.bindLong(1, taskLocalId);
+        addEntry.bindString(2, operation);
+        addEntry.execute();
+        bumpVersion.bindLong(1, taskLocalId);
+        bumpVersion.execute();
+    }
+
+    /**
+     * Returns the oldest entries whose next attempt is due.
+     *
+     * @param now   The current time in milliseconds since the epoch.
+     * @param limit The most entries to return.
+     * @return The due entries, oldest first, each with a snapshot of its {@code Task}.
+     */
+    public ArrayList<OutboxEntry> getDueEntries(long now, int limit) {
+        Cursor cursor = database.rawQuery(DUE_ENTRIES_SQL,
+                new String[]{String.valueOf(now), String.valueOf(limit)});
+        ArrayList<OutboxEntry> entries = new ArrayList<OutboxEntry>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                boolean taskExists = !cursor.isNull(6);
+                String operation = cursor.getString(2);
+                entries.add(new OutboxEntry(cursor.getLong(0), cursor.getInt(1), operation,
+                        OPERATION_DELETE.equals(operation) ? cursor.getLong(3) : cursor.getLong(7),
+                        cursor.getInt(4), cursor.getInt(5), taskExists,
+                        cursor.getString(8), cursor.getInt(9) == 1, cursor.getLong(10), cursor.getLong(11)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return entries;
+    }
+
+    /**
+     * Returns when the next entry is due.
+     *
+     * @return The earliest next attempt in milliseconds since the epoch, or -1 if the outbox is empty.
+     */
+    public long getNextAttempt() {
+        Cursor cursor = database.rawQuery("SELECT MIN(" + COLUMN_NEXT_ATTEMPT + ") FROM " + TABLE_OUTBOX, null);
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Removes an entry the server accepted, unless the {@code Task} was edited while the
+     * request was in flight. If the server assigned an ID to a {@code Task} that had none,
+     * the ID is written to the {@code Task}'s row; if the {@code Task} was deleted in the
+     * meantime, a delete entry is recorded with the new ID instead.
+     *
+     * @param entry    The entry that was sent.
+     * @param serverId The ID the server assigned, or 0 if the response carried none.
+     */
+    public void acknowledge(OutboxEntry entry, long serverId) {
+        String[] localId = new String[]{String.valueOf(entry.getTaskLocalId())};
+        database.beginTransaction();
+        try {
+            if (entry.getServerId() == 0 && serverId != 0) {
+                ContentValues values = new ContentValues();
+                values.put(TaskOpenHelper.COLUMN_SERVER_ID, serverId);
+                int updated = database.update(TaskOpenHelper.TABLE_TASKS, values,
+                        TaskOpenHelper.COLUMN_ID + " = ?", localId);
+                if (updated == 0) recordDelete(entry.getTaskLocalId(), serverId);
+            }
+            String[] sent = new String[]{String.valueOf(entry.getId()), String.valueOf(entry.getVersion())};
+            int removed = database.delete(TABLE_OUTBOX, COLUMN_ID + " = ? AND " + COLUMN_VERSION + " = ?", sent);
+            if (removed == 0 && OPERATION_CREATE.equals(entry.getOperation())) {
+                // edited while the create was in flight; the server has the task now
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_OPERATION, OPERATION_UPDATE);
+                database.update(TABLE_OUTBOX, values, COLUMN_ID + " = ? AND " + COLUMN_OPERATION + " = ?",
+                        new String[]{String.valueOf(entry.getId()), OPERATION_CREATE});
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    /**
+     * Puts an entry off after a failed attempt.
+     *
+     * @param entry       The entry that failed.
+     * @param nextAttempt When to try it again, in milliseconds since the epoch.
+     */
+    public void retryLater(OutboxEntry entry, long nextAttempt) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_ATTEMPTS, entry.getAttempts() + 1);
+        values.put(COLUMN_NEXT_ATTEMPT, nextAttempt);
+        database.update(TABLE_OUTBOX, values, COLUMN_ID + " = ?", new String[]{String.valueOf(entry.getId())});
+    }
+
+    /**
+     * Drops every entry.
+     */
+    void clear() {
+        database.delete(TABLE_OUTBOX, "1", null);
+    }
+}
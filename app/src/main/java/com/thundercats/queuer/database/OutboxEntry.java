@@ -0,0 +1,138 @@
+package com.thundercats.queuer.database;
+
+/**
+ * One pending {@code Task} change and a snapshot of the {@code Task}'s row, taken when the
+ * entry was read, to build its request from.
+ *
+ * @see Outbox#getDueEntries(long, int)
+ */
+public final class OutboxEntry {
+
+    private final long id;
+    private final int taskLocalId;
+    private final String operation;
+    private final long serverId;
+    private final int version;
+    private final int attempts;
+    private final boolean taskExists;
+    private final String name;
+    private final boolean finished;
+    private final long position;
+    private final long projectServerId;
+
+    OutboxEntry(long id, int taskLocalId, String operation, long serverId, int version, int attempts,
+                boolean taskExists, String name, boolean finished, long position, long projectServerId) {
+        this.id = id;
+        this.taskLocalId = taskLocalId;
+        this.operation = operation;
+        this.serverId = serverId;
+        this.version = version;
+        this.attempts = attempts;
+        this.taskExists = taskExists;
+        this.name = name;
+        this.finished = finished;
+        this.position = position;
+        this.projectServerId = projectServerId;
+    }
+
+    /**
+     * Returns the ID of this entry.
+     *
+     * @return The ID of this entry.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Returns the local ID of the {@code Task} this entry is for.
+     *
+     * @return The local ID of the {@code Task}.
+     */
+    public int getTaskLocalId() {
+        return taskLocalId;
+    }
+
+    /**
+     * Returns what has to be sent: {@link Outbox#OPERATION_CREATE}, {@link Outbox#OPERATION_UPDATE}
+     * or {@link Outbox#OPERATION_DELETE}.
+     *
+     * @return What has to be sent.
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * Returns the server ID of the {@code Task}.
+     *
+     * @return The server ID of the {@code Task}, or 0 if it has none yet.
+     */
+    public long getServerId() {
+        return serverId;
+    }
+
+    /**
+     * Returns how many edits had been recorded into this entry when it was read.
+     *
+     * @return How many edits had been recorded into this entry.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns how many attempts to send this entry have failed.
+     *
+     * @return How many attempts to send this entry have failed.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Returns whether the {@code Task}'s row still existed when this entry was read.
+     * Only a delete entry is left once the row is gone.
+     *
+     * @return Whether the {@code Task}'s row still existed.
+     */
+    public boolean taskExists() {
+        return taskExists;
+    }
+
+    /**
+     * Returns the {@code Task}'s name.
+     *
+     * @return The {@code Task}'s name, or null if its row is gone.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns whether the {@code Task} is finished.
+     *
+     * @return Whether the {@code Task} is finished.
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Returns the {@code Task}'s position.
+     *
+     * @return The {@code Task}'s position.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the server ID of the {@code Task}'s {@code Project}.
+     *
+     * @return The server ID of the {@code Project}, or 0 if it is not on the server yet.
+     */
+    public long getProjectServerId() {
+        return projectServerId;
+    }
+}
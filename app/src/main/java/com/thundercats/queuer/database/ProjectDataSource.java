@@ -5,11 +5,14 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 import com.thundercats.queuer.models.Project;
+import com.thundercats.queuer.models.Task;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 
 /**
@@ -20,7 +23,8 @@ import java.util.Date;
 public class ProjectDataSource {
     // Database fields
     private SQLiteDatabase database;
-    private ProjectOpenHelper dbHelper;
+    private DatabaseManager databaseManager;
+    private ModelCache cache;
     private String[] allColumns = {ProjectOpenHelper.COLUMN_LOCAL_ID,
             ProjectOpenHelper.COLUMN_SERVER_ID,
             ProjectOpenHelper.COLUMN_COLOR,
@@ -29,25 +33,51 @@ public class ProjectDataSource {
             ProjectOpenHelper.COLUMN_HIDDEN,
             ProjectOpenHelper.COLUMN_TITLE};
 
+    // Every project with its aggregates and its first unfinished task, in one pass.
+    // The aggregates are kept up to date by triggers, so no task is counted here.
+    private static final String FEED_PROJECTS_SQL = "SELECT p.*, "
+            + "h." + TaskOpenHelper.COLUMN_ID + " AS head_local_id, "
+            + "h." + TaskOpenHelper.COLUMN_SERVER_ID + " AS head_server_id, "
+            + "h." + TaskOpenHelper.COLUMN_TEXT + " AS head_text, "
+            + "h." + TaskOpenHelper.COLUMN_POSITION + " AS head_position, "
+            + "h." + TaskOpenHelper.COLUMN_CREATED + " AS head_created_at, "
+            + "h." + TaskOpenHelper.COLUMN_UPDATED + " AS head_updated_at "
+            + "FROM " + ProjectOpenHelper.TABLE_PROJECTS + " p "
+            + "LEFT JOIN " + TaskOpenHelper.TABLE_TASKS + " h ON h." + TaskOpenHelper.COLUMN_ID
+            + " = p." + ProjectOpenHelper.COLUMN_HEAD_TASK_ID + " "
+            + "ORDER BY p." + ProjectOpenHelper.COLUMN_LOCAL_ID;
+
+    // Inserts one row; compiled once per batch
+    private static final String INSERT_PROJECT_SQL = "INSERT INTO " + ProjectOpenHelper.TABLE_PROJECTS + " ("
+            + ProjectOpenHelper.COLUMN_SERVER_ID + ", "
+            + ProjectOpenHelper.COLUMN_COLOR + ", "
+            + ProjectOpenHelper.COLUMN_CREATED + ", "
+            + ProjectOpenHelper.COLUMN_UPDATED + ", "
+            + ProjectOpenHelper.COLUMN_HIDDEN + ", "
+            + ProjectOpenHelper.COLUMN_TITLE + ") VALUES (?, ?, ?, ?, ?, ?)";
+
     /**
-     * Initializes the {@link com.thundercats.queuer.database.ProjectOpenHelper}.
+     * Looks up the application's {@link com.thundercats.queuer.database.DatabaseManager}.
      */
     public ProjectDataSource(Context context) {
-        dbHelper = new ProjectOpenHelper(context);
+        databaseManager = DatabaseManager.getInstance(context);
+        cache = databaseManager.getModelCache();
     }
 
     /**
-     * Initializes the {@code SQLiteDatabase}.
+     * Gets the shared {@code SQLiteDatabase}, opening it only if no one has yet.
      */
     public void open() throws SQLException {
-        database = dbHelper.getWritableDatabase();
+        database = databaseManager.getDatabase();
     }
 
     /**
-     * Closes the {@link com.thundercats.queuer.database.ProjectOpenHelper}.
+     * Releases this data source's handle. The shared connection stays open
+     * for the next data source; it is owned by the
+     * {@link com.thundercats.queuer.database.DatabaseManager}.
      */
     public void close() {
-        dbHelper.close();
+        database = null;
     }
 
     /**
@@ -55,6 +85,7 @@ public class ProjectDataSource {
      */
     public void deleteAllProjects() {
         database.delete(ProjectOpenHelper.TABLE_PROJECTS, "1", null);
+        cache.clear();
     }
 
     /**
@@ -104,11 +135,49 @@ public class ProjectDataSource {
         // move the cursor to the first row
         cursor.moveToFirst();
         // Create a project from the cursor
-        Project newProject = cursorToProject(cursor);
+        Project newProject = new ProjectRowMapper(cursor).map(cursor);
         cursor.close();
         return newProject;
     }
 
+    /**
+     * Writes many {@code Project}s at once. All rows are inserted in a single transaction
+     * through one compiled statement, and the returned {@code Project}s are built from the
+     * new row IDs instead of being read back.
+     *
+     * @param drafts The {@code Project}s to write; their local IDs are ignored.
+     * @return The written {@code Project}s with their new local IDs, in the order of {@code drafts}.
+     */
+    public ArrayList<Project> createProjects(Collection<Project> drafts) {
+        ArrayList<Project> created = new ArrayList<Project>(drafts.size());
+        SQLiteStatement statement = database.compileStatement(INSERT_PROJECT_SQL);
+        database.beginTransaction();
+        try {
+            for (Project draft : drafts) {
+                statement.bindLong(1, draft.getId());
+                statement.bindLong(2, draft.getColor());
+                bindDate(statement, 3, draft.getCreated_at());
+                bindDate(statement, 4, draft.getUpdated_at());
+                statement.bindLong(5, draft.isHidden() ? 1 : 0);
+                statement.bindString(6, draft.getTitle());
+                long localId = statement.executeInsert();
+                if (localId == -1) throw new SQLException("Could not insert project " + draft.getTitle());
+                created.add(new Project((int) localId, draft.getId(), draft.getTitle(), draft.getColor(),
+                        draft.isHidden(), draft.getCreated_at(), draft.getUpdated_at()));
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            statement.close();
+        }
+        return created;
+    }
+
+    private static void bindDate(SQLiteStatement statement, int index, Date date) {
+        if (date == null) statement.bindNull(index);
+        else statement.bindLong(index, date.getTime());
+    }
+
     /**
      * Queries all the columns in the database, given a whereClause.
      *
@@ -137,7 +206,8 @@ public class ProjectDataSource {
      * In theory, only one {@code Project} should be deleted since
      * no two {@code Project}s should have the same local ID.
      *
-     * @param project The {@code Task}s associated with {@code project} are not deleted.
+     * @param project The {@code Project} to delete. Its {@code Task}s are deleted with it
+     *                by the foreign key on {@link TaskOpenHelper#COLUMN_PROJECT_LOCAL_ID}.
      */
     public void deleteProject(Project project) {
         long id = project.getLocalId();
@@ -145,6 +215,19 @@ public class ProjectDataSource {
         database.delete(ProjectOpenHelper.TABLE_PROJECTS,
                 ProjectOpenHelper.COLUMN_LOCAL_ID + " = " + id,
                 null);
+        cache.removeProject(project.getLocalId());
+    }
+
+    /**
+     * Returns the {@code Project} with a local ID, as it is in the database.
+     *
+     * @param localId The local ID of the {@code Project}.
+     * @return The {@code Project}, or null if there is no such {@code Project}.
+     */
+    public Project getProject(int localId) {
+        Cursor cursor = query(ProjectOpenHelper.COLUMN_LOCAL_ID + " = " + localId);
+        ArrayList<Project> projects = new ProjectRowMapper(cursor).readAll(cursor);
+        return projects.isEmpty() ? null : projects.get(0);
     }
 
     /**
@@ -153,44 +236,48 @@ public class ProjectDataSource {
      * @return A list of all {@code Project}s in the database.
      */
     public ArrayList<Project> getAllProjects() {
-
-        // Initialize an empty list of projects
-        ArrayList<Project> projects = new ArrayList<Project>();
-
-        // Get a cursor over the entire database
         Cursor cursor = query(null);
-
-        // Move the cursor to the first row
-        cursor.moveToFirst();
-
-        // While there are still rows left for the cursor to scan...
-        while (!cursor.isAfterLast()) {
-            // Read the current row as a Project and add it to list
-            projects.add(cursorToProject(cursor));
-            // Move cursor to next row and repeat
-            cursor.moveToNext();
-        }
-        // Close the cursor
-        cursor.close();
-        return projects;
+        return new ProjectRowMapper(cursor).readAll(cursor);
     }
 
     /**
-     * Returns a {@code Project} parsed from the given {@code Cursor}.
+     * Returns every {@code Project} with its {@code Task} counts, last activity and first
+     * unfinished {@code Task} filled in, read from one pre-aggregated row per {@code Project}.
      *
-     * @param cursor Reads the cells in the current row and writes
-     *               them into a new {@code Project}'s fields.
-     * @return A {@code Project} parsed from the given {@code Cursor}.
+     * @return Every {@code Project} in the database, in the order they were created.
+     * @see com.thundercats.queuer.models.Project#getHeadTask()
      */
-    private Project cursorToProject(Cursor cursor) {
-        int localID = cursor.getInt(cursor.getColumnIndex(ProjectOpenHelper.COLUMN_LOCAL_ID));
-        int serverID = cursor.getInt(cursor.getColumnIndex(ProjectOpenHelper.COLUMN_SERVER_ID));
-        String title = cursor.getString(cursor.getColumnIndex(ProjectOpenHelper.COLUMN_TITLE));
-        int color = cursor.getInt(cursor.getColumnIndex(ProjectOpenHelper.COLUMN_COLOR));
-        boolean isHidden = cursor.getInt(cursor.getColumnIndex(ProjectOpenHelper.COLUMN_HIDDEN)) == 1;
-        Date created = new Date(cursor.getLong(cursor.getColumnIndex(ProjectOpenHelper.COLUMN_CREATED)));
-        Date updated = new Date(cursor.getLong(cursor.getColumnIndex(ProjectOpenHelper.COLUMN_UPDATED)));
-        return new Project(localID, serverID, title, color, isHidden, created, updated);
+    public ArrayList<Project> getFeedProjects() {
+        ArrayList<Project> projects = new ArrayList<Project>();
+        Cursor cursor = database.rawQuery(FEED_PROJECTS_SQL, null);
+        ProjectRowMapper projectMapper = new ProjectRowMapper(cursor);
+        int taskCountColumn = cursor.getColumnIndex(ProjectOpenHelper.COLUMN_TASK_COUNT);
+        int unfinishedCountColumn = cursor.getColumnIndex(ProjectOpenHelper.COLUMN_UNFINISHED_COUNT);
+        int lastActivityColumn = cursor.getColumnIndex(ProjectOpenHelper.COLUMN_LAST_ACTIVITY);
+        int headLocalIdColumn = cursor.getColumnIndex("head_local_id");
+        int headServerIdColumn = cursor.getColumnIndex("head_server_id");
+        int headTextColumn = cursor.getColumnIndex("head_text");
+        int headPositionColumn = cursor.getColumnIndex("head_position");
+        int headCreatedColumn = cursor.getColumnIndex("head_created_at");
+        int headUpdatedColumn = cursor.getColumnIndex("head_updated_at");
+        while (cursor.moveToNext()) {
+            Project project = projectMapper.map(cursor);
+            project.setTaskCount(cursor.getInt(taskCountColumn));
+            project.setUnfinishedCount(cursor.getInt(unfinishedCountColumn));
+            project.setLastActivity(RowMapper.readDate(cursor, lastActivityColumn));
+            if (cursor.isNull(headLocalIdColumn)) {
+                project.setHeadTask(null);
+            } else {
+                project.setHeadTask(new Task(cursor.getInt(headLocalIdColumn),
+                        cursor.getInt(headServerIdColumn), project.getId(), project.getLocalId(),
+                        cursor.getString(headTextColumn), false, cursor.getLong(headPositionColumn),
+                        RowMapper.readDate(cursor, headCreatedColumn),
+                        RowMapper.readDate(cursor, headUpdatedColumn)));
+            }
+            projects.add(project);
+        }
+        cursor.close();
+        return projects;
     }
 
     /**
@@ -3,9 +3,11 @@ package com.thundercats.queuer.database;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.util.Log;
 
 /**
+ * Opens the legacy {@code projects.db} file, which held the {@code projects} table before it moved into
+ * {@link com.thundercats.queuer.database.QueuerOpenHelper}'s database. It is only used to
+ * import an old install's rows; the column names below are used for both databases.
  * Created by eschrock on 1/21/14.
  */
 public class ProjectOpenHelper extends SQLiteOpenHelper {
@@ -20,7 +22,14 @@ public class ProjectOpenHelper extends SQLiteOpenHelper {
     public static final String COLUMN_UPDATED = "updated_at";
     public static final String COLUMN_HIDDEN = "hidden";
 
-    private static final String DATABASE_NAME = "projects.db";
+    // PROJECT AGGREGATES, kept up to date by triggers on the tasks table.
+    // Only exist in the merged database.
+    public static final String COLUMN_TASK_COUNT = "task_count";
+    public static final String COLUMN_UNFINISHED_COUNT = "unfinished_count";
+    public static final String COLUMN_HEAD_TASK_ID = "head_task_id";
+    public static final String COLUMN_LAST_ACTIVITY = "last_activity";
+
+    static final String DATABASE_NAME = "projects.db";
     private static final int DATABASE_VERSION = 1;
 
     // Database creation sql statement
@@ -35,6 +44,12 @@ public class ProjectOpenHelper extends SQLiteOpenHelper {
             + COLUMN_UPDATED + " integer"
             + ");";
 
+    /**
+     * Every upgrade step, in order. There are none yet; add them here instead of
+     * dropping the table.
+     */
+    private static final MigrationRegistry MIGRATIONS = new MigrationRegistry();
+
     public ProjectOpenHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
@@ -46,10 +61,12 @@ public class ProjectOpenHelper extends SQLiteOpenHelper {
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        Log.w(ProjectOpenHelper.class.getName(),
-                "Upgrading database from version " + oldVersion + " to "
-                        + newVersion + ", which will destroy all old data");
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PROJECTS);
-        onCreate(db);
+        MIGRATIONS.upgrade(db, oldVersion, newVersion);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (!db.isReadOnly()) MIGRATIONS.runPendingBackfills(db);
     }
-}
\ No newline at end of file
+}
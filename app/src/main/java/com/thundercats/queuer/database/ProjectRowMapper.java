@@ -0,0 +1,47 @@
+package com.thundercats.queuer.database;
+
+import android.database.Cursor;
+
+import com.thundercats.queuer.models.Project;
+
+/**
+ * Reads {@link com.thundercats.queuer.models.Project}s out of a {@code Cursor} over the projects table.
+ * Every row is read into a new {@code Project}, so a read never hands back, or changes, an
+ * instance another thread holds.
+ */
+class ProjectRowMapper extends RowMapper<Project> {
+
+    private final int localIdColumn;
+    private final int serverIdColumn;
+    private final int titleColumn;
+    private final int colorColumn;
+    private final int hiddenColumn;
+    private final int createdColumn;
+    private final int updatedColumn;
+
+    /**
+     * Resolves the column indexes of the {@code Cursor}.
+     *
+     * @param cursor Must contain every column of {@link ProjectOpenHelper#TABLE_PROJECTS}.
+     */
+    ProjectRowMapper(Cursor cursor) {
+        localIdColumn = cursor.getColumnIndexOrThrow(ProjectOpenHelper.COLUMN_LOCAL_ID);
+        serverIdColumn = cursor.getColumnIndexOrThrow(ProjectOpenHelper.COLUMN_SERVER_ID);
+        titleColumn = cursor.getColumnIndexOrThrow(ProjectOpenHelper.COLUMN_TITLE);
+        colorColumn = cursor.getColumnIndexOrThrow(ProjectOpenHelper.COLUMN_COLOR);
+        hiddenColumn = cursor.getColumnIndexOrThrow(ProjectOpenHelper.COLUMN_HIDDEN);
+        createdColumn = cursor.getColumnIndexOrThrow(ProjectOpenHelper.COLUMN_CREATED);
+        updatedColumn = cursor.getColumnIndexOrThrow(ProjectOpenHelper.COLUMN_UPDATED);
+    }
+
+    @Override
+    Project map(Cursor cursor) {
+        return new Project(cursor.getInt(localIdColumn),
+                cursor.getInt(serverIdColumn),
+                cursor.getString(titleColumn),
+                cursor.getInt(colorColumn),
+                cursor.getInt(hiddenColumn) == 1,
+                readDate(cursor, createdColumn),
+                readDate(cursor, updatedColumn));
+    }
+}
@@ -0,0 +1,329 @@
+package com.thundercats.queuer.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+/**
+ * Creates and opens the single local database, which holds both the {@code projects}
+ * and the {@code tasks} tables. Every {@code Task} references its {@code Project}'s
+ * local ID, so deleting a {@code Project} deletes its {@code Task}s and both tables
+ * can be written in one transaction.
+ * <p/>
+ * On an install that still has the old {@code projects.db} and {@code tasks.db} files,
+ * their rows are imported when this database is created and the old files are deleted.
+ * <p/>
+ * Every {@code Project} row also holds aggregates of its {@code Task}s: how many there are,
+ * how many are unfinished, the local ID of the first unfinished one and when one last
+ * changed. Triggers on the {@code tasks} table keep them up to date in the same
+ * transaction as the write, so the feed reads one row per {@code Project}.
+ * <p/>
+ * The {@link com.thundercats.queuer.database.Outbox} table holds the {@code Task} changes
+ * that still have to be sent to the server.
+ */
+public class QueuerOpenHelper extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "queuer.db";
+    private static final int DATABASE_VERSION = 3;
+
+    // The aggregate columns of the projects table, as created or added by migration 2
+    private static final String COLUMN_TASK_COUNT_DEF = ProjectOpenHelper.COLUMN_TASK_COUNT
+            + " integer not null default 0";
+    private static final String COLUMN_UNFINISHED_COUNT_DEF = ProjectOpenHelper.COLUMN_UNFINISHED_COUNT
+            + " integer not null default 0";
+    private static final String COLUMN_HEAD_TASK_ID_DEF = ProjectOpenHelper.COLUMN_HEAD_TASK_ID + " integer";
+    private static final String COLUMN_LAST_ACTIVITY_DEF = ProjectOpenHelper.COLUMN_LAST_ACTIVITY + " integer";
+    private static final String AGGREGATE_COLUMNS = COLUMN_TASK_COUNT_DEF + ", "
+            + COLUMN_UNFINISHED_COUNT_DEF + ", "
+            + COLUMN_HEAD_TASK_ID_DEF + ", "
+            + COLUMN_LAST_ACTIVITY_DEF;
+
+    // Projects table creation sql statement
+    private static final String PROJECTS_CREATE = "create table "
+            + ProjectOpenHelper.TABLE_PROJECTS + "("
+            + ProjectOpenHelper.COLUMN_LOCAL_ID + " integer primary key autoincrement, "
+            + ProjectOpenHelper.COLUMN_SERVER_ID + " integer, "
+            + ProjectOpenHelper.COLUMN_TITLE + " text not null, "
+            + ProjectOpenHelper.COLUMN_COLOR + " integer, "
+            + ProjectOpenHelper.COLUMN_HIDDEN + " integer, "
+            + ProjectOpenHelper.COLUMN_CREATED + " integer, "
+            + ProjectOpenHelper.COLUMN_UPDATED + " integer, "
+            + AGGREGATE_COLUMNS
+            + ");";
+
+    // Tasks table creation sql statement
+    private static final String TASKS_CREATE = "create table "
+            + TaskOpenHelper.TABLE_TASKS + "("
+            + TaskOpenHelper.COLUMN_ID + " integer primary key autoincrement, "
+            + TaskOpenHelper.COLUMN_SERVER_ID + " integer, "
+            + TaskOpenHelper.COLUMN_PROJECT_SERVER_ID + " integer, "
+            + TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID + " integer references "
+            + ProjectOpenHelper.TABLE_PROJECTS + "(" + ProjectOpenHelper.COLUMN_LOCAL_ID + ")"
+            + " on delete cascade, "
+            + TaskOpenHelper.COLUMN_TEXT + " text not null, "
+            + TaskOpenHelper.COLUMN_POSITION + " integer, "
+            + TaskOpenHelper.COLUMN_CREATED + " integer, "
+            + TaskOpenHelper.COLUMN_UPDATED + " integer, "
+            + TaskOpenHelper.COLUMN_COMPLETED + " integer"
+            + ");";
+
+    // Serves "unfinished tasks of a project, in order" and the cascade deletes
+    private static final String TASKS_INDEX_CREATE = "create index if not exists "
+            + "tasks_project_completed_position on " + TaskOpenHelper.TABLE_TASKS + "("
+            + TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID + ", "
+            + TaskOpenHelper.COLUMN_COMPLETED + ", "
+            + TaskOpenHelper.COLUMN_POSITION
+            + ");";
+
+    // The current time in milliseconds since the epoch, like the other timestamp columns
+    private static final String NOW_MILLIS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+
+    // Keep the aggregates of the affected projects up to date on every task write
+    private static final String TRIGGER_INSERT_CREATE = "create trigger if not exists "
+            + "tasks_aggregates_insert after insert on " + TaskOpenHelper.TABLE_TASKS + " begin "
+            + adjustAggregates("NEW", 1)
+            + " end;";
+
+    private static final String TRIGGER_DELETE_CREATE = "create trigger if not exists "
+            + "tasks_aggregates_delete after delete on " + TaskOpenHelper.TABLE_TASKS + " begin "
+            + adjustAggregates("OLD", -1)
+            + " end;";
+
+    private static final String TRIGGER_UPDATE_CREATE = "create trigger if not exists "
+            + "tasks_aggregates_update after update of "
+            + TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID + ", "
+            + TaskOpenHelper.COLUMN_COMPLETED + ", "
+            + TaskOpenHelper.COLUMN_POSITION + ", "
+            + TaskOpenHelper.COLUMN_TEXT
+            + " on " + TaskOpenHelper.TABLE_TASKS + " begin "
+            + adjustAggregates("OLD", -1)
+            + adjustAggregates("NEW", 1)
+            + " end;";
+
+    // Recomputes the aggregates of a range of projects from scratch
+    private static final String RECOMPUTE_AGGREGATES_SQL = "update " + ProjectOpenHelper.TABLE_PROJECTS + " set "
+            + ProjectOpenHelper.COLUMN_TASK_COUNT + " = (select count(*) from " + TaskOpenHelper.TABLE_TASKS
+            + " where " + TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID + " = " + projectsId() + "), "
+            + ProjectOpenHelper.COLUMN_UNFINISHED_COUNT + " = (select count(*) from " + TaskOpenHelper.TABLE_TASKS
+            + " where " + TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID + " = " + projectsId()
+            + " and " + TaskOpenHelper.COLUMN_COMPLETED + " = 0), "
+            + ProjectOpenHelper.COLUMN_HEAD_TASK_ID + " = " + headTaskOf(projectsId()) + ", "
+            + ProjectOpenHelper.COLUMN_LAST_ACTIVITY + " = (select max(ifnull("
+            + TaskOpenHelper.COLUMN_UPDATED + ", " + TaskOpenHelper.COLUMN_CREATED + ")) from "
+            + TaskOpenHelper.TABLE_TASKS
+            + " where " + TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID + " = " + projectsId() + ")"
+            + " where " + ProjectOpenHelper.COLUMN_LOCAL_ID + " between ? and ?";
+
+    // Records a create in the outbox for every task in a range that has no server ID yet
+    private static final String RECORD_UNSENT_TASKS_SQL = "insert or ignore into " + Outbox.TABLE_OUTBOX + " ("
+            + Outbox.COLUMN_TASK_LOCAL_ID + ", " + Outbox.COLUMN_OPERATION + ", " + Outbox.COLUMN_VERSION + ")"
+            + " select " + TaskOpenHelper.COLUMN_ID + ", '" + Outbox.OPERATION_CREATE + "', 1 from "
+            + TaskOpenHelper.TABLE_TASKS + " where " + TaskOpenHelper.COLUMN_ID + " between ? and ?"
+            + " and ifnull(" + TaskOpenHelper.COLUMN_SERVER_ID + ", 0) = 0";
+
+    /**
+     * The name of the backfill that fills in the aggregates of the projects that existed
+     * before migration 2.
+     */
+    private static final String BACKFILL_PROJECT_AGGREGATES = "projects_aggregates";
+
+    /**
+     * The name of the backfill that queues the tasks that never reached the server, from
+     * before migration 3 or from the legacy files, for upload.
+     */
+    private static final String BACKFILL_UNSENT_TASKS = "outbox_unsent_tasks";
+
+    /**
+     * Every upgrade step, in order. Add steps here instead of dropping tables.
+     */
+    private static final MigrationRegistry MIGRATIONS = new MigrationRegistry()
+            // 2: per-project task aggregates, kept up to date by triggers
+            .add(new Migration(2) {
+                @Override
+                public void migrate(SQLiteDatabase database) {
+                    String alter = "alter table " + ProjectOpenHelper.TABLE_PROJECTS + " add column ";
+                    database.execSQL(alter + COLUMN_TASK_COUNT_DEF);
+                    database.execSQL(alter + COLUMN_UNFINISHED_COUNT_DEF);
+                    database.execSQL(alter + COLUMN_HEAD_TASK_ID_DEF);
+                    database.execSQL(alter + COLUMN_LAST_ACTIVITY_DEF);
+                    createTriggers(database);
+                    MigrationRegistry.scheduleBackfill(database, BACKFILL_PROJECT_AGGREGATES);
+                }
+            })
+            .add(new Backfill(BACKFILL_PROJECT_AGGREGATES, ProjectOpenHelper.TABLE_PROJECTS, 200) {
+                @Override
+                protected void apply(SQLiteDatabase database, long firstId, long lastId) {
+                    database.execSQL(RECOMPUTE_AGGREGATES_SQL, new Object[]{firstId, lastId});
+                }
+            })
+            // 3: the outbox of task changes for the server
+            .add(new Migration(3) {
+                @Override
+                public void migrate(SQLiteDatabase database) {
+                    database.execSQL(Outbox.OUTBOX_CREATE);
+                    MigrationRegistry.scheduleBackfill(database, BACKFILL_UNSENT_TASKS);
+                }
+            })
+            .add(new Backfill(BACKFILL_UNSENT_TASKS, TaskOpenHelper.TABLE_TASKS, 500) {
+                @Override
+                protected void apply(SQLiteDatabase database, long firstId, long lastId) {
+                    database.execSQL(RECORD_UNSENT_TASKS_SQL, new Object[]{firstId, lastId});
+                }
+            });
+
+    private final Context context;
+
+    /**
+     * Whether {@link #onCreate(SQLiteDatabase)} imported the legacy files, which
+     * are then deleted in {@link #onOpen(SQLiteDatabase)}, once the import has committed.
+     */
+    private boolean importedLegacyDatabases;
+
+    public QueuerOpenHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase database) {
+        database.execSQL(PROJECTS_CREATE);
+        database.execSQL(TASKS_CREATE);
+        database.execSQL(TASKS_INDEX_CREATE);
+        // created before the import, so the imported tasks are counted as they are inserted
+        createTriggers(database);
+        database.execSQL(Outbox.OUTBOX_CREATE);
+        importLegacyDatabases(database);
+        if (importedLegacyDatabases) MigrationRegistry.scheduleBackfill(database, BACKFILL_UNSENT_TASKS);
+    }
+
+    private static void createTriggers(SQLiteDatabase database) {
+        database.execSQL(TRIGGER_INSERT_CREATE);
+        database.execSQL(TRIGGER_DELETE_CREATE);
+        database.execSQL(TRIGGER_UPDATE_CREATE);
+    }
+
+    /**
+     * Returns the statement a trigger runs to add a task row to, or take it away from, the
+     * aggregates of its project. The head task is looked up again through the
+     * (project_local_id, completed, position) index.
+     *
+     * @param row  {@code NEW} or {@code OLD}.
+     * @param sign 1 to add the row, -1 to take it away.
+     * @return The update statement, ending with a semicolon.
+     */
+    private static String adjustAggregates(String row, int sign) {
+        String projectLocalId = row + "." + TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID;
+        String unfinished = "ifnull(" + row + "." + TaskOpenHelper.COLUMN_COMPLETED + " = 0, 0)";
+        return "update " + ProjectOpenHelper.TABLE_PROJECTS + " set "
+                + ProjectOpenHelper.COLUMN_TASK_COUNT + " = "
+                + ProjectOpenHelper.COLUMN_TASK_COUNT + " + (" + sign + "), "
+                + ProjectOpenHelper.COLUMN_UNFINISHED_COUNT + " = "
+                + ProjectOpenHelper.COLUMN_UNFINISHED_COUNT + " + (" + sign + ") * " + unfinished + ", "
+                + ProjectOpenHelper.COLUMN_HEAD_TASK_ID + " = " + headTaskOf(projectLocalId) + ", "
+                + ProjectOpenHelper.COLUMN_LAST_ACTIVITY + " = " + NOW_MILLIS
+                + " where " + ProjectOpenHelper.COLUMN_LOCAL_ID + " = " + projectLocalId + ";";
+    }
+
+    /**
+     * Returns a subquery for the local ID of a project's first unfinished task.
+     *
+     * @param projectLocalId An expression for the project's local ID.
+     * @return The subquery, in parentheses.
+     */
+    private static String headTaskOf(String projectLocalId) {
+        return "(select " + TaskOpenHelper.COLUMN_ID + " from " + TaskOpenHelper.TABLE_TASKS
+                + " where " + TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID + " = " + projectLocalId
+                + " and " + TaskOpenHelper.COLUMN_COMPLETED + " = 0"
+                + " order by " + TaskOpenHelper.COLUMN_POSITION + ", " + TaskOpenHelper.COLUMN_ID + " limit 1)";
+    }
+
+    private static String projectsId() {
+        return ProjectOpenHelper.TABLE_PROJECTS + "." + ProjectOpenHelper.COLUMN_LOCAL_ID;
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        MIGRATIONS.upgrade(db, oldVersion, newVersion);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (db.isReadOnly()) return;
+        // foreign keys are off by default and cannot be switched on inside a transaction
+        db.execSQL("PRAGMA foreign_keys = ON;");
+        if (importedLegacyDatabases) {
+            context.deleteDatabase(ProjectOpenHelper.DATABASE_NAME);
+            context.deleteDatabase(TaskOpenHelper.DATABASE_NAME);
+            importedLegacyDatabases = false;
+        }
+        MIGRATIONS.runPendingBackfills(db);
+    }
+
+    /**
+     * Copies every row of the legacy {@code projects.db} and {@code tasks.db} files, keeping
+     * local IDs. Legacy {@code Task}s only know their {@code Project}'s server ID, so each is
+     * attached to the first {@code Project} with that server ID.
+     * The legacy helpers are used to open the files, so they are upgraded first.
+     *
+     * @param database The new database, inside its creation transaction.
+     */
+    private void importLegacyDatabases(SQLiteDatabase database) {
+        boolean hasProjects = context.getDatabasePath(ProjectOpenHelper.DATABASE_NAME).exists();
+        boolean hasTasks = context.getDatabasePath(TaskOpenHelper.DATABASE_NAME).exists();
+        if (!hasProjects && !hasTasks) return;
+
+        // project server ID -> local ID of the first project with that server ID
+        SparseIntArray projectLocalIds = new SparseIntArray();
+        ContentValues values = new ContentValues();
+
+        if (hasProjects) {
+            ProjectOpenHelper legacyHelper = new ProjectOpenHelper(context);
+            Cursor cursor = legacyHelper.getWritableDatabase().query(ProjectOpenHelper.TABLE_PROJECTS,
+                    null, null, null, null, null, ProjectOpenHelper.COLUMN_LOCAL_ID);
+            int localIdColumn = cursor.getColumnIndex(ProjectOpenHelper.COLUMN_LOCAL_ID);
+            int serverIdColumn = cursor.getColumnIndex(ProjectOpenHelper.COLUMN_SERVER_ID);
+            while (cursor.moveToNext()) {
+                values.clear();
+                DatabaseUtils.cursorRowToContentValues(cursor, values);
+                database.insert(ProjectOpenHelper.TABLE_PROJECTS, null, values);
+                int serverId = cursor.getInt(serverIdColumn);
+                if (projectLocalIds.indexOfKey(serverId) < 0)
+                    projectLocalIds.put(serverId, cursor.getInt(localIdColumn));
+            }
+            cursor.close();
+            legacyHelper.close();
+        }
+
+        if (hasTasks) {
+            TaskOpenHelper legacyHelper = new TaskOpenHelper(context);
+            Cursor cursor = legacyHelper.getWritableDatabase().query(TaskOpenHelper.TABLE_TASKS,
+                    null, null, null, null, null, TaskOpenHelper.COLUMN_ID);
+            int projectServerIdColumn = cursor.getColumnIndex(TaskOpenHelper.COLUMN_PROJECT_SERVER_ID);
+            int skipped = 0;
+            while (cursor.moveToNext()) {
+                int projectLocalId = projectLocalIds.get(cursor.getInt(projectServerIdColumn), -1);
+                if (projectLocalId < 0) {
+                    // the task's project no longer exists
+                    skipped++;
+                    continue;
+                }
+                values.clear();
+                DatabaseUtils.cursorRowToContentValues(cursor, values);
+                values.put(TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID, projectLocalId);
+                database.insert(TaskOpenHelper.TABLE_TASKS, null, values);
+            }
+            cursor.close();
+            legacyHelper.close();
+            if (skipped > 0)
+                Log.w(QueuerOpenHelper.class.getName(), "Dropped " + skipped + " orphaned legacy tasks");
+        }
+
+        importedLegacyDatabases = true;
+    }
+}
@@ -0,0 +1,77 @@
+package com.thundercats.queuer.database;
+
+import android.database.Cursor;
+
+import com.thundercats.queuer.interfaces.RowVisitor;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * Reads model objects out of the rows of one {@code Cursor}.
+ * <p/>
+ * Subclasses look up their column indexes once, in the constructor, so reading a row
+ * is only a series of {@code getInt}/{@code getLong}/{@code getString} calls instead of a
+ * {@code getColumnIndex} string search per column per row. A mapper is only valid for
+ * the {@code Cursor} it was built for.
+ *
+ * @param <T> The model each row is read into.
+ */
+abstract class RowMapper<T> {
+
+    /**
+     * Reads the row the {@code Cursor} is currently on.
+     *
+     * @param cursor The {@code Cursor} this mapper was built for, positioned on a row.
+     * @return The model read from the current row.
+     */
+    abstract T map(Cursor cursor);
+
+    /**
+     * Reads every remaining row of the {@code Cursor} into a list and closes it.
+     *
+     * @param cursor The {@code Cursor} this mapper was built for.
+     * @return Every remaining row, in query order.
+     */
+    ArrayList<T> readAll(Cursor cursor) {
+        ArrayList<T> rows = new ArrayList<T>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) rows.add(map(cursor));
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+
+    /**
+     * Hands every remaining row of the {@code Cursor} to a visitor and closes it.
+     * Stops early if the visitor returns false.
+     *
+     * @param cursor  The {@code Cursor} this mapper was built for.
+     * @param visitor Receives the rows in query order.
+     * @return The number of rows handed to the visitor.
+     */
+    int visitAll(Cursor cursor, RowVisitor<T> visitor) {
+        int count = 0;
+        try {
+            while (cursor.moveToNext()) {
+                count++;
+                if (!visitor.onRow(map(cursor))) break;
+            }
+        } finally {
+            cursor.close();
+        }
+        return count;
+    }
+
+    /**
+     * Reads a nullable timestamp column written as milliseconds since the epoch.
+     *
+     * @param cursor The {@code Cursor}, positioned on a row.
+     * @param column The index of the column.
+     * @return The timestamp, or null if the cell is null.
+     */
+    static Date readDate(Cursor cursor, int column) {
+        return cursor.isNull(column) ? null : new Date(cursor.getLong(column));
+    }
+}
@@ -3,12 +3,17 @@ package com.thundercats.queuer.database;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
+import com.thundercats.queuer.interfaces.RowVisitor;
 import com.thundercats.queuer.models.Task;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 
 /**
@@ -19,35 +24,91 @@ import java.util.Date;
 public class TaskDataSource {
     // Database fields
     private SQLiteDatabase database;
-    private TaskOpenHelper dbHelper;
+    private DatabaseManager databaseManager;
+    private ModelCache cache;
+    private Outbox outbox;
     private String[] allColumns = {TaskOpenHelper.COLUMN_ID,
             TaskOpenHelper.COLUMN_SERVER_ID,
             TaskOpenHelper.COLUMN_PROJECT_SERVER_ID,
+            TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID,
             TaskOpenHelper.COLUMN_TEXT,
             TaskOpenHelper.COLUMN_COMPLETED,
             TaskOpenHelper.COLUMN_POSITION,
             TaskOpenHelper.COLUMN_CREATED,
             TaskOpenHelper.COLUMN_UPDATED};
 
+    // Rewrites the mutable fields of one row; compiled once per batch
+    private static final String UPDATE_TASK_SQL = "UPDATE " + TaskOpenHelper.TABLE_TASKS + " SET "
+            + TaskOpenHelper.COLUMN_TEXT + " = ?, "
+            + TaskOpenHelper.COLUMN_COMPLETED + " = ?, "
+            + TaskOpenHelper.COLUMN_POSITION + " = ? "
+            + "WHERE " + TaskOpenHelper.COLUMN_ID + " = ?";
+
+    // Inserts one row; compiled once per batch
+    private static final String INSERT_TASK_SQL = "INSERT INTO " + TaskOpenHelper.TABLE_TASKS + " ("
+            + TaskOpenHelper.COLUMN_SERVER_ID + ", "
+            + TaskOpenHelper.COLUMN_PROJECT_SERVER_ID + ", "
+            + TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID + ", "
+            + TaskOpenHelper.COLUMN_TEXT + ", "
+            + TaskOpenHelper.COLUMN_COMPLETED + ", "
+            + TaskOpenHelper.COLUMN_POSITION + ", "
+            + TaskOpenHelper.COLUMN_CREATED + ", "
+            + TaskOpenHelper.COLUMN_UPDATED + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // A project's unfinished tasks; every paging query starts from here
+    private static final String UNFINISHED_SELECTION = TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID + " = ? AND "
+            + TaskOpenHelper.COLUMN_COMPLETED + " = 0";
+
+    // Pages are keyed on (position, _id), so tasks that share a position are neither skipped nor repeated
+    private static final String KEYSET_ORDER = TaskOpenHelper.COLUMN_POSITION + ", " + TaskOpenHelper.COLUMN_ID;
+    private static final String KEYSET_ORDER_DESC = TaskOpenHelper.COLUMN_POSITION + " DESC, "
+            + TaskOpenHelper.COLUMN_ID + " DESC";
+    private static final String AFTER_KEY = " AND (" + TaskOpenHelper.COLUMN_POSITION + " > ? OR ("
+            + TaskOpenHelper.COLUMN_POSITION + " = ? AND " + TaskOpenHelper.COLUMN_ID + " > ?))";
+    private static final String BEFORE_KEY = " AND (" + TaskOpenHelper.COLUMN_POSITION + " < ? OR ("
+            + TaskOpenHelper.COLUMN_POSITION + " = ? AND " + TaskOpenHelper.COLUMN_ID + " < ?))";
+
+    private static final String COUNT_UNFINISHED_SQL = "SELECT COUNT(*) FROM " + TaskOpenHelper.TABLE_TASKS
+            + " WHERE " + UNFINISHED_SELECTION;
+
+    private static final String UPDATE_POSITION_SQL = "UPDATE " + TaskOpenHelper.TABLE_TASKS + " SET "
+            + TaskOpenHelper.COLUMN_POSITION + " = ? WHERE " + TaskOpenHelper.COLUMN_ID + " = ?";
+
     /**
-     * Initializes the {@link com.thundercats.queuer.database.TaskOpenHelper}.
+     * Looks up the application's {@link com.thundercats.queuer.database.DatabaseManager}.
      */
     public TaskDataSource(Context context) {
-        dbHelper = new TaskOpenHelper(context);
+        databaseManager = DatabaseManager.getInstance(context);
+        cache = databaseManager.getModelCache();
     }
 
     /**
-     * Initializes the {@code SQLiteDatabase}.
+     * Gets the shared {@code SQLiteDatabase}, opening it only if no one has yet.
      */
     public void open() throws SQLException {
-        database = dbHelper.getWritableDatabase();
+        database = databaseManager.getDatabase();
+        outbox = new Outbox(database);
     }
 
     /**
-     * Closes the {@link com.thundercats.queuer.database.TaskOpenHelper}.
+     * Releases this data source's handle. The shared connection stays open
+     * for the next data source; it is owned by the
+     * {@link com.thundercats.queuer.database.DatabaseManager}.
      */
     public void close() {
-        dbHelper.close();
+        if (outbox != null) outbox.close();
+        outbox = null;
+        database = null;
+    }
+
+    /**
+     * Returns the queue of {@code Task} changes that still have to be sent to the server.
+     * Every write of this data source records into it.
+     *
+     * @return The {@code Outbox}, on this data source's connection.
+     */
+    public Outbox getOutbox() {
+        return outbox;
     }
 
     /**
@@ -55,24 +116,28 @@ public class TaskDataSource {
      */
     public void deleteAllTasks() {
         database.delete(TaskOpenHelper.TABLE_TASKS, "1", null);
+        outbox.clear();
+        cache.clear();
     }
 
     /**
      * Returns a row of cells that defines a particular {@code Task}
      *
-     * @param text      The name of the {@code Task}.
-     * @param projectId The server ID of the {@code Project} to which the {@code Task} belongs.
-     * @param serverId  The server ID of the {@code Task}.
-     * @param position  The position of the {@code Task}.
-     * @param completed Whether or not the {@code Task} is finished.
+     * @param text           The name of the {@code Task}.
+     * @param projectLocalId The local ID of the {@code Project} to which the {@code Task} belongs.
+     * @param projectId      The server ID of the {@code Project} to which the {@code Task} belongs.
+     * @param serverId       The server ID of the {@code Task}.
+     * @param position       The position of the {@code Task}.
+     * @param completed      Whether or not the {@code Task} is finished.
      * @return The {@code ContentValues} object that maps column names ({@code Task} fields)
      * to new column values.
      */
-    private ContentValues createContentValues(String text, int projectId, int serverId,
-                                              int position, boolean completed) {
+    private ContentValues createContentValues(String text, int projectLocalId, int projectId, int serverId,
+                                              long position, boolean completed) {
         ContentValues values = new ContentValues();
         values.put(TaskOpenHelper.COLUMN_SERVER_ID, serverId);
         values.put(TaskOpenHelper.COLUMN_PROJECT_SERVER_ID, projectId);
+        values.put(TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID, projectLocalId);
         values.put(TaskOpenHelper.COLUMN_POSITION, position);
         values.put(TaskOpenHelper.COLUMN_COMPLETED, completed ? 1 : 0);
         values.put(TaskOpenHelper.COLUMN_TEXT, text);
@@ -82,18 +147,29 @@ public class TaskDataSource {
     /**
      * Writes a {@code Task} to database, given {@code Task} parameters.
      *
-     * @param text      The name of the {@code Task}.
-     * @param projectId The server ID of the {@code Project} to which the {@code Task} belongs.
-     * @param serverId  The server ID of the {@code Task}.
-     * @param position  The position of the {@code Task}.
-     * @param completed Whether or not the {@code Task} is finished.
+     * @param text           The name of the {@code Task}.
+     * @param projectLocalId The local ID of the {@code Project} to which the {@code Task} belongs.
+     * @param projectId      The server ID of the {@code Project} to which the {@code Task} belongs.
+     * @param serverId       The server ID of the {@code Task}.
+     * @param position       The position of the {@code Task}.
+     * @param completed      Whether or not the {@code Task} is finished.
      * @return The {@code Task} that was just inserted into the database.
      */
-    public Task createTask(String text, int projectId, int serverId, int position, boolean completed) {
+    public Task createTask(String text, int projectLocalId, int projectId, int serverId,
+                           long position, boolean completed) {
         // create the row of cells
-        ContentValues taskRow = createContentValues(text, projectId, serverId, position, completed);
-        // insert the row of cells
-        long insertId = database.insert(TaskOpenHelper.TABLE_TASKS, null, taskRow);
+        ContentValues taskRow = createContentValues(text, projectLocalId, projectId, serverId,
+                position, completed);
+        // insert the row of cells, and queue it for the server
+        long insertId;
+        database.beginTransaction();
+        try {
+            insertId = database.insert(TaskOpenHelper.TABLE_TASKS, null, taskRow);
+            outbox.recordCreate((int) insertId);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
         // get a cursor over the inserted row
         Cursor cursor = database.query(
                 // the table name to compile the query against
@@ -104,11 +180,48 @@ public class TaskDataSource {
                 TaskOpenHelper.COLUMN_ID + " = " + insertId,
                 null, null, null, null);
         cursor.moveToFirst();
-        Task newTask = cursorToTask(cursor);
+        Task newTask = new TaskRowMapper(cursor).map(cursor);
         cursor.close();
         return newTask;
     }
 
+    /**
+     * Writes many {@code Task}s at once. All rows are inserted in a single transaction
+     * through one compiled statement, and the returned {@code Task}s are built from the
+     * new row IDs instead of being read back, so each row costs one insert and nothing else.
+     *
+     * @param drafts The {@code Task}s to write; their local IDs are ignored.
+     * @return The written {@code Task}s with their new local IDs, in the order of {@code drafts}.
+     */
+    public ArrayList<Task> createTasks(Collection<Task> drafts) {
+        ArrayList<Task> created = new ArrayList<Task>(drafts.size());
+        SQLiteStatement statement = database.compileStatement(INSERT_TASK_SQL);
+        database.beginTransaction();
+        try {
+            for (Task draft : drafts) {
+                statement.bindLong(1, draft.getId());
+                statement.bindLong(2, draft.getProject_id());
+                statement.bindLong(3, draft.getProjectLocalId());
+                statement.bindString(4, draft.getName());
+                statement.bindLong(5, draft.isFinished() ? 1 : 0);
+                statement.bindLong(6, draft.getPosition());
+                bindDate(statement, 7, draft.getCreated_at());
+                bindDate(statement, 8, draft.getUpdated_at());
+                long localId = statement.executeInsert();
+                if (localId == -1) throw new SQLException("Could not insert task " + draft.getName());
+                outbox.recordCreate((int) localId);
+                created.add(new Task((int) localId, draft.getId(), draft.getProject_id(),
+                        draft.getProjectLocalId(), draft.getName(), draft.isFinished(), draft.getPosition(),
+                        draft.getCreated_at(), draft.getUpdated_at()));
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            statement.close();
+        }
+        return created;
+    }
+
     /**
      * Updates a {@code Task}'s name.
      *
@@ -127,7 +240,7 @@ public class TaskDataSource {
      * @param task     The {@code Task} to update; its local ID is used to find its row in the database.
      * @param position The {@code Task}'s new position.
      */
-    public void updateTaskPosition(Task task, int position) {
+    public void updateTaskPosition(Task task, long position) {
         ContentValues values = new ContentValues();
         values.put(TaskOpenHelper.COLUMN_POSITION, position);
         update(task, values);
@@ -166,8 +279,9 @@ public class TaskDataSource {
      */
     public void updateTask(Task task) {
         ContentValues values = new ContentValues();
-        values.put(TaskOpenHelper.COLUMN_SERVER_ID, task.getLocalId());
+        // the server ID is only written when the server acknowledges the Task; see Outbox
         values.put(TaskOpenHelper.COLUMN_PROJECT_SERVER_ID, task.getProject_id());
+        values.put(TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID, task.getProjectLocalId());
         values.put(TaskOpenHelper.COLUMN_TEXT, task.getName());
         values.put(TaskOpenHelper.COLUMN_COMPLETED, task.isFinished() ? 1 : 0);
         values.put(TaskOpenHelper.COLUMN_POSITION, task.getPosition());
@@ -177,6 +291,32 @@ public class TaskDataSource {
         update(task, values);
     }
 
+    /**
+     * Writes the names, finished statuses and positions of many {@code Task}s at once.
+     * All rows are written in a single transaction through one compiled statement,
+     * so there is one journal commit no matter how many {@code Task}s are written.
+     *
+     * @param tasks The {@code Task}s to write; their local IDs are used to find their rows.
+     */
+    public void updateTasks(Collection<Task> tasks) {
+        SQLiteStatement statement = database.compileStatement(UPDATE_TASK_SQL);
+        database.beginTransaction();
+        try {
+            for (Task task : tasks) {
+                statement.bindString(1, task.getName());
+                statement.bindLong(2, task.isFinished() ? 1 : 0);
+                statement.bindLong(3, task.getPosition());
+                statement.bindLong(4, task.getLocalId());
+                statement.execute();
+                outbox.recordUpdate(task.getLocalId());
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            statement.close();
+        }
+    }
+
     /**
      * Deletes a {@code Task} from the SQL database.
      *
@@ -184,58 +324,186 @@ public class TaskDataSource {
      */
     public void deleteTask(Task task) {
         String[] whereArgs = new String[]{Integer.toString(task.getLocalId())};
-        database.delete(TaskOpenHelper.TABLE_TASKS,
-                TaskOpenHelper.COLUMN_ID + " = ?",
-                whereArgs);
+        database.beginTransaction();
+        try {
+            // the row, not the Task, has the server ID if the server acknowledged it just now
+            long serverId = DatabaseUtils.longForQuery(database, "SELECT ifnull(MAX(" + TaskOpenHelper.COLUMN_SERVER_ID
+                    + "), 0) FROM " + TaskOpenHelper.TABLE_TASKS + " WHERE " + TaskOpenHelper.COLUMN_ID + " = ?",
+                    whereArgs);
+            database.delete(TaskOpenHelper.TABLE_TASKS,
+                    TaskOpenHelper.COLUMN_ID + " = ?",
+                    whereArgs);
+            outbox.recordDelete(task.getLocalId(), serverId);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        cache.removeTask(task.getLocalId());
     }
 
     /**
-     * Returns a list of all {@code Task}s that belong to a certain {@code Project}.
+     * Returns the unfinished {@code Task}s that belong to a certain {@code Project}, in order.
+     * The filtering and sorting are done by SQLite, using the
+     * (project_local_id, completed, position) index.
      *
-     * @param projectServerID Returns tasks that all share the same project server ID.
-     * @return A list
-     */
-    public ArrayList<Task> getUnfinishedTasks(int projectServerID) {
-        ArrayList<Task> unfinishedTasks = new ArrayList<Task>();
-        // Cursor over rows whose projectServerIDs match the param
-        Cursor cursor = query(TaskOpenHelper.COLUMN_PROJECT_SERVER_ID + " = ?",
-                new String[]{String.valueOf(projectServerID)});
-        // Look at the first Task
-        if (cursor.moveToFirst()) {
-            Task firstTask = cursorToTask(cursor);
-            if (!firstTask.isFinished())
-                unfinishedTasks.add(firstTask);
-            // Look at all subsequent Tasks
-            while (cursor.moveToNext()) {
-                Task nextTask = cursorToTask(cursor);
-                if (!nextTask.isFinished())
-                    unfinishedTasks.add(nextTask);
-            }
-        }
+     * @param projectLocalID Returns tasks that all share the same project local ID.
+     * @return A list of unfinished {@code Task}s, sorted by position.
+     */
+    public ArrayList<Task> getUnfinishedTasks(int projectLocalID) {
+        return getUnfinishedTasks(projectLocalID, 0);
+    }
+
+    /**
+     * Returns at most {@code limit} unfinished {@code Task}s that belong to a certain
+     * {@code Project}, in order.
+     *
+     * @param projectLocalID Returns tasks that all share the same project local ID.
+     * @param limit          The maximum number of {@code Task}s to read; 0 means no limit.
+     * @return A list of unfinished {@code Task}s, sorted by position.
+     */
+    public ArrayList<Task> getUnfinishedTasks(int projectLocalID, int limit) {
+        Cursor cursor = queryUnfinished(projectLocalID, limit);
+        return new TaskRowMapper(cursor).readAll(cursor);
+    }
+
+    /**
+     * Hands a {@code Project}'s unfinished {@code Task}s to a visitor, in order,
+     * without building a list of them first.
+     *
+     * @param projectLocalID The local ID of the {@code Project}.
+     * @param visitor        Receives the {@code Task}s; may stop early by returning false.
+     * @return The number of {@code Task}s handed to the visitor.
+     */
+    public int forEachUnfinishedTask(int projectLocalID, RowVisitor<Task> visitor) {
+        Cursor cursor = queryUnfinished(projectLocalID, 0);
+        return new TaskRowMapper(cursor).visitAll(cursor, visitor);
+    }
+
+    /**
+     * Returns the first unfinished {@code Task} of a {@code Project}, reading a single row.
+     *
+     * @param projectLocalID The local ID of the {@code Project}.
+     * @return The unfinished {@code Task} with the lowest position,
+     * or null if every {@code Task} of the {@code Project} is finished.
+     */
+    public Task getNextUnfinishedTask(int projectLocalID) {
+        Cursor cursor = queryUnfinished(projectLocalID, 1);
+        Task nextTask = cursor.moveToFirst() ? new TaskRowMapper(cursor).map(cursor) : null;
         cursor.close();
-        return unfinishedTasks;
+        return nextTask;
+    }
+
+    /**
+     * Returns how many unfinished {@code Task}s a {@code Project} has, counted on the index.
+     *
+     * @param projectLocalID The local ID of the {@code Project}.
+     * @return How many unfinished {@code Task}s the {@code Project} has.
+     */
+    public int countUnfinishedTasks(int projectLocalID) {
+        return (int) DatabaseUtils.longForQuery(database, COUNT_UNFINISHED_SQL,
+                new String[]{String.valueOf(projectLocalID)});
+    }
+
+    /**
+     * Returns the unfinished {@code Task}s from a given index on, and the total count.
+     * Only used to jump to an index; scrolling pages with
+     * {@link #getUnfinishedTasksAfter(int, Task, int)} and
+     * {@link #getUnfinishedTasksBefore(int, Task, int)}, which do not skip rows.
+     *
+     * @param projectLocalID The local ID of the {@code Project}.
+     * @param offset         The index of the first {@code Task} to read.
+     * @param limit          The maximum number of {@code Task}s to read.
+     * @return The page of {@code Task}s, sorted by position.
+     */
+    public TaskPage getUnfinishedPage(int projectLocalID, int offset, int limit) {
+        int total = countUnfinishedTasks(projectLocalID);
+        Cursor cursor = database.query(TaskOpenHelper.TABLE_TASKS, allColumns,
+                UNFINISHED_SELECTION, new String[]{String.valueOf(projectLocalID)},
+                null, null, KEYSET_ORDER, offset + "," + limit);
+        return new TaskPage(offset, total, new TaskRowMapper(cursor).readAll(cursor));
+    }
+
+    /**
+     * Returns the unfinished {@code Task}s that directly follow a given {@code Task}, in order.
+     *
+     * @param projectLocalID The local ID of the {@code Project}.
+     * @param anchor         The {@code Task} to read after; it need not be unfinished.
+     * @param limit          The maximum number of {@code Task}s to read.
+     * @return The {@code Task}s after {@code anchor}, sorted by position.
+     */
+    public ArrayList<Task> getUnfinishedTasksAfter(int projectLocalID, Task anchor, int limit) {
+        Cursor cursor = queryKeyset(projectLocalID, AFTER_KEY, anchor, KEYSET_ORDER, limit);
+        return new TaskRowMapper(cursor).readAll(cursor);
+    }
+
+    /**
+     * Returns the unfinished {@code Task}s that directly precede a given {@code Task}, in order.
+     *
+     * @param projectLocalID The local ID of the {@code Project}.
+     * @param anchor         The {@code Task} to read before; it need not be unfinished.
+     * @param limit          The maximum number of {@code Task}s to read.
+     * @return The {@code Task}s before {@code anchor}, sorted by position.
+     */
+    public ArrayList<Task> getUnfinishedTasksBefore(int projectLocalID, Task anchor, int limit) {
+        Cursor cursor = queryKeyset(projectLocalID, BEFORE_KEY, anchor, KEYSET_ORDER_DESC, limit);
+        ArrayList<Task> tasks = new TaskRowMapper(cursor).readAll(cursor);
+        Collections.reverse(tasks);
+        return tasks;
+    }
+
+    /**
+     * Gives a moved {@code Task} a position between its new neighbours, as they are in the
+     * database. Only one neighbour has to be given, so a {@code Task} dropped next to a
+     * {@code Task} that is not in memory can still be placed. If the neighbours have no
+     * position left between them, every unfinished {@code Task} is renumbered
+     * {@link TaskPositions#GAP} apart in one transaction.
+     *
+     * @param moved  The moved {@code Task}.
+     * @param before The {@code Task} now directly above it, or null if only {@code after} is known.
+     * @param after  The {@code Task} now directly below it, or null if it is the last one.
+     * @return The moved {@code Task}'s new position, or {@link TaskPositions#NO_ROOM} if every
+     * unfinished {@code Task} was renumbered, in which case they should be reloaded.
+     */
+    public long moveTask(Task moved, Task before, Task after) {
+        int projectLocalID = moved.getProjectLocalId();
+        if (before != null) {
+            after = firstOtherThan(getUnfinishedTasksAfter(projectLocalID, before, 2), moved);
+        } else if (after != null) {
+            ArrayList<Task> preceding = getUnfinishedTasksBefore(projectLocalID, after, 2);
+            Collections.reverse(preceding);
+            before = firstOtherThan(preceding, moved);
+        }
+        long position = TaskPositions.between(before, after);
+        if (position != TaskPositions.NO_ROOM) {
+            updateTaskPosition(moved, position);
+            return position;
+        }
+        compactPositions(projectLocalID, moved, before);
+        return TaskPositions.NO_ROOM;
     }
 
     /**
      * Returns a list of all {@code Task}s that belong to a certain project.
      *
-     * @param projectServerID Returns tasks that all share the same project server ID.
+     * @param projectLocalID Returns tasks that all share the same project local ID.
      * @return A list of all {@code Task}s in the SQL database that belong to a certain project.
      */
-    public ArrayList<Task> getTasks(int projectServerID) {
-        ArrayList<Task> tasks = new ArrayList<Task>();
-        // Cursor over rows whose projectServerIDs match the param
-        Cursor cursor = query(TaskOpenHelper.COLUMN_PROJECT_SERVER_ID + " = ?",
-                new String[]{String.valueOf(projectServerID)});
-        // Add the tasks to the list, scanning row by row
-        if (cursor.moveToFirst()) {
-            tasks.add(cursorToTask(cursor));
-            while (cursor.moveToNext()) {
-                tasks.add(cursorToTask(cursor));
-            }
-        }
-        cursor.close();
-        return tasks;
+    public ArrayList<Task> getTasks(int projectLocalID) {
+        Cursor cursor = queryProject(projectLocalID);
+        return new TaskRowMapper(cursor).readAll(cursor);
+    }
+
+    /**
+     * Hands all {@code Task}s of a {@code Project} to a visitor, in order,
+     * without building a list of them first.
+     *
+     * @param projectLocalID The local ID of the {@code Project}.
+     * @param visitor        Receives the {@code Task}s; may stop early by returning false.
+     * @return The number of {@code Task}s handed to the visitor.
+     */
+    public int forEachTask(int projectLocalID, RowVisitor<Task> visitor) {
+        Cursor cursor = queryProject(projectLocalID);
+        return new TaskRowMapper(cursor).visitAll(cursor, visitor);
     }
 
     /**
@@ -244,38 +512,78 @@ public class TaskDataSource {
      * @return All {@code Task}s in the database.
      */
     public ArrayList<Task> getAllTasks() {
-        ArrayList<Task> tasks = new ArrayList<Task>();
-        // A cursor over the entire database
         Cursor cursor = query(null);
-        // Add the tasks to the list, scanning row by row
-        if (cursor.moveToFirst()) {
-            tasks.add(cursorToTask(cursor));
+        return new TaskRowMapper(cursor).readAll(cursor);
+    }
+
+    /**
+     * Renumbers a {@code Project}'s unfinished {@code Task}s {@link TaskPositions#GAP} apart,
+     * putting a moved {@code Task} directly after another, through one compiled statement.
+     *
+     * @param projectLocalID The local ID of the {@code Project}.
+     * @param moved          The {@code Task} to put after {@code before}.
+     * @param before         The {@code Task} that {@code moved} goes after, or null for the top.
+     */
+    private void compactPositions(int projectLocalID, Task moved, Task before) {
+        Cursor cursor = database.query(TaskOpenHelper.TABLE_TASKS, new String[]{TaskOpenHelper.COLUMN_ID},
+                UNFINISHED_SELECTION, new String[]{String.valueOf(projectLocalID)},
+                null, null, KEYSET_ORDER);
+        SQLiteStatement statement = database.compileStatement(UPDATE_POSITION_SQL);
+        database.beginTransaction();
+        try {
+            int index = 0;
+            if (before == null) writePosition(statement, moved.getLocalId(), index++);
             while (cursor.moveToNext()) {
-                tasks.add(cursorToTask(cursor));
+                int localId = cursor.getInt(0);
+                if (localId == moved.getLocalId()) continue;
+                writePosition(statement, localId, index++);
+                if (before != null && localId == before.getLocalId())
+                    writePosition(statement, moved.getLocalId(), index++);
             }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            statement.close();
+            cursor.close();
         }
-        cursor.close();
-        return tasks;
+    }
+
+    private void writePosition(SQLiteStatement statement, int localId, int index) {
+        statement.bindLong(1, TaskPositions.forIndex(index));
+        statement.bindLong(2, localId);
+        statement.execute();
+        outbox.recordUpdate(localId);
+    }
+
+    private static void bindDate(SQLiteStatement statement, int index, Date date) {
+        if (date == null) statement.bindNull(index);
+        else statement.bindLong(index, date.getTime());
+    }
+
+    private static Task firstOtherThan(ArrayList<Task> tasks, Task excluded) {
+        for (Task task : tasks) {
+            if (!task.equals(excluded)) return task;
+        }
+        return null;
     }
 
     /**
-     * A {@code Task} built from a single row in the SQL database.
+     * Returns a cursor over a {@code Project}'s unfinished {@code Task}s on one side of a key.
      *
-     * @param cursor The cursor over the result set must have all of the right columns.
-     * @return A {@code Task} built from a single row in the SQL database.
+     * @param projectLocalID The local ID of the {@code Project}.
+     * @param keyCondition   {@link #AFTER_KEY} or {@link #BEFORE_KEY}.
+     * @param anchor         The {@code Task} whose (position, local ID) is the key.
+     * @param orderBy        The order matching {@code keyCondition}.
+     * @param limit          The maximum number of rows.
+     * @return A cursor over the {@code Task}s on the given side of {@code anchor}.
      */
-    private Task cursorToTask(Cursor cursor) {
-        int localID = cursor.getInt(cursor.getColumnIndex(TaskOpenHelper.COLUMN_ID));
-        int serverID = cursor.getInt(cursor.getColumnIndex(TaskOpenHelper.COLUMN_SERVER_ID));
-        int projectID = cursor.getInt(cursor.getColumnIndex(TaskOpenHelper.COLUMN_PROJECT_SERVER_ID));
-        String name = cursor.getString(cursor.getColumnIndex(TaskOpenHelper.COLUMN_TEXT));
-        boolean finished = 1 == cursor.getInt(cursor.getColumnIndex(TaskOpenHelper.COLUMN_COMPLETED));
-        int position = cursor.getInt(cursor.getColumnIndex(TaskOpenHelper.COLUMN_POSITION));
-        String created = cursor.getString(cursor.getColumnIndex(TaskOpenHelper.COLUMN_CREATED));
-        String updated = cursor.getString(cursor.getColumnIndex(TaskOpenHelper.COLUMN_UPDATED));
-        Date created_at = (created == null) ? null : new Date(Long.valueOf(created));
-        Date updated_at = (updated == null) ? null : new Date(Long.valueOf(updated));
-        return new Task(localID, serverID, projectID, name, finished, position, created_at, updated_at);
+    private Cursor queryKeyset(int projectLocalID, String keyCondition, Task anchor, String orderBy, int limit) {
+        String position = String.valueOf(anchor.getPosition());
+        return database.query(TaskOpenHelper.TABLE_TASKS, allColumns,
+                UNFINISHED_SELECTION + keyCondition,
+                new String[]{String.valueOf(projectLocalID), position, position,
+                        String.valueOf(anchor.getLocalId())},
+                null, null, orderBy, String.valueOf(limit));
     }
 
     /**
@@ -290,7 +598,36 @@ public class TaskDataSource {
     }
 
     /**
-     * Return a cursor over the entire database.
+     * Returns a cursor over a {@code Project}'s unfinished {@code Task}s, ordered by position.
+     *
+     * @param projectLocalID The local ID of the {@code Project}.
+     * @param limit          The maximum number of rows; 0 means no limit.
+     * @return A cursor over a {@code Project}'s unfinished {@code Task}s.
+     */
+    private Cursor queryUnfinished(int projectLocalID, int limit) {
+        return database.query(TaskOpenHelper.TABLE_TASKS,
+                allColumns,
+                TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID + " = ? AND "
+                        + TaskOpenHelper.COLUMN_COMPLETED + " = 0",
+                new String[]{String.valueOf(projectLocalID)},
+                null, null,
+                TaskOpenHelper.COLUMN_POSITION,
+                limit > 0 ? String.valueOf(limit) : null);
+    }
+
+    /**
+     * Returns a cursor over all of a {@code Project}'s {@code Task}s, ordered by position.
+     *
+     * @param projectLocalID The local ID of the {@code Project}.
+     * @return A cursor over all of a {@code Project}'s {@code Task}s.
+     */
+    private Cursor queryProject(int projectLocalID) {
+        return query(TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID + " = ?",
+                new String[]{String.valueOf(projectLocalID)});
+    }
+
+    /**
+     * Return a cursor over the entire database, ordered by position.
      *
      * @param selection     Specifies which rows should be filtered.
      *                      Must have "?" for selectionArgs.
@@ -299,7 +636,7 @@ public class TaskDataSource {
      */
     private Cursor query(String selection, String[] selectionArgs) {
         return database.query(TaskOpenHelper.TABLE_TASKS,
-                allColumns, selection, selectionArgs, null, null, null);
+                allColumns, selection, selectionArgs, null, null, TaskOpenHelper.COLUMN_POSITION);
     }
 
     /**
@@ -309,11 +646,18 @@ public class TaskDataSource {
      * @param values The new values of the {@code Task} that will be written.
      */
     private void update(Task task, ContentValues values) {
-        database.update(TaskOpenHelper.TABLE_TASKS,
-                values,
-                TaskOpenHelper.COLUMN_ID + " = ?",
-                new String[]{String.valueOf(task.getLocalId())}
-        );
+        database.beginTransaction();
+        try {
+            database.update(TaskOpenHelper.TABLE_TASKS,
+                    values,
+                    TaskOpenHelper.COLUMN_ID + " = ?",
+                    new String[]{String.valueOf(task.getLocalId())}
+            );
+            outbox.recordUpdate(task.getLocalId());
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
     }
 
 }
@@ -3,9 +3,11 @@ package com.thundercats.queuer.database;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.util.Log;
 
 /**
+ * Opens the legacy {@code tasks.db} file, which held the {@code tasks} table before it moved into
+ * {@link com.thundercats.queuer.database.QueuerOpenHelper}'s database. It is only used to
+ * import an old install's rows; the column names below are used for both databases.
  * Created by eschrock on 1/21/14.
  */
 public class TaskOpenHelper extends SQLiteOpenHelper {
@@ -30,6 +32,12 @@ public class TaskOpenHelper extends SQLiteOpenHelper {
      */
     public static final String COLUMN_PROJECT_SERVER_ID = "project_id";
 
+    /**
+     * The column name for the local IDs of the {@code Projects} to which {@code Task}s belong.
+     * Only exists in the merged database, where it references the {@code projects} table.
+     */
+    public static final String COLUMN_PROJECT_LOCAL_ID = "project_local_id";
+
     /**
      * The column name for {@code Task}s' titles.
      */
@@ -55,8 +63,8 @@ public class TaskOpenHelper extends SQLiteOpenHelper {
      */
     public static final String COLUMN_UPDATED = "updated_at";
 
-    private static final String DATABASE_NAME = "tasks.db";
-    private static final int DATABASE_VERSION = 1;
+    static final String DATABASE_NAME = "tasks.db";
+    private static final int DATABASE_VERSION = 3;
 
     // Database creation sql statement
     private static final String DATABASE_CREATE = "create table "
@@ -71,6 +79,53 @@ public class TaskOpenHelper extends SQLiteOpenHelper {
             + COLUMN_COMPLETED + " integer"
             + ");";
 
+    /**
+     * The name of the index that serves "unfinished {@code Task}s of a project, in order".
+     */
+    private static final String INDEX_PROJECT_COMPLETED_POSITION = "tasks_project_completed_position";
+
+    // Index creation sql statement
+    private static final String INDEX_CREATE = "create index if not exists "
+            + INDEX_PROJECT_COMPLETED_POSITION + " on " + TABLE_TASKS + "("
+            + COLUMN_PROJECT_SERVER_ID + ", "
+            + COLUMN_COMPLETED + ", "
+            + COLUMN_POSITION
+            + ");";
+
+    /**
+     * The name of the backfill that spreads dense positions {@link TaskPositions#GAP} apart.
+     */
+    private static final String BACKFILL_SPREAD_POSITIONS = "tasks_spread_positions";
+
+    /**
+     * Every upgrade step, in order. Steps never drop a table.
+     */
+    private static final MigrationRegistry MIGRATIONS = new MigrationRegistry()
+            // 2: index unfinished tasks by project and position
+            .add(new Migration(2) {
+                @Override
+                public void migrate(SQLiteDatabase database) {
+                    database.execSQL(INDEX_CREATE);
+                }
+            })
+            // 3: positions are sparse keys; spread out the dense ones written before
+            .add(new Migration(3) {
+                @Override
+                public void migrate(SQLiteDatabase database) {
+                    MigrationRegistry.scheduleBackfill(database, BACKFILL_SPREAD_POSITIONS);
+                }
+            })
+            .add(new Backfill(BACKFILL_SPREAD_POSITIONS, TABLE_TASKS, 1000) {
+                @Override
+                protected void apply(SQLiteDatabase database, long firstId, long lastId) {
+                    // multiplying by a positive constant keeps every project's order
+                    database.execSQL("update " + TABLE_TASKS
+                                    + " set " + COLUMN_POSITION + " = " + COLUMN_POSITION + " * ?"
+                                    + " where " + COLUMN_ID + " between ? and ?",
+                            new Object[]{TaskPositions.GAP, firstId, lastId});
+                }
+            });
+
     public TaskOpenHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
@@ -78,14 +133,17 @@ public class TaskOpenHelper extends SQLiteOpenHelper {
     @Override
     public void onCreate(SQLiteDatabase database) {
         database.execSQL(DATABASE_CREATE);
+        database.execSQL(INDEX_CREATE);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        Log.w(TaskOpenHelper.class.getName(),
-                "Upgrading database from version " + oldVersion + " to "
-                        + newVersion + ", which will destroy all old data");
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_TASKS);
-        onCreate(db);
+        MIGRATIONS.upgrade(db, oldVersion, newVersion);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (!db.isReadOnly()) MIGRATIONS.runPendingBackfills(db);
     }
 }
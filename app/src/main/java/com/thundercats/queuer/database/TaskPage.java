@@ -0,0 +1,51 @@
+package com.thundercats.queuer.database;
+
+import com.thundercats.queuer.models.Task;
+
+import java.util.ArrayList;
+
+/**
+ * A run of a {@code Project}'s unfinished {@code Task}s, read by offset, together with
+ * how many unfinished {@code Task}s the {@code Project} has in total.
+ *
+ * @see TaskDataSource#getUnfinishedPage(int, int, int)
+ */
+public final class TaskPage {
+
+    private final int offset;
+    private final int total;
+    private final ArrayList<Task> tasks;
+
+    TaskPage(int offset, int total, ArrayList<Task> tasks) {
+        this.offset = offset;
+        this.total = total;
+        this.tasks = tasks;
+    }
+
+    /**
+     * Returns the index of the first {@code Task} of this page among all unfinished {@code Task}s.
+     *
+     * @return The index of the first {@code Task} of this page.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns how many unfinished {@code Task}s the {@code Project} had when this page was read.
+     *
+     * @return How many unfinished {@code Task}s the {@code Project} has.
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the {@code Task}s of this page, ordered by position.
+     *
+     * @return The {@code Task}s of this page.
+     */
+    public ArrayList<Task> getTasks() {
+        return tasks;
+    }
+}
@@ -0,0 +1,56 @@
+package com.thundercats.queuer.database;
+
+import com.thundercats.queuer.models.Task;
+
+/**
+ * Computes sparse ordering keys for the {@link TaskOpenHelper#COLUMN_POSITION} column.
+ * <p/>
+ * Positions are spaced {@link #GAP} apart instead of being numbered 0, 1, 2, ...,
+ * so a {@code Task} can be moved between two neighbours by giving it the key halfway
+ * between theirs. Only the moved row is written. When two neighbours have no key
+ * left between them, the list has to be compacted, i.e. renumbered with
+ * {@link #forIndex(int)}.
+ */
+public final class TaskPositions {
+
+    /**
+     * The distance between the positions of adjacent {@code Task}s after compaction.
+     * About twenty moves into the same spot fit before compaction is needed.
+     */
+    public static final long GAP = 1L << 20;
+
+    /**
+     * Returned by {@link #between(Task, Task)} when there is no key left between two neighbours.
+     */
+    public static final long NO_ROOM = Long.MIN_VALUE;
+
+    private TaskPositions() {
+    }
+
+    /**
+     * Returns the position of the {@code Task} at a given index in a freshly compacted list.
+     *
+     * @param index The index of the {@code Task} in its list.
+     * @return The position of the {@code Task} at {@code index}.
+     */
+    public static long forIndex(int index) {
+        return index * GAP;
+    }
+
+    /**
+     * Returns a position that sorts strictly between two neighbouring {@code Task}s.
+     *
+     * @param before The {@code Task} directly above, or null if the new spot is the top.
+     * @param after  The {@code Task} directly below, or null if the new spot is the bottom.
+     * @return A position between the two neighbours, or {@link #NO_ROOM} if there is none.
+     */
+    public static long between(Task before, Task after) {
+        if (before == null && after == null) return forIndex(0);
+        if (before == null) return after.getPosition() - GAP;
+        if (after == null) return before.getPosition() + GAP;
+        long low = before.getPosition();
+        long high = after.getPosition();
+        if (high - low < 2) return NO_ROOM;
+        return low + (high - low) / 2;
+    }
+}
@@ -0,0 +1,53 @@
+package com.thundercats.queuer.database;
+
+import android.database.Cursor;
+
+import com.thundercats.queuer.models.Task;
+
+/**
+ * Reads {@link com.thundercats.queuer.models.Task}s out of a {@code Cursor} over the tasks table.
+ * Every row is read into a new {@code Task}, so a read never hands back, or changes, an
+ * instance another thread holds.
+ */
+class TaskRowMapper extends RowMapper<Task> {
+
+    private final int localIdColumn;
+    private final int serverIdColumn;
+    private final int projectIdColumn;
+    private final int projectLocalIdColumn;
+    private final int textColumn;
+    private final int completedColumn;
+    private final int positionColumn;
+    private final int createdColumn;
+    private final int updatedColumn;
+
+    /**
+     * Resolves the column indexes of the {@code Cursor}.
+     *
+     * @param cursor Must contain every column of {@link TaskOpenHelper#TABLE_TASKS}.
+     */
+    TaskRowMapper(Cursor cursor) {
+        localIdColumn = cursor.getColumnIndexOrThrow(TaskOpenHelper.COLUMN_ID);
+        serverIdColumn = cursor.getColumnIndexOrThrow(TaskOpenHelper.COLUMN_SERVER_ID);
+        projectIdColumn = cursor.getColumnIndexOrThrow(TaskOpenHelper.COLUMN_PROJECT_SERVER_ID);
+        projectLocalIdColumn = cursor.getColumnIndexOrThrow(TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID);
+        textColumn = cursor.getColumnIndexOrThrow(TaskOpenHelper.COLUMN_TEXT);
+        completedColumn = cursor.getColumnIndexOrThrow(TaskOpenHelper.COLUMN_COMPLETED);
+        positionColumn = cursor.getColumnIndexOrThrow(TaskOpenHelper.COLUMN_POSITION);
+        createdColumn = cursor.getColumnIndexOrThrow(TaskOpenHelper.COLUMN_CREATED);
+        updatedColumn = cursor.getColumnIndexOrThrow(TaskOpenHelper.COLUMN_UPDATED);
+    }
+
+    @Override
+    Task map(Cursor cursor) {
+        return new Task(cursor.getInt(localIdColumn),
+                cursor.getInt(serverIdColumn),
+                cursor.getInt(projectIdColumn),
+                cursor.getInt(projectLocalIdColumn),
+                cursor.getString(textColumn),
+                cursor.getInt(completedColumn) == 1,
+                cursor.getLong(positionColumn),
+                readDate(cursor, createdColumn),
+                readDate(cursor, updatedColumn));
+    }
+}
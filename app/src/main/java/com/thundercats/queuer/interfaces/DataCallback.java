@@ -0,0 +1,19 @@
+package com.thundercats.queuer.interfaces;
+
+/**
+ * Receives the result of a database operation that ran in the background.
+ * Always called on the main thread, and never after the operation's tag was cancelled.
+ *
+ * @param <T> The type of the result.
+ * @see com.thundercats.queuer.managers.DataManager
+ */
+public interface DataCallback<T> {
+
+    /**
+     * Called on the main thread once the operation has finished.
+     *
+     * @param result The result of the operation; null for writes.
+     */
+    public void onResult(T result);
+
+}
@@ -0,0 +1,21 @@
+package com.thundercats.queuer.interfaces;
+
+/**
+ * A {@link DataCallback} that is also told when its operation failed, for callers that keep
+ * state until the answer comes. A plain {@code DataCallback} is not called at all on failure.
+ * Always called on the main thread, and never after the operation's tag was cancelled.
+ *
+ * @param <T> The type of the result.
+ * @see com.thundercats.queuer.managers.DataManager
+ */
+public interface DataErrorCallback<T> extends DataCallback<T> {
+
+    /**
+     * Called on the main thread instead of {@link #onResult(Object)} if the operation threw.
+     * Nothing the operation wrote is kept if it ran in a transaction.
+     *
+     * @param error What the operation threw; it has already been logged.
+     */
+    public void onError(RuntimeException error);
+
+}
@@ -5,6 +5,16 @@ package com.thundercats.queuer.interfaces;
  */
 public interface RearrangementListener {
     public void onStartedRearranging();
-    public void swapElements(int indexOne, int indexTwo);
+
+    /**
+     * Swaps the dragged element with the neighbour it crossed.
+     *
+     * @param indexOne The index of the dragged element.
+     * @param indexTwo The index of the neighbour.
+     * @return Whether the elements were swapped; false if the neighbour is not ready yet,
+     * in which case the drag stays where it is.
+     */
+    public boolean swapElements(int indexOne, int indexTwo);
+
     public void onFinishedRearranging();
 }
\ No newline at end of file
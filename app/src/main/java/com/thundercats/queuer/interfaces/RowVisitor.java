@@ -0,0 +1,18 @@
+package com.thundercats.queuer.interfaces;
+
+/**
+ * Receives rows one at a time as they are read from the database,
+ * so that callers do not have to build a list of every row first.
+ *
+ * @param <T> The model each row is read into.
+ */
+public interface RowVisitor<T> {
+
+    /**
+     * Called once per row, in query order.
+     *
+     * @param row The row that was just read.
+     * @return True to keep reading, false to stop and close the cursor.
+     */
+    public boolean onRow(T row);
+}
@@ -0,0 +1,818 @@
+package com.thundercats.queuer.managers;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.thundercats.queuer.QueuerApplication;
+import com.thundercats.queuer.database.DatabaseManager;
+import com.thundercats.queuer.database.ModelCache;
+import com.thundercats.queuer.database.OutboxEntry;
+import com.thundercats.queuer.database.ProjectDataSource;
+import com.thundercats.queuer.database.TaskDataSource;
+import com.thundercats.queuer.database.TaskPage;
+import com.thundercats.queuer.database.TaskPositions;
+import com.thundercats.queuer.interfaces.DataCallback;
+import com.thundercats.queuer.interfaces.DataErrorCallback;
+import com.thundercats.queuer.models.Project;
+import com.thundercats.queuer.models.Task;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs every {@link com.thundercats.queuer.database.TaskDataSource} and
+ * {@link com.thundercats.queuer.database.ProjectDataSource} call off the main thread.
+ * <p/>
+ * Writes go to a single writer thread, so they are applied in the order they were
+ * requested. Reads go to a small, fixed pool of reader threads. A read that must see an
+ * earlier write should be started from that write's callback. Results are delivered to
+ * {@link com.thundercats.queuer.interfaces.DataCallback}s on the main looper. An operation that
+ * throws is logged, and a {@link com.thundercats.queuer.interfaces.DataErrorCallback} is
+ * told on the main looper.
+ * <p/>
+ * Every read builds new model objects. The {@code Task}s and {@code Project}s it delivers,
+ * and the ones changed in memory through this class, are put in the
+ * {@link com.thundercats.queuer.database.ModelCache} on the main thread, so the background
+ * threads never touch an object a screen may be showing.
+ * <p/>
+ * Every operation takes a tag, usually the calling activity. {@link #cancelAll(Object)}
+ * drops the callbacks of that tag's pending operations and skips its pending reads.
+ * Writes are still applied, only their callbacks are dropped. The single instance is
+ * owned by {@link com.thundercats.queuer.QueuerApplication}.
+ */
+public class DataManager {
+
+    /**
+     * The number of threads that run reads.
+     */
+    private static final int READER_THREADS = 2;
+
+    /**
+     * Used to build a data source for every operation.
+     */
+    private final Context context;
+
+    /**
+     * Runs writes, one at a time, in order.
+     */
+    private final ExecutorService writer;
+
+    /**
+     * Runs reads.
+     */
+    private final ExecutorService readers;
+
+    /**
+     * Delivers results on the main thread.
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The operations that have not yet delivered their result, by tag.
+     * Only touched while holding its own lock.
+     */
+    private final Map<Object, List<Call<?>>> pendingCalls = new HashMap<Object, List<Call<?>>>();
+
+    /**
+     * Reads from or writes to the database. Runs on a background thread.
+     *
+     * @param <T> The type of the result.
+     */
+    private interface Operation<T> {
+        public T run(TaskDataSource tasks, ProjectDataSource projects);
+    }
+
+    /**
+     * Constructs the executors. No thread is started until the first operation.
+     *
+     * @param context Any context; only its application context is kept.
+     */
+    public DataManager(Context context) {
+        this.context = context.getApplicationContext();
+        writer = Executors.newSingleThreadExecutor(new BackgroundThreadFactory("queuer-db-writer"));
+        readers = Executors.newFixedThreadPool(READER_THREADS, new BackgroundThreadFactory("queuer-db-reader"));
+    }
+
+    /**
+     * Returns the {@code DataManager} owned by the application.
+     *
+     * @param context Any context of this application.
+     * @return The {@code DataManager} owned by the application.
+     */
+    public static DataManager getInstance(Context context) {
+        return ((QueuerApplication) context.getApplicationContext()).getDataManager();
+    }
+
+    ///////////////
+    /// READING ///
+    ///////////////
+
+    /**
+     * Returns the newest {@code Project} with a local ID that was delivered or changed, without
+     * touching the database. Safe to call on the main thread.
+     *
+     * @param localId The local ID of the {@code Project}.
+     * @return The {@code Project}, or null if it has to be loaded with {@link #loadProject}.
+     */
+    public Project peekProject(int localId) {
+        return cache().getProject(localId);
+    }
+
+    /**
+     * Returns the newest {@code Task} with a local ID that was delivered or changed, without
+     * touching the database. Safe to call on the main thread.
+     *
+     * @param localId The local ID of the {@code Task}.
+     * @return The {@code Task}, or null if it is not in memory.
+     */
+    public Task peekTask(int localId) {
+        return cache().getTask(localId);
+    }
+
+    /**
+     * Loads a {@code Project} by its local ID.
+     *
+     * @param tag      The tag to cancel this operation by.
+     * @param localId  The local ID of the {@code Project}.
+     * @param callback Receives the {@code Project}, or null if it does not exist.
+     */
+    public void loadProject(Object tag, final int localId, DataCallback<Project> callback) {
+        read(tag, new Operation<Project>() {
+            @Override
+            public Project run(TaskDataSource tasks, ProjectDataSource projects) {
+                return projects.getProject(localId);
+            }
+        }, cachingProject(callback));
+    }
+
+    /**
+     * Loads every {@code Project} with its unfinished count and head {@code Task}.
+     *
+     * @param tag      The tag to cancel this operation by.
+     * @param callback Receives the {@code Project}s.
+     * @see com.thundercats.queuer.database.ProjectDataSource#getFeedProjects()
+     */
+    public void loadFeedProjects(Object tag, DataCallback<ArrayList<Project>> callback) {
+        read(tag, new Operation<ArrayList<Project>>() {
+            @Override
+            public ArrayList<Project> run(TaskDataSource tasks, ProjectDataSource projects) {
+                return projects.getFeedProjects();
+            }
+        }, cachingProjects(callback));
+    }
+
+    /**
+     * Loads every {@code Task} of a {@code Project}, finished or not, ordered by position.
+     *
+     * @param tag            The tag to cancel this operation by.
+     * @param projectLocalId The local ID of the {@code Project}.
+     * @param callback       Receives the {@code Task}s.
+     */
+    public void loadTasks(Object tag, final int projectLocalId, DataCallback<ArrayList<Task>> callback) {
+        read(tag, new Operation<ArrayList<Task>>() {
+            @Override
+            public ArrayList<Task> run(TaskDataSource tasks, ProjectDataSource projects) {
+                return tasks.getTasks(projectLocalId);
+            }
+        }, cachingTasks(callback));
+    }
+
+    /**
+     * Loads the first unfinished {@code Task}s of a {@code Project}, ordered by position.
+     *
+     * @param tag            The tag to cancel this operation by.
+     * @param projectLocalId The local ID of the {@code Project}.
+     * @param limit          The maximum number of {@code Task}s to load.
+     * @param callback       Receives the {@code Task}s.
+     */
+    public void loadUnfinishedTasks(Object tag, final int projectLocalId, final int limit,
+                                    DataCallback<ArrayList<Task>> callback) {
+        read(tag, new Operation<ArrayList<Task>>() {
+            @Override
+            public ArrayList<Task> run(TaskDataSource tasks, ProjectDataSource projects) {
+                return tasks.getUnfinishedTasks(projectLocalId, limit);
+            }
+        }, cachingTasks(callback));
+    }
+
+    /**
+     * Loads a page of a {@code Project}'s unfinished {@code Task}s by index, with their total count.
+     *
+     * @param tag            The tag to cancel this operation by.
+     * @param projectLocalId The local ID of the {@code Project}.
+     * @param offset         The index of the first {@code Task} to load.
+     * @param limit          The maximum number of {@code Task}s to load.
+     * @param callback       Receives the page.
+     */
+    public void loadTaskPage(Object tag, final int projectLocalId, final int offset, final int limit,
+                             DataCallback<TaskPage> callback) {
+        read(tag, new Operation<TaskPage>() {
+            @Override
+            public TaskPage run(TaskDataSource tasks, ProjectDataSource projects) {
+                return tasks.getUnfinishedPage(projectLocalId, offset, limit);
+            }
+        }, cachingPage(callback));
+    }
+
+    /**
+     * Loads the unfinished {@code Task}s that follow a given {@code Task}, ordered by position.
+     *
+     * @param tag      The tag to cancel this operation by.
+     * @param anchor   The {@code Task} to load after.
+     * @param limit    The maximum number of {@code Task}s to load.
+     * @param callback Receives the {@code Task}s.
+     */
+    public void loadTasksAfter(Object tag, Task anchor, final int limit, DataCallback<ArrayList<Task>> callback) {
+        final Task key = copyKey(anchor);
+        read(tag, new Operation<ArrayList<Task>>() {
+            @Override
+            public ArrayList<Task> run(TaskDataSource tasks, ProjectDataSource projects) {
+                return tasks.getUnfinishedTasksAfter(key.getProjectLocalId(), key, limit);
+            }
+        }, cachingTasks(callback));
+    }
+
+    /**
+     * Loads the unfinished {@code Task}s that precede a given {@code Task}, ordered by position.
+     *
+     * @param tag      The tag to cancel this operation by.
+     * @param anchor   The {@code Task} to load before.
+     * @param limit    The maximum number of {@code Task}s to load.
+     * @param callback Receives the {@code Task}s.
+     */
+    public void loadTasksBefore(Object tag, Task anchor, final int limit, DataCallback<ArrayList<Task>> callback) {
+        final Task key = copyKey(anchor);
+        read(tag, new Operation<ArrayList<Task>>() {
+            @Override
+            public ArrayList<Task> run(TaskDataSource tasks, ProjectDataSource projects) {
+                return tasks.getUnfinishedTasksBefore(key.getProjectLocalId(), key, limit);
+            }
+        }, cachingTasks(callback));
+    }
+
+    ///////////////
+    /// WRITING ///
+    ///////////////
+
+    /**
+     * Writes a new {@code Project}.
+     *
+     * @param tag      The tag to cancel the callback by.
+     * @param title    The title of the new {@code Project}.
+     * @param color    The color of the new {@code Project}.
+     * @param callback Receives the new {@code Project}, with its local ID; may be null.
+     */
+    public void createProject(Object tag, final String title, final int color, DataCallback<Project> callback) {
+        write(tag, new Operation<Project>() {
+            @Override
+            public Project run(TaskDataSource tasks, ProjectDataSource projects) {
+                Date now = new Date();
+                return projects.createProject(title, color, false, 0, now, now);
+            }
+        }, cachingProject(callback));
+    }
+
+    /**
+     * Writes many new {@code Project}s in one transaction.
+     *
+     * @param tag      The tag to cancel the callback by.
+     * @param drafts   The {@code Project}s to write; they must not change until the callback.
+     * @param callback Receives the new {@code Project}s, with their local IDs; may be null.
+     */
+    public void createProjects(Object tag, final Collection<Project> drafts,
+                               DataCallback<ArrayList<Project>> callback) {
+        write(tag, new Operation<ArrayList<Project>>() {
+            @Override
+            public ArrayList<Project> run(TaskDataSource tasks, ProjectDataSource projects) {
+                return projects.createProjects(drafts);
+            }
+        }, cachingProjects(callback));
+    }
+
+    /**
+     * Hides or shows a {@code Project}. The {@code Project} is changed in memory at once.
+     *
+     * @param tag      The tag to cancel the callback by.
+     * @param project  The {@code Project} to change.
+     * @param isHidden Whether the {@code Project} is hidden now.
+     * @param callback Called once the change is written; may be null.
+     */
+    public void setProjectHidden(Object tag, final Project project, final boolean isHidden,
+                                 DataCallback<Void> callback) {
+        project.setHidden(isHidden);
+        cache().putProject(project);
+        write(tag, new Operation<Void>() {
+            @Override
+            public Void run(TaskDataSource tasks, ProjectDataSource projects) {
+                projects.updateProjectHidden(project, isHidden);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * Writes a new, unfinished {@code Task} above every other unfinished {@code Task}.
+     * The position is taken on the writer thread, so it does not matter which
+     * {@code Task}s are in memory.
+     *
+     * @param tag      The tag to cancel the callback by.
+     * @param name     The name of the new {@code Task}.
+     * @param project  The {@code Project} the {@code Task} belongs to.
+     * @param callback Receives the new {@code Task}, with its local ID and position; may be null.
+     */
+    public void createTask(Object tag, final String name, final Project project, DataCallback<Task> callback) {
+        write(tag, new Operation<Task>() {
+            @Override
+            public Task run(TaskDataSource tasks, ProjectDataSource projects) {
+                long position = TaskPositions.between(null, tasks.getNextUnfinishedTask(project.getLocalId()));
+                return tasks.createTask(name, project.getLocalId(), project.getId(), 0, position, false);
+            }
+        }, cachingTask(callback));
+    }
+
+    /**
+     * Writes many new {@code Task}s in one transaction, at the positions they already have.
+     *
+     * @param tag      The tag to cancel the callback by.
+     * @param drafts   The {@code Task}s to write; they must not change until the callback.
+     * @param callback Receives the new {@code Task}s, with their local IDs; may be null.
+     */
+    public void createTasks(Object tag, final Collection<Task> drafts, DataCallback<ArrayList<Task>> callback) {
+        write(tag, new Operation<ArrayList<Task>>() {
+            @Override
+            public ArrayList<Task> run(TaskDataSource tasks, ProjectDataSource projects) {
+                return tasks.createTasks(drafts);
+            }
+        }, cachingTasks(callback));
+    }
+
+    /**
+     * Renames a {@code Task}. The {@code Task} is changed in memory at once.
+     *
+     * @param tag      The tag to cancel the callback by.
+     * @param task     The {@code Task} to rename.
+     * @param name     The new name.
+     * @param callback Called once the change is written; may be null.
+     */
+    public void renameTask(Object tag, final Task task, final String name, DataCallback<Void> callback) {
+        task.setName(name);
+        cache().putTask(task);
+        write(tag, new Operation<Void>() {
+            @Override
+            public Void run(TaskDataSource tasks, ProjectDataSource projects) {
+                tasks.updateTaskName(task, name);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * Marks a {@code Task} finished or unfinished. The {@code Task} is changed in memory at once.
+     *
+     * @param tag      The tag to cancel the callback by.
+     * @param task     The {@code Task} to change.
+     * @param finished Whether the {@code Task} is finished now.
+     * @param callback Called once the change is written; may be null.
+     */
+    public void setTaskFinished(Object tag, final Task task, final boolean finished,
+                                DataCallback<Void> callback) {
+        task.setFinished(finished);
+        cache().putTask(task);
+        write(tag, new Operation<Void>() {
+            @Override
+            public Void run(TaskDataSource tasks, ProjectDataSource projects) {
+                tasks.updateTaskFinished(task, finished);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * Writes a {@code Task}'s new position. The {@code Task} is changed in memory at once.
+     *
+     * @param task     The {@code Task} that moved.
+     * @param position Its new position.
+     */
+    public void setTaskPosition(final Task task, final long position) {
+        task.setPosition(position);
+        cache().putTask(task);
+        write(null, new Operation<Void>() {
+            @Override
+            public Void run(TaskDataSource tasks, ProjectDataSource projects) {
+                tasks.updateTaskPosition(task, position);
+                return null;
+            }
+        }, null);
+    }
+
+    /**
+     * Places a moved {@code Task} between its new neighbours as they are in the database.
+     * The {@code Task}'s position is changed in memory once the write is done.
+     *
+     * @param tag      The tag to cancel the callback by.
+     * @param task     The {@code Task} that moved.
+     * @param before   The {@code Task} now directly above it, or null if not known.
+     * @param after    The {@code Task} now directly below it, or null if it is the last one.
+     * @param callback Receives the new position, or {@link TaskPositions#NO_ROOM} if every
+     *                 unfinished {@code Task} was renumbered; may be null.
+     * @see com.thundercats.queuer.database.TaskDataSource#moveTask(Task, Task, Task)
+     */
+    public void moveTask(Object tag, final Task task, Task before, Task after, final DataCallback<Long> callback) {
+        final Task movedKey = copyKey(task);
+        final Task beforeKey = before == null ? null : copyKey(before);
+        final Task afterKey = after == null ? null : copyKey(after);
+        write(tag, new Operation<Long>() {
+            @Override
+            public Long run(TaskDataSource tasks, ProjectDataSource projects) {
+                return tasks.moveTask(movedKey, beforeKey, afterKey);
+            }
+        }, new ForwardingCallback<Long>(callback) {
+            @Override
+            public void onResult(Long position) {
+                if (position != TaskPositions.NO_ROOM) {
+                    task.setPosition(position);
+                    cache().putTask(task);
+                }
+                super.onResult(position);
+            }
+        });
+    }
+
+    /**
+     * Rewrites the name, finished status and position of several {@code Task}s in one transaction.
+     *
+     * @param tasksToWrite The {@code Task}s to write. The collection is copied, so
+     *                     the caller may keep changing it.
+     */
+    public void updateTasks(Collection<Task> tasksToWrite) {
+        updateTasks(null, tasksToWrite, null);
+    }
+
+    /**
+     * Rewrites the name, finished status and position of several {@code Task}s in one transaction.
+     *
+     * @param tag          The tag to cancel the callback by.
+     * @param tasksToWrite The {@code Task}s to write. The collection is copied, so
+     *                     the caller may keep changing it.
+     * @param callback     Called once the {@code Task}s are written; may be null.
+     */
+    public void updateTasks(Object tag, Collection<Task> tasksToWrite, DataCallback<Void> callback) {
+        final ArrayList<Task> snapshot = new ArrayList<Task>(tasksToWrite);
+        for (Task task : snapshot) cache().putTask(task);
+        write(tag, new Operation<Void>() {
+            @Override
+            public Void run(TaskDataSource tasks, ProjectDataSource projects) {
+                tasks.updateTasks(snapshot);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * Deletes every {@code Project} and every {@code Task}.
+     *
+     * @param tag      The tag to cancel the callback by.
+     * @param callback Called once everything is deleted; may be null.
+     */
+    public void deleteEverything(Object tag, DataCallback<Void> callback) {
+        write(tag, new Operation<Void>() {
+            @Override
+            public Void run(TaskDataSource tasks, ProjectDataSource projects) {
+                tasks.deleteAllTasks();
+                projects.deleteAllProjects();
+                return null;
+            }
+        }, callback);
+    }
+
+    //////////////
+    /// OUTBOX ///
+    //////////////
+
+    /**
+     * Loads the oldest {@code Task} changes that are due to be sent to the server. Runs on the
+     * writer thread, so every edit requested before this call is among them.
+     *
+     * @param tag      The tag to cancel the callback by.
+     * @param limit    The most entries to load.
+     * @param callback Receives the due entries, oldest first.
+     */
+    public void loadOutboxEntries(Object tag, final int limit, DataCallback<ArrayList<OutboxEntry>> callback) {
+        write(tag, new Operation<ArrayList<OutboxEntry>>() {
+            @Override
+            public ArrayList<OutboxEntry> run(TaskDataSource tasks, ProjectDataSource projects) {
+                return tasks.getOutbox().getDueEntries(System.currentTimeMillis(), limit);
+            }
+        }, callback);
+    }
+
+    /**
+     * Removes an entry the server accepted and writes back the server ID it assigned, if any.
+     *
+     * @param entry    The entry that was sent.
+     * @param serverId The ID the server assigned, or 0.
+     * @see com.thundercats.queuer.database.Outbox#acknowledge(OutboxEntry, long)
+     */
+    public void acknowledgeOutboxEntry(final OutboxEntry entry, final long serverId) {
+        write(null, new Operation<Void>() {
+            @Override
+            public Void run(TaskDataSource tasks, ProjectDataSource projects) {
+                tasks.getOutbox().acknowledge(entry, serverId);
+                return null;
+            }
+        }, null);
+    }
+
+    /**
+     * Puts an entry off after a failed attempt to send it.
+     *
+     * @param entry       The entry that failed.
+     * @param nextAttempt When to try it again, in milliseconds since the epoch.
+     */
+    public void retryOutboxEntryLater(final OutboxEntry entry, final long nextAttempt) {
+        write(null, new Operation<Void>() {
+            @Override
+            public Void run(TaskDataSource tasks, ProjectDataSource projects) {
+                tasks.getOutbox().retryLater(entry, nextAttempt);
+                return null;
+            }
+        }, null);
+    }
+
+    ////////////////////
+    /// CANCELLATION ///
+    ////////////////////
+
+    /**
+     * Drops the callbacks of every pending operation with the given tag and skips the
+     * pending reads. Pending writes are still applied. Call from {@code onDestroy}.
+     *
+     * @param tag The tag the operations were started with.
+     */
+    public void cancelAll(Object tag) {
+        List<Call<?>> calls;
+        synchronized (pendingCalls) {
+            calls = pendingCalls.remove(tag);
+        }
+        if (calls == null) return;
+        for (Call<?> call : calls) call.cancel();
+    }
+
+    /**
+     * Stops the background threads once the queued operations have run.
+     */
+    public void shutdown() {
+        readers.shutdown();
+        writer.shutdown();
+    }
+
+    ////////////////
+    /// INTERNAL ///
+    ////////////////
+
+    /**
+     * Copies the fields a keyset query reads, so a {@code Task} that is changed on the main
+     * thread while the query runs does not change the key.
+     */
+    private static Task copyKey(Task task) {
+        return new Task(task.getLocalId(), task.getId(), task.getProject_id(), task.getProjectLocalId(),
+                task.getName(), task.isFinished(), task.getPosition(), null, null);
+    }
+
+    private ModelCache cache() {
+        return DatabaseManager.getInstance(context).getModelCache();
+    }
+
+    /**
+     * Wraps a callback so the delivered {@code Project} is cached first, on the main thread.
+     */
+    private DataCallback<Project> cachingProject(DataCallback<Project> callback) {
+        return new ForwardingCallback<Project>(callback) {
+            @Override
+            public void onResult(Project project) {
+                if (project != null) cacheProject(project);
+                super.onResult(project);
+            }
+        };
+    }
+
+    /**
+     * Wraps a callback so the delivered {@code Project}s are cached first, on the main thread.
+     */
+    private DataCallback<ArrayList<Project>> cachingProjects(DataCallback<ArrayList<Project>> callback) {
+        return new ForwardingCallback<ArrayList<Project>>(callback) {
+            @Override
+            public void onResult(ArrayList<Project> projects) {
+                for (Project project : projects) cacheProject(project);
+                super.onResult(projects);
+            }
+        };
+    }
+
+    private void cacheProject(Project project) {
+        cache().putProject(project);
+        if (project.getHeadTask() != null) cache().putTask(project.getHeadTask());
+    }
+
+    /**
+     * Wraps a callback so the delivered {@code Task} is cached first, on the main thread.
+     */
+    private DataCallback<Task> cachingTask(DataCallback<Task> callback) {
+        return new ForwardingCallback<Task>(callback) {
+            @Override
+            public void onResult(Task task) {
+                if (task != null) cache().putTask(task);
+                super.onResult(task);
+            }
+        };
+    }
+
+    /**
+     * Wraps a callback so the delivered {@code Task}s are cached first, on the main thread.
+     */
+    private DataCallback<ArrayList<Task>> cachingTasks(DataCallback<ArrayList<Task>> callback) {
+        return new ForwardingCallback<ArrayList<Task>>(callback) {
+            @Override
+            public void onResult(ArrayList<Task> tasks) {
+                for (Task task : tasks) cache().putTask(task);
+                super.onResult(tasks);
+            }
+        };
+    }
+
+    /**
+     * Wraps a callback so the {@code Task}s of the delivered page are cached first, on the main thread.
+     */
+    private DataCallback<TaskPage> cachingPage(DataCallback<TaskPage> callback) {
+        return new ForwardingCallback<TaskPage>(callback) {
+            @Override
+            public void onResult(TaskPage page) {
+                for (Task task : page.getTasks()) cache().putTask(task);
+                super.onResult(page);
+            }
+        };
+    }
+
+    /**
+     * Hands results and failures on to a caller's callback, which may be null, after
+     * whatever a subclass does with them first.
+     */
+    private static class ForwardingCallback<T> implements DataErrorCallback<T> {
+        private final DataCallback<T> callback;
+
+        ForwardingCallback(DataCallback<T> callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void onResult(T result) {
+            if (callback != null) callback.onResult(result);
+        }
+
+        @Override
+        public void onError(RuntimeException error) {
+            if (callback instanceof DataErrorCallback) ((DataErrorCallback<T>) callback).onError(error);
+        }
+    }
+
+    private <T> void read(Object tag, Operation<T> operation, DataCallback<T> callback) {
+        enqueue(readers, new Call<T>(tag, operation, callback, false));
+    }
+
+    private <T> void write(Object tag, Operation<T> operation, DataCallback<T> callback) {
+        enqueue(writer, new Call<T>(tag, operation, callback, true));
+    }
+
+    private void enqueue(ExecutorService executor, Call<?> call) {
+        if (call.tag != null) {
+            synchronized (pendingCalls) {
+                List<Call<?>> calls = pendingCalls.get(call.tag);
+                if (calls == null) {
+                    calls = new ArrayList<Call<?>>();
+                    pendingCalls.put(call.tag, calls);
+                }
+                calls.add(call);
+            }
+        }
+        call.future = executor.submit(call);
+    }
+
+    /**
+     * Forgets a call once its result has been delivered or dropped.
+     */
+    private void finished(Call<?> call) {
+        if (call.tag == null) return;
+        synchronized (pendingCalls) {
+            List<Call<?>> calls = pendingCalls.get(call.tag);
+            if (calls == null) return;
+            for (Iterator<Call<?>> iterator = calls.iterator(); iterator.hasNext(); ) {
+                if (iterator.next() == call) {
+                    iterator.remove();
+                    break;
+                }
+            }
+            if (calls.isEmpty()) pendingCalls.remove(call.tag);
+        }
+    }
+
+    /**
+     * One queued operation and the callback that receives its result.
+     */
+    private final class Call<T> implements Runnable {
+        private final Object tag;
+        private final Operation<T> operation;
+        private final DataCallback<T> callback;
+        private final boolean isWrite;
+        private volatile boolean cancelled;
+        private volatile Future<?> future;
+
+        Call(Object tag, Operation<T> operation, DataCallback<T> callback, boolean isWrite) {
+            this.tag = tag;
+            this.operation = operation;
+            this.callback = callback;
+            this.isWrite = isWrite;
+        }
+
+        void cancel() {
+            cancelled = true;
+            Future<?> future = this.future;
+            if (!isWrite && future != null) future.cancel(false);
+        }
+
+        @Override
+        public void run() {
+            if (cancelled && !isWrite) return;
+            final T result;
+            try {
+                TaskDataSource tasks = new TaskDataSource(context);
+                ProjectDataSource projects = new ProjectDataSource(context);
+                tasks.open();
+                projects.open();
+                result = operation.run(tasks, projects);
+                tasks.close();
+                projects.close();
+            } catch (final RuntimeException e) {
+                Log.e(DataManager.class.getName(), (isWrite ? "Write" : "Read") + " failed", e);
+                if (!(callback instanceof DataErrorCallback)) {
+                    finished(this);
+                    return;
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        finished(Call.this);
+                        if (!cancelled) ((DataErrorCallback<T>) callback).onError(e);
+                    }
+                });
+                return;
+            }
+            if (callback == null) {
+                finished(this);
+                return;
+            }
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    finished(Call.this);
+                    if (!cancelled) callback.onResult(result);
+                }
+            });
+        }
+    }
+
+    /**
+     * Names the database threads and runs them below the UI thread's priority.
+     */
+    private static final class BackgroundThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        BackgroundThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, name + "-" + count.incrementAndGet());
+        }
+    }
+}
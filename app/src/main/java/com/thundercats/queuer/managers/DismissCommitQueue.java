@@ -0,0 +1,177 @@
+package com.thundercats.queuer.managers;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.thundercats.queuer.interfaces.DataCallback;
+import com.thundercats.queuer.interfaces.DataErrorCallback;
+import com.thundercats.queuer.models.Task;
+
+import java.util.ArrayList;
+
+/**
+ * Holds {@code Task}s that were dismissed (finished) in memory until their undo window closes,
+ * then writes them in one transaction.
+ * <p/>
+ * A dismissal only changes the {@code Task} and the adapter in memory, and an undo only
+ * reverts that, so neither touches the database. When the undo popup of
+ * {@link com.thundercats.queuer.views.EnhancedListView} hides, or
+ * {@link com.thundercats.queuer.views.EnhancedListView#discardUndo()} is called, each
+ * {@code Undoable.discard()} hands its {@code Task} to {@link #commitLater(Task)}, and the
+ * {@code Task}s handed over in the same main-loop turn are written together.
+ * <p/>
+ * Only touched from the main thread.
+ */
+public class DismissCommitQueue {
+
+    private final DataManager dataManager;
+
+    /**
+     * The tag the batch writes are started with.
+     */
+    private final Object tag;
+
+    /**
+     * Every dismissed {@code Task} whose write has not finished yet, in or out of its undo window.
+     */
+    private final ArrayList<Task> unwritten = new ArrayList<Task>();
+
+    /**
+     * The {@code Task}s whose undo window has closed, waiting for the next batch.
+     */
+    private final ArrayList<Task> ready = new ArrayList<Task>();
+
+    /**
+     * Called once each batch is written, or failed and was put back; may be null.
+     */
+    private final DataCallback<Void> onCommitted;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param dataManager Writes the batches.
+     * @param tag         The tag the batch writes are started with, usually the activity.
+     */
+    public DismissCommitQueue(DataManager dataManager, Object tag) {
+        this(dataManager, tag, null);
+    }
+
+    /**
+     * @param dataManager Writes the batches.
+     * @param tag         The tag the batch writes are started with, usually the activity.
+     * @param onCommitted Called on the main thread once each batch is written, or failed and
+     *                    was put back, so the list can be reloaded; may be null.
+     */
+    public DismissCommitQueue(DataManager dataManager, Object tag, DataCallback<Void> onCommitted) {
+        this.dataManager = dataManager;
+        this.tag = tag;
+        this.onCommitted = onCommitted;
+    }
+
+    /**
+     * Finishes a {@code Task} in memory only. Call from {@code onDismiss}.
+     *
+     * @param task The dismissed {@code Task}.
+     */
+    public void hold(Task task) {
+        task.setFinished(true);
+        unwritten.add(task);
+    }
+
+    /**
+     * Reverts {@link #hold(Task)}. Call from {@code Undoable.undo()}.
+     *
+     * @param task The {@code Task} whose dismissal was undone.
+     */
+    public void release(Task task) {
+        task.setFinished(false);
+        unwritten.remove(task);
+    }
+
+    /**
+     * Queues a held {@code Task} to be written with the rest of this main-loop turn's
+     * {@code Task}s. Call from {@code Undoable.discard()}.
+     *
+     * @param task The {@code Task} whose undo window has closed.
+     */
+    public void commitLater(Task task) {
+        if (ready.isEmpty()) handler.post(flushRunnable);
+        ready.add(task);
+    }
+
+    /**
+     * Writes every queued {@code Task} now, in one transaction. Call from {@code onPause},
+     * after {@code discardUndo()}, so nothing is lost when the activity goes away.
+     */
+    public void flush() {
+        handler.removeCallbacks(flushRunnable);
+        if (ready.isEmpty()) return;
+        final ArrayList<Task> batch = new ArrayList<Task>(ready);
+        ready.clear();
+        dataManager.updateTasks(tag, batch, new DataErrorCallback<Void>() {
+            @Override
+            public void onResult(Void result) {
+                unwritten.removeAll(batch);
+                if (onCommitted != null) onCommitted.onResult(null);
+            }
+
+            @Override
+            public void onError(RuntimeException error) {
+                // the transaction rolled back, so the Tasks are still unfinished in the database
+                for (Task task : batch) release(task);
+                if (onCommitted != null) onCommitted.onResult(null);
+            }
+        });
+    }
+
+    /**
+     * Returns whether a {@code Task} is finished in memory but maybe not yet in the database,
+     * so a read that returns it unfinished should skip it.
+     *
+     * @param task A {@code Task}, possibly another instance of a held one.
+     * @return Whether the {@code Task} was dismissed and its write has not finished.
+     */
+    public boolean isUnwritten(Task task) {
+        return unwritten.contains(task);
+    }
+
+    /**
+     * Returns how many dismissed {@code Task}s of a {@code Project} are not yet written.
+     *
+     * @param projectLocalId The local ID of the {@code Project}.
+     * @return How many of its {@code Task}s a read may still return unfinished.
+     */
+    public int countUnwritten(int projectLocalId) {
+        int count = 0;
+        for (Task task : unwritten) {
+            if (task.getProjectLocalId() == projectLocalId) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns how many dismissed {@code Task}s of the same {@code Project} are not yet written
+     * and sort before a {@code Task} on (position, local ID). A read by offset still counts
+     * them, so they shift its offsets.
+     *
+     * @param task A {@code Task} as loaded from the database.
+     * @return How many unwritten dismissals a read counts above {@code task}.
+     */
+    public int countUnwrittenBefore(Task task) {
+        int count = 0;
+        for (Task dismissed : unwritten) {
+            if (dismissed.getProjectLocalId() != task.getProjectLocalId()) continue;
+            if (dismissed.getPosition() < task.getPosition()
+                    || (dismissed.getPosition() == task.getPosition() && dismissed.getLocalId() < task.getLocalId()))
+                count++;
+        }
+        return count;
+    }
+}
@@ -11,10 +11,8 @@ import com.android.volley.Response;
 import com.android.volley.VolleyError;
 import com.android.volley.toolbox.HttpHeaderParser;
 import com.android.volley.toolbox.JsonObjectRequest;
-import com.android.volley.toolbox.Volley;
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
-import com.thundercats.queuer.QueuerApplication;
 import com.thundercats.queuer.R;
 import com.thundercats.queuer.interfaces.LoginManagerCallback;
 import com.thundercats.queuer.models.LoginModel;
@@ -169,8 +167,6 @@ public class LoginManager {
      */
     private void authenticate(String username, String password) {
 
-        ((QueuerApplication) context.getApplicationContext()).setRequestQueue(Volley.newRequestQueue(context));
-
         // Get server URL
         String server = URL;
 
@@ -208,7 +204,8 @@ public class LoginManager {
             }
         };
         */
-        ((QueuerApplication) context.getApplicationContext()).getRequestQueue().add(request);
+        // a repeated tap while the first attempt is in flight is answered by the first attempt
+        NetworkManager.getInstance(context).addIfNotInFlight(request);
 
     }
 
@@ -0,0 +1,277 @@
+package com.thundercats.queuer.managers;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Base64;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.ExecutorDelivery;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.ResponseDelivery;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.DiskBasedCache;
+import com.android.volley.toolbox.HurlStack;
+import com.thundercats.queuer.QueuerApplication;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * The process-wide owner of the Volley {@code RequestQueue}.
+ * <p/>
+ * The queue, its cache dispatcher and its {@link #NETWORK_THREADS} network dispatchers are
+ * started on the first request and stopped by {@link #shutdown()}, so the number of threads
+ * does not grow with the number of requests. {@link #addIfNotInFlight(Request)} collapses a
+ * request into an identical one that has not been answered yet, for requests such as a login
+ * that a user can send again by tapping twice. The single instance is owned by
+ * {@link com.thundercats.queuer.QueuerApplication}.
+ */
+public class NetworkManager {
+
+    /**
+     * How many requests are sent at once.
+     */
+    public static final int NETWORK_THREADS = 4;
+
+    /**
+     * The directory, in the application's cache directory, of the response cache.
+     */
+    private static final String CACHE_DIRECTORY = "volley";
+
+    /**
+     * The tag of requests added without one.
+     */
+    private static final String DEFAULT_TAG = NetworkManager.class.getName();
+
+    /**
+     * Used to find the cache directory.
+     */
+    private final Context context;
+
+    /**
+     * The queue, or null while the manager is not running.
+     */
+    private RequestQueue requestQueue;
+
+    /**
+     * The requests added through this manager that have not been answered or cancelled yet.
+     */
+    private final ArrayList<Request<?>> pending = new ArrayList<Request<?>>();
+
+    /**
+     * The pending requests added through {@link #addIfNotInFlight(Request)}, by {@link #keyOf(Request)}.
+     */
+    private final HashMap<String, Request<?>> inFlight = new HashMap<String, Request<?>>();
+
+    /**
+     * How many requests were handed to the queue.
+     */
+    private int sentCount;
+
+    /**
+     * How many requests were dropped for an identical one in flight.
+     */
+    private int collapsedCount;
+
+    /**
+     * @param context Any context; only its application context is kept.
+     */
+    public NetworkManager(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Returns the {@code NetworkManager} owned by the application.
+     *
+     * @param context Any context of this application.
+     * @return The {@code NetworkManager} owned by the application.
+     */
+    public static NetworkManager getInstance(Context context) {
+        return ((QueuerApplication) context.getApplicationContext()).getNetworkManager();
+    }
+
+    /**
+     * Returns the queue, starting it if it is not running.
+     *
+     * @return The running queue.
+     */
+    public synchronized RequestQueue getRequestQueue() {
+        if (requestQueue == null) {
+            File cacheDirectory = new File(context.getCacheDir(), CACHE_DIRECTORY);
+            requestQueue = new RequestQueue(new DiskBasedCache(cacheDirectory),
+                    new BasicNetwork(new HurlStack()), NETWORK_THREADS, new TrackingDelivery());
+            requestQueue.start();
+        }
+        return requestQueue;
+    }
+
+    /**
+     * Sends a request. A request without a tag is given one, so that it can be cancelled.
+     *
+     * @param request The request to send.
+     * @param <T>     The type of the parsed response.
+     * @return The request.
+     */
+    public synchronized <T> Request<T> add(Request<T> request) {
+        if (request.getTag() == null) request.setTag(DEFAULT_TAG);
+        prunePending();
+        pending.add(request);
+        sentCount++;
+        getRequestQueue().add(request);
+        return request;
+    }
+
+    /**
+     * Sends a request unless an identical one, with the same method, URL and body, was added
+     * through this method and has not been answered yet. A request that is dropped never calls
+     * its listeners, so it should only be used where the listeners of the first request answer
+     * for both, as with a singleton such as {@link LoginManager}.
+     *
+     * @param request The request to send.
+     * @return Whether the request was sent, rather than dropped.
+     */
+    public synchronized boolean addIfNotInFlight(Request<?> request) {
+        String key = keyOf(request);
+        Request<?> previous = inFlight.get(key);
+        if (previous != null && !isFinished(previous)) {
+            collapsedCount++;
+            return false;
+        }
+        inFlight.put(key, request);
+        add(request);
+        return true;
+    }
+
+    /**
+     * Cancels every pending request with the given tag.
+     *
+     * @param tag The tag of the requests to cancel.
+     */
+    public synchronized void cancelAll(Object tag) {
+        if (requestQueue != null) requestQueue.cancelAll(tag);
+    }
+
+    /**
+     * Cancels every pending request and stops the queue's threads. The next request starts them again.
+     */
+    public synchronized void shutdown() {
+        if (requestQueue == null) return;
+        for (Request<?> request : pending) request.cancel();
+        pending.clear();
+        inFlight.clear();
+        requestQueue.stop();
+        requestQueue = null;
+    }
+
+    /**
+     * Returns how many threads the queue runs.
+     *
+     * @return The cache dispatcher and the network dispatchers while the queue runs, or 0.
+     */
+    public synchronized int getThreadCount() {
+        return requestQueue == null ? 0 : NETWORK_THREADS + 1;
+    }
+
+    /**
+     * Returns how many requests added through this manager have not been answered or cancelled yet.
+     *
+     * @return How many requests are queued or being sent.
+     */
+    public synchronized int getQueueDepth() {
+        prunePending();
+        return pending.size();
+    }
+
+    /**
+     * Returns how many requests were handed to the queue.
+     *
+     * @return How many requests were sent.
+     */
+    public synchronized int getSentCount() {
+        return sentCount;
+    }
+
+    /**
+     * Returns how many requests {@link #addIfNotInFlight(Request)} dropped.
+     *
+     * @return How many requests were collapsed into one in flight.
+     */
+    public synchronized int getCollapsedCount() {
+        return collapsedCount;
+    }
+
+    /**
+     * Forgets a request that was answered, with its final response or an error.
+     */
+    private synchronized void finished(Request<?> request) {
+        pending.remove(request);
+        inFlight.values().remove(request);
+    }
+
+    /**
+     * Forgets the requests that were cancelled.
+     */
+    private void prunePending() {
+        for (Iterator<Request<?>> iterator = pending.iterator(); iterator.hasNext(); ) {
+            if (isFinished(iterator.next())) iterator.remove();
+        }
+        for (Iterator<Request<?>> iterator = inFlight.values().iterator(); iterator.hasNext(); ) {
+            if (isFinished(iterator.next())) iterator.remove();
+        }
+    }
+
+    /**
+     * Returns whether a request was cancelled, which Volley does not report. Answered requests
+     * are forgotten by the {@link TrackingDelivery}.
+     */
+    private static boolean isFinished(Request<?> request) {
+        return request.isCanceled();
+    }
+
+    /**
+     * Returns what identical requests have in common: the method, the URL and the body.
+     */
+    private static String keyOf(Request<?> request) {
+        byte[] body;
+        try {
+            body = request.getBody();
+        } catch (AuthFailureError e) {
+            body = null;
+        }
+        return request.getMethod() + " " + request.getUrl()
+                + (body == null ? "" : " " + Base64.encodeToString(body, Base64.NO_WRAP));
+    }
+
+    /**
+     * Delivers responses and errors on the main thread, as Volley does by default, and forgets
+     * each request once it has its final answer. Volley only marks a request delivered when it
+     * has a response, so a request that failed would otherwise look in flight forever.
+     */
+    private final class TrackingDelivery implements ResponseDelivery {
+        private final ResponseDelivery delivery = new ExecutorDelivery(new Handler(Looper.getMainLooper()));
+
+        @Override
+        public void postResponse(Request<?> request, Response<?> response) {
+            postResponse(request, response, null);
+        }
+
+        @Override
+        public void postResponse(Request<?> request, Response<?> response, Runnable runnable) {
+            delivery.postResponse(request, response, runnable);
+            // an intermediate response is followed by the refreshed one
+            if (!response.intermediate) finished(request);
+        }
+
+        @Override
+        public void postError(Request<?> request, VolleyError error) {
+            delivery.postError(request, error);
+            finished(request);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.thundercats.queuer.managers;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.android.volley.toolbox.JsonRequest;
+import com.thundercats.queuer.QueuerApplication;
+import com.thundercats.queuer.constants.Server;
+import com.thundercats.queuer.database.Outbox;
+import com.thundercats.queuer.database.OutboxEntry;
+import com.thundercats.queuer.interfaces.DataErrorCallback;
+import com.thundercats.queuer.models.Task;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+
+/**
+ * Sends the {@code Task} changes queued in the {@link com.thundercats.queuer.database.Outbox}
+ * to the server through the {@link NetworkManager}.
+ * <p/>
+ * Entries are sent in batches of {@link #BATCH_SIZE}. Each request retries on its own through a
+ * {@code DefaultRetryPolicy}; an entry that still fails is put off for a delay that grows by the
+ * same backoff multiplier with every failed attempt, up to {@link #MAX_RETRY_DELAY_MS}, and the
+ * next flush is scheduled for when it is due. The single instance is owned by
+ * {@link com.thundercats.queuer.QueuerApplication}; everything here runs on the main thread.
+ */
+public class OutboxManager {
+
+    /**
+     * The most entries sent at once.
+     */
+    private static final int BATCH_SIZE = 20;
+
+    /**
+     * The timeout of a request's first try.
+     */
+    private static final int INITIAL_TIMEOUT_MS = DefaultRetryPolicy.DEFAULT_TIMEOUT_MS;
+
+    /**
+     * How often a request is retried before its entry is put off.
+     */
+    private static final int MAX_RETRIES = 2;
+
+    /**
+     * How much the timeout of a request, and the delay of an entry, grow per failed try.
+     */
+    private static final float BACKOFF_MULTIPLIER = 2f;
+
+    /**
+     * How long an entry is put off after its first failed attempt.
+     */
+    private static final long FIRST_RETRY_DELAY_MS = 10 * 1000;
+
+    /**
+     * The longest an entry is put off.
+     */
+    private static final long MAX_RETRY_DELAY_MS = 30 * 60 * 1000;
+
+    /**
+     * Reads and updates the outbox.
+     */
+    private final DataManager dataManager;
+
+    /**
+     * Sends the requests.
+     */
+    private final NetworkManager networkManager;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Whether a batch is being loaded or sent.
+     */
+    private boolean flushing;
+
+    /**
+     * Whether {@link #flush()} was called while a batch was being sent.
+     */
+    private boolean flushAgain;
+
+    /**
+     * How many requests of the current batch have not finished.
+     */
+    private int inFlight;
+
+    /**
+     * The shortest delay an entry of the current batch was put off for, or -1.
+     */
+    private long shortestDelay;
+
+    /**
+     * @param context Any context of this application.
+     */
+    public OutboxManager(Context context) {
+        dataManager = DataManager.getInstance(context);
+        networkManager = NetworkManager.getInstance(context);
+    }
+
+    /**
+     * Returns the {@code OutboxManager} owned by the application.
+     *
+     * @param context Any context of this application.
+     * @return The {@code OutboxManager} owned by the application.
+     */
+    public static OutboxManager getInstance(Context context) {
+        return ((QueuerApplication) context.getApplicationContext()).getOutboxManager();
+    }
+
+    /**
+     * Sends every due entry, a batch at a time. Edits requested before this call are included.
+     */
+    public void flush() {
+        if (flushing) {
+            flushAgain = true;
+            return;
+        }
+        handler.removeCallbacks(flushRunnable);
+        flushing = true;
+        flushAgain = false;
+        dataManager.loadOutboxEntries(this, BATCH_SIZE, new DataErrorCallback<ArrayList<OutboxEntry>>() {
+            @Override
+            public void onResult(ArrayList<OutboxEntry> entries) {
+                send(entries);
+            }
+
+            @Override
+            public void onError(RuntimeException error) {
+                // nothing was sent; try the whole batch again later
+                flushing = false;
+                flushAgain = false;
+                handler.postDelayed(flushRunnable, FIRST_RETRY_DELAY_MS);
+            }
+        });
+    }
+
+    private void send(ArrayList<OutboxEntry> entries) {
+        inFlight = entries.size();
+        shortestDelay = -1;
+        final boolean fullBatch = entries.size() == BATCH_SIZE;
+        if (entries.isEmpty()) {
+            finishBatch(false);
+            return;
+        }
+        for (final OutboxEntry entry : entries) {
+            Request<JSONObject> request = createRequest(entry, new Response.Listener<JSONObject>() {
+                @Override
+                public void onResponse(JSONObject response) {
+                    acknowledge(entry, response.optLong("id", 0));
+                    finishRequest(fullBatch);
+                }
+            }, new Response.ErrorListener() {
+                @Override
+                public void onErrorResponse(VolleyError error) {
+                    int status = error.networkResponse == null ? 0 : error.networkResponse.statusCode;
+                    if (status == 404 && !Outbox.OPERATION_CREATE.equals(entry.getOperation())) {
+                        // already gone on the server; nothing left to change
+                        acknowledge(entry, 0);
+                    } else {
+                        Log.w(OutboxManager.class.getName(), "Sending " + entry.getOperation() + " of task "
+                                + entry.getTaskLocalId() + " failed with status " + status);
+                        retryLater(entry);
+                    }
+                    finishRequest(fullBatch);
+                }
+            });
+            if (request == null) {
+                finishRequest(fullBatch);
+                continue;
+            }
+            request.setRetryPolicy(new DefaultRetryPolicy(INITIAL_TIMEOUT_MS, MAX_RETRIES, BACKOFF_MULTIPLIER));
+            request.setShouldCache(false);
+            request.setTag(this);
+            networkManager.add(request);
+        }
+    }
+
+    /**
+     * Builds the request for an entry. An entry that needs no request is settled here.
+     *
+     * @return The request, or null if there is nothing to send yet.
+     */
+    private Request<JSONObject> createRequest(OutboxEntry entry, Response.Listener<JSONObject> listener,
+                                              Response.ErrorListener errorListener) {
+        if (Outbox.OPERATION_DELETE.equals(entry.getOperation())) {
+            return new OutboxRequest(Request.Method.DELETE, Server.QUEUER_TASKS_URL + entry.getServerId(),
+                    null, listener, errorListener);
+        }
+        if (!entry.taskExists()) {
+            // deleted along with its project; there is no row to send
+            acknowledge(entry, 0);
+            return null;
+        }
+        if (entry.getServerId() != 0) {
+            return new OutboxRequest(Request.Method.PUT, Server.QUEUER_TASKS_URL + entry.getServerId(),
+                    toJson(entry), listener, errorListener);
+        }
+        if (entry.getProjectServerId() == 0) {
+            // the project is not on the server yet, so there is nowhere to create the task
+            retryLater(entry);
+            return null;
+        }
+        return new OutboxRequest(Request.Method.POST,
+                Server.QUEUER_PROJECTS_URL + entry.getProjectServerId() + "/tasks",
+                toJson(entry), listener, errorListener);
+    }
+
+    private static String toJson(OutboxEntry entry) {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("name", entry.getName());
+            json.put("finished", entry.isFinished());
+            json.put("order", entry.getPosition());
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        return json.toString();
+    }
+
+    private void acknowledge(OutboxEntry entry, long serverId) {
+        if (entry.getServerId() == 0 && serverId != 0) {
+            Task task = dataManager.peekTask(entry.getTaskLocalId());
+            if (task != null) task.setId((int) serverId);
+        }
+        dataManager.acknowledgeOutboxEntry(entry, serverId);
+    }
+
+    private void retryLater(OutboxEntry entry) {
+        long delay = retryDelay(entry.getAttempts());
+        if (shortestDelay == -1 || delay < shortestDelay) shortestDelay = delay;
+        dataManager.retryOutboxEntryLater(entry, System.currentTimeMillis() + delay);
+    }
+
+    /**
+     * Returns how long to put an entry off after a failed attempt.
+     *
+     * @param attempts How many attempts had failed before this one.
+     * @return The delay in milliseconds.
+     */
+    private static long retryDelay(int attempts) {
+        double delay = FIRST_RETRY_DELAY_MS * Math.pow(BACKOFF_MULTIPLIER, attempts);
+        return delay > MAX_RETRY_DELAY_MS ? MAX_RETRY_DELAY_MS : (long) delay;
+    }
+
+    private void finishRequest(boolean fullBatch) {
+        // entries that were put off are not due, so a full batch means there may be more
+        if (--inFlight == 0) finishBatch(fullBatch);
+    }
+
+    /**
+     * Starts the next batch if there may be more to send now, or schedules one for when
+     * the first entry that was put off is due.
+     */
+    private void finishBatch(boolean moreDue) {
+        flushing = false;
+        if (moreDue || flushAgain) {
+            flush();
+        } else if (shortestDelay != -1) {
+            handler.postDelayed(flushRunnable, shortestDelay);
+        }
+    }
+
+    /**
+     * A request with a JSON body whose response may be empty, as it is for PUT and DELETE.
+     */
+    private static final class OutboxRequest extends JsonRequest<JSONObject> {
+
+        OutboxRequest(int method, String url, String body, Response.Listener<JSONObject> listener,
+                      Response.ErrorListener errorListener) {
+            super(method, url, body, listener, errorListener);
+        }
+
+        @Override
+        protected Response<JSONObject> parseNetworkResponse(NetworkResponse response) {
+            try {
+                String json = new String(response.data, HttpHeaderParser.parseCharset(response.headers));
+                JSONObject result = json.trim().length() == 0 ? new JSONObject() : new JSONObject(json);
+                return Response.success(result, HttpHeaderParser.parseCacheHeaders(response));
+            } catch (UnsupportedEncodingException e) {
+                return Response.error(new ParseError(e));
+            } catch (JSONException e) {
+                return Response.error(new ParseError(e));
+            }
+        }
+    }
+}
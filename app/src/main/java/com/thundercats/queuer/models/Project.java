@@ -1,50 +1,25 @@
 package com.thundercats.queuer.models;
 
-import android.content.Context;
-import android.os.Parcel;
-import android.os.Parcelable;
-
-import com.thundercats.queuer.database.ProjectDataSource;
-
 import java.util.Date;
 
 /**
  * A view (a project) that appears in the ListView of projects.
  * Created by kmchen1 on 1/15/14.
  */
-public class Project implements Parcelable {
+public class Project {
 
     /**
-     * The Creator creates Project arrays and Projects from Parcels.
+     * The key for handing a {@code Project} to another activity as an {@code Intent} extra.
+     * Only the local ID is passed; the receiver looks the {@code Project} up with
+     * {@link com.thundercats.queuer.managers.DataManager#peekProject(int)}.
      */
-    public static final Parcelable.Creator<Project> CREATOR =
-            new Parcelable.Creator<Project>() {
-                @Override
-                public Project createFromParcel(Parcel parcel) {
-                    return new Project(parcel);
-                }
-
-                @Override
-                public Project[] newArray(int size) {
-                    return new Project[size];
-                }
-            };
-
-    /**
-     * The key for storing {@code Project}s as {@code Intent} extras.
-     */
-    public static final String INTENT_KEY = "project";
+    public static final String LOCAL_ID_KEY = "project_local_id";
 
 
     //////////////////////
     /// PROJECT FIELDS ///
     //////////////////////
 
-    /**
-     * The context under which this {@code Project} was created.
-     */
-    private Context context;
-
     /**
      * Whether this project is hidden.
      */
@@ -80,6 +55,30 @@ public class Project implements Parcelable {
      */
     private Date updated_at;
 
+    /**
+     * How many {@code Task}s this {@code Project} has, finished or not.
+     * Only filled in by {@link com.thundercats.queuer.database.ProjectDataSource#getFeedProjects()}.
+     */
+    private int taskCount;
+
+    /**
+     * How many unfinished {@code Task}s this {@code Project} has.
+     * Only filled in by {@link com.thundercats.queuer.database.ProjectDataSource#getFeedProjects()}.
+     */
+    private int unfinishedCount;
+
+    /**
+     * When one of this {@code Project}'s {@code Task}s last changed, or null if none has.
+     * Only filled in by {@link com.thundercats.queuer.database.ProjectDataSource#getFeedProjects()}.
+     */
+    private Date lastActivity;
+
+    /**
+     * This {@code Project}'s first unfinished {@code Task}, or null if there is none.
+     * Only filled in by {@link com.thundercats.queuer.database.ProjectDataSource#getFeedProjects()}.
+     */
+    private Task headTask;
+
     /**
      * Constructs a new {@code Project}. The secondary constructor.
      * Used when updating {@code Project}s for writing to the database.
@@ -103,37 +102,18 @@ public class Project implements Parcelable {
     }
 
     /**
-     * Constructs a new {@code Project}. The primary constructor.
+     * Constructs a new, unsaved {@code Project}. The primary constructor.
+     * Write it with {@link com.thundercats.queuer.managers.DataManager#createProject}.
      *
      * @param title This {@code Project}'s title.
      * @param color This {@code Project}'s color.
      */
-    public Project(Context context, String title, int color) {
-        this.context = context;
+    public Project(String title, int color) {
         this.title = title;
         this.color = color;
         this.isHidden = false;
         this.created_at = new Date();
         this.updated_at = created_at;
-
-        ProjectDataSource projectDataSource = new ProjectDataSource(context);
-        projectDataSource.open();
-        this.localId = (projectDataSource.createProject(title, color, isHidden, id, created_at, updated_at)).localId;
-        projectDataSource.close();
-    }
-
-    /**
-     * The constructor used to create a Project from a Parcel.
-     * Reads back fields IN THE ORDER they were written.
-     *
-     * @param in The Parcel to create this Project from.
-     * @see com.thundercats.queuer.models.Project#CREATOR
-     */
-    public Project(Parcel in) {
-        id = in.readInt();
-        title = in.readString();
-        color = in.readInt();
-        isHidden = (in.readInt() == 1);
     }
 
     /**
@@ -197,10 +177,6 @@ public class Project implements Parcelable {
      */
     public void setTitle(String title) {
         this.title = title;
-        ProjectDataSource projectDataSource = new ProjectDataSource(context);
-        projectDataSource.open();
-        projectDataSource.updateProjectTitle(this, title);
-        projectDataSource.close();
     }
 
     /**
@@ -219,10 +195,6 @@ public class Project implements Parcelable {
      */
     public void setColor(int color) {
         this.color = color;
-        ProjectDataSource projectDataSource = new ProjectDataSource(context);
-        projectDataSource.open();
-        projectDataSource.updateProjectColor(this, color);
-        projectDataSource.close();
     }
 
     /**
@@ -241,47 +213,100 @@ public class Project implements Parcelable {
      */
     public void setHidden(boolean isHidden) {
         this.isHidden = isHidden;
-        ProjectDataSource projectDataSource = new ProjectDataSource(context);
-        projectDataSource.open();
-        projectDataSource.updateProjectHidden(this, isHidden);
-        projectDataSource.close();
     }
 
     /**
-     * Returns true if the projects are equal (i.e., if their unique IDs are equal).
+     * Returns how many {@code Task}s this {@code Project} has, finished or not.
      *
-     * @param otherProject The other project
-     * @return True if the projects have equal IDs.
+     * @return How many {@code Task}s this {@code Project} has.
      */
-    @Override
-    public boolean equals(Object otherProject) {
-        return ((Project) otherProject).getId() == getId();
+    public int getTaskCount() {
+        return taskCount;
+    }
+
+    /**
+     * Sets how many {@code Task}s this {@code Project} has. Not written to the database.
+     *
+     * @param taskCount How many {@code Task}s this {@code Project} has.
+     */
+    public void setTaskCount(int taskCount) {
+        this.taskCount = taskCount;
     }
 
     /**
-     * Describe the kinds of special objects contained
-     * in this Parcelable's marshalled representation.
+     * Returns when one of this {@code Project}'s {@code Task}s last changed.
      *
-     * @return a bitmask indicating the set of special
-     * object types marshalled by the Parcelable.
+     * @return When one of this {@code Project}'s {@code Task}s last changed, or null if none has.
+     */
+    public Date getLastActivity() {
+        return lastActivity;
+    }
+
+    /**
+     * Sets when one of this {@code Project}'s {@code Task}s last changed. Not written to the database.
+     *
+     * @param lastActivity When one of this {@code Project}'s {@code Task}s last changed.
+     */
+    public void setLastActivity(Date lastActivity) {
+        this.lastActivity = lastActivity;
+    }
+
+    /**
+     * Returns how many unfinished {@code Task}s this {@code Project} has.
+     *
+     * @return How many unfinished {@code Task}s this {@code Project} has.
+     */
+    public int getUnfinishedCount() {
+        return unfinishedCount;
+    }
+
+    /**
+     * Sets how many unfinished {@code Task}s this {@code Project} has. Not written to the database.
+     *
+     * @param unfinishedCount How many unfinished {@code Task}s this {@code Project} has.
+     */
+    public void setUnfinishedCount(int unfinishedCount) {
+        this.unfinishedCount = unfinishedCount;
+    }
+
+    /**
+     * Returns this {@code Project}'s first unfinished {@code Task}.
+     *
+     * @return This {@code Project}'s first unfinished {@code Task}, or null if there is none.
+     */
+    public Task getHeadTask() {
+        return headTask;
+    }
+
+    /**
+     * Sets this {@code Project}'s first unfinished {@code Task}. Not written to the database.
+     *
+     * @param headTask This {@code Project}'s first unfinished {@code Task}, or null if there is none.
+     */
+    public void setHeadTask(Task headTask) {
+        this.headTask = headTask;
+    }
+
+    /**
+     * Returns true if the projects are equal (i.e., if their unique local IDs are equal).
+     * Server IDs are not used since every unsynced project has server ID 0.
+     *
+     * @param otherProject The other project
+     * @return True if the projects have equal local IDs.
      */
     @Override
-    public int describeContents() {
-        return 0;
+    public boolean equals(Object otherProject) {
+        return otherProject instanceof Project && ((Project) otherProject).getLocalId() == getLocalId();
     }
 
     /**
-     * Flatten this object in to a Parcel.
+     * Returns this project's local ID, consistent with {@link #equals(Object)}.
      *
-     * @param parcel The Parcel in which the object should be written.
-     * @param i      Additional flags about how the object should be written.
+     * @return This project's local ID.
      */
     @Override
-    public void writeToParcel(Parcel parcel, int i) {
-        parcel.writeInt(id);
-        parcel.writeString(title);
-        parcel.writeInt(color);
-        parcel.writeInt(isHidden ? 1 : 0);
+    public int hashCode() {
+        return localId;
     }
 
 }
@@ -1,9 +1,5 @@
 package com.thundercats.queuer.models;
 
-import android.content.Context;
-
-import com.thundercats.queuer.database.TaskDataSource;
-
 import java.util.Date;
 
 /**
@@ -16,6 +12,11 @@ public class Task implements Comparable<Task> {
      */
     private int project_id;
 
+    /**
+     * The local ID of the {@code Project} to which this {@code Task} belongs.
+     */
+    private int projectLocalId;
+
     /**
      * The local ID of this {@code Task}.
      */
@@ -32,9 +33,11 @@ public class Task implements Comparable<Task> {
     private String name;
 
     /**
-     * The position of this {@code Task}.
+     * The position of this {@code Task}. Positions are sparse ordering keys.
+     *
+     * @see com.thundercats.queuer.database.TaskPositions
      */
-    private int position;
+    private long position;
 
     /**
      * Whether this {@code Task} is finished.
@@ -54,19 +57,21 @@ public class Task implements Comparable<Task> {
     /**
      * Constructs a {@code Task} will all fields specified.
      *
-     * @param name       The name of this {@code Task}.
-     * @param project_id The ID of the {@code Project} to which this {@code Task} belongs.
-     * @param position   The position where this {@code Task} will be inserted.
-     * @param id         The new server ID of this {@code Task}.
-     * @param localId    The new local ID of this {@code Task}.
-     * @param finished   Whether or not this {@code Task} is finished.
-     * @see com.thundercats.queuer.database.TaskDataSource#cursorToTask(android.database.Cursor)
+     * @param name           The name of this {@code Task}.
+     * @param project_id     The ID of the {@code Project} to which this {@code Task} belongs.
+     * @param projectLocalId The local ID of the {@code Project} to which this {@code Task} belongs.
+     * @param position       The position where this {@code Task} will be inserted.
+     * @param id             The new server ID of this {@code Task}.
+     * @param localId        The new local ID of this {@code Task}.
+     * @param finished       Whether or not this {@code Task} is finished.
+     * @see com.thundercats.queuer.database.TaskDataSource#getTasks(int)
      */
-    public Task(int localId, int id, int project_id, String name, boolean finished,
-                int position, Date created_at, Date updated_at) {
+    public Task(int localId, int id, int project_id, int projectLocalId, String name, boolean finished,
+                long position, Date created_at, Date updated_at) {
         this.localId = localId;
         this.id = id;
         this.project_id = project_id;
+        this.projectLocalId = projectLocalId;
         this.name = name;
         this.finished = finished;
         this.position = position;
@@ -74,32 +79,6 @@ public class Task implements Comparable<Task> {
         this.updated_at = updated_at;
     }
 
-    /**
-     * Constructs a {@code Task}. The primary constructor. Used when user adds a task.
-     *
-     * @param context    The context under which this {@code Task} was created.
-     *                   Context is needed to write to the database.
-     * @param name       The name of this {@code Task}.
-     * @param project_id The ID of the {@code Project} to which this {@code Task} belongs.
-     * @param position   The position where this {@code Task} will be inserted.
-     */
-    public Task(Context context, String name, int project_id, int position) {
-        this.name = name;
-        this.project_id = project_id;
-        this.position = position;
-        this.finished = false;
-        this.created_at = new Date();
-        this.updated_at = created_at;
-
-        // TODO id (aka serverID) is never defined
-
-        TaskDataSource dataSource = new TaskDataSource(context);
-        dataSource.open();
-        // TODO localId is private, id is uninitialized... this wouldn't work...
-        localId = (dataSource.createTask(name, project_id, id, position, finished).localId);
-        dataSource.close();
-    }
-
     /**
      * Returns this {@code Task}'s local ID.
      *
@@ -118,6 +97,16 @@ public class Task implements Comparable<Task> {
         return id;
     }
 
+    /**
+     * Sets this {@code Task}'s server ID. Only changes this object; the row is written
+     * when the server acknowledges the {@code Task}.
+     *
+     * @param id The server ID of this {@code Task}.
+     */
+    public void setId(int id) {
+        this.id = id;
+    }
+
     /**
      * Returns this {@code Task}'s name.
      *
@@ -130,15 +119,13 @@ public class Task implements Comparable<Task> {
     /**
      * Sets this {@code Task}'s name.
      *
-     * @param name    The new name of this {@code Task}.
-     * @param context Used to open up the database.
+     * Only changes this object; write it with
+     * {@link com.thundercats.queuer.managers.DataManager#renameTask}.
+     *
+     * @param name The new name of this {@code Task}.
      */
-    public void setName(String name, Context context) {
+    public void setName(String name) {
         this.name = name;
-        TaskDataSource dataSource = new TaskDataSource(context);
-        dataSource.open();
-        dataSource.updateTaskName(this, name);
-        dataSource.close();
     }
 
     /**
@@ -160,12 +147,21 @@ public class Task implements Comparable<Task> {
         this.project_id = project_id;
     }
 
+    /**
+     * Returns the local ID of the {@code Project} to which this {@code Task} belongs.
+     *
+     * @return The local ID of the {@code Project} to which this {@code Task} belongs.
+     */
+    public int getProjectLocalId() {
+        return projectLocalId;
+    }
+
     /**
      * Returns the position of this {@code Task}.
      *
      * @return The position of this {@code Task}.
      */
-    public int getPosition() {
+    public long getPosition() {
         return position;
     }
 
@@ -174,7 +170,7 @@ public class Task implements Comparable<Task> {
      *
      * @param position The new position of this {@code Task}.
      */
-    public void setPosition(int position) {
+    public void setPosition(long position) {
         this.position = position;
     }
 
@@ -188,19 +184,11 @@ public class Task implements Comparable<Task> {
     }
 
     /**
-     * Sets whether or not this {@code Task} is finished.
+     * Sets whether or not this {@code Task} is finished. Only changes this object; write it with
+     * {@link com.thundercats.queuer.managers.DataManager#setTaskFinished}.
      *
      * @param finished Whether or not this {@code Task} is finished.
-     * @param context  Used to open up the database.
      */
-    public void setFinished(boolean finished, Context context) {
-        setFinished(finished);
-        TaskDataSource dataSource = new TaskDataSource(context);
-        dataSource.open();
-        dataSource.updateTaskFinished(this, finished);
-        dataSource.close();
-    }
-
     public void setFinished(boolean finished) {
         this.finished = finished;
     }
@@ -236,25 +224,31 @@ public class Task implements Comparable<Task> {
      * Sets when this {@code Task} was last updated.
      *
      * @param updated_at When this {@code Task} was last updated.
-     * @param context    Used to open up the database.
      */
-    public void setUpdated_at(Date updated_at, Context context) {
+    public void setUpdated_at(Date updated_at) {
         this.updated_at = updated_at;
-        TaskDataSource dataSource = new TaskDataSource(context);
-        dataSource.open();
-        dataSource.updateTaskLastUpdated(this, updated_at);
-        dataSource.close();
     }
 
     /**
-     * Tasks are equal if they have the same server IDs.
+     * Tasks are equal if they have the same local IDs.
+     * Server IDs are not used since every unsynced {@code Task} has server ID 0.
      *
      * @param o The {@code Task} being compared to this {@code Task}.
-     * @return True if the two {@code Task}s have the same server IDs.
+     * @return True if the two {@code Task}s have the same local IDs.
      */
     @Override
     public boolean equals(Object o) {
-        return ((Task) o).getId() == getId();
+        return o instanceof Task && ((Task) o).getLocalId() == getLocalId();
+    }
+
+    /**
+     * Returns this {@code Task}'s local ID, consistent with {@link #equals(Object)}.
+     *
+     * @return This {@code Task}'s local ID.
+     */
+    @Override
+    public int hashCode() {
+        return localId;
     }
 
     /**
@@ -269,6 +263,6 @@ public class Task implements Comparable<Task> {
      */
     @Override
     public int compareTo(Task task) {
-        return Integer.valueOf(getPosition()).compareTo(Integer.valueOf(task.getPosition()));
+        return Long.valueOf(getPosition()).compareTo(Long.valueOf(task.getPosition()));
     }
 }
@@ -214,6 +214,106 @@ public class EnhancedListView extends ListView {
 
     }
 
+    /**
+     * The user interactions whose frames are reported to a {@link MetricsListener}.
+     */
+    public enum Gesture {
+
+        /**
+         * A finger is swiping a list item sideways.
+         */
+        SWIPE,
+
+        /**
+         * A dismissed item is sliding out and collapsing, until the dismiss callback has returned.
+         */
+        DISMISS,
+
+        /**
+         * A list item is being dragged to a new position, until the hover cell has settled.
+         */
+        REARRANGE
+
+    }
+
+    /**
+     * The pieces of work whose durations are reported to a {@link MetricsListener}.
+     */
+    public enum Section {
+
+        /**
+         * One {@link #dispatchDraw(android.graphics.Canvas)}, including the hover cell.
+         */
+        DRAW,
+
+        /**
+         * One check for, and possibly one swap of, the dragged item with a neighbour.
+         */
+        CELL_SWITCH,
+
+        /**
+         * Starting the slide-out animation of a dismissed item.
+         */
+        SLIDE_OUT,
+
+        /**
+         * One call of {@link OnDismissCallback#onDismiss(EnhancedListView, int)}.
+         */
+        DISMISS_CALLBACK,
+
+        /**
+         * From the decision to dismiss an item to its dismiss callback returning.
+         */
+        DISMISS_LATENCY,
+
+        /**
+         * Updating and showing the undo popup after dismisses.
+         */
+        UNDO_POPUP
+
+    }
+
+    /**
+     * Receives timings from the list. Set one with
+     * {@link #setMetricsListener(com.thundercats.queuer.views.EnhancedListView.MetricsListener)};
+     * {@link com.thundercats.queuer.views.FrameMetrics} aggregates them into histograms.
+     * All methods are called on the UI thread. Nothing is timed while no listener is set.
+     */
+    public interface MetricsListener {
+
+        /**
+         * Called when a gesture starts.
+         *
+         * @param gesture The gesture.
+         */
+        void onGestureStarted(Gesture gesture);
+
+        /**
+         * Called for every frame drawn during a gesture after its first one.
+         *
+         * @param gesture    The gesture in progress.
+         * @param frameNanos The time since the previous frame started, or since the list
+         *                   asked for this frame if it drew nothing for longer than a frame.
+         */
+        void onFrame(Gesture gesture, long frameNanos);
+
+        /**
+         * Called when a gesture ends.
+         *
+         * @param gesture The gesture.
+         */
+        void onGestureEnded(Gesture gesture);
+
+        /**
+         * Called when a timed piece of work has finished.
+         *
+         * @param section       The piece of work.
+         * @param durationNanos How long it took.
+         */
+        void onSection(Section section, long durationNanos);
+
+    }
+
     private class PendingDismissData implements Comparable<PendingDismissData> {
 
         public int position;
@@ -225,11 +325,16 @@ public class EnhancedListView extends ListView {
          * The whole list item view.
          */
         public View childView;
+        /**
+         * When the item was chosen for dismissal, in {@link System#nanoTime()} time.
+         */
+        public long startNanos;
 
-        PendingDismissData(int position, View view, View childView) {
+        PendingDismissData(int position, View view, View childView, long startNanos) {
             this.position = position;
             this.view = view;
             this.childView = childView;
+            this.startNanos = startNanos;
         }
 
         @Override
@@ -357,11 +462,19 @@ public class EnhancedListView extends ListView {
     private long mAboveItemId = INVALID_ID;
     private long mMobileItemId = INVALID_ID;
     private long mBelowItemId = INVALID_ID;
+    // Set while the adapter refuses a swap into a neighbour it is still loading; the
+    // neighbour's ID changes once it loads, so it is looked up again on every move
+    private boolean mNeighborsPending = false;
 
     private BitmapDrawable mHoverCell;
     private Rect mHoverCellCurrentBounds;
     private Rect mHoverCellOriginalBounds;
 
+    // Hover-cell bitmaps are shared by every list, since rows of the same size can reuse them
+    private static final HoverBitmapPool sHoverBitmapPool = new HoverBitmapPool();
+    private final Canvas mHoverCanvas = new Canvas();
+    private Paint mHoverBorderPaint;
+
     private final int INVALID_POINTER_ID = -1;
     private int mActivePointerId = INVALID_POINTER_ID;
 
@@ -369,6 +482,13 @@ public class EnhancedListView extends ListView {
     private int mScrollState = OnScrollListener.SCROLL_STATE_IDLE;
     // END Drag-And-Drop
 
+    // START Metrics
+    private MetricsListener mMetricsListener;
+    private Gesture mActiveGesture;
+    private long mLastFrameNanos;
+    private boolean mRedrawPending;
+    // END Metrics
+
     /**
      * {@inheritDoc}
      */
@@ -454,6 +574,8 @@ public class EnhancedListView extends ListView {
                     selectedView.setVisibility(INVISIBLE);
 
                     mCellIsMobile = true;
+                    mNeighborsPending = false;
+                    startGesture(Gesture.REARRANGE);
 
                     updateNeighborViewsForID(mMobileItemId);
 
@@ -479,38 +601,58 @@ public class EnhancedListView extends ListView {
 
         BitmapDrawable drawable = new BitmapDrawable(getResources(), b);
 
-        mHoverCellOriginalBounds = new Rect(left, top, left + w, top + h);
-        mHoverCellCurrentBounds = new Rect(mHoverCellOriginalBounds);
+        if (mHoverCellOriginalBounds == null) {
+            mHoverCellOriginalBounds = new Rect();
+            mHoverCellCurrentBounds = new Rect();
+        }
+        mHoverCellOriginalBounds.set(left, top, left + w, top + h);
+        mHoverCellCurrentBounds.set(mHoverCellOriginalBounds);
 
         drawable.setBounds(mHoverCellCurrentBounds);
 
         return drawable;
     }
 
-    /** Draws a black border over the screenshot of the view passed in. */
+    /**
+     * Draws a screenshot of the view passed in with a black border, straight onto
+     * a pooled bitmap.
+     */
     private Bitmap getBitmapWithBorder(View v) {
-        Bitmap bitmap = getBitmapFromView(v);
-        Canvas can = new Canvas(bitmap);
-
-        Rect rect = new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight());
-
-        Paint paint = new Paint();
-        paint.setStyle(Paint.Style.STROKE);
-        paint.setStrokeWidth(LINE_THICKNESS);
-        paint.setColor(Color.BLACK);
+        Bitmap bitmap = sHoverBitmapPool.acquire(v.getWidth(), v.getHeight(), Bitmap.Config.ARGB_8888);
+        if (mHoverBorderPaint == null) {
+            mHoverBorderPaint = new Paint();
+            mHoverBorderPaint.setStyle(Paint.Style.STROKE);
+            mHoverBorderPaint.setStrokeWidth(LINE_THICKNESS);
+            mHoverBorderPaint.setColor(Color.BLACK);
+        }
 
-        can.drawBitmap(bitmap, 0, 0, null);
-        can.drawRect(rect, paint);
+        mHoverCanvas.setBitmap(bitmap);
+        v.draw(mHoverCanvas);
+        mHoverCanvas.drawRect(0, 0, bitmap.getWidth(), bitmap.getHeight(), mHoverBorderPaint);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            // don't keep a pooled bitmap alive through the canvas
+            mHoverCanvas.setBitmap(null);
+        }
 
         return bitmap;
     }
 
-    /** Returns a bitmap showing a screenshot of the view passed in. */
-    private Bitmap getBitmapFromView(View v) {
-        Bitmap bitmap = Bitmap.createBitmap(v.getWidth(), v.getHeight(), Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-        v.draw(canvas);
-        return bitmap;
+    /** Drops the hover cell and gives its bitmap back to the pool. */
+    private void releaseHoverCell() {
+        if (mHoverCell != null) {
+            sHoverBitmapPool.release(mHoverCell.getBitmap());
+            mHoverCell = null;
+        }
+    }
+
+    /**
+     * Returns the pool that recycles hover-cell bitmaps between drags,
+     * e.g. to check its allocation counters or to trim it when memory is low.
+     *
+     * @return The pool shared by every {@code EnhancedListView}.
+     */
+    public static HoverBitmapPool getHoverBitmapPool() {
+        return sHoverBitmapPool;
     }
 
     /**
@@ -558,10 +700,67 @@ public class EnhancedListView extends ListView {
      */
     @Override
     protected void dispatchDraw(Canvas canvas) {
+        long start = mMetricsListener != null ? System.nanoTime() : 0;
         super.dispatchDraw(canvas);
         if (mHoverCell != null) {
             mHoverCell.draw(canvas);
         }
+        if (mMetricsListener != null) {
+            mMetricsListener.onSection(Section.DRAW, System.nanoTime() - start);
+            if (mActiveGesture != null) {
+                if (mLastFrameNanos != 0) {
+                    mMetricsListener.onFrame(mActiveGesture, start - mLastFrameNanos);
+                }
+                mLastFrameNanos = start;
+                mRedrawPending = false;
+            }
+        }
+    }
+
+    /**
+     * Sets the listener that receives frame and section timings, or null to stop timing.
+     *
+     * @param listener The listener, e.g. a {@link com.thundercats.queuer.views.FrameMetrics}.
+     * @return This {@link com.thundercats.queuer.views.EnhancedListView}
+     */
+    public EnhancedListView setMetricsListener(MetricsListener listener) {
+        mMetricsListener = listener;
+        mActiveGesture = null;
+        return this;
+    }
+
+    /** Starts reporting frames for a gesture, ending any other one first. */
+    private void startGesture(Gesture gesture) {
+        if (mMetricsListener == null || mActiveGesture == gesture) return;
+        if (mActiveGesture != null) endGesture(mActiveGesture);
+        mActiveGesture = gesture;
+        mLastFrameNanos = 0;
+        mRedrawPending = false;
+        mMetricsListener.onGestureStarted(gesture);
+    }
+
+    /**
+     * Called wherever the list asks for a redraw during a gesture. Nothing is drawn while
+     * nothing changes, e.g. under a finger held still, so if the last frame is more than a
+     * frame old the next one is timed from this request instead of from the last frame.
+     */
+    private void onRedrawRequested() {
+        if (mActiveGesture == null || mLastFrameNanos == 0 || mRedrawPending) return;
+        mRedrawPending = true;
+        long now = System.nanoTime();
+        if (now - mLastFrameNanos > FrameMetrics.FRAME_BUDGET_NANOS) mLastFrameNanos = now;
+    }
+
+    /** Stops reporting frames for a gesture, if it is the active one. */
+    private void endGesture(Gesture gesture) {
+        if (mMetricsListener == null || mActiveGesture != gesture) return;
+        mActiveGesture = null;
+        mMetricsListener.onGestureEnded(gesture);
+    }
+
+    /** Reports the time since {@code start}, if a listener is set. */
+    private void endSection(Section section, long start) {
+        if (mMetricsListener != null) mMetricsListener.onSection(section, System.nanoTime() - start);
     }
 
     /**
@@ -574,9 +773,20 @@ public class EnhancedListView extends ListView {
      * its new position.
      */
     private void handleCellSwitch() {
+        long start = mMetricsListener != null ? System.nanoTime() : 0;
+        try {
+            switchCellIfCrossed();
+        } finally {
+            endSection(Section.CELL_SWITCH, start);
+        }
+    }
+
+    /** The body of {@link #handleCellSwitch()}. */
+    private void switchCellIfCrossed() {
         final int deltaY = mLastEventY - mDownY;
         int deltaYTotal = mHoverCellOriginalBounds.top + mTotalOffset + deltaY;
 
+        if (mNeighborsPending) updateNeighborViewsForID(mMobileItemId);
         View belowView = getViewForID(mBelowItemId);
         View mobileView = getViewForID(mMobileItemId);
         View aboveView = getViewForID(mAboveItemId);
@@ -596,7 +806,11 @@ public class EnhancedListView extends ListView {
             }
 
 
-            ((RearrangementListener)getAdapter()).swapElements(originalItem, getPositionForView(switchView));
+            if (!((RearrangementListener)getAdapter()).swapElements(originalItem, getPositionForView(switchView))) {
+                mNeighborsPending = true;
+                return;
+            }
+            mNeighborsPending = false;
 
             ((BaseAdapter) getAdapter()).notifyDataSetChanged();
 
@@ -662,6 +876,7 @@ public class EnhancedListView extends ListView {
             hoverViewAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
                 @Override
                 public void onAnimationUpdate(ValueAnimator valueAnimator) {
+                    onRedrawRequested();
                     invalidate();
                 }
             });
@@ -677,9 +892,10 @@ public class EnhancedListView extends ListView {
                     mMobileItemId = INVALID_ID;
                     mBelowItemId = INVALID_ID;
                     mobileView.setVisibility(VISIBLE);
-                    mHoverCell = null;
+                    releaseHoverCell();
                     setEnabled(true);
                     invalidate();
+                    endGesture(Gesture.REARRANGE);
                 }
             });
             hoverViewAnimator.start();
@@ -700,8 +916,9 @@ public class EnhancedListView extends ListView {
             mMobileItemId = INVALID_ID;
             mBelowItemId = INVALID_ID;
             mobileView.setVisibility(VISIBLE);
-            mHoverCell = null;
+            releaseHoverCell();
             invalidate();
+            endGesture(Gesture.REARRANGE);
 
             ((RearrangementListener)getAdapter()).onFinishedRearranging();
         }
@@ -1057,6 +1274,9 @@ public class EnhancedListView extends ListView {
             mAnimatedViews.add(view);
         }
 
+        final long start = System.nanoTime();
+        startGesture(Gesture.DISMISS);
+
         ViewPropertyAnimator.animate(view)
                 .translationX(toRightSide ? mViewWidth : -mViewWidth)
                 .alpha(0)
@@ -1064,9 +1284,10 @@ public class EnhancedListView extends ListView {
                 .setListener(new AnimatorListenerAdapter() {
                     @Override
                     public void onAnimationEnd(Animator animation) {
-                        performDismiss(view, childView, position);
+                        performDismiss(view, childView, position, start);
                     }
                 });
+        endSection(Section.SLIDE_OUT, start);
     }
 
     @Override
@@ -1089,6 +1310,7 @@ public class EnhancedListView extends ListView {
         switch (ev.getActionMasked()) {
             case MotionEvent.ACTION_CANCEL:
                 touchEventsCancelled();
+                endGesture(Gesture.SWIPE);
                 break;
             case MotionEvent.ACTION_DOWN:
                 mDownX = (int)ev.getX();
@@ -1142,6 +1364,7 @@ public class EnhancedListView extends ListView {
 
             case MotionEvent.ACTION_UP: {
                 touchEventsEnded();
+                endGesture(Gesture.SWIPE);
 
                 if (mVelocityTracker == null) {
                     break;
@@ -1190,6 +1413,7 @@ public class EnhancedListView extends ListView {
                     // Only start swipe in correct direction
                     if(isSwipeDirectionValid(deltaX)) {
                         if (Math.abs(deltaX) > mSlop) {
+                            if (!mSwiping) startGesture(Gesture.SWIPE);
                             mSwiping = true;
                             requestDisallowInterceptTouchEvent(true);
 
@@ -1208,6 +1432,7 @@ public class EnhancedListView extends ListView {
                     }
 
                     if (mSwiping) {
+                        onRedrawRequested();
                         ViewHelper.setTranslationX(mSwipeDownView, deltaX);
                         ViewHelper.setAlpha(mSwipeDownView, Math.max(0f, Math.min(1f,
                                 1f - 2f * Math.abs(deltaX) / mViewWidth)));
@@ -1225,6 +1450,7 @@ public class EnhancedListView extends ListView {
                         mHoverCellCurrentBounds.offsetTo(mHoverCellOriginalBounds.left,
                                 mHoverCellOriginalBounds.top + deltaY + mTotalOffset);
                         mHoverCell.setBounds(mHoverCellCurrentBounds);
+                        onRedrawRequested();
                         invalidate();
 
                         handleCellSwitch();
@@ -1262,8 +1488,10 @@ public class EnhancedListView extends ListView {
      * @param listItemView The list item view. This is the whole view of the list item, and not just
      * the part, that the user swiped.
      * @param dismissPosition The position of the view inside the list.
+     * @param dismissStartNanos When the item was chosen for dismissal, in {@link System#nanoTime()} time.
      */
-    private void performDismiss(final View dismissView, final View listItemView, final int dismissPosition) {
+    private void performDismiss(final View dismissView, final View listItemView, final int dismissPosition,
+                                long dismissStartNanos) {
 
         final ViewGroup.LayoutParams lp = listItemView.getLayoutParams();
         final int originalLayoutHeight = lp.height;
@@ -1293,7 +1521,10 @@ public class EnhancedListView extends ListView {
                             }
                             mUndoActions.clear();
                         }
+                        long callbackStart = mMetricsListener != null ? System.nanoTime() : 0;
                         Undoable undoable = mDismissCallback.onDismiss(EnhancedListView.this, dismiss.position);
+                        endSection(Section.DISMISS_CALLBACK, callbackStart);
+                        endSection(Section.DISMISS_LATENCY, dismiss.startNanos);
                         if(undoable != null) {
                             mUndoActions.add(undoable);
                         }
@@ -1301,6 +1532,7 @@ public class EnhancedListView extends ListView {
                     }
 
                     if(!mUndoActions.isEmpty()) {
+                        long popupStart = mMetricsListener != null ? System.nanoTime() : 0;
                         changePopupText();
                         changeButtonLabel();
 
@@ -1316,6 +1548,7 @@ public class EnhancedListView extends ListView {
                             mHideUndoHandler.sendMessageDelayed(mHideUndoHandler.obtainMessage(mValidDelayedMsgId),
                                     mUndoHideDelay);
                         }
+                        endSection(Section.UNDO_POPUP, popupStart);
                     }
 
                     ViewGroup.LayoutParams lp;
@@ -1328,6 +1561,7 @@ public class EnhancedListView extends ListView {
                     }
 
                     mPendingDismisses.clear();
+                    endGesture(Gesture.DISMISS);
                 }
             }
         });
@@ -1340,7 +1574,8 @@ public class EnhancedListView extends ListView {
             }
         });
 
-        mPendingDismisses.add(new PendingDismissData(dismissPosition, dismissView, listItemView));
+        mPendingDismisses.add(new PendingDismissData(dismissPosition, dismissView, listItemView,
+                dismissStartNanos));
         animator.start();
     }
 
@@ -0,0 +1,204 @@
+package com.thundercats.queuer.views;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Aggregates the timings of an {@link EnhancedListView} into histograms: frame durations and
+ * dropped frames per {@link EnhancedListView.Gesture}, and durations per
+ * {@link EnhancedListView.Section}. Attach it with
+ * {@link EnhancedListView#setMetricsListener(EnhancedListView.MetricsListener)} and dump it to
+ * logcat with {@link #dump(String)} or to a file with {@link #writeTo(java.io.Writer)}.
+ * <p/>
+ * Only touched from the UI thread.
+ */
+public class FrameMetrics implements EnhancedListView.MetricsListener {
+
+    /**
+     * The time one frame may take at 60 frames per second.
+     */
+    public static final long FRAME_BUDGET_NANOS = 16666667L;
+
+    private final Map<EnhancedListView.Gesture, Histogram> frames =
+            new EnumMap<EnhancedListView.Gesture, Histogram>(EnhancedListView.Gesture.class);
+    private final Map<EnhancedListView.Gesture, long[]> gestureCounts =
+            new EnumMap<EnhancedListView.Gesture, long[]>(EnhancedListView.Gesture.class);
+    private final Map<EnhancedListView.Section, Histogram> sections =
+            new EnumMap<EnhancedListView.Section, Histogram>(EnhancedListView.Section.class);
+
+    public FrameMetrics() {
+        reset();
+    }
+
+    @Override
+    public void onGestureStarted(EnhancedListView.Gesture gesture) {
+        // [0] gestures, [1] dropped frames
+        gestureCounts.get(gesture)[0]++;
+    }
+
+    @Override
+    public void onFrame(EnhancedListView.Gesture gesture, long frameNanos) {
+        frames.get(gesture).record(frameNanos);
+        if (frameNanos > FRAME_BUDGET_NANOS) {
+            // a frame that took 2.5 budgets hid the 2 frames that should have followed it
+            gestureCounts.get(gesture)[1] += (frameNanos - 1) / FRAME_BUDGET_NANOS;
+        }
+    }
+
+    @Override
+    public void onGestureEnded(EnhancedListView.Gesture gesture) {
+    }
+
+    @Override
+    public void onSection(EnhancedListView.Section section, long durationNanos) {
+        sections.get(section).record(durationNanos);
+    }
+
+    /**
+     * Returns how many frames were dropped during a kind of gesture.
+     *
+     * @param gesture The kind of gesture.
+     * @return The number of frames dropped since the last {@link #reset()}.
+     */
+    public long getDroppedFrames(EnhancedListView.Gesture gesture) {
+        return gestureCounts.get(gesture)[1];
+    }
+
+    /**
+     * Returns the histogram of frame durations during a kind of gesture.
+     *
+     * @param gesture The kind of gesture.
+     * @return The histogram of frame durations.
+     */
+    public Histogram getFrames(EnhancedListView.Gesture gesture) {
+        return frames.get(gesture);
+    }
+
+    /**
+     * Returns the histogram of durations of a piece of work.
+     *
+     * @param section The piece of work.
+     * @return The histogram of its durations.
+     */
+    public Histogram getSection(EnhancedListView.Section section) {
+        return sections.get(section);
+    }
+
+    /**
+     * Clears every histogram and counter.
+     */
+    public void reset() {
+        for (EnhancedListView.Gesture gesture : EnhancedListView.Gesture.values()) {
+            frames.put(gesture, new Histogram());
+            gestureCounts.put(gesture, new long[2]);
+        }
+        for (EnhancedListView.Section section : EnhancedListView.Section.values()) {
+            sections.put(section, new Histogram());
+        }
+    }
+
+    /**
+     * Logs every non-empty histogram, one line each.
+     *
+     * @param tag The logcat tag.
+     */
+    public void dump(String tag) {
+        for (EnhancedListView.Gesture gesture : EnhancedListView.Gesture.values()) {
+            long[] counts = gestureCounts.get(gesture);
+            if (counts[0] > 0) Log.i(tag, gestureLine(gesture, counts));
+        }
+        for (EnhancedListView.Section section : EnhancedListView.Section.values()) {
+            Histogram histogram = sections.get(section);
+            if (histogram.getCount() > 0) Log.i(tag, section + " " + histogram);
+        }
+    }
+
+    /**
+     * Writes every non-empty histogram, one line each.
+     *
+     * @param writer Where to write, e.g. a {@code FileWriter}. Not closed.
+     * @throws IOException If the writer fails.
+     */
+    public void writeTo(Writer writer) throws IOException {
+        for (EnhancedListView.Gesture gesture : EnhancedListView.Gesture.values()) {
+            long[] counts = gestureCounts.get(gesture);
+            if (counts[0] > 0) writer.write(gestureLine(gesture, counts) + "\n");
+        }
+        for (EnhancedListView.Section section : EnhancedListView.Section.values()) {
+            Histogram histogram = sections.get(section);
+            if (histogram.getCount() > 0) writer.write(section + " " + histogram + "\n");
+        }
+        writer.flush();
+    }
+
+    private String gestureLine(EnhancedListView.Gesture gesture, long[] counts) {
+        return gesture + " gestures=" + counts[0] + " dropped=" + counts[1] + " frames " + frames.get(gesture);
+    }
+
+    /**
+     * Counts durations in fixed millisecond buckets, sized around the 16 ms frame budget.
+     */
+    public static final class Histogram {
+
+        /**
+         * The upper bounds of the buckets, in milliseconds. The last bucket is unbounded.
+         */
+        private static final int[] BOUNDS_MS = {1, 2, 4, 8, 16, 33, 50, 100, 250};
+
+        private final long[] buckets = new long[BOUNDS_MS.length + 1];
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        void record(long nanos) {
+            long millis = nanos / 1000000L;
+            int bucket = 0;
+            while (bucket < BOUNDS_MS.length && millis >= BOUNDS_MS[bucket]) bucket++;
+            buckets[bucket]++;
+            count++;
+            totalNanos += nanos;
+            if (nanos > maxNanos) maxNanos = nanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        /**
+         * Returns how many durations fell in a bucket.
+         *
+         * @param bucket The bucket; bucket {@code i} holds durations below
+         *               {@code {1, 2, 4, 8, 16, 33, 50, 100, 250}[i]} ms, the last holds the rest.
+         * @return The number of durations in the bucket.
+         */
+        public long getBucket(int bucket) {
+            return buckets[bucket];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append("n=").append(count)
+                    .append(" mean=").append(getMeanNanos() / 1000).append("us")
+                    .append(" max=").append(maxNanos / 1000).append("us [");
+            for (int i = 0; i < buckets.length; i++) {
+                if (i > 0) builder.append(' ');
+                builder.append(i < BOUNDS_MS.length ? "<" + BOUNDS_MS[i] : ">=" + BOUNDS_MS[i - 1])
+                        .append("ms:").append(buckets[i]);
+            }
+            return builder.append(']').toString();
+        }
+    }
+}
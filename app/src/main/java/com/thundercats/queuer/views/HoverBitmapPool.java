@@ -0,0 +1,114 @@
+package com.thundercats.queuer.views;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.LinkedList;
+
+/**
+ * Keeps the bitmaps of finished drags so the next drag of a same-sized row can draw into one
+ * instead of allocating a full-size ARGB bitmap. Bitmaps are matched on width, height and
+ * config. The pool holds only a few bitmaps and gives them all back to the system when
+ * memory runs low.
+ * <p/>
+ * Only touched from the UI thread.
+ */
+public class HoverBitmapPool {
+
+    /**
+     * How many free bitmaps are kept. One per distinct row size in use is enough.
+     */
+    private static final int MAX_POOLED = 3;
+
+    /**
+     * Free bitmaps, most recently released first.
+     */
+    private final LinkedList<Bitmap> free = new LinkedList<Bitmap>();
+
+    private int allocations;
+    private int reuses;
+    private int evictions;
+
+    /**
+     * Returns a cleared bitmap of the given size and config, reusing a pooled one if possible.
+     *
+     * @param width  The width in pixels.
+     * @param height The height in pixels.
+     * @param config The pixel config.
+     * @return A transparent bitmap. Give it back with {@link #release(Bitmap)} when done.
+     */
+    public Bitmap acquire(int width, int height, Bitmap.Config config) {
+        for (Bitmap bitmap : free) {
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height
+                    && bitmap.getConfig() == config) {
+                free.remove(bitmap);
+                bitmap.eraseColor(Color.TRANSPARENT);
+                reuses++;
+                return bitmap;
+            }
+        }
+        allocations++;
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Puts a bitmap back in the pool. The caller must no longer draw it.
+     *
+     * @param bitmap A bitmap from {@link #acquire(int, int, Bitmap.Config)}; null is ignored.
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) return;
+        free.addFirst(bitmap);
+        while (free.size() > MAX_POOLED) {
+            free.removeLast().recycle();
+            evictions++;
+        }
+    }
+
+    /**
+     * Recycles every pooled bitmap. Called when memory is low.
+     */
+    public void trim() {
+        while (!free.isEmpty()) {
+            free.removeFirst().recycle();
+            evictions++;
+        }
+    }
+
+    /**
+     * Returns how many bitmaps were allocated because none could be reused.
+     * A steady drag loop over same-sized rows should leave this unchanged.
+     *
+     * @return The number of bitmaps allocated so far.
+     */
+    public int getAllocationCount() {
+        return allocations;
+    }
+
+    /**
+     * Returns how many bitmaps were handed out again instead of allocated.
+     *
+     * @return The number of bitmaps reused so far.
+     */
+    public int getReuseCount() {
+        return reuses;
+    }
+
+    /**
+     * Returns how many bitmaps were recycled because the pool was full or trimmed.
+     *
+     * @return The number of bitmaps evicted so far.
+     */
+    public int getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Returns how many free bitmaps are pooled.
+     *
+     * @return The number of free bitmaps.
+     */
+    public int size() {
+        return free.size();
+    }
+}
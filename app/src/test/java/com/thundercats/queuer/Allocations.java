@@ -0,0 +1,27 @@
+package com.thundercats.queuer;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Reads the allocation counter of the current thread, for benchmarks that report bytes
+ * allocated per row or per frame.
+ */
+public class Allocations {
+
+    private Allocations() {
+    }
+
+    /**
+     * Returns the bytes this thread has allocated so far, or -1 where the JVM cannot tell.
+     */
+    public static long allocatedBytes() {
+        try {
+            return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        } catch (RuntimeException e) {
+            return -1;
+        } catch (LinkageError e) {
+            return -1;
+        }
+    }
+}
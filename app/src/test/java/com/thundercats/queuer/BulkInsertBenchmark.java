@@ -0,0 +1,116 @@
+package com.thundercats.queuer;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import com.thundercats.queuer.database.DatabaseManager;
+import com.thundercats.queuer.database.ProjectDataSource;
+import com.thundercats.queuer.database.TaskDataSource;
+import com.thundercats.queuer.models.Project;
+import com.thundercats.queuer.models.Task;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * Times writing tasks and projects one insert-and-query at a time, through
+ * TaskDataSource.createTask and ProjectDataSource.createProject, against the bulk
+ * TaskDataSource.createTasks and ProjectDataSource.createProjects.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BulkInsertBenchmark {
+    private static final int TASKS = 10000;
+    private static final int PROJECTS = 1000;
+
+    private TaskDataSource taskDataSource;
+    private ProjectDataSource projectDataSource;
+
+    @Before
+    public void open() {
+        TestData.allowMainThreadDatabase();
+        taskDataSource = new TaskDataSource(Robolectric.application);
+        taskDataSource.open();
+        projectDataSource = new ProjectDataSource(Robolectric.application);
+        projectDataSource.open();
+    }
+
+    @After
+    public void close() {
+        taskDataSource.close();
+        projectDataSource.close();
+        DatabaseManager.getInstance(Robolectric.application).close();
+    }
+
+    @Test
+    public void testBulkTaskInsert() {
+        Project project = TestData.createProject("Bulk");
+
+        long start = System.nanoTime();
+        for (int i = 0; i < TASKS; i++) {
+            taskDataSource.createTask("Task " + i, project.getLocalId(), project.getId(), 0, i, false);
+        }
+        long singleMillis = (System.nanoTime() - start) / 1000000;
+
+        ArrayList<Task> drafts = new ArrayList<Task>(TASKS);
+        for (int i = 0; i < TASKS; i++) {
+            drafts.add(new Task(0, 0, project.getId(), project.getLocalId(), "Task " + i, false, TASKS + i,
+                    new Date(), new Date()));
+        }
+        start = System.nanoTime();
+        ArrayList<Task> created = taskDataSource.createTasks(drafts);
+        long bulkMillis = (System.nanoTime() - start) / 1000000;
+
+        System.out.println("Inserted " + TASKS + " tasks: one at a time " + singleMillis
+                + " ms, bulk " + bulkMillis + " ms");
+
+        assertEquals(2 * TASKS, taskDataSource.getTasks(project.getLocalId()).size());
+        assertEquals(TASKS, created.size());
+        for (int i = 1; i < TASKS; i++) {
+            assertTrue("Local IDs not in insert order!", created.get(i).getLocalId() > created.get(i - 1).getLocalId());
+        }
+    }
+
+    @Test
+    public void testBulkProjectInsert() {
+        long start = System.nanoTime();
+        for (int i = 0; i < PROJECTS; i++) {
+            projectDataSource.createProject("Project " + i, i % 8, false, 0, new Date(), new Date());
+        }
+        long singleMillis = (System.nanoTime() - start) / 1000000;
+
+        ArrayList<Project> drafts = new ArrayList<Project>(PROJECTS);
+        for (int i = 0; i < PROJECTS; i++) {
+            drafts.add(new Project(0, 0, "Project " + i, i % 8, false, new Date(), new Date()));
+        }
+        start = System.nanoTime();
+        ArrayList<Project> created = projectDataSource.createProjects(drafts);
+        long bulkMillis = (System.nanoTime() - start) / 1000000;
+
+        System.out.println("Inserted " + PROJECTS + " projects: one at a time " + singleMillis
+                + " ms, bulk " + bulkMillis + " ms");
+
+        assertEquals(2 * PROJECTS, projectDataSource.getAllProjects().size());
+        assertEquals(PROJECTS, created.size());
+    }
+
+    @Test
+    public void testBulkInsertWithoutDates() {
+        ArrayList<Project> projects = new ArrayList<Project>();
+        projects.add(new Project(0, 0, "Undated", 3, false, null, null));
+        Project project = projectDataSource.createProjects(projects).get(0);
+        assertNull(project.getCreated_at());
+
+        ArrayList<Task> tasks = new ArrayList<Task>();
+        tasks.add(new Task(0, 0, project.getId(), project.getLocalId(), "Undated", false, 0, null, null));
+        taskDataSource.createTasks(tasks);
+
+        assertEquals(1, taskDataSource.getTasks(project.getLocalId()).size());
+    }
+}
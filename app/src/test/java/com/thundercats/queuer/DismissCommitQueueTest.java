@@ -0,0 +1,152 @@
+package com.thundercats.queuer;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import com.thundercats.queuer.database.DatabaseManager;
+import com.thundercats.queuer.database.TaskDataSource;
+import com.thundercats.queuer.interfaces.DataCallback;
+import com.thundercats.queuer.managers.DataManager;
+import com.thundercats.queuer.managers.DismissCommitQueue;
+import com.thundercats.queuer.models.Project;
+import com.thundercats.queuer.models.Task;
+
+import java.util.ArrayList;
+
+/**
+ * Dismisses tasks through a {@link DismissCommitQueue} and checks that nothing is written
+ * during the undo window, that the closed windows of one main-loop turn are written as one
+ * batch, and what is left unwritten once the batch write succeeds, and once it fails.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DismissCommitQueueTest {
+    private static final int TASKS = 3;
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private Project project;
+    private ArrayList<Task> tasks;
+    private DismissCommitQueue queue;
+    private int batches;
+
+    @Before
+    public void createTasks() {
+        TestData.allowMainThreadDatabase();
+        project = TestData.createProject("Dismissed");
+        tasks = TestData.createTasks(project, TASKS);
+        queue = new DismissCommitQueue(DataManager.getInstance(Robolectric.application), this,
+                new DataCallback<Void>() {
+                    @Override
+                    public void onResult(Void result) {
+                        batches++;
+                    }
+                });
+    }
+
+    @After
+    public void shutdown() {
+        DataManager.getInstance(Robolectric.application).shutdown();
+        DatabaseManager.getInstance(Robolectric.application).close();
+    }
+
+    @Test
+    public void testNothingIsWrittenDuringTheUndoWindow() {
+        for (Task task : tasks) queue.hold(task);
+        Robolectric.runUiThreadTasks();
+        assertEquals("Dismissal written before its undo window closed!", TASKS, unfinishedInDatabase());
+        assertEquals(TASKS, queue.countUnwritten(project.getLocalId()));
+
+        // the first dismissal is undone, the other windows close in the same turn
+        queue.release(tasks.get(0));
+        assertFalse(tasks.get(0).isFinished());
+        assertFalse(queue.isUnwritten(tasks.get(0)));
+        for (int i = 1; i < TASKS; i++) queue.commitLater(tasks.get(i));
+
+        waitForBatch();
+        assertEquals("Closed windows not written as one batch!", 1, batches);
+        assertEquals(1, unfinishedInDatabase());
+        assertEquals(0, queue.countUnwritten(project.getLocalId()));
+    }
+
+    @Test
+    public void testUnwrittenDismissalsShiftOffsetsBelowThem() {
+        queue.hold(tasks.get(1));
+
+        assertEquals(0, queue.countUnwrittenBefore(tasks.get(0)));
+        assertEquals(0, queue.countUnwrittenBefore(tasks.get(1)));
+        assertEquals(1, queue.countUnwrittenBefore(tasks.get(2)));
+    }
+
+    @Test
+    public void testFlushWritesAtOnce() {
+        dismissAll();
+        queue.flush();
+
+        waitForBatch();
+        Robolectric.runUiThreadTasks();
+        assertEquals("Flushed batch written again!", 1, batches);
+        assertEquals(0, unfinishedInDatabase());
+    }
+
+    @Test
+    public void testWrittenBatchIsForgotten() {
+        dismissAll();
+        assertEquals(TASKS, queue.countUnwritten(project.getLocalId()));
+
+        waitForBatch();
+        assertEquals(0, queue.countUnwritten(project.getLocalId()));
+        assertEquals("Dismissals not written!", 0, unfinishedInDatabase());
+    }
+
+    @Test
+    public void testFailedBatchIsPutBack() {
+        // a null name cannot be bound, so the batch's transaction rolls back
+        tasks.get(1).setName(null);
+        dismissAll();
+
+        waitForBatch();
+        assertEquals("Failed batch still unwritten!", 0, queue.countUnwritten(project.getLocalId()));
+        for (Task task : tasks) {
+            assertFalse("Failed dismissal still finished in memory!", task.isFinished());
+            assertFalse(queue.isUnwritten(task));
+        }
+        assertEquals(TASKS, unfinishedInDatabase());
+    }
+
+    private void dismissAll() {
+        for (Task task : tasks) queue.hold(task);
+        for (Task task : tasks) queue.commitLater(task);
+    }
+
+    /**
+     * Runs the main looper, which flushes the queue and delivers the write's answer, until
+     * the batch is settled.
+     */
+    private void waitForBatch() {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (batches == 0) {
+            assertTrue("Timed out waiting for the batch", System.currentTimeMillis() < deadline);
+            Robolectric.runUiThreadTasks();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                fail("Interrupted");
+            }
+        }
+    }
+
+    private int unfinishedInDatabase() {
+        TestData.allowMainThreadDatabase();
+        TaskDataSource dataSource = new TaskDataSource(Robolectric.application);
+        dataSource.open();
+        int unfinished = dataSource.getUnfinishedTasks(project.getLocalId(), TASKS).size();
+        dataSource.close();
+        return unfinished;
+    }
+}
@@ -0,0 +1,97 @@
+package com.thundercats.queuer;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import com.thundercats.queuer.adapters.FeedAdapter;
+import com.thundercats.queuer.adapters.ListDiff;
+import com.thundercats.queuer.database.DatabaseManager;
+import com.thundercats.queuer.interfaces.DataCallback;
+import com.thundercats.queuer.managers.DataManager;
+import com.thundercats.queuer.models.Project;
+
+import java.util.ArrayList;
+
+/**
+ * Reloads the feed through the DataManager after a project gained tasks, and checks that the
+ * adapter sees the change and that the first load's objects were left alone.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FeedReloadTest {
+    private static final int TASKS = 5;
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private DataManager dataManager;
+    private ArrayList<Project> loaded;
+
+    @Before
+    public void createProject() {
+        TestData.allowMainThreadDatabase();
+        TestData.createProject("Reloaded");
+        dataManager = DataManager.getInstance(Robolectric.application);
+    }
+
+    @After
+    public void shutdown() {
+        dataManager.shutdown();
+        DatabaseManager.getInstance(Robolectric.application).close();
+    }
+
+    @Test
+    public void testReloadSeesNewTasks() {
+        ArrayList<Project> first = loadFeed();
+        FeedAdapter adapter = new FeedAdapter(Robolectric.application, first);
+        assertEquals(0, adapter.getItem(0).getUnfinishedCount());
+
+        TestData.createTasks(first.get(0), TASKS);
+        ArrayList<Project> second = loadFeed();
+        ListDiff.ChangeSet<Project> changes = adapter.setProjects(second);
+
+        assertFalse("Reload with new tasks changed nothing!", changes.isEmpty());
+        assertEquals(1, changes.getChanged());
+        assertEquals(TASKS, adapter.getItem(0).getUnfinishedCount());
+        assertNotNull(adapter.getItem(0).getHeadTask());
+        assertEquals("Shown project changed by the reload!", 0, first.get(0).getUnfinishedCount());
+        assertSame(second.get(0), dataManager.peekProject(second.get(0).getLocalId()));
+    }
+
+    @Test
+    public void testUnchangedReloadKeepsInstances() {
+        FeedAdapter adapter = new FeedAdapter(Robolectric.application, loadFeed());
+        Project shown = adapter.getItem(0);
+
+        assertTrue(adapter.setProjects(loadFeed()).isEmpty());
+        assertSame(shown, adapter.getItem(0));
+    }
+
+    /**
+     * Loads the feed and runs the main looper until it is delivered.
+     */
+    private ArrayList<Project> loadFeed() {
+        loaded = null;
+        dataManager.loadFeedProjects(this, new DataCallback<ArrayList<Project>>() {
+            @Override
+            public void onResult(ArrayList<Project> projects) {
+                loaded = projects;
+            }
+        });
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (loaded == null) {
+            assertTrue("Timed out waiting for the DataManager", System.currentTimeMillis() < deadline);
+            Robolectric.runUiThreadTasks();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                fail("Interrupted");
+            }
+        }
+        return loaded;
+    }
+}
@@ -0,0 +1,91 @@
+package com.thundercats.queuer;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.RobolectricTestRunner;
+
+import com.thundercats.queuer.views.EnhancedListView;
+import com.thundercats.queuer.views.FrameMetrics;
+
+/**
+ * Replays scripted drags and swipes, with a pause under a finger held still in the middle,
+ * and checks what {@link FrameMetrics} recorded. The list draws nothing during the pause,
+ * so the pause must not show up as one long frame.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class FrameMetricsTest {
+    private static final long HOLD_MILLIS = 300;
+    private static final int STEPS = 10;
+
+    private TestList list;
+    private FrameMetrics metrics;
+
+    @Before
+    public void createList() {
+        list = new TestList(8);
+        metrics = new FrameMetrics();
+        list.getListView().setMetricsListener(metrics);
+    }
+
+    @Test
+    public void testHeldDragIsNotOneLongFrame() throws InterruptedException {
+        int y = list.down(1);
+        list.longPress();
+        list.frame();
+        for (int i = 1; i <= STEPS; i++) {
+            list.move(y + i * 2);
+            list.frame();
+        }
+        // the finger rests on the screen: no events, nothing to draw
+        Thread.sleep(HOLD_MILLIS);
+        for (int i = STEPS + 1; i <= 2 * STEPS; i++) {
+            list.move(y + i * 2);
+            list.frame();
+        }
+        list.up(y + 2 * STEPS * 2);
+        list.settle();
+
+        assertFramesExcludeHold(EnhancedListView.Gesture.REARRANGE);
+    }
+
+    @Test
+    public void testHeldSwipeIsNotOneLongFrame() throws InterruptedException {
+        list.getListView().setDismissCallback(new EnhancedListView.OnDismissCallback() {
+            @Override
+            public EnhancedListView.Undoable onDismiss(EnhancedListView listView, int position) {
+                return null;
+            }
+        }).enableSwipeToDismiss();
+
+        int x = TestList.WIDTH / 2;
+        int y = list.down(2);
+        for (int i = 1; i <= STEPS; i++) {
+            list.move(x + i * 5, y);
+            list.frame();
+        }
+        Thread.sleep(HOLD_MILLIS);
+        for (int i = STEPS - 1; i >= 0; i--) {
+            list.move(x + i * 5, y);
+            list.frame();
+        }
+        // back where it started, so the row slides back instead of being dismissed
+        list.up(x, y);
+
+        assertFramesExcludeHold(EnhancedListView.Gesture.SWIPE);
+    }
+
+    private void assertFramesExcludeHold(EnhancedListView.Gesture gesture) {
+        FrameMetrics.Histogram frames = metrics.getFrames(gesture);
+        System.out.println(gesture + " " + frames + " dropped=" + metrics.getDroppedFrames(gesture));
+
+        assertTrue("No frames recorded for " + gesture, frames.getCount() >= STEPS);
+        assertTrue("The pause was timed as a frame of " + frames.getMaxNanos() / 1000000 + " ms!",
+                frames.getMaxNanos() < HOLD_MILLIS * 1000000 / 2);
+        assertTrue("The pause was counted as dropped frames!",
+                metrics.getDroppedFrames(gesture) < HOLD_MILLIS * 1000000 / FrameMetrics.FRAME_BUDGET_NANOS / 2);
+    }
+}
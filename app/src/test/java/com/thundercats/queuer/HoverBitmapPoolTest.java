@@ -0,0 +1,101 @@
+package com.thundercats.queuer;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.RobolectricTestRunner;
+
+import android.graphics.Bitmap;
+
+import com.thundercats.queuer.views.EnhancedListView;
+import com.thundercats.queuer.views.HoverBitmapPool;
+
+import java.util.ArrayList;
+
+@RunWith(RobolectricTestRunner.class)
+public class HoverBitmapPoolTest {
+    private static final int DRAGS = 50;
+
+    private HoverBitmapPool pool;
+
+    @Before
+    public void trimPool() {
+        // shared by every list; start each test from an empty pool
+        pool = EnhancedListView.getHoverBitmapPool();
+        pool.trim();
+    }
+
+    @Test
+    public void testSteadyDragLoopAllocatesNothing() {
+        TestList list = new TestList(8);
+        ArrayList<Integer> order = list.getOrder();
+
+        // the first drag has nothing to reuse
+        drag(list);
+        int allocations = pool.getAllocationCount();
+        int reuses = pool.getReuseCount();
+        int evictions = pool.getEvictionCount();
+        assertEquals("Hover bitmap not given back on drop!", 1, pool.size());
+
+        for (int i = 0; i < DRAGS; i++) drag(list);
+
+        assertEquals("Steady drag loop allocated a bitmap!", allocations, pool.getAllocationCount());
+        assertEquals(reuses + DRAGS, pool.getReuseCount());
+        assertEquals(evictions, pool.getEvictionCount());
+        assertEquals(1, pool.size());
+        assertEquals("Drag there and back changed the order!", order, list.getOrder());
+    }
+
+    @Test
+    public void testOnlyMatchingBitmapsAreReused() {
+        int allocations = pool.getAllocationCount();
+        Bitmap small = pool.acquire(100, 50, Bitmap.Config.ARGB_8888);
+        pool.release(small);
+
+        Bitmap taller = pool.acquire(100, 60, Bitmap.Config.ARGB_8888);
+        Bitmap otherConfig = pool.acquire(100, 50, Bitmap.Config.RGB_565);
+        assertTrue("Bitmap of another size or config reused!", taller != small && otherConfig != small);
+        assertSame(small, pool.acquire(100, 50, Bitmap.Config.ARGB_8888));
+        assertEquals(allocations + 3, pool.getAllocationCount());
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testPoolIsBoundedAndTrimmed() {
+        int evictions = pool.getEvictionCount();
+        ArrayList<Bitmap> bitmaps = new ArrayList<Bitmap>();
+        for (int i = 1; i <= 5; i++) bitmaps.add(pool.acquire(100, 10 * i, Bitmap.Config.ARGB_8888));
+        for (Bitmap bitmap : bitmaps) pool.release(bitmap);
+
+        assertEquals(3, pool.size());
+        assertEquals(evictions + 2, pool.getEvictionCount());
+        assertTrue("Evicted bitmap not recycled!", bitmaps.get(0).isRecycled());
+
+        pool.trim();
+        assertEquals(0, pool.size());
+        assertEquals(evictions + 5, pool.getEvictionCount());
+    }
+
+    /**
+     * Picks up the second row, drags it down past the third and back, and drops it.
+     */
+    private static void drag(TestList list) {
+        int y = list.down(1);
+        list.longPress();
+        int step = TestList.ROW_HEIGHT / 4;
+        for (int offset = step; offset <= 6 * step; offset += step) {
+            list.move(y + offset);
+            list.frame();
+        }
+        // a little past where it started, so the rows swap back
+        for (int offset = 5 * step; offset >= -step; offset -= step) {
+            list.move(y + offset);
+            list.frame();
+        }
+        list.up(y - step);
+        list.settle();
+    }
+}
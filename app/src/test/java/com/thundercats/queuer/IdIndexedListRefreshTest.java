@@ -0,0 +1,110 @@
+package com.thundercats.queuer;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.RobolectricTestRunner;
+
+import android.text.TextUtils;
+
+import com.thundercats.queuer.adapters.IdIndexedList;
+import com.thundercats.queuer.adapters.ListDiff;
+import com.thundercats.queuer.models.Task;
+import com.thundercats.queuer.views.FrameMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Refreshes a list of 10,000 {@link Task}s the way an adapter does after a reload: diff
+ * against the reloaded rows, replace the list, drop the finished ones and look rows up by
+ * local ID. The median refresh must fit in one frame.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class IdIndexedListRefreshTest {
+    private static final int TASKS = 10000;
+    private static final int REPETITIONS = 25;
+
+    private static final ListDiff<Task> TASK_DIFF = new ListDiff<Task>() {
+        @Override
+        protected int keyOf(Task task) {
+            return task.getLocalId();
+        }
+
+        @Override
+        protected boolean sameContents(Task oldTask, Task newTask) {
+            return oldTask.isFinished() == newTask.isFinished()
+                    && oldTask.getPosition() == newTask.getPosition()
+                    && TextUtils.equals(oldTask.getName(), newTask.getName());
+        }
+    };
+
+    private static final IdIndexedList.Filter<Task> UNFINISHED = new IdIndexedList.Filter<Task>() {
+        @Override
+        public boolean keep(Task task) {
+            return !task.isFinished();
+        }
+    };
+
+    private static final class TaskList extends IdIndexedList<Task> {
+        @Override
+        protected int idOf(Task task) {
+            return task.getLocalId();
+        }
+    }
+
+    @Test
+    public void testRefreshFitsInAFrame() {
+        // as reloaded: one row renamed and every hundredth row finished elsewhere
+        ArrayList<Task> reloaded = tasks();
+        reloaded.get(TASKS / 2 + 1).setName("Renamed");
+        for (int i = 0; i < TASKS; i += 100) reloaded.get(i).setFinished(true);
+
+        long[] nanos = new long[REPETITIONS];
+        // the first pass only warms up; the second overwrites its times
+        for (int warmUp = 0; warmUp < 2; warmUp++) {
+            for (int i = 0; i < REPETITIONS; i++) {
+                TaskList list = new TaskList();
+                list.setAll(tasks());
+                long start = System.nanoTime();
+                refresh(list, reloaded);
+                nanos[i] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(nanos);
+        long median = nanos[REPETITIONS / 2];
+        assertTrue("Refresh of " + TASKS + " tasks took " + median / 1000 + " us, over the "
+                + FrameMetrics.FRAME_BUDGET_NANOS / 1000 + " us frame", median < FrameMetrics.FRAME_BUDGET_NANOS);
+    }
+
+    /**
+     * Applies the reloaded rows to {@code list} and checks the result.
+     */
+    private static void refresh(TaskList list, ArrayList<Task> reloaded) {
+        ListDiff.ChangeSet<Task> changes = TASK_DIFF.diff(list.asList(), reloaded);
+        assertEquals(TASKS / 100 + 1, changes.getChanged());
+        list.setAll(changes.getItems());
+        assertTrue(list.retain(UNFINISHED));
+        assertEquals(TASKS - TASKS / 100, list.size());
+
+        Task renamed = reloaded.get(TASKS / 2 + 1);
+        assertTrue(list.contains(renamed));
+        assertEquals(-1, list.indexOfId(reloaded.get(0).getLocalId()));
+        assertEquals(list.size() - 1, list.indexOfId(TASKS));
+    }
+
+    /**
+     * Returns {@link #TASKS} unfinished {@code Task}s with local IDs 1 through {@link #TASKS}.
+     */
+    private static ArrayList<Task> tasks() {
+        Date now = new Date(0);
+        ArrayList<Task> tasks = new ArrayList<Task>(TASKS);
+        for (int i = 1; i <= TASKS; i++) {
+            tasks.add(new Task(i, 0, 0, 1, "Task " + i, false, i, now, now));
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,87 @@
+package com.thundercats.queuer;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.RobolectricTestRunner;
+
+import com.thundercats.queuer.adapters.ListDiff;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Times {@link ListDiff} on reloads of 1,000 and 10,000 rows: nothing changed, one row
+ * renamed, one row dragged to the top, 1% of the rows replaced, and every row shuffled.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ListDiffBenchmark {
+    private static final int[] SIZES = {1000, 10000};
+    private static final int REPETITIONS = 50;
+
+    @Test
+    public void testUpdateLatency() {
+        System.out.println(String.format("%-10s %8s %8s %8s %8s %8s", "rows", "same", "rename", "drag",
+                "churn", "shuffle"));
+        for (int size : SIZES) {
+            ArrayList<ListDiffTest.Item> oldItems = ListDiffTest.items(ids(size));
+
+            ArrayList<ListDiffTest.Item> same = ListDiffTest.items(ids(size));
+
+            ArrayList<ListDiffTest.Item> rename = ListDiffTest.items(ids(size));
+            rename.set(size / 2, new ListDiffTest.Item(size / 2 + 1, "Renamed"));
+
+            ArrayList<ListDiffTest.Item> drag = ListDiffTest.items(ids(size));
+            drag.add(0, drag.remove(size - 1));
+
+            // every hundredth row finished and replaced by a new one at the end
+            ArrayList<ListDiffTest.Item> churn = new ArrayList<ListDiffTest.Item>(size);
+            for (int i = 0; i < size; i++) {
+                if (i % 100 != 0) churn.add(new ListDiffTest.Item(i + 1, "Item " + (i + 1)));
+            }
+            for (int i = 0; i < size / 100; i++) churn.add(new ListDiffTest.Item(size + i + 1, "New"));
+
+            ArrayList<ListDiffTest.Item> shuffle = ListDiffTest.items(ids(size));
+            Collections.shuffle(shuffle, new Random(size));
+
+            System.out.println(String.format("%-10d %8s %8s %8s %8s %8s", size,
+                    time(oldItems, same), time(oldItems, rename), time(oldItems, drag),
+                    time(oldItems, churn), time(oldItems, shuffle)));
+
+            assertTrue(ListDiffTest.DIFF.diff(oldItems, same).isEmpty());
+            assertEquals(1, ListDiffTest.DIFF.diff(oldItems, rename).getChanged());
+            assertEquals(1, ListDiffTest.DIFF.diff(oldItems, drag).getMoved());
+            ListDiff.ChangeSet<ListDiffTest.Item> churned = ListDiffTest.DIFF.diff(oldItems, churn);
+            assertEquals(size / 100, churned.getInserted());
+            assertEquals(size / 100, churned.getRemoved());
+            assertEquals(0, churned.getMoved());
+        }
+        System.out.println("(microseconds per diff, mean of " + REPETITIONS + ")");
+    }
+
+    /**
+     * Returns the mean time of a diff, in microseconds, after as many warm-up runs.
+     */
+    private static String time(ArrayList<ListDiffTest.Item> oldItems, ArrayList<ListDiffTest.Item> newItems) {
+        int checksum = 0;
+        for (int i = 0; i < REPETITIONS; i++) {
+            checksum += ListDiffTest.DIFF.diff(oldItems, newItems).getItems().size();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < REPETITIONS; i++) {
+            checksum += ListDiffTest.DIFF.diff(oldItems, newItems).getItems().size();
+        }
+        long micros = (System.nanoTime() - start) / 1000 / REPETITIONS;
+        assertEquals(2 * REPETITIONS * newItems.size(), checksum);
+        return String.valueOf(micros);
+    }
+
+    private static int[] ids(int size) {
+        int[] ids = new int[size];
+        for (int i = 0; i < size; i++) ids[i] = i + 1;
+        return ids;
+    }
+}
@@ -0,0 +1,152 @@
+package com.thundercats.queuer;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.RobolectricTestRunner;
+
+import com.thundercats.queuer.adapters.ListDiff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class ListDiffTest {
+
+    /**
+     * A row with an ID and the text it displays.
+     */
+    static class Item {
+        final int id;
+        final String text;
+
+        Item(int id, String text) {
+            this.id = id;
+            this.text = text;
+        }
+    }
+
+    static final ListDiff<Item> DIFF = new ListDiff<Item>() {
+        @Override
+        protected int keyOf(Item item) {
+            return item.id;
+        }
+
+        @Override
+        protected boolean sameContents(Item oldItem, Item newItem) {
+            return oldItem.text.equals(newItem.text);
+        }
+    };
+
+    /**
+     * Returns items with the given IDs, each displaying its ID, as freshly loaded copies.
+     */
+    static ArrayList<Item> items(int... ids) {
+        ArrayList<Item> items = new ArrayList<Item>(ids.length);
+        for (int id : ids) items.add(new Item(id, "Item " + id));
+        return items;
+    }
+
+    @Test
+    public void testUnchangedListKeepsOldInstances() {
+        ArrayList<Item> oldItems = items(1, 2, 3, 4, 5);
+        ListDiff.ChangeSet<Item> changes = DIFF.diff(oldItems, items(1, 2, 3, 4, 5));
+
+        assertTrue("Reload of the same rows produced changes: " + changes, changes.isEmpty());
+        assertEquals(oldItems.size(), changes.getItems().size());
+        for (int i = 0; i < oldItems.size(); i++) {
+            assertSame("Unchanged row was replaced!", oldItems.get(i), changes.getItems().get(i));
+        }
+    }
+
+    @Test
+    public void testChangedItemIsTheOnlyNewInstance() {
+        ArrayList<Item> oldItems = items(1, 2, 3);
+        ArrayList<Item> newItems = items(1, 2, 3);
+        newItems.set(1, new Item(2, "Renamed"));
+        ListDiff.ChangeSet<Item> changes = DIFF.diff(oldItems, newItems);
+
+        assertEquals(1, changes.getChanged());
+        assertEquals(0, changes.getMoved());
+        assertSame(oldItems.get(0), changes.getItems().get(0));
+        assertSame(newItems.get(1), changes.getItems().get(1));
+        assertSame(oldItems.get(2), changes.getItems().get(2));
+    }
+
+    @Test
+    public void testInsertedAndRemovedAreNotMoves() {
+        ListDiff.ChangeSet<Item> changes = DIFF.diff(items(1, 2, 3, 4), items(1, 3, 4, 5, 6));
+
+        assertEquals(2, changes.getInserted());
+        assertEquals(1, changes.getRemoved());
+        assertEquals(0, changes.getMoved());
+        assertEquals(0, changes.getChanged());
+        assertEquals(5, changes.getItems().size());
+    }
+
+    @Test
+    public void testOneItemMovedToTheFrontIsOneMove() {
+        // only the moved item falls outside the longest run that kept its order
+        ListDiff.ChangeSet<Item> changes = DIFF.diff(items(1, 2, 3, 4, 5, 6), items(6, 1, 2, 3, 4, 5));
+        assertEquals(1, changes.getMoved());
+
+        changes = DIFF.diff(items(1, 2, 3, 4, 5, 6), items(2, 3, 4, 5, 6, 1));
+        assertEquals(1, changes.getMoved());
+    }
+
+    @Test
+    public void testSwapIsOneMove() {
+        ListDiff.ChangeSet<Item> changes = DIFF.diff(items(1, 2, 3, 4), items(1, 3, 2, 4));
+        assertEquals(1, changes.getMoved());
+        assertEquals(0, changes.getChanged());
+    }
+
+    @Test
+    public void testReversedListMovesAllButOne() {
+        ListDiff.ChangeSet<Item> changes = DIFF.diff(items(1, 2, 3, 4, 5), items(5, 4, 3, 2, 1));
+        assertEquals(4, changes.getMoved());
+    }
+
+    @Test
+    public void testInterleavedMovesFindTheLongestRun() {
+        // 1 3 5 7 stay in order; 2, 4 and 6 move
+        ListDiff.ChangeSet<Item> changes = DIFF.diff(items(1, 2, 3, 4, 5, 6, 7), items(6, 1, 3, 2, 5, 7, 4));
+        assertEquals(3, changes.getMoved());
+    }
+
+    @Test
+    public void testMovedItemKeepsItsOldInstance() {
+        ArrayList<Item> oldItems = items(1, 2, 3);
+        ListDiff.ChangeSet<Item> changes = DIFF.diff(oldItems, items(3, 1, 2));
+
+        assertEquals(1, changes.getMoved());
+        assertSame(oldItems.get(2), changes.getItems().get(0));
+        assertSame(oldItems.get(0), changes.getItems().get(1));
+        assertSame(oldItems.get(1), changes.getItems().get(2));
+    }
+
+    @Test
+    public void testKeysNeedNotBeAscending() {
+        ArrayList<Item> oldItems = items(9, 4, 7, 1);
+        List<Item> newItems = items(9, 4, 7, 1);
+        ListDiff.ChangeSet<Item> changes = DIFF.diff(oldItems, newItems);
+        assertTrue(changes.toString(), changes.isEmpty());
+
+        Collections.reverse(newItems);
+        changes = DIFF.diff(oldItems, newItems);
+        assertEquals(3, changes.getMoved());
+        assertEquals(Arrays.asList(oldItems.get(3), oldItems.get(2), oldItems.get(1), oldItems.get(0)),
+                changes.getItems());
+    }
+
+    @Test
+    public void testEmptyLists() {
+        assertTrue(DIFF.diff(new ArrayList<Item>(), new ArrayList<Item>()).isEmpty());
+        assertEquals(3, DIFF.diff(new ArrayList<Item>(), items(1, 2, 3)).getInserted());
+        assertEquals(3, DIFF.diff(items(1, 2, 3), new ArrayList<Item>()).getRemoved());
+    }
+}
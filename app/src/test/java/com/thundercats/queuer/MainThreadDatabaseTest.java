@@ -0,0 +1,152 @@
+package com.thundercats.queuer;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLog;
+import org.robolectric.util.ActivityController;
+
+import android.content.Intent;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.ListAdapter;
+import android.widget.ListView;
+
+import com.thundercats.queuer.activities.CreateProjectActivity;
+import com.thundercats.queuer.activities.FeedActivity;
+import com.thundercats.queuer.activities.ProjectActivity;
+import com.thundercats.queuer.adapters.ProjectAdapter;
+import com.thundercats.queuer.database.DatabaseManager;
+import com.thundercats.queuer.database.ProjectDataSource;
+import com.thundercats.queuer.managers.DataManager;
+import com.thundercats.queuer.managers.NetworkManager;
+import com.thundercats.queuer.models.Project;
+
+/**
+ * Drives the activities that read and write the database through their lifecycles with
+ * the main-thread guard of the {@link DatabaseManager} on, as in a debug build. Any data
+ * source call on the main thread throws out of the activity; one on a DataManager thread
+ * that trips the guard anyway is caught and logged there, so the log is checked too.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MainThreadDatabaseTest {
+    private static final int TASKS = 30;
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private Project project;
+
+    @Before
+    public void createProject() {
+        TestData.allowMainThreadDatabase();
+        project = TestData.createProject("Guarded");
+        TestData.createTasks(project, TASKS);
+        // make the activities load what they show instead of finding it in memory
+        DatabaseManager databaseManager = DatabaseManager.getInstance(Robolectric.application);
+        databaseManager.getModelCache().clear();
+        databaseManager.setMainThreadForbidden(true);
+    }
+
+    @After
+    public void shutdown() {
+        NetworkManager.getInstance(Robolectric.application).shutdown();
+        DataManager.getInstance(Robolectric.application).shutdown();
+        DatabaseManager.getInstance(Robolectric.application).close();
+    }
+
+    @Test
+    public void testFeedActivity() {
+        ActivityController<FeedActivity> controller = Robolectric.buildActivity(FeedActivity.class)
+                .create().start().resume().visible();
+        final ListView projects = (ListView) controller.get().findViewById(R.id.lv_projects);
+        waitFor(new Condition() {
+            @Override
+            public boolean isMet() {
+                return projects.getAdapter().getCount() == 1;
+            }
+        });
+        controller.pause().stop().destroy();
+        assertGuardNeverTripped();
+    }
+
+    @Test
+    public void testProjectActivity() {
+        Intent intent = new Intent(Robolectric.application, ProjectActivity.class);
+        intent.putExtra(Project.LOCAL_ID_KEY, project.getLocalId());
+        ActivityController<ProjectActivity> controller = Robolectric.buildActivity(ProjectActivity.class)
+                .withIntent(intent).create().start().resume().visible();
+        final ListView tasks = (ListView) controller.get().findViewById(R.id.lv_tasks);
+        final DataManager dataManager = DataManager.getInstance(Robolectric.application);
+        waitFor(new Condition() {
+            @Override
+            public boolean isMet() {
+                ListAdapter adapter = tasks.getAdapter();
+                return dataManager.peekProject(project.getLocalId()) != null
+                        && adapter.getCount() == TASKS && ((ProjectAdapter) adapter).isLoaded(TASKS - 1);
+            }
+        });
+        controller.pause().stop().destroy();
+        assertGuardNeverTripped();
+    }
+
+    @Test
+    public void testCreateProjectActivity() {
+        ActivityController<CreateProjectActivity> controller = Robolectric.buildActivity(CreateProjectActivity.class)
+                .create().start().resume().visible();
+        final CreateProjectActivity activity = controller.get();
+        ((EditText) activity.findViewById(R.id.et_project_name)).setText("Written");
+        ((EditText) activity.findViewById(R.id.et_project_color)).setText("7");
+        activity.okayButtonPressed(new Button(activity));
+        waitFor(new Condition() {
+            @Override
+            public boolean isMet() {
+                return activity.isFinishing();
+            }
+        });
+        controller.pause().stop().destroy();
+        assertGuardNeverTripped();
+
+        // read back on this thread, now that the activity is done
+        TestData.allowMainThreadDatabase();
+        ProjectDataSource dataSource = new ProjectDataSource(Robolectric.application);
+        dataSource.open();
+        assertEquals("Project not written through the DataManager!", 2, dataSource.getAllProjects().size());
+        dataSource.close();
+    }
+
+    private interface Condition {
+        boolean isMet();
+    }
+
+    /**
+     * Runs the main looper, which delivers the DataManager's callbacks, until the
+     * condition holds.
+     */
+    private static void waitFor(Condition condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            Robolectric.runUiThreadTasks();
+            if (condition.isMet()) return;
+            assertTrue("Timed out waiting for the DataManager", System.currentTimeMillis() < deadline);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                fail("Interrupted");
+            }
+        }
+    }
+
+    private static void assertGuardNeverTripped() {
+        Robolectric.runUiThreadTasks();
+        for (ShadowLog.LogItem item : ShadowLog.getLogs()) {
+            String message = item.throwable == null ? null : item.throwable.getMessage();
+            assertTrue("Guard tripped: " + item.msg,
+                    message == null || !message.startsWith("Database opened on the main thread"));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.thundercats.queuer;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import com.android.volley.CacheDispatcher;
+import com.android.volley.NetworkDispatcher;
+import com.thundercats.queuer.interfaces.LoginManagerCallback;
+import com.thundercats.queuer.managers.LoginManager;
+import com.thundercats.queuer.managers.NetworkManager;
+
+/**
+ * Logs in 100 times against a port nothing listens on, so every attempt fails, and checks
+ * that the process keeps the same dispatcher threads and forgets each failed attempt.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class NetworkManagerTest {
+    private static final int ATTEMPTS = 100;
+    private static final String URL = "http://127.0.0.1:1/login";
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private NetworkManager networkManager;
+    private int finishedCount;
+
+    @Before
+    public void setCallback() {
+        networkManager = NetworkManager.getInstance(Robolectric.application);
+        LoginManager.getInstance().setCallback(Robolectric.application, new LoginManagerCallback() {
+            @Override
+            public void startedRequest() {
+            }
+
+            @Override
+            public void finishedRequest(boolean successful) {
+                assertFalse(successful);
+                finishedCount++;
+            }
+        });
+    }
+
+    @After
+    public void shutdown() {
+        networkManager.shutdown();
+    }
+
+    @Test
+    public void testThreadCountStaysConstantOverFailedLogins() throws Exception {
+        login();
+        int threads = countDispatcherThreads();
+        assertEquals(NetworkManager.NETWORK_THREADS + 1, threads);
+
+        for (int i = 1; i < ATTEMPTS; i++) {
+            login();
+            assertEquals("Login started dispatcher threads!", threads, countDispatcherThreads());
+            assertEquals(NetworkManager.NETWORK_THREADS + 1, networkManager.getThreadCount());
+        }
+
+        assertEquals(ATTEMPTS, finishedCount);
+        assertEquals(ATTEMPTS, networkManager.getSentCount());
+        assertEquals("A failed login was collapsed into an earlier one!", 0, networkManager.getCollapsedCount());
+    }
+
+    @Test
+    public void testRepeatedTapIsCollapsedUntilTheFirstFails() throws Exception {
+        LoginManager.getInstance().login("user", "password", URL);
+        LoginManager.getInstance().login("user", "password", URL);
+        assertEquals(1, networkManager.getCollapsedCount());
+        waitForAnswers(1);
+
+        // the failed attempt is no longer in flight, so the next tap is sent
+        login();
+        assertEquals(2, networkManager.getSentCount());
+        assertEquals(1, networkManager.getCollapsedCount());
+    }
+
+    /**
+     * Logs in and waits for the failure, which must leave nothing queued.
+     */
+    private void login() throws Exception {
+        int answers = finishedCount + 1;
+        LoginManager.getInstance().login("user", "password", URL);
+        waitForAnswers(answers);
+        assertEquals("Failed login still pending!", 0, networkManager.getQueueDepth());
+    }
+
+    /**
+     * Runs the main looper, which delivers the responses, until the callback was called
+     * {@code answers} times in all.
+     */
+    private void waitForAnswers(int answers) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            Robolectric.runUiThreadTasks();
+            if (finishedCount >= answers) return;
+            assertTrue("Timed out waiting for the login to fail", System.currentTimeMillis() < deadline);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                fail("Interrupted");
+            }
+        }
+    }
+
+    private static int countDispatcherThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && (thread instanceof NetworkDispatcher || thread instanceof CacheDispatcher))
+                count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,137 @@
+package com.thundercats.queuer;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.util.ActivityController;
+
+import android.content.Intent;
+
+import com.thundercats.queuer.activities.ProjectActivity;
+import com.thundercats.queuer.database.DatabaseManager;
+import com.thundercats.queuer.database.ProjectDataSource;
+import com.thundercats.queuer.interfaces.DataCallback;
+import com.thundercats.queuer.managers.DataManager;
+import com.thundercats.queuer.models.Project;
+
+/**
+ * Opens a {@link ProjectActivity} with only a local ID, as the feed does, with the project in
+ * memory, with a cold cache, and for a project that no longer exists.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ProjectHandOffTest {
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private Project project;
+    private DataManager dataManager;
+    private ActivityController<ProjectActivity> controller;
+
+    @Before
+    public void createProject() {
+        TestData.allowMainThreadDatabase();
+        project = TestData.createProject("Handed over");
+        dataManager = DataManager.getInstance(Robolectric.application);
+        DatabaseManager.getInstance(Robolectric.application).getModelCache().clear();
+    }
+
+    @After
+    public void shutdown() {
+        if (controller != null) controller.pause().stop().destroy();
+        dataManager.shutdown();
+        DatabaseManager.getInstance(Robolectric.application).close();
+    }
+
+    @Test
+    public void testProjectInMemoryIsShownAtOnce() {
+        final Project[] loaded = new Project[1];
+        dataManager.loadProject(this, project.getLocalId(), new DataCallback<Project>() {
+            @Override
+            public void onResult(Project result) {
+                loaded[0] = result;
+            }
+        });
+        waitFor(new Condition() {
+            @Override
+            public boolean isMet() {
+                return loaded[0] != null;
+            }
+        });
+        assertSame(loaded[0], dataManager.peekProject(project.getLocalId()));
+
+        // no main-loop turn, so the title can only have come from memory
+        ProjectActivity activity = open(project.getLocalId());
+        assertEquals(project.getTitle(), activity.getSupportActionBar().getTitle().toString());
+    }
+
+    @Test
+    public void testColdCacheLoadsTheProjectByLocalId() {
+        assertNull(dataManager.peekProject(project.getLocalId()));
+
+        final ProjectActivity activity = open(project.getLocalId());
+        waitFor(new Condition() {
+            @Override
+            public boolean isMet() {
+                return dataManager.peekProject(project.getLocalId()) != null;
+            }
+        });
+        Robolectric.runUiThreadTasks();
+        assertEquals(project.getTitle(), activity.getSupportActionBar().getTitle().toString());
+        assertFalse(activity.isFinishing());
+    }
+
+    @Test
+    public void testMissingProjectFinishesTheActivity() {
+        ProjectDataSource dataSource = new ProjectDataSource(Robolectric.application);
+        dataSource.open();
+        int missingLocalId = project.getLocalId() + 1;
+        assertNull(dataSource.getProject(missingLocalId));
+        dataSource.close();
+
+        final ProjectActivity activity = open(missingLocalId);
+        waitFor(new Condition() {
+            @Override
+            public boolean isMet() {
+                return activity.isFinishing();
+            }
+        });
+    }
+
+    /**
+     * Starts a {@code ProjectActivity} the way the feed does, with just the local ID.
+     */
+    private ProjectActivity open(int projectLocalId) {
+        Intent intent = new Intent(Robolectric.application, ProjectActivity.class);
+        intent.putExtra(Project.LOCAL_ID_KEY, projectLocalId);
+        controller = Robolectric.buildActivity(ProjectActivity.class).withIntent(intent)
+                .create().start().resume().visible();
+        return controller.get();
+    }
+
+    private interface Condition {
+        boolean isMet();
+    }
+
+    /**
+     * Runs the main looper, which delivers the DataManager's callbacks, until the
+     * condition holds.
+     */
+    private static void waitFor(Condition condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            Robolectric.runUiThreadTasks();
+            if (condition.isMet()) return;
+            assertTrue("Timed out waiting for the DataManager", System.currentTimeMillis() < deadline);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                fail("Interrupted");
+            }
+        }
+    }
+}
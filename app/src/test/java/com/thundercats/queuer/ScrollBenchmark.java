@@ -0,0 +1,199 @@
+package com.thundercats.queuer;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import android.graphics.Color;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ListAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import com.thundercats.queuer.adapters.FeedAdapter;
+import com.thundercats.queuer.models.Project;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * Scrolls a feed of 1,000 projects from top to bottom, a few pixels per frame, and prints
+ * the time spent binding rows and the bytes allocated per frame: through the
+ * {@link FeedAdapter}'s view holders, and through an adapter that looks up and rebinds
+ * every child view on every bind, as the feed used to.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ScrollBenchmark {
+    private static final int PROJECTS = 1000;
+    private static final int PIXELS_PER_FRAME = 24;
+    private static final int WIDTH = 480;
+    private static final int HEIGHT = 800;
+
+    @Test
+    public void testBindCostPerFrame() {
+        ArrayList<Project> projects = new ArrayList<Project>(PROJECTS);
+        for (int i = 1; i <= PROJECTS; i++) {
+            projects.add(new Project(i, i, "Project " + i, i % 2 == 0 ? Color.RED : Color.BLUE, false,
+                    new Date(), new Date()));
+        }
+
+        // the first pass warms up the JIT
+        scroll(new RebindingAdapter(projects));
+        scroll(new FeedAdapter(Robolectric.application, projects));
+        Result rebinding = scroll(new RebindingAdapter(projects));
+        Result holders = scroll(new FeedAdapter(Robolectric.application, projects));
+
+        System.out.println("Scrolling " + PROJECTS + " projects, " + PIXELS_PER_FRAME + " px per frame:");
+        System.out.println("  rebind every view  " + rebinding);
+        System.out.println("  FeedAdapter        " + holders);
+
+        assertTrue("Scrolled without binding!", holders.binds > PROJECTS / 2);
+        assertEquals("Rows were inflated while scrolling instead of recycled!", 0, holders.inflationsWhileScrolling);
+    }
+
+    /**
+     * Shows an adapter in a list and scrolls it to the end.
+     */
+    private static Result scroll(ListAdapter adapter) {
+        TimedAdapter timed = new TimedAdapter(adapter);
+        ListView listView = new ListView(Robolectric.application);
+        listView.setAdapter(timed);
+        listView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        listView.layout(0, 0, WIDTH, HEIGHT);
+        // the first screen fills the recycler; from then on every row scrolled in is a recycled one
+        for (int scrolled = 0; scrolled < HEIGHT; scrolled += PIXELS_PER_FRAME) {
+            listView.scrollListBy(PIXELS_PER_FRAME);
+        }
+        int inflatedBefore = timed.inflations;
+        timed.bindNanos = 0;
+        timed.binds = 0;
+
+        Result result = new Result();
+        long startBytes = Allocations.allocatedBytes();
+        while (listView.getLastVisiblePosition() < adapter.getCount() - 1) {
+            listView.scrollListBy(PIXELS_PER_FRAME);
+            result.frames++;
+            assertTrue("Stopped scrolling at " + listView.getFirstVisiblePosition(), result.frames < 100000);
+        }
+        long endBytes = Allocations.allocatedBytes();
+        result.binds = timed.binds;
+        result.bindNanos = timed.bindNanos;
+        result.bytes = startBytes < 0 ? -1 : endBytes - startBytes;
+        result.inflationsWhileScrolling = timed.inflations - inflatedBefore;
+        return result;
+    }
+
+    private static class Result {
+        int frames;
+        int binds;
+        long bindNanos;
+        long bytes;
+        int inflationsWhileScrolling;
+
+        @Override
+        public String toString() {
+            return String.format("%6d frames %6.1f us bind/frame %6.1f us/bind %8.0f bytes/frame",
+                    frames, bindNanos / 1000.0 / frames, binds == 0 ? 0 : bindNanos / 1000.0 / binds,
+                    bytes < 0 ? -1.0 : bytes / (double) frames);
+        }
+    }
+
+    /**
+     * Times every {@code getView} of the adapter it wraps and counts new rows.
+     */
+    private static class TimedAdapter extends BaseAdapter {
+        private final ListAdapter adapter;
+        int binds;
+        int inflations;
+        long bindNanos;
+
+        TimedAdapter(ListAdapter adapter) {
+            this.adapter = adapter;
+        }
+
+        @Override
+        public int getCount() {
+            return adapter.getCount();
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return adapter.getItem(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return adapter.getItemId(position);
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return adapter.hasStableIds();
+        }
+
+        @Override
+        public int getViewTypeCount() {
+            return adapter.getViewTypeCount();
+        }
+
+        @Override
+        public int getItemViewType(int position) {
+            return adapter.getItemViewType(position);
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            if (convertView == null) inflations++;
+            long start = System.nanoTime();
+            View view = adapter.getView(position, convertView, parent);
+            bindNanos += System.nanoTime() - start;
+            binds++;
+            return view;
+        }
+    }
+
+    /**
+     * Binds the feed's rows the way it did before view holders.
+     */
+    private static class RebindingAdapter extends BaseAdapter {
+        private final ArrayList<Project> projects;
+
+        RebindingAdapter(ArrayList<Project> projects) {
+            this.projects = projects;
+        }
+
+        @Override
+        public int getCount() {
+            return projects.size();
+        }
+
+        @Override
+        public Project getItem(int position) {
+            return projects.get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return projects.get(position).getLocalId();
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            if (convertView == null) {
+                convertView = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_project, parent, false);
+            }
+            Project project = getItem(position);
+            ((TextView) convertView.findViewById(R.id.tv_title)).setText(project.getTitle());
+            convertView.findViewById(R.id.ll_project).setBackgroundColor(project.getColor());
+            return convertView;
+        }
+    }
+}
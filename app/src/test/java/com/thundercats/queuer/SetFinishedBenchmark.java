@@ -0,0 +1,89 @@
+package com.thundercats.queuer;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.thundercats.queuer.database.DatabaseManager;
+import com.thundercats.queuer.database.QueuerOpenHelper;
+import com.thundercats.queuer.database.TaskDataSource;
+import com.thundercats.queuer.database.TaskOpenHelper;
+import com.thundercats.queuer.models.Task;
+
+import java.util.ArrayList;
+
+/**
+ * Marks 1,000 tasks finished with one write each, once opening and closing a connection for
+ * every write, as every Task setter used to, and once on the shared connection held by the
+ * DatabaseManager. Both paths run the same update on their own project's tasks, and the
+ * shared connection must be faster.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SetFinishedBenchmark {
+    private static final int TASKS = 1000;
+
+    private ArrayList<Task> ownConnectionTasks;
+    private ArrayList<Task> sharedConnectionTasks;
+
+    @Before
+    public void createTasks() {
+        TestData.allowMainThreadDatabase();
+        ownConnectionTasks = TestData.createTasks(TestData.createProject("Own connection"), TASKS);
+        sharedConnectionTasks = TestData.createTasks(TestData.createProject("Shared connection"), TASKS);
+    }
+
+    @After
+    public void closeDatabase() {
+        DatabaseManager.getInstance(Robolectric.application).close();
+    }
+
+    @Test
+    public void testSharedConnectionIsFaster() {
+        long start = System.nanoTime();
+        for (Task task : ownConnectionTasks) {
+            QueuerOpenHelper helper = new QueuerOpenHelper(Robolectric.application);
+            setFinished(helper.getWritableDatabase(), task);
+            helper.close();
+        }
+        long ownNanos = System.nanoTime() - start;
+
+        SQLiteDatabase shared = DatabaseManager.getInstance(Robolectric.application).getDatabase();
+        start = System.nanoTime();
+        for (Task task : sharedConnectionTasks) {
+            setFinished(shared, task);
+        }
+        long sharedNanos = System.nanoTime() - start;
+
+        assertEquals("Writes on their own connections lost!", 0, countUnfinished(ownConnectionTasks));
+        assertEquals("Writes on the shared connection lost!", 0, countUnfinished(sharedConnectionTasks));
+        assertTrue(TASKS + " writes took " + sharedNanos / 1000000 + " ms on the shared connection, "
+                + ownNanos / 1000000 + " ms on connections of their own", sharedNanos < ownNanos);
+    }
+
+    /**
+     * Marks a task finished in its row, as a setter did.
+     */
+    private static void setFinished(SQLiteDatabase database, Task task) {
+        ContentValues values = new ContentValues();
+        values.put(TaskOpenHelper.COLUMN_COMPLETED, 1);
+        database.update(TaskOpenHelper.TABLE_TASKS, values, TaskOpenHelper.COLUMN_ID + " = ?",
+                new String[]{String.valueOf(task.getLocalId())});
+    }
+
+    private static int countUnfinished(ArrayList<Task> tasks) {
+        TaskDataSource dataSource = new TaskDataSource(Robolectric.application);
+        dataSource.open();
+        int count = dataSource.countUnfinishedTasks(tasks.get(0).getProjectLocalId());
+        dataSource.close();
+        return count;
+    }
+}
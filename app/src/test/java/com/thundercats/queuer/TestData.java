@@ -0,0 +1,53 @@
+package com.thundercats.queuer;
+
+import org.robolectric.Robolectric;
+
+import com.thundercats.queuer.database.DatabaseManager;
+import com.thundercats.queuer.database.ProjectDataSource;
+import com.thundercats.queuer.database.TaskDataSource;
+import com.thundercats.queuer.models.Project;
+import com.thundercats.queuer.models.Task;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * Writes fixture rows straight through the data sources, for tests that do not go
+ * through the DataManager.
+ */
+public class TestData {
+
+    private TestData() {
+    }
+
+    /**
+     * Lets the test thread, which is the main thread, use the data sources directly.
+     */
+    public static void allowMainThreadDatabase() {
+        DatabaseManager.getInstance(Robolectric.application).setMainThreadForbidden(false);
+    }
+
+    public static Project createProject(String title) {
+        ProjectDataSource dataSource = new ProjectDataSource(Robolectric.application);
+        dataSource.open();
+        Project project = dataSource.createProject(title, 0, false, 0, new Date(), new Date());
+        dataSource.close();
+        return project;
+    }
+
+    /**
+     * Creates {@code count} unfinished tasks named "Task 0", "Task 1", ... at positions 0, 1, ...
+     */
+    public static ArrayList<Task> createTasks(Project project, int count) {
+        ArrayList<Task> drafts = new ArrayList<Task>(count);
+        for (int i = 0; i < count; i++) {
+            drafts.add(new Task(0, 0, project.getId(), project.getLocalId(), "Task " + i, false, i,
+                    new Date(), new Date()));
+        }
+        TaskDataSource dataSource = new TaskDataSource(Robolectric.application);
+        dataSource.open();
+        ArrayList<Task> tasks = dataSource.createTasks(drafts);
+        dataSource.close();
+        return tasks;
+    }
+}
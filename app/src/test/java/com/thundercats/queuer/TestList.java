@@ -0,0 +1,179 @@
+package com.thundercats.queuer;
+
+import org.robolectric.Robolectric;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import com.thundercats.queuer.interfaces.RearrangementListener;
+import com.thundercats.queuer.views.EnhancedListView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * An {@link EnhancedListView} of fixed-height rows, laid out off screen, that tests drive
+ * with scripted {@code MotionEvent}s. There is no window, so {@link #frame()} stands in
+ * for the layout and draw passes the view root would run.
+ */
+public class TestList {
+    public static final int WIDTH = 480;
+    public static final int HEIGHT = 800;
+    public static final int ROW_HEIGHT = 80;
+
+    private final EnhancedListView listView;
+    private final Adapter adapter;
+    private final Canvas canvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+    private long downTime;
+    private int lastY;
+
+    public TestList(int rows) {
+        adapter = new Adapter(rows);
+        listView = new EnhancedListView(Robolectric.application);
+        listView.enableRearranging();
+        listView.setAdapter(adapter);
+        frame();
+    }
+
+    public EnhancedListView getListView() {
+        return listView;
+    }
+
+    /**
+     * Returns the row IDs in the order the adapter shows them.
+     */
+    public ArrayList<Integer> getOrder() {
+        return new ArrayList<Integer>(adapter.ids);
+    }
+
+    /**
+     * Lays out the list, runs its pre-draw listeners and draws it, as the view root does once
+     * per frame.
+     */
+    public void frame() {
+        listView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        listView.layout(0, 0, WIDTH, HEIGHT);
+        listView.getViewTreeObserver().dispatchOnPreDraw();
+        listView.draw(canvas);
+    }
+
+    /**
+     * Puts a finger down on the middle of a row.
+     *
+     * @return The y coordinate the finger is at.
+     */
+    public int down(int row) {
+        downTime = SystemClock.uptimeMillis();
+        int y = row * ROW_HEIGHT + ROW_HEIGHT / 2;
+        touch(MotionEvent.ACTION_DOWN, WIDTH / 2, y);
+        return y;
+    }
+
+    /**
+     * Holds the finger where it went down until the list picks the row up.
+     */
+    public void longPress() {
+        int position = listView.pointToPosition(WIDTH / 2, lastY);
+        View row = listView.getChildAt(position - listView.getFirstVisiblePosition());
+        listView.getOnItemLongClickListener().onItemLongClick(listView, row, position,
+                adapter.getItemId(position));
+    }
+
+    public void move(int y) {
+        touch(MotionEvent.ACTION_MOVE, WIDTH / 2, y);
+    }
+
+    public void move(int x, int y) {
+        touch(MotionEvent.ACTION_MOVE, x, y);
+    }
+
+    public void up(int y) {
+        touch(MotionEvent.ACTION_UP, WIDTH / 2, y);
+    }
+
+    public void up(int x, int y) {
+        touch(MotionEvent.ACTION_UP, x, y);
+    }
+
+    private void touch(int action, int x, int y) {
+        lastY = y;
+        MotionEvent event = MotionEvent.obtain(downTime, SystemClock.uptimeMillis(), action, x, y, 0);
+        listView.onTouchEvent(event);
+        event.recycle();
+    }
+
+    /**
+     * Runs the main looper, and with it the drop animation, until the list takes touches again.
+     */
+    public void settle() {
+        for (int i = 0; i < 100 && !listView.isEnabled(); i++) {
+            Robolectric.runUiThreadTasksIncludingDelayedTasks();
+        }
+        Robolectric.runUiThreadTasks();
+        frame();
+    }
+
+    /**
+     * Rows that show their ID, in an order the list can rearrange.
+     */
+    private static class Adapter extends BaseAdapter implements RearrangementListener {
+        private final ArrayList<Integer> ids = new ArrayList<Integer>();
+
+        Adapter(int rows) {
+            for (int i = 0; i < rows; i++) ids.add(i + 1);
+        }
+
+        @Override
+        public int getCount() {
+            return ids.size();
+        }
+
+        @Override
+        public Integer getItem(int position) {
+            return ids.get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position < 0 || position >= ids.size() ? -1 : ids.get(position);
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            TextView row = (TextView) convertView;
+            if (row == null) {
+                row = new TextView(parent.getContext());
+                row.setLayoutParams(new AbsListView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ROW_HEIGHT));
+            }
+            row.setText("Row " + ids.get(position));
+            return row;
+        }
+
+        @Override
+        public void onStartedRearranging() {
+        }
+
+        @Override
+        public boolean swapElements(int indexOne, int indexTwo) {
+            Collections.swap(ids, indexOne, indexTwo);
+            return true;
+        }
+
+        @Override
+        public void onFinishedRearranging() {
+        }
+    }
+}
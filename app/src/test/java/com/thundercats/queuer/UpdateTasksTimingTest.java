@@ -0,0 +1,87 @@
+package com.thundercats.queuer;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import android.database.Cursor;
+
+import com.thundercats.queuer.database.DatabaseManager;
+import com.thundercats.queuer.database.TaskDataSource;
+import com.thundercats.queuer.database.TaskOpenHelper;
+import com.thundercats.queuer.models.Project;
+import com.thundercats.queuer.models.Task;
+
+import java.util.ArrayList;
+
+/**
+ * Times shifting every task of a list down by one, as an insert at the top does, once with an
+ * update per task and once through the batched TaskDataSource.updateTasks, for growing list
+ * sizes, and checks that the batch is faster wherever there is more than a handful of tasks.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class UpdateTasksTimingTest {
+    private static final int[] SIZES = {10, 100, 500, 2000};
+
+    /**
+     * The smallest list on which the batch must win; below it both take too little time to compare.
+     */
+    private static final int MIN_COMPARED_SIZE = 100;
+
+    private TaskDataSource dataSource;
+
+    @Before
+    public void open() {
+        TestData.allowMainThreadDatabase();
+        dataSource = new TaskDataSource(Robolectric.application);
+        dataSource.open();
+    }
+
+    @After
+    public void close() {
+        dataSource.close();
+        DatabaseManager.getInstance(Robolectric.application).close();
+    }
+
+    @Test
+    public void testBatchIsFasterThanUpdatePerTask() {
+        for (int size : SIZES) {
+            Project project = TestData.createProject("Size " + size);
+            ArrayList<Task> tasks = TestData.createTasks(project, size);
+
+            // the same shift by one, through each path
+            long start = System.nanoTime();
+            for (Task task : tasks) {
+                dataSource.updateTaskPosition(task, task.getPosition() + 1);
+            }
+            long perTaskNanos = System.nanoTime() - start;
+
+            for (Task task : tasks) task.setPosition(task.getPosition() + 2);
+            start = System.nanoTime();
+            dataSource.updateTasks(tasks);
+            long batchedNanos = System.nanoTime() - start;
+
+            if (size >= MIN_COMPARED_SIZE) {
+                assertTrue("Batch of " + size + " took " + batchedNanos / 1000 + " us, updates per task "
+                        + perTaskNanos / 1000 + " us", batchedNanos < perTaskNanos);
+            }
+
+            // read the positions straight from the table
+            Cursor cursor = DatabaseManager.getInstance(Robolectric.application).getDatabase().rawQuery(
+                    "SELECT " + TaskOpenHelper.COLUMN_POSITION + " FROM " + TaskOpenHelper.TABLE_TASKS
+                            + " WHERE " + TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID + " = ? ORDER BY "
+                            + TaskOpenHelper.COLUMN_POSITION, new String[]{String.valueOf(project.getLocalId())});
+            assertEquals(size, cursor.getCount());
+            for (int i = 0; cursor.moveToNext(); i++) {
+                assertEquals("Batched position not written!", i + 2, cursor.getLong(0));
+            }
+            cursor.close();
+        }
+    }
+}
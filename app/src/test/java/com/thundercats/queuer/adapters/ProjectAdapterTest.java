@@ -0,0 +1,166 @@
+package com.thundercats.queuer.adapters;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import android.widget.FrameLayout;
+
+import com.thundercats.queuer.TestData;
+import com.thundercats.queuer.database.DatabaseManager;
+import com.thundercats.queuer.database.TaskDataSource;
+import com.thundercats.queuer.database.TaskPositions;
+import com.thundercats.queuer.interfaces.DataCallback;
+import com.thundercats.queuer.managers.DataManager;
+import com.thundercats.queuer.managers.DismissCommitQueue;
+import com.thundercats.queuer.models.Project;
+import com.thundercats.queuer.models.Task;
+
+import java.util.ArrayList;
+
+/**
+ * Drives a {@link ProjectAdapter} over more {@code Task}s than fit in its window, and checks
+ * that a drag is written once, when it ends, that it waits for an unloaded neighbour, and
+ * that pages are loaded ahead of the scroll.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ProjectAdapterTest {
+    private static final int TASKS = 6 * ProjectAdapter.PAGE_SIZE;
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private ProjectAdapter adapter;
+    private FrameLayout parent;
+    private Project project;
+    private ArrayList<Task> tasks;
+
+    @Before
+    public void loadFirstPage() {
+        TestData.allowMainThreadDatabase();
+        project = TestData.createProject("Paged");
+        tasks = TestData.createTasks(project, TASKS);
+        // as compacted, so a drop between two neighbours has room
+        for (int i = 0; i < TASKS; i++) tasks.get(i).setPosition(TaskPositions.forIndex(i));
+        TaskDataSource dataSource = new TaskDataSource(Robolectric.application);
+        dataSource.open();
+        dataSource.updateTasks(tasks);
+        dataSource.close();
+        DataManager dataManager = DataManager.getInstance(Robolectric.application);
+        DismissCommitQueue dismissCommits = new DismissCommitQueue(dataManager, this, new DataCallback<Void>() {
+            @Override
+            public void onResult(Void result) {
+            }
+        });
+        adapter = new ProjectAdapter(Robolectric.application, project.getLocalId(), dismissCommits);
+        parent = new FrameLayout(Robolectric.application);
+        adapter.reload();
+        waitUntilLoaded(0);
+        assertEquals(TASKS, adapter.getCount());
+    }
+
+    @After
+    public void shutdown() {
+        DataManager.getInstance(Robolectric.application).shutdown();
+        DatabaseManager.getInstance(Robolectric.application).close();
+    }
+
+    @Test
+    public void testDragIsWrittenOnceWhenItEnds() {
+        final Task dragged = tasks.get(1);
+        adapter.onStartedRearranging();
+        for (int i = 1; i <= 3; i++) assertTrue(adapter.swapElements(i, i + 1));
+        assertEquals(dragged.getName(), adapter.getItem(4).getName());
+        assertEquals("Written before the drag ended!", TaskPositions.forIndex(1), positionInDatabase(dragged));
+
+        adapter.onFinishedRearranging();
+        final long dropped = TaskPositions.forIndex(4) + TaskPositions.GAP / 2;
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (positionInDatabase(dragged) != dropped) {
+            assertTrue("Timed out waiting for the drop to be written", System.currentTimeMillis() < deadline);
+            Robolectric.runUiThreadTasks();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                fail("Interrupted");
+            }
+        }
+        for (Task task : tasks) {
+            if (task != dragged) {
+                assertEquals(task.getName() + " rewritten!", task.getPosition(), positionInDatabase(task));
+            }
+        }
+    }
+
+    @Test
+    public void testDragIntoUnloadedNeighbourWaitsForItsPage() {
+        int last = ProjectAdapter.PAGE_SIZE - 1;
+        assertTrue(adapter.isLoaded(last));
+        assertFalse(adapter.isLoaded(last + 1));
+        assertFalse("Unloaded rows have IDs that change!", adapter.hasStableIds());
+
+        adapter.onStartedRearranging();
+        assertFalse("Swapped with a row that is not loaded!", adapter.swapElements(last, last + 1));
+        assertEquals("Task " + last, adapter.getItem(last).getName());
+
+        waitUntilLoaded(last + 1);
+        assertTrue(adapter.swapElements(last, last + 1));
+        assertEquals("Task " + last, adapter.getItem(last + 1).getName());
+        assertEquals("Task " + (last + 1), adapter.getItem(last).getName());
+        adapter.onFinishedRearranging();
+    }
+
+    @Test
+    public void testFarBindLoadsMostlyAheadOfTheScroll() {
+        // scrolling down: most of the page lies below the bound row
+        int down = 4 * ProjectAdapter.PAGE_SIZE;
+        adapter.getView(down, null, parent);
+        waitUntilLoaded(down);
+        assertTrue(adapter.isLoaded(down + ProjectAdapter.PAGE_SIZE / 2));
+        assertFalse(adapter.isLoaded(down - ProjectAdapter.PAGE_SIZE / 2));
+
+        // scrolling up: most of the page lies above it
+        int up = 2 * ProjectAdapter.PAGE_SIZE;
+        adapter.getView(up, null, parent);
+        waitUntilLoaded(up);
+        assertTrue(adapter.isLoaded(up - ProjectAdapter.PAGE_SIZE / 2));
+        assertFalse(adapter.isLoaded(up + ProjectAdapter.PAGE_SIZE / 2));
+    }
+
+    /**
+     * Returns the position a {@code Task}'s row has in the database.
+     */
+    private long positionInDatabase(Task task) {
+        TaskDataSource dataSource = new TaskDataSource(Robolectric.application);
+        dataSource.open();
+        try {
+            for (Task read : dataSource.getTasks(project.getLocalId())) {
+                if (read.getLocalId() == task.getLocalId()) return read.getPosition();
+            }
+        } finally {
+            dataSource.close();
+        }
+        fail(task.getName() + " not in the database");
+        return TaskPositions.NO_ROOM;
+    }
+
+    /**
+     * Runs the main looper until the row at index {@code i} is loaded.
+     */
+    private void waitUntilLoaded(int i) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!adapter.isLoaded(i)) {
+            assertTrue("Timed out waiting for row " + i, System.currentTimeMillis() < deadline);
+            Robolectric.runUiThreadTasks();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                fail("Interrupted");
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.thundercats.queuer.database;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Upgrades a version 1 database of 50,000 tasks in place, and interrupts backfills
+ * halfway to check that they resume where they stopped.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MigrationTest {
+    private static final int PROJECTS = 500;
+    private static final int TASKS_PER_PROJECT = 100;
+
+    private static final String NUMBERS_TABLE = "numbers";
+    private static final int NUMBERS = 1000;
+    private static final int BATCH_SIZE = 100;
+
+    private QueuerOpenHelper helper;
+
+    @Before
+    public void deleteDatabase() {
+        Robolectric.application.deleteDatabase("queuer.db");
+    }
+
+    @After
+    public void closeDatabase() {
+        if (helper != null) helper.close();
+    }
+
+    @Test
+    public void testUpgradeKeepsRowsAndFillsAggregates() {
+        writeVersion1Fixture();
+
+        long start = System.nanoTime();
+        helper = new QueuerOpenHelper(Robolectric.application);
+        SQLiteDatabase database = helper.getWritableDatabase();
+        long millis = (System.nanoTime() - start) / 1000000;
+        System.out.println("Migrated " + PROJECTS * TASKS_PER_PROJECT + " tasks in " + PROJECTS
+                + " projects to version " + database.getVersion() + " in " + millis + " ms");
+
+        assertEquals("Tasks lost by the upgrade!", PROJECTS * TASKS_PER_PROJECT,
+                DatabaseUtils.queryNumEntries(database, TaskOpenHelper.TABLE_TASKS));
+        assertEquals(PROJECTS, DatabaseUtils.queryNumEntries(database, ProjectOpenHelper.TABLE_PROJECTS));
+
+        // every third task is finished, and the first unfinished one is at position 1
+        Cursor cursor = database.query(ProjectOpenHelper.TABLE_PROJECTS, new String[]{
+                        ProjectOpenHelper.COLUMN_LOCAL_ID, ProjectOpenHelper.COLUMN_TASK_COUNT,
+                        ProjectOpenHelper.COLUMN_UNFINISHED_COUNT, ProjectOpenHelper.COLUMN_HEAD_TASK_ID},
+                null, null, null, null, null);
+        int unfinished = TASKS_PER_PROJECT - (TASKS_PER_PROJECT + 2) / 3;
+        while (cursor.moveToNext()) {
+            long localId = cursor.getLong(0);
+            assertEquals("Task count not backfilled!", TASKS_PER_PROJECT, cursor.getInt(1));
+            assertEquals("Unfinished count not backfilled!", unfinished, cursor.getInt(2));
+            assertEquals("Head task not backfilled!", (localId - 1) * TASKS_PER_PROJECT + 2, cursor.getLong(3));
+        }
+        cursor.close();
+
+        // every other task never reached the server, so only those are queued, as creates
+        int unsent = PROJECTS * TASKS_PER_PROJECT / 2;
+        assertEquals("Unsent tasks not queued for the server!", unsent,
+                DatabaseUtils.queryNumEntries(database, Outbox.TABLE_OUTBOX));
+        assertEquals(unsent, DatabaseUtils.longForQuery(database, "SELECT COUNT(*) FROM outbox o JOIN tasks t"
+                + " ON t._id = o.task_local_id WHERE t.id = 0 AND o.operation = 'create' AND o.version = 1", null));
+
+        assertEquals("Backfill not marked done!", 0, DatabaseUtils.longForQuery(database,
+                "SELECT COUNT(*) FROM backfills WHERE done = 0", null));
+    }
+
+    @Test
+    public void testAggregateBackfillResumesOnTheNextOpen() {
+        writeVersion1Fixture();
+        helper = new QueuerOpenHelper(Robolectric.application);
+        SQLiteDatabase database = helper.getWritableDatabase();
+
+        // as if the process died after the first batch of 200 projects was committed
+        database.execSQL("update backfills set last_id = 200, done = 0 where name = 'projects_aggregates'");
+        database.execSQL("update " + ProjectOpenHelper.TABLE_PROJECTS + " set "
+                + ProjectOpenHelper.COLUMN_TASK_COUNT + " = 0, "
+                + ProjectOpenHelper.COLUMN_UNFINISHED_COUNT + " = 0, "
+                + ProjectOpenHelper.COLUMN_HEAD_TASK_ID + " = null");
+        helper.close();
+
+        helper = new QueuerOpenHelper(Robolectric.application);
+        database = helper.getWritableDatabase();
+        assertEquals("Committed batch recomputed!", 0, DatabaseUtils.longForQuery(database,
+                "SELECT SUM(" + ProjectOpenHelper.COLUMN_TASK_COUNT + ") FROM " + ProjectOpenHelper.TABLE_PROJECTS
+                        + " WHERE " + ProjectOpenHelper.COLUMN_LOCAL_ID + " <= 200", null));
+        assertEquals("Projects after the committed batch not backfilled!", (PROJECTS - 200) * TASKS_PER_PROJECT,
+                DatabaseUtils.longForQuery(database, "SELECT SUM(" + ProjectOpenHelper.COLUMN_TASK_COUNT + ") FROM "
+                        + ProjectOpenHelper.TABLE_PROJECTS + " WHERE " + ProjectOpenHelper.COLUMN_LOCAL_ID + " > 200",
+                        null));
+        assertEquals(0, DatabaseUtils.longForQuery(database, "SELECT COUNT(*) FROM "
+                + ProjectOpenHelper.TABLE_PROJECTS + " WHERE " + ProjectOpenHelper.COLUMN_LOCAL_ID + " > 200 AND "
+                + ProjectOpenHelper.COLUMN_HEAD_TASK_ID + " IS NULL", null));
+        assertEquals(1, DatabaseUtils.longForQuery(database,
+                "SELECT done FROM backfills WHERE name = 'projects_aggregates'", null));
+    }
+
+    @Test
+    public void testBackfillResumesAfterInterruptedBatch() {
+        SQLiteDatabase database = Robolectric.application.openOrCreateDatabase("queuer.db",
+                Context.MODE_PRIVATE, null);
+        database.execSQL("create table " + NUMBERS_TABLE + "(_id integer primary key, value integer)");
+        for (int i = 1; i <= NUMBERS; i++) {
+            database.execSQL("insert into " + NUMBERS_TABLE + " values (?, ?)", new Object[]{i, i});
+        }
+        MigrationRegistry.scheduleBackfill(database, "double_numbers");
+
+        DoublingBackfill backfill = new DoublingBackfill();
+        backfill.failOnBatch = 4;
+        MigrationRegistry registry = new MigrationRegistry().add(backfill);
+        try {
+            registry.runPendingBackfills(database);
+            fail("Backfill was not interrupted!");
+        } catch (IllegalStateException expected) {
+        }
+
+        // the three committed batches are recorded, the interrupted one rolled back
+        assertEquals(3 * BATCH_SIZE, DatabaseUtils.longForQuery(database,
+                "SELECT last_id FROM backfills WHERE name = 'double_numbers'", null));
+        assertEquals(3 * BATCH_SIZE, DatabaseUtils.longForQuery(database,
+                "SELECT COUNT(*) FROM " + NUMBERS_TABLE + " WHERE value = 2 * _id", null));
+
+        // the next open picks up after the last committed batch
+        backfill.failOnBatch = -1;
+        registry.runPendingBackfills(database);
+        assertEquals("Backfill did not resume from batch 4!", 4, backfill.firstBatchAfterResume);
+        assertEquals("A row was rewritten twice or not at all!", NUMBERS, DatabaseUtils.longForQuery(database,
+                "SELECT COUNT(*) FROM " + NUMBERS_TABLE + " WHERE value = 2 * _id", null));
+        assertEquals(1, DatabaseUtils.longForQuery(database,
+                "SELECT done FROM backfills WHERE name = 'double_numbers'", null));
+
+        // a finished backfill is not run again
+        backfill.batches = 0;
+        registry.runPendingBackfills(database);
+        assertEquals(0, backfill.batches);
+        database.close();
+    }
+
+    /**
+     * Writes the schema and rows of a version 1 queuer.db: no aggregate columns, no triggers,
+     * no outbox.
+     */
+    private static void writeVersion1Fixture() {
+        SQLiteDatabase database = Robolectric.application.openOrCreateDatabase("queuer.db",
+                Context.MODE_PRIVATE, null);
+        database.execSQL("create table projects(_id integer primary key autoincrement, id integer, "
+                + "title text not null, color integer, hidden integer, created_at integer, updated_at integer)");
+        database.execSQL("create table tasks(_id integer primary key autoincrement, id integer, "
+                + "project_id integer, project_local_id integer references projects(_id) on delete cascade, "
+                + "text text not null, position integer, created_at integer, updated_at integer, completed integer)");
+        database.execSQL("create index if not exists tasks_project_completed_position "
+                + "on tasks(project_local_id, completed, position)");
+        database.beginTransaction();
+        SQLiteStatement insertProject = database.compileStatement(
+                "insert into projects(id, title, color, hidden, created_at, updated_at) values (?, ?, 0, 0, 0, 0)");
+        SQLiteStatement insertTask = database.compileStatement("insert into tasks(id, project_id, project_local_id, "
+                + "text, position, created_at, updated_at, completed) values (?, ?, ?, ?, ?, 0, 0, ?)");
+        try {
+            int taskId = 0;
+            for (int p = 1; p <= PROJECTS; p++) {
+                insertProject.bindLong(1, p);
+                insertProject.bindString(2, "Project " + p);
+                long projectLocalId = insertProject.executeInsert();
+                for (int t = 0; t < TASKS_PER_PROJECT; t++) {
+                    taskId++;
+                    // every other task never reached the server
+                    insertTask.bindLong(1, taskId % 2 == 0 ? taskId : 0);
+                    insertTask.bindLong(2, p);
+                    insertTask.bindLong(3, projectLocalId);
+                    insertTask.bindString(4, "Task " + taskId);
+                    insertTask.bindLong(5, t);
+                    insertTask.bindLong(6, t % 3 == 0 ? 1 : 0);
+                    insertTask.executeInsert();
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            insertProject.close();
+            insertTask.close();
+        }
+        database.setVersion(1);
+        database.close();
+    }
+
+    /**
+     * Doubles every value, and throws halfway through a chosen batch.
+     */
+    private static class DoublingBackfill extends Backfill {
+        private int batches;
+        private int failOnBatch = -1;
+        private int firstBatchAfterResume = -1;
+        private boolean failed;
+
+        DoublingBackfill() {
+            super("double_numbers", NUMBERS_TABLE, BATCH_SIZE);
+        }
+
+        @Override
+        protected void apply(SQLiteDatabase database, long firstId, long lastId) {
+            batches++;
+            int batch = (int) (lastId / BATCH_SIZE);
+            if (failed && firstBatchAfterResume == -1) firstBatchAfterResume = batch;
+            database.execSQL("update " + NUMBERS_TABLE + " set value = value * 2 where _id between ? and ?",
+                    new Object[]{firstId, lastId});
+            if (batch == failOnBatch) {
+                failed = true;
+                throw new IllegalStateException("Process died during batch " + batch);
+            }
+        }
+    }
+}
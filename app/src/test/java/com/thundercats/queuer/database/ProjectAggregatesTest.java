@@ -0,0 +1,127 @@
+package com.thundercats.queuer.database;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.thundercats.queuer.TestData;
+import com.thundercats.queuer.models.Project;
+import com.thundercats.queuer.models.Task;
+
+import java.util.ArrayList;
+
+/**
+ * Writes tasks through the {@link TaskDataSource}, and once with plain SQL, and checks that
+ * the triggers keep each project's task count, unfinished count and head task up to date.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ProjectAggregatesTest {
+    private static final int TASKS = 5;
+
+    private TaskDataSource dataSource;
+    private Project project;
+    private ArrayList<Task> tasks;
+
+    @Before
+    public void createTasks() {
+        TestData.allowMainThreadDatabase();
+        project = TestData.createProject("Counted");
+        tasks = TestData.createTasks(project, TASKS);
+        dataSource = new TaskDataSource(Robolectric.application);
+        dataSource.open();
+    }
+
+    @After
+    public void closeDatabase() {
+        dataSource.close();
+        DatabaseManager.getInstance(Robolectric.application).close();
+    }
+
+    @Test
+    public void testInsertedTasksAreCounted() {
+        assertAggregates(project, TASKS, TASKS, tasks.get(0));
+        Cursor cursor = aggregatesOf(project);
+        assertFalse("Last activity not set!", cursor.isNull(3));
+        cursor.close();
+    }
+
+    @Test
+    public void testFinishingAndMovingMoveTheHeadTask() {
+        dataSource.updateTaskFinished(tasks.get(0), true);
+        assertAggregates(project, TASKS, TASKS - 1, tasks.get(1));
+
+        dataSource.updateTaskPosition(tasks.get(4), -1);
+        assertAggregates(project, TASKS, TASKS - 1, tasks.get(4));
+
+        dataSource.updateTaskFinished(tasks.get(0), false);
+        assertAggregates(project, TASKS, TASKS, tasks.get(4));
+    }
+
+    @Test
+    public void testDeletedTaskIsNoLongerCounted() {
+        dataSource.deleteTask(tasks.get(0));
+        assertAggregates(project, TASKS - 1, TASKS - 1, tasks.get(1));
+
+        for (int i = 1; i < TASKS; i++) dataSource.deleteTask(tasks.get(i));
+        assertAggregates(project, 0, 0, null);
+    }
+
+    @Test
+    public void testTaskMovedToAnotherProjectIsCountedThere() {
+        Project other = TestData.createProject("Other");
+        assertAggregates(other, 0, 0, null);
+
+        // the data sources never move a Task, but the triggers must not rely on that
+        SQLiteDatabase database = DatabaseManager.getInstance(Robolectric.application).getDatabase();
+        database.execSQL("update " + TaskOpenHelper.TABLE_TASKS + " set " + TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID
+                + " = ? where " + TaskOpenHelper.COLUMN_ID + " = ?",
+                new Object[]{other.getLocalId(), tasks.get(0).getLocalId()});
+
+        assertAggregates(project, TASKS - 1, TASKS - 1, tasks.get(1));
+        assertAggregates(other, 1, 1, tasks.get(0));
+    }
+
+    /**
+     * Checks the aggregate columns of a {@code Project}'s row.
+     *
+     * @param head The expected head {@code Task}, or null if there should be none.
+     */
+    private static void assertAggregates(Project project, int taskCount, int unfinishedCount, Task head) {
+        Cursor cursor = aggregatesOf(project);
+        try {
+            assertEquals("Task count of " + project.getTitle(), taskCount, cursor.getInt(0));
+            assertEquals("Unfinished count of " + project.getTitle(), unfinishedCount, cursor.getInt(1));
+            if (head == null) {
+                assertTrue("Head task of " + project.getTitle() + " not cleared!", cursor.isNull(2));
+            } else {
+                assertEquals("Head task of " + project.getTitle(), head.getLocalId(), cursor.getInt(2));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns a cursor on a {@code Project}'s task count, unfinished count, head task and
+     * last activity, moved to its row.
+     */
+    private static Cursor aggregatesOf(Project project) {
+        Cursor cursor = DatabaseManager.getInstance(Robolectric.application).getDatabase().query(
+                ProjectOpenHelper.TABLE_PROJECTS, new String[]{ProjectOpenHelper.COLUMN_TASK_COUNT,
+                        ProjectOpenHelper.COLUMN_UNFINISHED_COUNT, ProjectOpenHelper.COLUMN_HEAD_TASK_ID,
+                        ProjectOpenHelper.COLUMN_LAST_ACTIVITY},
+                ProjectOpenHelper.COLUMN_LOCAL_ID + " = ?", new String[]{String.valueOf(project.getLocalId())},
+                null, null, null);
+        assertTrue(project.getTitle() + " not in the database", cursor.moveToFirst());
+        return cursor;
+    }
+}
@@ -0,0 +1,121 @@
+package com.thundercats.queuer.database;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.RobolectricTestRunner;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import com.thundercats.queuer.Allocations;
+import com.thundercats.queuer.models.Task;
+
+import java.util.Date;
+
+/**
+ * Reads 100,000 task rows two ways and prints the time and bytes allocated per row:
+ * looking every column up by name on every row, as the data sources used to, and through
+ * a {@link TaskRowMapper}, which looks the columns up once.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RowMapperBenchmark {
+    private static final int ROWS = 100000;
+    private static final int ROUNDS = 3;
+
+    private static final String[] COLUMNS = {
+            TaskOpenHelper.COLUMN_ID, TaskOpenHelper.COLUMN_SERVER_ID, TaskOpenHelper.COLUMN_PROJECT_SERVER_ID,
+            TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID, TaskOpenHelper.COLUMN_TEXT, TaskOpenHelper.COLUMN_POSITION,
+            TaskOpenHelper.COLUMN_CREATED, TaskOpenHelper.COLUMN_UPDATED, TaskOpenHelper.COLUMN_COMPLETED};
+
+    private MatrixCursor cursor;
+
+    @Before
+    public void fillCursor() {
+        cursor = new MatrixCursor(COLUMNS, ROWS);
+        long now = System.currentTimeMillis();
+        for (int i = 1; i <= ROWS; i++) {
+            cursor.addRow(new Object[]{i, i, 1, 1, "Task " + i, i, now, now, i % 2});
+        }
+    }
+
+    @Test
+    public void testPerRowCost() {
+        Sample byName = null, mapped = null;
+        // the first rounds warm up the JIT; the last one is reported
+        for (int round = 0; round < ROUNDS; round++) {
+            byName = readByName();
+            mapped = readThroughMapper();
+        }
+
+        System.out.println("Reading " + ROWS + " task rows:");
+        System.out.println("  getColumnIndex per row  " + byName);
+        System.out.println("  TaskRowMapper           " + mapped);
+
+        assertEquals(ROWS, byName.checksum);
+        assertEquals("Mapper read different rows!", byName.checksum, mapped.checksum);
+        if (mapped.bytesPerRow >= 0) {
+            assertTrue("Mapper allocated more per row than the lookups by name!",
+                    mapped.bytesPerRow <= byName.bytesPerRow);
+        }
+    }
+
+    /**
+     * Reads every row the way the data sources did before the row mappers.
+     */
+    private Sample readByName() {
+        Sample sample = new Sample();
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            Task task = new Task(cursor.getInt(cursor.getColumnIndex(TaskOpenHelper.COLUMN_ID)),
+                    cursor.getInt(cursor.getColumnIndex(TaskOpenHelper.COLUMN_SERVER_ID)),
+                    cursor.getInt(cursor.getColumnIndex(TaskOpenHelper.COLUMN_PROJECT_SERVER_ID)),
+                    cursor.getInt(cursor.getColumnIndex(TaskOpenHelper.COLUMN_PROJECT_LOCAL_ID)),
+                    cursor.getString(cursor.getColumnIndex(TaskOpenHelper.COLUMN_TEXT)),
+                    cursor.getInt(cursor.getColumnIndex(TaskOpenHelper.COLUMN_COMPLETED)) == 1,
+                    cursor.getLong(cursor.getColumnIndex(TaskOpenHelper.COLUMN_POSITION)),
+                    new Date(cursor.getLong(cursor.getColumnIndex(TaskOpenHelper.COLUMN_CREATED))),
+                    new Date(cursor.getLong(cursor.getColumnIndex(TaskOpenHelper.COLUMN_UPDATED))));
+            sample.add(task);
+        }
+        return sample.finish();
+    }
+
+    private Sample readThroughMapper() {
+        Sample sample = new Sample();
+        cursor.moveToPosition(-1);
+        TaskRowMapper mapper = new TaskRowMapper(cursor);
+        while (cursor.moveToNext()) sample.add(mapper.map(cursor));
+        return sample.finish();
+    }
+
+    /**
+     * The time and allocations of one pass over the cursor, and a checksum of what it read.
+     */
+    private static class Sample {
+        private final long startNanos = System.nanoTime();
+        private final long startBytes = Allocations.allocatedBytes();
+        private long checksum;
+        private double nanosPerRow;
+        private double bytesPerRow;
+
+        void add(Task task) {
+            if (task.isFinished() == (task.getPosition() % 2 == 1) && task.getName().length() > 5) checksum++;
+        }
+
+        Sample finish() {
+            nanosPerRow = (System.nanoTime() - startNanos) / (double) ROWS;
+            long endBytes = Allocations.allocatedBytes();
+            bytesPerRow = startBytes < 0 ? -1 : (endBytes - startBytes) / (double) ROWS;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%8.1f ns/row %8.1f bytes/row", nanosPerRow, bytesPerRow);
+        }
+    }
+}
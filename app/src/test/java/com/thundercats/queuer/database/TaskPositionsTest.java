@@ -0,0 +1,147 @@
+package com.thundercats.queuer.database;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import com.thundercats.queuer.TestData;
+import com.thundercats.queuer.models.Project;
+import com.thundercats.queuer.models.Task;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+/**
+ * Checks the keys {@link TaskPositions#between(Task, Task)} hands out, and that
+ * {@link TaskDataSource#moveTask(Task, Task, Task)} writes one row while there is room and
+ * renumbers the list once there is none.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TaskPositionsTest {
+    private static final int TASKS = 5;
+
+    private TaskDataSource dataSource;
+    private Project project;
+
+    @Before
+    public void openDatabase() {
+        TestData.allowMainThreadDatabase();
+        project = TestData.createProject("Positions");
+        dataSource = new TaskDataSource(Robolectric.application);
+        dataSource.open();
+    }
+
+    @After
+    public void closeDatabase() {
+        dataSource.close();
+        DatabaseManager.getInstance(Robolectric.application).close();
+    }
+
+    @Test
+    public void testBetweenTakesTheMiddleOrAGapPastTheEnd() {
+        Task first = task(1, TaskPositions.forIndex(0));
+        Task second = task(2, TaskPositions.forIndex(1));
+
+        assertEquals(TaskPositions.forIndex(0), TaskPositions.between(null, null));
+        assertEquals(TaskPositions.GAP / 2, TaskPositions.between(first, second));
+        assertEquals(-TaskPositions.GAP, TaskPositions.between(null, first));
+        assertEquals(2 * TaskPositions.GAP, TaskPositions.between(second, null));
+    }
+
+    @Test
+    public void testNeighboursWithoutAKeyBetweenThemHaveNoRoom() {
+        assertEquals(TaskPositions.NO_ROOM, TaskPositions.between(task(1, 5), task(2, 6)));
+        assertEquals(TaskPositions.NO_ROOM, TaskPositions.between(task(1, 5), task(2, 5)));
+        assertEquals(6, TaskPositions.between(task(1, 5), task(2, 7)));
+    }
+
+    @Test
+    public void testTwentyMovesIntoOneSpotFitBetweenCompactedNeighbours() {
+        Task before = task(1, TaskPositions.forIndex(0));
+        Task after = task(2, TaskPositions.forIndex(1));
+        int moves = 0;
+        long position;
+        while ((position = TaskPositions.between(before, after)) != TaskPositions.NO_ROOM) {
+            assertTrue(position > before.getPosition() && position < after.getPosition());
+            // each move drops a Task right above the last one
+            after = task(3 + moves, position);
+            moves++;
+        }
+        assertEquals(20, moves);
+    }
+
+    @Test
+    public void testMoveWithRoomWritesOnlyTheMovedTask() {
+        ArrayList<Task> tasks = TestData.createTasks(project, TASKS);
+        for (int i = 0; i < TASKS; i++) tasks.get(i).setPosition(TaskPositions.forIndex(i));
+        dataSource.updateTasks(tasks);
+
+        long position = dataSource.moveTask(tasks.get(4), tasks.get(0), tasks.get(1));
+
+        assertEquals(TaskPositions.GAP / 2, position);
+        ArrayList<Task> moved = dataSource.getUnfinishedTasks(project.getLocalId());
+        assertNames(moved, 0, 4, 1, 2, 3);
+        assertEquals(TaskPositions.GAP / 2, moved.get(1).getPosition());
+        for (int i = 0; i < 4; i++) {
+            assertEquals("Neighbour rewritten!", TaskPositions.forIndex(i), positionOf(moved, tasks.get(i)));
+        }
+    }
+
+    @Test
+    public void testMoveToTheTopNeedsOnlyTheTaskBelow() {
+        ArrayList<Task> tasks = TestData.createTasks(project, TASKS);
+
+        long position = dataSource.moveTask(tasks.get(3), null, tasks.get(0));
+
+        assertEquals(tasks.get(0).getPosition() - TaskPositions.GAP, position);
+        assertNames(dataSource.getUnfinishedTasks(project.getLocalId()), 3, 0, 1, 2, 4);
+    }
+
+    @Test
+    public void testMoveWithoutRoomCompactsTheList() {
+        // TestData numbers positions 0, 1, 2, ..., so there is no key between neighbours
+        ArrayList<Task> tasks = TestData.createTasks(project, TASKS);
+
+        long position = dataSource.moveTask(tasks.get(4), tasks.get(0), tasks.get(1));
+
+        assertEquals(TaskPositions.NO_ROOM, position);
+        ArrayList<Task> compacted = dataSource.getUnfinishedTasks(project.getLocalId());
+        assertNames(compacted, 0, 4, 1, 2, 3);
+        for (int i = 0; i < TASKS; i++) {
+            assertEquals("Not renumbered a gap apart!", TaskPositions.forIndex(i), compacted.get(i).getPosition());
+        }
+
+        // the compacted list has room again
+        assertEquals(TaskPositions.GAP / 2,
+                dataSource.moveTask(compacted.get(3), compacted.get(0), compacted.get(1)));
+    }
+
+    private Task task(int localId, long position) {
+        return new Task(localId, 0, 0, project.getLocalId(), "Task " + localId, false, position,
+                new Date(), new Date());
+    }
+
+    /**
+     * Checks that the {@code Task}s are the ones TestData named with the given numbers, in order.
+     */
+    private static void assertNames(ArrayList<Task> tasks, int... numbers) {
+        assertEquals(numbers.length, tasks.size());
+        for (int i = 0; i < numbers.length; i++) {
+            assertEquals("Task " + numbers[i], tasks.get(i).getName());
+        }
+    }
+
+    private static long positionOf(ArrayList<Task> tasks, Task task) {
+        for (Task read : tasks) {
+            if (read.getLocalId() == task.getLocalId()) return read.getPosition();
+        }
+        fail(task.getName() + " not read back");
+        return TaskPositions.NO_ROOM;
+    }
+}
@@ -0,0 +1,117 @@
+package com.thundercats.queuer.database;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import com.thundercats.queuer.TestData;
+import com.thundercats.queuer.interfaces.RowVisitor;
+import com.thundercats.queuer.models.Project;
+import com.thundercats.queuer.models.Task;
+
+import java.util.ArrayList;
+
+/**
+ * Reads a project's unfinished tasks through every query that filters and sorts them in
+ * SQLite, over tasks that are partly finished, out of creation order and tied on position,
+ * next to another project's tasks.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class UnfinishedTasksTest {
+    private static final int TASKS = 12;
+
+    /**
+     * The unfinished tasks in (position, local ID) order, by their TestData numbers.
+     */
+    private static final int[] UNFINISHED = {10, 11, 8, 7, 4, 5, 2, 1};
+
+    private TaskDataSource dataSource;
+    private Project project;
+    private ArrayList<Task> tasks;
+
+    @Before
+    public void createTasks() {
+        TestData.allowMainThreadDatabase();
+        project = TestData.createProject("Filtered");
+        tasks = TestData.createTasks(project, TASKS);
+        TestData.createTasks(TestData.createProject("Other"), TASKS);
+
+        // pairs of tasks share a position, in reverse order of creation; every third is finished
+        for (int i = 0; i < TASKS; i++) {
+            tasks.get(i).setPosition((TASKS - 1 - i) / 2);
+            tasks.get(i).setFinished(i % 3 == 0);
+        }
+        dataSource = new TaskDataSource(Robolectric.application);
+        dataSource.open();
+        dataSource.updateTasks(tasks);
+    }
+
+    @After
+    public void closeDatabase() {
+        dataSource.close();
+        DatabaseManager.getInstance(Robolectric.application).close();
+    }
+
+    @Test
+    public void testUnfinishedTasksAreFilteredAndSorted() {
+        int projectLocalId = project.getLocalId();
+        assertNames(dataSource.getUnfinishedTasks(projectLocalId), UNFINISHED);
+        assertNames(dataSource.getUnfinishedTasks(projectLocalId, 3), 10, 11, 8);
+        assertEquals(UNFINISHED.length, dataSource.countUnfinishedTasks(projectLocalId));
+        assertEquals("Task 10", dataSource.getNextUnfinishedTask(projectLocalId).getName());
+
+        final ArrayList<Task> visited = new ArrayList<Task>();
+        int count = dataSource.forEachUnfinishedTask(projectLocalId, new RowVisitor<Task>() {
+            @Override
+            public boolean onRow(Task row) {
+                visited.add(row);
+                return true;
+            }
+        });
+        assertEquals(UNFINISHED.length, count);
+        assertNames(visited, UNFINISHED);
+    }
+
+    @Test
+    public void testPagesAndKeysetsFollowTheSameOrder() {
+        int projectLocalId = project.getLocalId();
+        TaskPage page = dataSource.getUnfinishedPage(projectLocalId, 3, 3);
+        assertEquals(3, page.getOffset());
+        assertEquals(UNFINISHED.length, page.getTotal());
+        assertNames(page.getTasks(), 7, 4, 5);
+
+        // ties on position are broken by local ID, and a finished anchor still has a place
+        assertNames(dataSource.getUnfinishedTasksAfter(projectLocalId, tasks.get(4), 2), 5, 2);
+        assertNames(dataSource.getUnfinishedTasksBefore(projectLocalId, tasks.get(5), 3), 8, 7, 4);
+        assertNames(dataSource.getUnfinishedTasksAfter(projectLocalId, tasks.get(6), 2), 7, 4);
+        assertNames(dataSource.getUnfinishedTasksBefore(projectLocalId, tasks.get(10), 3));
+    }
+
+    @Test
+    public void testFinishingTheHeadTaskMovesTheNextOneUp() {
+        dataSource.updateTaskFinished(tasks.get(10), true);
+
+        assertEquals("Task 11", dataSource.getNextUnfinishedTask(project.getLocalId()).getName());
+        assertEquals(UNFINISHED.length - 1, dataSource.countUnfinishedTasks(project.getLocalId()));
+
+        for (Task task : tasks) dataSource.updateTaskFinished(task, true);
+        assertNull(dataSource.getNextUnfinishedTask(project.getLocalId()));
+        assertEquals(0, dataSource.countUnfinishedTasks(project.getLocalId()));
+    }
+
+    /**
+     * Checks that the {@code Task}s are the ones TestData named with the given numbers, in order.
+     */
+    private static void assertNames(ArrayList<Task> read, int... numbers) {
+        assertEquals(numbers.length, read.size());
+        for (int i = 0; i < numbers.length; i++) {
+            assertEquals("Task " + numbers[i], read.get(i).getName());
+        }
+    }
+}